@@ -32,6 +32,14 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // Lets JVM tests run code that logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+        // The *Benchmark classes only time something with -Pbenchmarks
+        unitTests.all {
+            it.systemProperty("benchmarks", project.hasProperty("benchmarks"))
+        }
+    }
 }
 
 dependencies {
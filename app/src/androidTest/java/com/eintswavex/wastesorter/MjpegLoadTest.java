@@ -0,0 +1,222 @@
+package com.eintswavex.wastesorter;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ramps a SyntheticMjpegServer through frame sizes and frame rates while ESP32CameraHelper
+ * ingests it, and reports per step the sustained throughput, the share of sent frames that never
+ * reached the listener, and p50/p99 latency from JPEG arrival to delivery on the main thread.
+ * A resolution is saturated once delivery falls below SATURATION_RATIO of the offered rate.
+ *
+ * Runs headless: ./gradlew connectedAndroidTest
+ *     -Pandroid.testInstrumentationRunnerArguments.class=com.eintswavex.wastesorter.MjpegLoadTest
+ * Results are logged under the MjpegLoadTest tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MjpegLoadTest {
+    private static final String TAG = "MjpegLoadTest";
+
+    private static final int[][] RESOLUTIONS = { {320, 240}, {640, 480}, {800, 600}, {1280, 720} };
+    private static final float[] FPS_STEPS = { 5, 10, 15, 20, 30, 45, 60, 90 };
+    private static final int QUALITY = 80;
+    private static final int MODEL_SIZE = 224;
+    private static final long WARM_UP_MS = 1000;
+    private static final long STEP_MS = 4000;
+    private static final float SATURATION_RATIO = 0.95f;
+    private static final int MAX_LATENCY_SAMPLES = 10000;
+
+    private SyntheticMjpegServer server;
+    private ESP32CameraHelper helper;
+    private final StepRecorder recorder = new StepRecorder();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SyntheticMjpegServer(new SyntheticMjpegServer.Config(320, 240, QUALITY, 5));
+        helper = ESP32CameraHelper.getInstance();
+        helper.setFrameIntervalMs(0);  // Always the MJPEG stream, never snapshots
+        helper.setPreviewEnabled(true);
+        helper.setInferenceSize(MODEL_SIZE, MODEL_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        helper.stopStream();
+        server.close();
+    }
+
+    @Test
+    public void rampUntilSaturation() throws Exception {
+        startStream();
+        StringBuilder report = new StringBuilder("\nresolution  offered  sustained  dropped   p50 ms   p99 ms  frame KB\n");
+        boolean anyDelivered = false;
+
+        for (int[] resolution : RESOLUTIONS) {
+            float saturatedAt = -1;
+            for (float fps : FPS_STEPS) {
+                StepResult result = runStep(new SyntheticMjpegServer.Config(resolution[0], resolution[1], QUALITY, fps));
+                report.append(result.toRow()).append('\n');
+                Log.i(TAG, result.toRow());
+                anyDelivered |= result.delivered > 0;
+
+                if (result.sustainedFps < fps * SATURATION_RATIO) {
+                    saturatedAt = fps;
+                    break;
+                }
+            }
+            String summary = saturatedAt > 0
+                    ? String.format(Locale.US, "%dx%d saturates at %.0f fps offered", resolution[0], resolution[1], saturatedAt)
+                    : String.format(Locale.US, "%dx%d keeps up with every step", resolution[0], resolution[1]);
+            report.append(summary).append('\n');
+            Log.i(TAG, summary);
+        }
+
+        Log.i(TAG, report.toString());
+        Log.i(TAG, "[DECODE] " + helper.getDecodeQueueStats() + " | " + helper.getDecodeStats());
+        Log.i(TAG, "[POOL] " + helper.getBitmapPool().getStatsSummary());
+        assertTrue("No frame was delivered at any step", anyDelivered);
+    }
+
+    @Test
+    public void badAndTruncatedFramesAreSkipped() throws Exception {
+        for (SyntheticMjpegServer.BoundaryStyle style : SyntheticMjpegServer.BoundaryStyle.values()) {
+            server.setConfig(new SyntheticMjpegServer.Config(320, 240, QUALITY, 10, style, 0, 0));
+            startStream();
+
+            StepResult result = runStep(new SyntheticMjpegServer.Config(320, 240, QUALITY, 10, style, 5, 7));
+            Log.i(TAG, result.toRow() + String.format(Locale.US, "  (%d bad, %d truncated sent)",
+                    result.badSent, result.truncatedSent));
+
+            assertTrue(style + ": bad frames were sent", result.badSent > 0);
+            assertTrue(style + ": truncated frames were sent", result.truncatedSent > 0);
+            // A truncated part can take the following one down with it, but the stream must carry on.
+            long expected = result.goodSent - 2 * result.truncatedSent;
+            assertTrue(String.format(Locale.US, "%s: delivered %d of %d good frames", style, result.delivered, result.goodSent),
+                    result.delivered >= expected * 0.8);
+            assertTrue(style + ": stream stayed up", helper.hasActiveStreams());
+
+            helper.stopStream();
+        }
+    }
+
+    private void startStream() throws InterruptedException {
+        recorder.reset();
+        helper.startStreams(Collections.singletonList(server.getAddress()), recorder);
+        long deadline = SystemClock.elapsedRealtime() + 5000;
+        while (recorder.delivered.get() == 0 && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue("No frame from " + server.getAddress() + " within 5 s", recorder.delivered.get() > 0);
+    }
+
+    private StepResult runStep(SyntheticMjpegServer.Config config) throws InterruptedException {
+        server.setConfig(config);
+        Thread.sleep(WARM_UP_MS);
+
+        server.resetStats();
+        recorder.reset();
+        long start = SystemClock.elapsedRealtimeNanos();
+        Thread.sleep(STEP_MS);
+        long elapsedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        StepResult result = new StepResult();
+        result.config = config;
+        result.goodSent = server.getGoodFramesSent();
+        result.badSent = server.getBadFramesSent();
+        result.truncatedSent = server.getTruncatedFramesSent();
+        result.delivered = recorder.delivered.get();
+        result.sustainedFps = result.delivered / (elapsedNanos / 1e9f);
+        result.dropRate = result.goodSent == 0 ? 0 : Math.max(0, 1f - (float) result.delivered / result.goodSent);
+        long[] latencies = recorder.latencies();
+        result.p50Ms = percentile(latencies, 0.50) / 1e6f;
+        result.p99Ms = percentile(latencies, 0.99) / 1e6f;
+        result.frameKb = server.getAverageFrameBytes() / 1024f;
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static class StepResult {
+        SyntheticMjpegServer.Config config;
+        long goodSent;
+        long badSent;
+        long truncatedSent;
+        long delivered;
+        float sustainedFps;
+        float dropRate;
+        float p50Ms;
+        float p99Ms;
+        float frameKb;
+
+        String toRow() {
+            return String.format(Locale.US, "%4dx%-4d  %5.0f    %6.1f     %5.1f%%  %7.1f  %7.1f  %7.1f",
+                    config.width, config.height, config.fps, sustainedFps, dropRate * 100, p50Ms, p99Ms, frameKb);
+        }
+    }
+
+    // Counts deliveries on the main thread and keeps their arrival-to-delivery latency.
+    private static class StepRecorder implements ESP32CameraHelper.CameraStreamListener {
+        final AtomicLong delivered = new AtomicLong(0);
+        private final long[] latencies = new long[MAX_LATENCY_SAMPLES];
+        private int latencyCount = 0;
+
+        synchronized void reset() {
+            delivered.set(0);
+            latencyCount = 0;
+        }
+
+        synchronized long[] latencies() {
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        @Override
+        public void onFrameReceived(CameraFrame frame) {
+            long latency = System.nanoTime() - frame.getReceivedNanos();
+            frame.release();
+            delivered.incrementAndGet();
+            synchronized (this) {
+                if (latencyCount < latencies.length) latencies[latencyCount++] = latency;
+            }
+        }
+
+        @Override
+        public void onStreamError(String cameraId, String error) {
+            Log.e(TAG, cameraId + " stream error: " + error);
+        }
+
+        @Override
+        public void onStreamStarted(String cameraId) {
+            Log.d(TAG, cameraId + " stream started");
+        }
+
+        @Override
+        public void onStreamStopped(String cameraId) {
+            Log.d(TAG, cameraId + " stream stopped");
+        }
+
+        @Override
+        public void onReconnecting(String cameraId, int attempt, long delayMs, String reason) {
+            Log.w(TAG, String.format(Locale.US, "%s reconnecting (attempt %d): %s", cameraId, attempt, reason));
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.eintswavex.wastesorter;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loopback stand-in for the ESP32 CameraWebServer. Serves /stream as multipart MJPEG at a
+ * configurable size, quality and frame rate, and /capture as a single JPEG, all on one port so
+ * ESP32CameraHelper can connect to "127.0.0.1:port". setConfig() takes effect on the next frame
+ * of every open stream, so a driver can ramp the load without reconnecting.
+ */
+public class SyntheticMjpegServer implements Closeable {
+    private static final String TAG = "SyntheticMjpegServer";
+    private static final String ESP32_BOUNDARY = "123456789000000000000987654321";
+
+    public enum BoundaryStyle {
+        ESP32,              // Content-Length and X-Timestamp per part, like the real camera
+        NO_CONTENT_LENGTH,  // Parts only end at the next boundary
+        QUOTED              // Quoted boundary parameter with a short custom boundary
+    }
+
+    public static class Config {
+        final int width;
+        final int height;
+        final int quality;
+        final float fps;
+        final BoundaryStyle boundaryStyle;
+        final int badFrameEvery;        // 0 never, otherwise every Nth frame is undecodable
+        final int truncatedFrameEvery;  // 0 never, otherwise every Nth frame is cut short
+
+        public Config(int width, int height, int quality, float fps) {
+            this(width, height, quality, fps, BoundaryStyle.ESP32, 0, 0);
+        }
+
+        public Config(int width, int height, int quality, float fps, BoundaryStyle boundaryStyle,
+                      int badFrameEvery, int truncatedFrameEvery) {
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.fps = fps;
+            this.boundaryStyle = boundaryStyle;
+            this.badFrameEvery = badFrameEvery;
+            this.truncatedFrameEvery = truncatedFrameEvery;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%dx%d q%d %.0f fps %s%s%s", width, height, quality, fps, boundaryStyle,
+                    badFrameEvery > 0 ? " bad/" + badFrameEvery : "",
+                    truncatedFrameEvery > 0 ? " truncated/" + truncatedFrameEvery : "");
+        }
+    }
+
+    // Config plus the frames encoded for it, swapped in as one.
+    private static class FrameSet {
+        final Config config;
+        final List<byte[]> jpegs;
+
+        FrameSet(Config config, List<byte[]> jpegs) {
+            this.config = config;
+            this.jpegs = jpegs;
+        }
+    }
+
+    private static final int FRAME_VARIANTS = 8;
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private volatile FrameSet frameSet;
+    private volatile boolean running = true;
+
+    private final AtomicLong framesSent = new AtomicLong(0);
+    private final AtomicLong goodFramesSent = new AtomicLong(0);
+    private final AtomicLong badFramesSent = new AtomicLong(0);
+    private final AtomicLong truncatedFramesSent = new AtomicLong(0);
+    private final AtomicLong bytesSent = new AtomicLong(0);
+    private final AtomicLong connections = new AtomicLong(0);
+
+    public SyntheticMjpegServer(Config config) throws IOException {
+        setConfig(config);
+        serverSocket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(this::acceptLoop, "Synthetic-MJPEG-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public String getAddress() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Encodes the frames for the new config up front, so JPEG encoding does not compete with the
+     * app's decoding while frames are served.
+     */
+    public void setConfig(Config config) {
+        FrameSet current = frameSet;
+        if (current != null && current.config.width == config.width && current.config.height == config.height
+                && current.config.quality == config.quality) {
+            frameSet = new FrameSet(config, current.jpegs);
+            return;
+        }
+
+        List<byte[]> jpegs = new ArrayList<>();
+        Bitmap bitmap = Bitmap.createBitmap(config.width, config.height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        for (int i = 0; i < FRAME_VARIANTS; i++) {
+            // A moving block on a gradient, so frames differ and compress like a real scene.
+            canvas.drawColor(Color.rgb(40 + i * 20, 90, 160 - i * 15));
+            paint.setColor(Color.rgb(255 - i * 25, 200, i * 30));
+            float size = Math.min(config.width, config.height) / 3f;
+            float x = (config.width - size) * i / (FRAME_VARIANTS - 1f);
+            canvas.drawRect(x, config.height / 3f, x + size, config.height / 3f + size, paint);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, config.quality, out);
+            jpegs.add(out.toByteArray());
+        }
+        bitmap.recycle();
+        frameSet = new FrameSet(config, jpegs);
+    }
+
+    public Config getConfig() {
+        return frameSet.config;
+    }
+
+    public int getAverageFrameBytes() {
+        long total = 0;
+        List<byte[]> jpegs = frameSet.jpegs;
+        for (byte[] jpeg : jpegs) total += jpeg.length;
+        return (int) (total / jpegs.size());
+    }
+
+    public void resetStats() {
+        framesSent.set(0);
+        goodFramesSent.set(0);
+        badFramesSent.set(0);
+        truncatedFramesSent.set(0);
+        bytesSent.set(0);
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getGoodFramesSent() {
+        return goodFramesSent.get();
+    }
+
+    public long getBadFramesSent() {
+        return badFramesSent.get();
+    }
+
+    public long getTruncatedFramesSent() {
+        return truncatedFramesSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+                connections.incrementAndGet();
+                Thread client = new Thread(() -> serve(socket), "Synthetic-MJPEG-Client");
+                client.setDaemon(true);
+                client.start();
+            } catch (IOException e) {
+                if (running) Log.w(TAG, "Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket ignored = socket) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            String path;
+            // Keep-alive: answer requests on this socket until the client goes away.
+            while (running && (path = readRequestPath(in)) != null) {
+                if (path.startsWith("/stream")) {
+                    streamFrames(out);
+                    return;
+                } else if (path.startsWith("/capture")) {
+                    byte[] jpeg = frameSet.jpegs.get((int) (framesSent.getAndIncrement() % FRAME_VARIANTS));
+                    goodFramesSent.incrementAndGet();
+                    writeAscii(out, "HTTP/1.1 200 OK\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.length + "\r\n\r\n");
+                    out.write(jpeg);
+                    out.flush();
+                    bytesSent.addAndGet(jpeg.length);
+                } else if (path.startsWith("/control")) {
+                    writeAscii(out, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+                    out.flush();
+                } else {
+                    writeAscii(out, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n");
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private void streamFrames(OutputStream out) throws IOException {
+        BoundaryStyle style = frameSet.config.boundaryStyle;
+        String boundary = style == BoundaryStyle.QUOTED ? "frame" : ESP32_BOUNDARY;
+        String contentType = style == BoundaryStyle.QUOTED
+                ? "multipart/x-mixed-replace; boundary=\"" + boundary + "\""
+                : "multipart/x-mixed-replace;boundary=" + boundary;
+        writeAscii(out, "HTTP/1.1 200 OK\r\nContent-Type: " + contentType
+                + "\r\nAccess-Control-Allow-Origin: *\r\nX-Framerate: 60\r\n\r\n");
+        out.flush();
+
+        long nextFrameNanos = System.nanoTime();
+        long streamFrame = 0;
+        while (running) {
+            FrameSet current = frameSet;
+            Config config = current.config;
+            long frameNumber = framesSent.getAndIncrement();
+            byte[] jpeg = current.jpegs.get((int) (streamFrame % FRAME_VARIANTS));
+            streamFrame++;
+
+            int length = jpeg.length;
+            if (config.badFrameEvery > 0 && streamFrame % config.badFrameEvery == 0) {
+                // Right markers and size, scrambled entropy data: passes validation, fails to decode.
+                jpeg = Arrays.copyOf(jpeg, length);
+                for (int i = 2; i < length - 2; i++) jpeg[i] = (byte) (i * 31 + frameNumber);
+                badFramesSent.incrementAndGet();
+            } else if (config.truncatedFrameEvery > 0 && streamFrame % config.truncatedFrameEvery == 0) {
+                // Announces the full size but stops halfway, like a camera that lost a buffer.
+                length = jpeg.length / 2;
+                truncatedFramesSent.incrementAndGet();
+            } else {
+                goodFramesSent.incrementAndGet();
+            }
+
+            StringBuilder header = new StringBuilder("\r\n--").append(boundary).append("\r\nContent-Type: image/jpeg\r\n");
+            if (config.boundaryStyle == BoundaryStyle.ESP32) {
+                header.append("Content-Length: ").append(jpeg.length).append("\r\n");
+                long micros = System.nanoTime() / 1000;
+                header.append(String.format(Locale.US, "X-Timestamp: %d.%06d\r\n", micros / 1_000_000, micros % 1_000_000));
+            }
+            header.append("\r\n");
+            writeAscii(out, header.toString());
+            out.write(jpeg, 0, length);
+            out.flush();
+            bytesSent.addAndGet(header.length() + length);
+
+            nextFrameNanos += (long) (1e9 / Math.max(0.1f, config.fps));
+            long waitNanos = nextFrameNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            } else if (waitNanos < -1_000_000_000L) {
+                nextFrameNanos = System.nanoTime();  // Blocked by a slow reader, do not burst to catch up
+            }
+        }
+    }
+
+    // Returns the path of the next request, or null when the connection closed.
+    private static String readRequestPath(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        String requestLine = null;
+        int previous = -1;
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n' && previous == '\r') {
+                String text = line.toString();
+                line.setLength(0);
+                if (requestLine == null) {
+                    requestLine = text;
+                } else if (text.isEmpty()) {
+                    String[] parts = requestLine.split(" ");
+                    return parts.length > 1 ? parts[1] : "/";
+                }
+            } else if (b != '\r') {
+                line.append((char) b);
+            }
+            previous = b;
+        }
+        return null;
+    }
+
+    private static void writeAscii(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket socket : clients) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        try {
+            acceptThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.eintswavex.wastesorter;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Size-keyed pool of mutable bitmaps for BitmapFactory.Options.inBitmap reuse. Bitmaps handed
+ * back with release() are kept for the next acquire() of the same size until the pooled bytes
+ * exceed the budget, after which the extra bitmaps are recycled.
+ */
+public class BitmapPool {
+    private static final long DEFAULT_MAX_POOLED_BYTES = 24L * 1024 * 1024; // 24MB
+
+    // Only a handful of sizes are ever live (preview + model input), so a list beats a map here.
+    private final List<Bucket> buckets = new ArrayList<>();
+    private long maxPooledBytes;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long pooledBytes = 0;
+    private long residentBytes = 0;   // Every bitmap created by the pool and not yet recycled
+    private long peakResidentBytes = 0;
+
+    private static class Bucket {
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+        final ArrayDeque<Bitmap> bitmaps = new ArrayDeque<>();
+
+        Bucket(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+    }
+
+    public BitmapPool() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    public BitmapPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    public synchronized void setMaxPooledBytes(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        trimTo(maxPooledBytes);
+    }
+
+    /**
+     * Returns a pooled bitmap of exactly this size and config, creating one on a miss.
+     */
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bucket bucket = findBucket(width, height, config, false);
+        if (bucket != null) {
+            while (!bucket.bitmaps.isEmpty()) {
+                Bitmap bitmap = bucket.bitmaps.pollLast();
+                pooledBytes -= bitmap.getAllocationByteCount();
+                if (!bitmap.isRecycled()) {
+                    hits++;
+                    return bitmap;
+                }
+                residentBytes -= bitmap.getAllocationByteCount();
+            }
+        }
+
+        misses++;
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        residentBytes += bitmap.getAllocationByteCount();
+        if (residentBytes > peakResidentBytes) peakResidentBytes = residentBytes;
+        return bitmap;
+    }
+
+    /**
+     * Hands a bitmap back for reuse. Bitmaps that are recycled or immutable are ignored.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxPooledBytes) {
+            evict(bitmap);
+            return;
+        }
+
+        Bucket bucket = findBucket(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), true);
+        for (Bitmap pooled : bucket.bitmaps) {
+            if (pooled == bitmap) return; // Double release
+        }
+        bucket.bitmaps.addLast(bitmap);
+        pooledBytes += bytes;
+        trimTo(maxPooledBytes);
+    }
+
+    /**
+     * Tracks a bitmap that BitmapFactory allocated itself (inBitmap was rejected) so that it
+     * counts towards the resident bytes once it is released into the pool.
+     */
+    public synchronized void track(Bitmap bitmap) {
+        if (bitmap == null) return;
+        misses++;
+        residentBytes += bitmap.getAllocationByteCount();
+        if (residentBytes > peakResidentBytes) peakResidentBytes = residentBytes;
+    }
+
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    private void trimTo(long maxBytes) {
+        while (pooledBytes > maxBytes) {
+            Bucket largest = null;
+            for (Bucket bucket : buckets) {
+                if (!bucket.bitmaps.isEmpty() &&
+                        (largest == null || bucket.bitmaps.size() > largest.bitmaps.size())) {
+                    largest = bucket;
+                }
+            }
+            if (largest == null) {
+                pooledBytes = 0;
+                return;
+            }
+            Bitmap bitmap = largest.bitmaps.pollFirst();
+            pooledBytes -= bitmap.getAllocationByteCount();
+            evict(bitmap);
+        }
+    }
+
+    private void evict(Bitmap bitmap) {
+        evictions++;
+        residentBytes -= bitmap.getAllocationByteCount();
+        bitmap.recycle();
+    }
+
+    private Bucket findBucket(int width, int height, Bitmap.Config config, boolean create) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.width == width && bucket.height == height && bucket.config == config) {
+                return bucket;
+            }
+        }
+        if (!create) return null;
+
+        Bucket bucket = new Bucket(width, height, config);
+        buckets.add(bucket);
+        return bucket;
+    }
+
+    public synchronized float getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : hits * 100f / total;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized String getStatsSummary() {
+        long total = hits + misses;
+        return String.format(Locale.US, "hit rate %.1f%% (%d/%d), pooled %d KB, resident %d KB (peak %d KB), evicted %d",
+                total == 0 ? 0 : hits * 100f / total, hits, total,
+                pooledBytes / 1024, residentBytes / 1024, peakResidentBytes / 1024, evictions);
+    }
+}
@@ -0,0 +1,83 @@
+package com.eintswavex.wastesorter;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A decoded camera frame together with the camera it came from, its per-camera stream sequence
+ * number and timing. The preview bitmap is null when preview decoding is off, the inference
+ * bitmap (decoded close to the model input size) is null when no model size is set. Both come
+ * from a BitmapPool and are reference counted: whoever receives a frame owns one reference and
+ * must release() it once neither bitmap is drawn or read any more.
+ */
+public class CameraFrame {
+    private final String cameraId;
+    private final Bitmap bitmap;
+    private final Bitmap inferenceBitmap;
+    private final long sequence;
+    private final long timestampMillis;  // Wall-clock time the JPEG finished arriving
+    private final long receivedNanos;    // System.nanoTime() when the JPEG finished arriving
+    private final long decodeTimeNanos;
+    private final BitmapPool pool;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    public CameraFrame(String cameraId, Bitmap bitmap, Bitmap inferenceBitmap, BitmapPool pool, long sequence,
+                       long timestampMillis, long receivedNanos, long decodeTimeNanos) {
+        this.cameraId = cameraId;
+        this.bitmap = bitmap;
+        this.inferenceBitmap = inferenceBitmap;
+        this.pool = pool;
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.receivedNanos = receivedNanos;
+        this.decodeTimeNanos = decodeTimeNanos;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public Bitmap getInferenceBitmap() {
+        return inferenceBitmap;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public float getDecodeTimeMs() {
+        return decodeTimeNanos / 1e6f;
+    }
+
+    public float getAgeMs() {
+        return (System.nanoTime() - receivedNanos) / 1e6f;
+    }
+
+    public CameraFrame retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0 && pool != null) {
+            pool.release(bitmap);
+            pool.release(inferenceBitmap);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("CameraFrame " + sequence + " released too many times");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.eintswavex.wastesorter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the cheapest model first and hands a frame to the next, larger model only while the top
+ * probability stays below the threshold. The last stage always decides. Keeps per-stage counts
+ * and latency so the escalation rate and the average cost per frame can be compared with
+ * running the largest model alone.
+ */
+public class Cascade<I> {
+    public interface Stage<I> {
+        boolean classify(I input, InferenceEngine.Result result);
+    }
+
+    private static class Entry<I> {
+        final String name;
+        final Stage<I> stage;
+        long runs;
+        long decided;
+        long nanos;
+
+        Entry(String name, Stage<I> stage) {
+            this.name = name;
+            this.stage = stage;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Entry<I>> entries = new ArrayList<>();
+    private final InferenceEngine.Result scratch = new InferenceEngine.Result();
+    private volatile float threshold;
+    private long frames;
+    private long failed;
+    private long frameNanos;
+
+    public Cascade(float threshold) {
+        this.threshold = threshold;
+    }
+
+    // Stages run in the order they are added, cheapest first.
+    public Cascade<I> add(String name, Stage<I> stage) {
+        entries.add(new Entry<>(name, stage));
+        return this;
+    }
+
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    public int getStageCount() {
+        return entries.size();
+    }
+
+    public String getStageName(int index) {
+        return entries.get(index).name;
+    }
+
+    /**
+     * Classifies input into result and returns the index of the stage that decided, or -1 when
+     * the first stage failed. A later stage that fails leaves the previous answer standing.
+     * result.inferenceTimeNanos is the time of every stage that ran.
+     */
+    public int classify(I input, InferenceEngine.Result result) {
+        lock.lock();
+        try {
+            float limit = threshold;
+            long total = 0;
+            int decidedBy = -1;
+            for (int i = 0; i < entries.size(); i++) {
+                Entry<I> entry = entries.get(i);
+                InferenceEngine.Result target = i == 0 ? result : scratch;
+                long start = System.nanoTime();
+                boolean success = entry.stage.classify(input, target);
+                long nanos = System.nanoTime() - start;
+                total += nanos;
+                entry.runs++;
+                entry.nanos += nanos;
+
+                if (!success) break;
+                if (target != result) result.copyFrom(target);
+                decidedBy = i;
+                if (result.confidence >= limit) break;
+            }
+
+            frames++;
+            frameNanos += total;
+            if (decidedBy < 0) {
+                failed++;
+                return -1;
+            }
+            entries.get(decidedBy).decided++;
+            result.inferenceTimeNanos = total;
+            return decidedBy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resetStats() {
+        lock.lock();
+        try {
+            for (Entry<I> entry : entries) {
+                entry.runs = 0;
+                entry.decided = 0;
+                entry.nanos = 0;
+            }
+            frames = 0;
+            failed = 0;
+            frameNanos = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Share of frames that needed more than the first stage, 0-1.
+    public float getEscalationRate() {
+        lock.lock();
+        try {
+            return frames == 0 || entries.size() < 2 ? 0f : (float) entries.get(1).runs / frames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float getMeanFrameMs() {
+        lock.lock();
+        try {
+            return frames == 0 ? 0f : frameNanos / 1e6f / frames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            StringBuilder summary = new StringBuilder(String.format(Locale.US,
+                    "%d frames, threshold %.0f%%, %.1f%% escalated, %.1f ms per frame",
+                    frames, threshold * 100, getEscalationRate() * 100, getMeanFrameMs()));
+            if (failed > 0) summary.append(", ").append(failed).append(" failed");
+            for (Entry<I> entry : entries) {
+                summary.append(String.format(Locale.US, "\n    %s: ran %d, decided %d (%.1f%%), %.1f ms each",
+                        entry.name, entry.runs, entry.decided, frames == 0 ? 0f : entry.decided * 100f / frames,
+                        entry.runs == 0 ? 0f : entry.nanos / 1e6f / entry.runs));
+            }
+            return summary.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
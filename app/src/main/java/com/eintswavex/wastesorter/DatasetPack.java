@@ -0,0 +1,281 @@
+package com.eintswavex.wastesorter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A dataset converted ahead of time into the input tensors of one model size, dtype and input
+ * quantization, in a single file that is memory-mapped for reading. getTensor() returns a
+ * slice of the mapping, so running an image needs no decode, no resize and no copy on the
+ * Java side.
+ *
+ * Layout, header in little endian:
+ *   magic, version, width, height, format, scale (float), zero point, tensor bytes, stride,
+ *   count, little-endian flag (byte), source stamp (long), data offset (long), class names,
+ *   image paths, one label byte per image, then the tensors from the page-aligned data
+ *   offset, each stride bytes apart.
+ *
+ * The page-aligned data offset and 64-byte stride keep every tensor at the alignment TFLite
+ * asks of a direct buffer before it will use it in place of its own input tensor.
+ *
+ * Tensors keep the byte order of the device that wrote them, so a pack from a big-endian writer
+ * is rejected for FLOAT32 on a little-endian reader and the other way round.
+ */
+public class DatasetPack {
+    private static final int MAGIC = 0x4B505357;  // "WSPK"
+    private static final int VERSION = 2;
+    private static final int DATA_ALIGNMENT = 4096;
+    private static final int STRIDE_ALIGNMENT = 64;
+
+    public interface TensorSource {
+        /**
+         * Writes image index into out as a converter of the pack's size and format would.
+         */
+        void fill(int index, ByteBuffer out) throws IOException;
+    }
+
+    private final MappedByteBuffer data;
+    private final int width;
+    private final int height;
+    private final TensorConverter.Format format;
+    private final float scale;
+    private final int zeroPoint;
+    private final int tensorBytes;
+    private final int stride;
+    private final long sourceStamp;
+    private final long dataOffset;
+    private final List<String> classNames;
+    private final List<String> paths;
+    private final byte[] labels;
+    private final Map<String, Integer> indexByPath = new HashMap<>();
+    private final long fileBytes;
+
+    private DatasetPack(MappedByteBuffer data, long fileBytes) throws IOException {
+        this.data = data;
+        this.fileBytes = fileBytes;
+        ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (header.getInt() != MAGIC) throw new IOException("Not a dataset pack");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported pack version " + version);
+            width = header.getInt();
+            height = header.getInt();
+            int formatIndex = header.getInt();
+            if (formatIndex < 0 || formatIndex >= TensorConverter.Format.values().length) {
+                throw new IOException("Unknown tensor format " + formatIndex);
+            }
+            format = TensorConverter.Format.values()[formatIndex];
+            scale = header.getFloat();
+            zeroPoint = header.getInt();
+            tensorBytes = header.getInt();
+            stride = header.getInt();
+            int count = header.getInt();
+            boolean littleEndian = header.get() != 0;
+            sourceStamp = header.getLong();
+            dataOffset = header.getLong();
+
+            if (format == TensorConverter.Format.FLOAT32 && littleEndian != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)) {
+                throw new IOException("Pack was written with another byte order");
+            }
+            if (tensorBytes != width * height * 3 * (format == TensorConverter.Format.FLOAT32 ? 4 : 1)
+                    || stride < tensorBytes || count < 0) {
+                throw new IOException("Inconsistent pack header");
+            }
+            if (dataOffset + (long) stride * count > fileBytes) throw new IOException("Pack is truncated");
+
+            classNames = Collections.unmodifiableList(readStrings(header, header.getInt()));
+            paths = Collections.unmodifiableList(readStrings(header, count));
+            labels = new byte[count];
+            header.get(labels);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and friends from a damaged header
+            throw new IOException("Damaged pack header: " + e, e);
+        }
+        for (int i = 0; i < paths.size(); i++) indexByPath.put(paths.get(i), i);
+    }
+
+    /**
+     * Maps file read-only. Throws IOException when it is not a complete pack of this version.
+     */
+    public static DatasetPack open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Pack larger than 2 GB");
+            // The mapping stays valid after the channel is closed.
+            return new DatasetPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), size);
+        }
+    }
+
+    /**
+     * Writes a pack of paths to file, through a temporary file that replaces it only once every
+     * tensor is written. labels index classNames, one per path. scale and zeroPoint are the input
+     * quantization the tensors were converted with.
+     */
+    public static void write(File file, int width, int height, TensorConverter.Format format,
+                             float scale, int zeroPoint, long sourceStamp, List<String> classNames,
+                             List<String> paths, byte[] labels, TensorSource source) throws IOException {
+        if (labels.length != paths.size()) throw new IllegalArgumentException("One label per path needed");
+        int tensorBytes = width * height * 3 * (format == TensorConverter.Format.FLOAT32 ? 4 : 1);
+        int stride = align(tensorBytes, STRIDE_ALIGNMENT);
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes(classNames, paths)).order(ByteOrder.LITTLE_ENDIAN);
+        long dataOffset = align(header.capacity(), DATA_ALIGNMENT);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(format.ordinal())
+                .putFloat(scale).putInt(zeroPoint).putInt(tensorBytes).putInt(stride).putInt(paths.size())
+                .put((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0))
+                .putLong(sourceStamp).putLong(dataOffset);
+        header.putInt(classNames.size());
+        writeStrings(header, classNames);
+        writeStrings(header, paths);
+        header.put(labels);
+        header.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            raf.setLength(dataOffset + (long) stride * paths.size());  // Padding reads as zeros
+            while (header.hasRemaining()) channel.write(header);
+
+            ByteBuffer tensor = ByteBuffer.allocateDirect(tensorBytes).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < paths.size(); i++) {
+                tensor.clear();
+                source.fill(i, tensor);
+                tensor.clear();
+                long position = dataOffset + (long) i * stride;
+                while (tensor.hasRemaining()) position += channel.write(tensor, position);
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static int headerBytes(List<String> classNames, List<String> paths) {
+        int bytes = 4 * 10 + 1 + 8 + 8 + 4 + paths.size();
+        for (String name : classNames) bytes += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        for (String path : paths) bytes += 2 + path.getBytes(StandardCharsets.UTF_8).length;
+        return bytes;
+    }
+
+    private static void writeStrings(ByteBuffer buffer, List<String> strings) {
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) throw new IllegalArgumentException("String too long: " + string);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer, int count) {
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * True when the tensors are what converter writes: same size and dtype, and for quantized
+     * inputs the same scale and zero point, which the lookup table depends on.
+     */
+    public boolean matches(TensorConverter converter) {
+        if (width != converter.getWidth() || height != converter.getHeight() || format != converter.getFormat()) return false;
+        return format == TensorConverter.Format.FLOAT32
+                || (Float.compare(scale, converter.getScale()) == 0 && zeroPoint == converter.getZeroPoint());
+    }
+
+    /**
+     * Image index as a read-only, native-order buffer of exactly the tensor size, backed by the
+     * mapping.
+     */
+    public ByteBuffer getTensor(int index) {
+        if (index < 0 || index >= paths.size()) throw new IndexOutOfBoundsException("Image " + index);
+        ByteBuffer view = data.duplicate();
+        int position = (int) (dataOffset + (long) index * stride);
+        view.position(position).limit(position + tensorBytes);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    // -1 when path is not in the pack.
+    public int indexOf(String path) {
+        Integer index = indexByPath.get(path);
+        return index != null ? index : -1;
+    }
+
+    public int getCount() {
+        return paths.size();
+    }
+
+    public String getPath(int index) {
+        return paths.get(index);
+    }
+
+    public int getLabel(int index) {
+        return labels[index];
+    }
+
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public TensorConverter.Format getFormat() {
+        return format;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    public int getTensorBytes() {
+        return tensorBytes;
+    }
+
+    public long getSourceStamp() {
+        return sourceStamp;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d images, %dx%d %s, %.1f MB", paths.size(), width, height, format, fileBytes / 1048576f);
+    }
+}
@@ -0,0 +1,227 @@
+package com.eintswavex.wastesorter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds and opens the DatasetPack of the whole bundled dataset for one model input, on the
+ * first run with that input size, dtype and quantization. Packs live in files/packs and are
+ * rebuilt after an app update, the only way the assets can change.
+ *
+ * Building decodes and converts every JPEG, which is timed as the JPEG pass; opening the pack
+ * and touching every tensor page is timed as the mmap pass, and the report compares the two.
+ * Runs on its own thread, listener calls arrive on the main thread.
+ */
+public class DatasetPacker {
+    private static final String TAG = "DatasetPacker";
+    private static final String PREFS_NAME = "DatasetPacker";
+    private static final String KEY_JPEG_FIRST_PREFIX = "jpeg_first_ms_";
+    private static final String KEY_JPEG_PASS_PREFIX = "jpeg_pass_ms_";
+    private static final String PACK_DIR = "packs";
+    private static final String DATASET_DIR = "dataset";
+
+    // Folder order is the models' label order: METAL, PAPER, PLASTIC.
+    private static final List<String> CLASSES = Arrays.asList("metal", "paper", "plastic");
+    private static final int PAGE_BYTES = 4096;
+
+    public interface Listener {
+        void onProgress(int done, int total);
+        void onReady(DatasetPack pack, String report);
+        void onError(String error);
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile int generation = 0;  // A newer prepare() cancels the running one
+    private volatile long touchChecksum;   // Keeps the mmap pass from being optimized away
+
+    public DatasetPacker(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Opens the pack for converter's input size, dtype and quantization, building it first
+     * when it is missing or stale. converter is used on the packer thread only.
+     */
+    public void prepare(TensorConverter converter, Listener listener) {
+        int run = ++generation;
+        executor.execute(() -> {
+            try {
+                File file = packFile(converter);
+                long stamp = sourceStamp();
+                DatasetPack pack = openIfCurrent(file, converter, stamp);
+                if (pack == null) {
+                    build(file, converter, stamp, run, listener);
+                    if (run != generation) return;
+                }
+
+                long openStart = System.nanoTime();
+                pack = DatasetPack.open(file);
+                long openNanos = System.nanoTime() - openStart;
+                long passStart = System.nanoTime();
+                touchChecksum = touchTensors(pack);
+                long passNanos = System.nanoTime() - passStart;
+
+                SharedPreferences prefs = prefs(context);
+                String name = file.getName();
+                String report = String.format(Locale.US, "JPEG: first image %d ms, full pass %.1f s | mmap: open %.2f ms, full pass %.1f ms",
+                        prefs.getLong(KEY_JPEG_FIRST_PREFIX + name, 0), prefs.getLong(KEY_JPEG_PASS_PREFIX + name, 0) / 1000f,
+                        openNanos / 1e6f, passNanos / 1e6f);
+                Log.d(TAG, "[PACK] " + pack + ", " + report);
+
+                DatasetPack ready = pack;
+                if (run == generation) mainHandler.post(() -> listener.onReady(ready, report));
+            } catch (IOException e) {
+                if (run != generation) return;
+                Log.e(TAG, "[PACK] Dataset pack not available", e);
+                mainHandler.post(() -> listener.onError(e.getMessage()));
+            }
+        });
+    }
+
+    public void cancel() {
+        generation++;
+    }
+
+    public void shutdown() {
+        generation++;
+        executor.shutdownNow();
+    }
+
+    private DatasetPack openIfCurrent(File file, TensorConverter converter, long stamp) {
+        if (!file.exists()) return null;
+        try {
+            DatasetPack pack = DatasetPack.open(file);
+            if (pack.getSourceStamp() == stamp && pack.matches(converter)) {
+                return pack;
+            }
+            Log.d(TAG, "[PACK] " + file.getName() + " is out of date, rebuilding");
+        } catch (IOException e) {
+            Log.w(TAG, "[PACK] " + file.getName() + " unreadable, rebuilding: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void build(File file, TensorConverter converter, long stamp, int run, Listener listener) throws IOException {
+        List<String> paths = new ArrayList<>();
+        List<Byte> labelList = new ArrayList<>();
+        for (int label = 0; label < CLASSES.size(); label++) {
+            String folder = DATASET_DIR + "/" + CLASSES.get(label);
+            String[] images = context.getAssets().list(folder);
+            if (images == null) continue;
+            for (String image : images) {
+                paths.add(folder + "/" + image);
+                labelList.add((byte) label);
+            }
+        }
+        if (paths.isEmpty()) throw new IOException("No images in assets/" + DATASET_DIR);
+        byte[] labels = new byte[labelList.size()];
+        for (int i = 0; i < labels.length; i++) labels[i] = labelList.get(i);
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        Log.d(TAG, String.format(Locale.US, "[PACK] Building %s from %d images", file.getName(), paths.size()));
+
+        long[] jpegNanos = new long[2];  // First image, all images
+        int[][] pixels = {new int[0]};
+        DatasetPack.write(file, converter.getWidth(), converter.getHeight(), converter.getFormat(),
+                converter.getScale(), converter.getZeroPoint(), stamp, CLASSES, paths, labels, (index, out) -> {
+                    if (run != generation) throw new IOException("Cancelled");
+                    long start = System.nanoTime();
+                    Bitmap bitmap = decode(paths.get(index), converter);
+                    if (bitmap == null) throw new IOException("Cannot decode " + paths.get(index));
+                    int width = bitmap.getWidth();
+                    int height = bitmap.getHeight();
+                    if (pixels[0].length < width * height) pixels[0] = new int[width * height];
+                    bitmap.getPixels(pixels[0], 0, width, 0, 0, width, height);
+                    converter.convert(pixels[0], width, height, out);
+                    bitmap.recycle();
+
+                    long nanos = System.nanoTime() - start;
+                    if (index == 0) jpegNanos[0] = nanos;
+                    jpegNanos[1] += nanos;
+                    int done = index + 1;
+                    mainHandler.post(() -> listener.onProgress(done, paths.size()));
+                });
+
+        String name = file.getName();
+        prefs(context).edit()
+                .putLong(KEY_JPEG_FIRST_PREFIX + name, jpegNanos[0] / 1_000_000)
+                .putLong(KEY_JPEG_PASS_PREFIX + name, jpegNanos[1] / 1_000_000)
+                .apply();
+    }
+
+    private Bitmap decode(String path, TensorConverter converter) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = context.getAssets().open(path)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            Log.w(TAG, "[PACK] Cannot decode " + path + ": " + e.getMessage());
+            return null;
+        }
+
+        options.inSampleSize = options.outWidth > 0 ? converter.sampleSizeFor(options.outWidth, options.outHeight) : 1;
+        options.inJustDecodeBounds = false;
+        try (InputStream inputStream = context.getAssets().open(path)) {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            Log.w(TAG, "[PACK] Cannot decode " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Reads one byte per page of every tensor, which faults the whole mapping in.
+    private static long touchTensors(DatasetPack pack) {
+        long sum = 0;
+        for (int i = 0; i < pack.getCount(); i++) {
+            ByteBuffer tensor = pack.getTensor(i);
+            for (int position = 0; position < tensor.capacity(); position += PAGE_BYTES) {
+                sum += tensor.get(position);
+            }
+        }
+        return sum;
+    }
+
+    // Quantized inputs also name their scale (as float bits) and zero point,
+    // e.g. dataset-96x96-int8-q3b808081-128.pack
+    private File packFile(TensorConverter converter) {
+        TensorConverter.Format format = converter.getFormat();
+        String quantization = format == TensorConverter.Format.FLOAT32 ? ""
+                : String.format(Locale.US, "-q%08x%+d", Float.floatToIntBits(converter.getScale()),
+                        converter.getZeroPoint());
+        String name = String.format(Locale.US, "dataset-%dx%d-%s%s.pack", converter.getWidth(),
+                converter.getHeight(), format.name().toLowerCase(Locale.US), quantization);
+        return new File(new File(context.getFilesDir(), PACK_DIR), name);
+    }
+
+    private long sourceStamp() {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,182 @@
+package com.eintswavex.wastesorter;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sets the camera's frame size and JPEG quality through the CameraWebServer /control API on
+ * port 80, so the ESP32 sends frames no larger than the loaded model needs. The frame size is
+ * the smallest one that covers the model input, unless a manual override is set.
+ */
+public class ESP32CameraControl {
+    private static final String TAG = "ESP32CameraControl";
+
+    // esp32-camera framesize_t values, in the order the firmware numbers them.
+    public enum FrameSize {
+        FRAMESIZE_96X96(0, 96, 96, "96X96"),
+        FRAMESIZE_QQVGA(1, 160, 120, "QQVGA"),
+        FRAMESIZE_QCIF(2, 176, 144, "QCIF"),
+        FRAMESIZE_HQVGA(3, 240, 176, "HQVGA"),
+        FRAMESIZE_240X240(4, 240, 240, "240X240"),
+        FRAMESIZE_QVGA(5, 320, 240, "QVGA"),
+        FRAMESIZE_CIF(6, 400, 296, "CIF"),
+        FRAMESIZE_HVGA(7, 480, 320, "HVGA"),
+        FRAMESIZE_VGA(8, 640, 480, "VGA"),
+        FRAMESIZE_SVGA(9, 800, 600, "SVGA"),
+        FRAMESIZE_XGA(10, 1024, 768, "XGA"),
+        FRAMESIZE_HD(11, 1280, 720, "HD"),
+        FRAMESIZE_SXGA(12, 1280, 1024, "SXGA"),
+        FRAMESIZE_UXGA(13, 1600, 1200, "UXGA");
+
+        public final int value;
+        public final int width;
+        public final int height;
+        public final String label;
+
+        FrameSize(int value, int width, int height, String label) {
+            this.value = value;
+            this.width = width;
+            this.height = height;
+            this.label = label;
+        }
+
+        public boolean covers(int targetWidth, int targetHeight) {
+            return width >= targetWidth && height >= targetHeight;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s (%dx%d)", label, width, height);
+        }
+    }
+
+    // 10-63 on the ESP32, lower is better. Small frames are cheap, so they can afford more quality.
+    public static final int MIN_QUALITY = 10;
+    public static final int MAX_QUALITY = 63;
+    public static final int SMALL_FRAME_QUALITY = 10;
+    public static final int DEFAULT_QUALITY = 12;
+
+    private final OkHttpClient okHttpClient;
+
+    private volatile FrameSize frameSizeOverride = null;  // null picks from the model size
+    private volatile int qualityOverride = 0;             // 0 picks from the frame size
+
+    // What each camera was last set to, so reloading the same model does not resend commands.
+    private final Map<String, String> appliedSettings = new HashMap<>();
+
+    public ESP32CameraControl(OkHttpClient okHttpClient) {
+        this.okHttpClient = okHttpClient;
+    }
+
+    /**
+     * The smallest frame size (by pixel count) at least as large as the model input in both
+     * dimensions, or the largest one when nothing covers it.
+     */
+    public static FrameSize smallestCovering(int targetWidth, int targetHeight) {
+        FrameSize best = null;
+        for (FrameSize size : FrameSize.values()) {
+            if (!size.covers(targetWidth, targetHeight)) continue;
+            if (best == null || size.width * size.height < best.width * best.height) {
+                best = size;
+            }
+        }
+        return best != null ? best : FrameSize.FRAMESIZE_UXGA;
+    }
+
+    public static int qualityFor(FrameSize frameSize) {
+        return frameSize.width * frameSize.height <= FrameSize.FRAMESIZE_QVGA.width * FrameSize.FRAMESIZE_QVGA.height
+                ? SMALL_FRAME_QUALITY : DEFAULT_QUALITY;
+    }
+
+    public FrameSize chooseFrameSize(int modelWidth, int modelHeight) {
+        FrameSize override = frameSizeOverride;
+        return override != null ? override : smallestCovering(modelWidth, modelHeight);
+    }
+
+    public int chooseQuality(FrameSize frameSize) {
+        int override = qualityOverride;
+        return override > 0 ? override : qualityFor(frameSize);
+    }
+
+    /**
+     * Pins the frame size regardless of the model, or pass null to pick it from the model again.
+     */
+    public void setFrameSizeOverride(FrameSize frameSize) {
+        frameSizeOverride = frameSize;
+        forgetAppliedSettings();
+    }
+
+    public FrameSize getFrameSizeOverride() {
+        return frameSizeOverride;
+    }
+
+    /**
+     * Pins the JPEG quality (10-63, lower is better), or pass 0 to pick it from the frame size.
+     */
+    public void setQualityOverride(int quality) {
+        qualityOverride = quality <= 0 ? 0 : Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, quality));
+        forgetAppliedSettings();
+    }
+
+    public int getQualityOverride() {
+        return qualityOverride;
+    }
+
+    public void forgetAppliedSettings() {
+        synchronized (appliedSettings) {
+            appliedSettings.clear();
+        }
+    }
+
+    /**
+     * Sends framesize and quality for this model to the camera. Blocks on the network, so call
+     * it off the main thread. Returns the frame size now set, or null when it was already set.
+     *
+     * @param host camera address, optionally with a port (the control API defaults to port 80)
+     */
+    public FrameSize applyForModel(String host, int modelWidth, int modelHeight) throws IOException {
+        FrameSize frameSize = chooseFrameSize(modelWidth, modelHeight);
+        int quality = chooseQuality(frameSize);
+        String settings = frameSize.value + "/" + quality;
+
+        synchronized (appliedSettings) {
+            if (settings.equals(appliedSettings.get(host))) return null;
+        }
+
+        setVariable(host, "framesize", frameSize.value);
+        setVariable(host, "quality", quality);
+
+        synchronized (appliedSettings) {
+            appliedSettings.put(host, settings);
+        }
+        Log.d(TAG, String.format(Locale.US, "[CONTROL] %s set to %s, quality %d for a %dx%d model",
+                host, frameSize, quality, modelWidth, modelHeight));
+        return frameSize;
+    }
+
+    public void setVariable(String host, String variable, int value) throws IOException {
+        Request request = new Request.Builder()
+                .url(controlUrl(host, variable, value))
+                .header("User-Agent", "MJPEG-Client")
+                .build();
+
+        try (Response response = okHttpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException(String.format(Locale.US, "[ERROR] /control %s=%d failed: HTTP %d",
+                        variable, value, response.code()));
+            }
+        }
+    }
+
+    public static String controlUrl(String host, String variable, int value) {
+        return String.format(Locale.US, "http://%s/control?var=%s&val=%d", host, variable, value);
+    }
+}
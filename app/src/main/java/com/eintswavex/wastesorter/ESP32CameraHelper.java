@@ -1,54 +1,102 @@
 package com.eintswavex.wastesorter;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
+/**
+ * Runs one ESP32CameraStream per camera. The streams share the decode threads, the HTTP client,
+ * the stall watchdog and the bitmap pool; everything else (parser, decode queue, stats) is per
+ * camera. Cameras are named cam1, cam2, ... in the order their addresses were given.
+ *
+ * Addresses are IPs, or host:port for a stream server on another port than 81 (e.g. a local test
+ * server); /control requests always go to port 80 of the host. An address of the form
+ * "replay:name[@speed]" plays back a recording made with setRecordingDirectory() instead of
+ * connecting to a camera, e.g. "replay:cam1_20260101_120000_000@4x" or "@max". Relative names
+ * are looked up in the recording directory.
+ */
 public class ESP32CameraHelper {
     private static final String TAG = "ESP32CameraHelper";
     private static ESP32CameraHelper instance;
 
+    public static final String DEFAULT_CAMERA_ID = "cam1";
+    public static final String REPLAY_PREFIX = "replay:";
+
     private final ExecutorService executor;
+    private final ExecutorService controlExecutor;  // Blocking /control requests, apart from the decoders
     private final Handler mainHandler;
-    private boolean isStreaming = false;
-    private String currentIpAddress = "";
-    private CameraStreamListener streamListener;
     private final OkHttpClient okHttpClient;
-    private Thread streamThread;
+    private final ScheduledExecutorService watchdog;
+    private final ESP32CameraControl cameraControl;
+    private final List<ESP32CameraStream> streams = new CopyOnWriteArrayList<>();
+    private List<String> currentIpAddresses = Collections.emptyList();
+
+    private final BitmapPool bitmapPool = new BitmapPool();
+
+    // Settings applied to every stream, including ones started later.
+    private volatile boolean previewEnabled = true;
+    private volatile int inferenceWidth = 0;
+    private volatile int inferenceHeight = 0;
+    private volatile int maxPendingFrames = 1;
+    private volatile long stallTimeoutMs = 0;   // 0 keeps the stream default
+    private volatile long snapshotIntervalMs = 0;
+    private volatile File recordingDirectory;
+    private volatile boolean recording = false;
 
-    private static final int STATE_BOUNDARY = 0;
-    private static final int STATE_HEADERS = 1;
-    private static final int STATE_JPEG_DATA = 2;
+    // From this inference interval on, polling /capture is cheaper than decoding a stream that is mostly dropped.
+    public static final long SNAPSHOT_MODE_MIN_INTERVAL_MS = 1000;
+
+    // Leave one core for the stream threads and inference.
+    private static final int DECODE_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
 
     public interface CameraStreamListener {
-        void onFrameReceived(Bitmap frame);
-        void onStreamError(String error);
-        void onStreamStarted();
-        void onStreamStopped();
+        void onFrameReceived(CameraFrame frame);
+        void onStreamError(String cameraId, String error);
+        void onStreamStarted(String cameraId);
+        void onStreamStopped(String cameraId);
+        void onReconnecting(String cameraId, int attempt, long delayMs, String reason);
     }
 
     private ESP32CameraHelper() {
-        executor = Executors.newFixedThreadPool(2);
+        executor = Executors.newFixedThreadPool(DECODE_THREADS);
+        controlExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ESP32-Control");
+            thread.setDaemon(true);
+            return thread;
+        });
         mainHandler = new Handler(Looper.getMainLooper());
-
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ESP32-Stream-Watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // One client for every camera and every (re)connect so its connection pool and dispatcher
+        // are reused. Stalls are caught by the watchdog rather than a read timeout.
         okHttpClient = new OkHttpClient.Builder()
                 .connectTimeout(10, TimeUnit.SECONDS)
                 .readTimeout(0, TimeUnit.SECONDS)  // No timeout for streaming
                 .writeTimeout(5, TimeUnit.SECONDS)
                 .build();
+
+        // Control requests are short, unlike the stream they must not wait forever.
+        cameraControl = new ESP32CameraControl(okHttpClient.newBuilder()
+                .readTimeout(5, TimeUnit.SECONDS)
+                .build());
     }
 
     public static synchronized ESP32CameraHelper getInstance() {
@@ -58,316 +106,291 @@ public class ESP32CameraHelper {
         return instance;
     }
 
+    /**
+     * Splits a comma, semicolon or whitespace separated list of camera addresses.
+     */
+    public static List<String> parseIpAddresses(String text) {
+        List<String> addresses = new ArrayList<>();
+        if (text == null) return addresses;
+        for (String part : text.split("[,;\\s]+")) {
+            if (!part.isEmpty()) addresses.add(part);
+        }
+        return addresses;
+    }
+
+    public static String cameraIdForIndex(int index) {
+        return "cam" + (index + 1);
+    }
+
     public void startStream(String ipAddress, CameraStreamListener listener) {
-        if (isStreaming && ipAddress.equals(currentIpAddress)) {
-            Log.d(TAG, "[STREAM] Already streaming from " + ipAddress);
+        startStreams(Collections.singletonList(ipAddress), listener);
+    }
+
+    public void startStreams(List<String> ipAddresses, CameraStreamListener listener) {
+        if (hasActiveStreams() && ipAddresses.equals(currentIpAddresses)) {
+            Log.d(TAG, "[STREAM] Already streaming from " + ipAddresses);
             return;
         }
 
         stopStream();
+        streams.clear();
+        currentIpAddresses = new ArrayList<>(ipAddresses);
 
-        this.currentIpAddress = ipAddress;
-        this.streamListener = listener;
+        for (int i = 0; i < ipAddresses.size(); i++) {
+            String cameraId = cameraIdForIndex(i);
+            MjpegSource source;
+            try {
+                source = createSource(ipAddresses.get(i));
+            } catch (IOException e) {
+                Log.e(TAG, "[STREAM] [" + cameraId + "] " + e.getMessage());
+                mainHandler.post(() -> listener.onStreamError(cameraId, e.getMessage()));
+                continue;
+            }
+            ESP32CameraStream stream = new ESP32CameraStream(cameraId, ipAddresses.get(i), source, listener,
+                    executor, mainHandler, okHttpClient, watchdog, bitmapPool, DECODE_THREADS);
+            stream.setPreviewEnabled(previewEnabled);
+            stream.setInferenceSize(inferenceWidth, inferenceHeight);
+            stream.setMaxPendingFrames(maxPendingFrames);
+            if (stallTimeoutMs > 0) stream.setStallTimeoutMs(stallTimeoutMs);
+            stream.setSnapshotIntervalMs(snapshotIntervalMs);
+            stream.setRecordingDirectory(recording ? recordingDirectory : null);
+            streams.add(stream);
+        }
+        Log.d(TAG, String.format(Locale.US, "[STREAM] Starting %d camera stream(s)", streams.size()));
 
-        String streamUrl = String.format(Locale.US, "http://%s:81/stream", ipAddress);
-        Log.d(TAG, "[STREAM] Starting stream: " + streamUrl);
+        for (ESP32CameraStream stream : streams) {
+            stream.start();
+        }
 
-        streamThread = new Thread(new StreamRunnable(streamUrl));
-        streamThread.setName("ESP32-Stream-Thread");
-        streamThread.start();
+        // A camera may have rebooted to its default frame size since we last set it.
+        cameraControl.forgetAppliedSettings();
+        negotiateCameraSettings();
     }
 
-    private class StreamRunnable implements Runnable {
-        private final String streamUrl;
+    private MjpegSource createSource(String address) throws IOException {
+        if (address.startsWith(REPLAY_PREFIX)) {
+            String spec = address.substring(REPLAY_PREFIX.length());
+            int at = spec.lastIndexOf('@');
+            String name = at >= 0 ? spec.substring(0, at) : spec;
+            float speed = at >= 0 ? ReplayMjpegSource.parseSpeed(spec.substring(at + 1)) : 1f;
 
-        public StreamRunnable(String streamUrl) {
-            this.streamUrl = streamUrl;
+            File file = new File(name);
+            if (!file.isAbsolute() && recordingDirectory != null) file = new File(recordingDirectory, name);
+            return new ReplayMjpegSource(file, speed);
         }
+        return new HttpMjpegSource(okHttpClient, streamUrl(address));
+    }
 
-        @Override
-        public void run() {
-            InputStream inputStream = null;
-            Response response = null;
+    // The CameraWebServer streams on port 81, next to its control server on 80.
+    public static String streamUrl(String address) {
+        return address.contains(":")
+                ? String.format(Locale.US, "http://%s/stream", address)
+                : String.format(Locale.US, "http://%s:81/stream", address);
+    }
 
-            try {
-                Log.d(TAG, "[STREAM] Connecting to stream...");
+    // The control server always listens on port 80, whatever stream port the address names.
+    public static String controlHost(String address) {
+        int colon = address.indexOf(':');
+        return colon >= 0 ? address.substring(0, colon) : address;
+    }
 
-                Request request = new Request.Builder()
-                        .url(streamUrl)
-                        .header("User-Agent", "MJPEG-Client")
-                        .header("Accept", "*/*")
-                        .header("Connection", "keep-alive")
-                        .build();
+    // Stopped streams stay registered until the next start so their stats can still be read.
+    public void stopStream() {
+        if (streams.isEmpty()) return;
 
-                response = okHttpClient.newCall(request).execute();
+        Log.d(TAG, "[STREAM] Stopping " + streams.size() + " camera stream(s)...");
+        for (ESP32CameraStream stream : streams) {
+            stream.stop();
+        }
+        currentIpAddresses = Collections.emptyList();
+    }
 
-                if (!response.isSuccessful()) {
-                    throw new Exception("[ERROR] HTTP error: " + response.code());
-                }
+    public List<ESP32CameraStream> getStreams() {
+        return Collections.unmodifiableList(streams);
+    }
 
-                Log.d(TAG, "[STREAM] Stream connected! Headers: " + response.headers());
+    public ESP32CameraStream getStream(String cameraId) {
+        for (ESP32CameraStream stream : streams) {
+            if (stream.getCameraId().equals(cameraId)) return stream;
+        }
+        return null;
+    }
 
-                String contentType = response.header("Content-Type", "");
-                Log.d(TAG, "[STREAM] Content-Type: " + contentType);
+    public int getCameraCount() {
+        return streams.size();
+    }
 
-                assert contentType != null;
-                if (!contentType.contains("multipart/x-mixed-replace") &&
-                        !contentType.contains("image/jpeg")) {
-                    Log.w(TAG, "[STREAM] Unexpected Content-Type: " + contentType);
-                }
+    // True while any camera is still supervised, even if it is currently reconnecting.
+    public boolean hasActiveStreams() {
+        for (ESP32CameraStream stream : streams) {
+            if (stream.isSupervising()) return true;
+        }
+        return false;
+    }
 
-                isStreaming = true;
-                mainHandler.post(() -> {
-                    if (streamListener != null) {
-                        streamListener.onStreamStarted();
-                    }
-                });
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
 
-                inputStream = response.body().byteStream();
+    public void setMaxPendingFrames(int maxPendingFrames) {
+        this.maxPendingFrames = Math.max(1, maxPendingFrames);
+        for (ESP32CameraStream stream : streams) {
+            stream.setMaxPendingFrames(this.maxPendingFrames);
+        }
+    }
 
-                parseMJPEGStream(inputStream);
+    /**
+     * Also decode every frame close to this size for inference, or pass 0 to turn that off.
+     */
+    public void setInferenceSize(int width, int height) {
+        inferenceWidth = Math.max(0, width);
+        inferenceHeight = Math.max(0, height);
+        for (ESP32CameraStream stream : streams) {
+            stream.setInferenceSize(inferenceWidth, inferenceHeight);
+        }
+        negotiateCameraSettings();
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "[ERROR] Stream error: " + e.getMessage(), e);
-                if (isStreaming) {
-                    mainHandler.post(() -> {
-                        if (streamListener != null) {
-                            streamListener.onStreamError(e.getMessage());
-                        }
-                    });
-                }
-            } finally {
-                try {
-                    if (inputStream != null) inputStream.close();
-                    if (response != null) response.close();
-                } catch (Exception e) {
-                    Log.e(TAG, "[ERROR] Error closing resources...", e);
-                }
+    public ESP32CameraControl getCameraControl() {
+        return cameraControl;
+    }
 
-                isStreaming = false;
-                mainHandler.post(() -> {
-                    if (streamListener != null) {
-                        streamListener.onStreamStopped();
-                    }
-                });
-            }
-        }
+    /**
+     * Manual frame size for every camera, or null to pick the smallest one covering the model.
+     */
+    public void setFrameSizeOverride(ESP32CameraControl.FrameSize frameSize) {
+        cameraControl.setFrameSizeOverride(frameSize);
+        negotiateCameraSettings();
+    }
+
+    /**
+     * Manual JPEG quality (10-63, lower is better) for every camera, or 0 to pick it automatically.
+     */
+    public void setQualityOverride(int quality) {
+        cameraControl.setQualityOverride(quality);
+        negotiateCameraSettings();
+    }
 
-        private void parseMJPEGStream(InputStream inputStream) throws Exception {
-            ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream(65536); // 64KB initial
-            byte[] readBuffer = new byte[8192];
-            int bytesRead;
-            int frameCount = 0;
-
-            // Boundary info from Content-Type header
-            String boundary = "--123456789000000000000987654321";
-            byte[] boundaryBytes = boundary.getBytes();
-            byte[] boundaryEndBytes = (boundary + "--").getBytes();
-
-            Log.d(TAG, "[MJPEG] Starting MJPEG parser with boundary: " + boundary);
-
-            int state = STATE_BOUNDARY;
-            int matchPos = 0;
-
-            while (isStreaming && (bytesRead = inputStream.read(readBuffer)) != -1) {
-                for (int i = 0; i < bytesRead; i++) {
-                    byte currentByte = readBuffer[i];
-
-                    switch (state) {
-                        case STATE_BOUNDARY:
-                            if (currentByte == boundaryBytes[matchPos]) {
-                                matchPos++;
-
-                                if (matchPos == boundaryBytes.length) {
-                                    matchPos = 0;
-                                    state = STATE_HEADERS;
-                                    frameBuffer.reset();
-                                    Log.v(TAG, "[MJPEG] Found boundary, moving to header parsing...");
-                                }
-                            } else {
-                                matchPos = 0; // Reset on mismatch
-                            }
-                            break;
-
-                        case STATE_HEADERS:
-                            frameBuffer.write(currentByte);
-                            byte[] headerData = frameBuffer.toByteArray();
-                            int dataLen = headerData.length;
-
-                            if (dataLen >= 4) {
-                                if (headerData[dataLen-4] == '\r' &&
-                                        headerData[dataLen-3] == '\n' &&
-                                        headerData[dataLen-2] == '\r' &&
-                                        headerData[dataLen-1] == '\n') {
-
-                                    String headers = new String(headerData, 0, dataLen);
-                                    Log.v(TAG, "[MJPEG] Frame headers:\n" + headers);
-
-                                    frameBuffer.reset();
-                                    state = STATE_JPEG_DATA;
-                                    Log.v(TAG, "[MJPEG] Headers complete, starting JPEG data...");
-                                }
-                            }
-                            break;
-
-                        case STATE_JPEG_DATA:
-                            frameBuffer.write(currentByte);
-
-                            byte[] jpegData = frameBuffer.toByteArray();
-                            int jpegLen = jpegData.length;
-
-                            if (jpegLen >= boundaryBytes.length + 4) {
-                                boolean foundNextBoundary = false;
-
-                                for (int jpegEnd = Math.max(0, jpegLen - boundaryBytes.length - 10); jpegEnd < jpegLen; jpegEnd++) {
-                                    boolean match = true;
-                                    for (int k = 0; k < boundaryBytes.length; k++) {
-                                        if (jpegEnd + k >= jpegLen || jpegData[jpegEnd + k] != boundaryBytes[k]) {
-                                            match = false;
-                                            break;
-                                        }
-                                    }
-
-                                    if (match) {
-                                        boolean hasValidEnd = false;
-                                        for (int m = Math.max(0, jpegEnd - 10); m < jpegEnd; m++) {
-                                            if (m + 1 < jpegEnd &&
-                                                    jpegData[m] == (byte)0xFF &&
-                                                    jpegData[m + 1] == (byte)0xD9) {
-                                                hasValidEnd = true;
-                                                break;
-                                            }
-                                        }
-
-                                        if (hasValidEnd) {
-                                            processJPEGFrame(jpegData, jpegEnd, frameCount++);
-
-                                            frameBuffer.reset();
-                                            state = STATE_BOUNDARY;
-                                            matchPos = 0;
-                                            foundNextBoundary = true;
-                                            Log.v(TAG, "[MJPEG] Found next boundary, frame completed!");
-
-                                            int skipBytes = boundaryBytes.length - (jpegLen - jpegEnd);
-                                            if (skipBytes > 0 && i + skipBytes < bytesRead) {
-                                                i += skipBytes - 1; // -1 because loop will increment
-                                            }
-                                        }
-                                        break;
-                                    }
-                                }
-
-                                if (foundNextBoundary) {
-                                    break; // Skip rest of processing for this byte
-                                }
-                            }
-
-                            // Check for final boundary
-                            if (jpegLen >= boundaryEndBytes.length) {
-                                boolean isFinal = true;
-                                for (int j = 0; j < boundaryEndBytes.length; j++) {
-                                    if (jpegLen - boundaryEndBytes.length + j < 0 ||
-                                            jpegData[jpegLen - boundaryEndBytes.length + j] != boundaryEndBytes[j]) {
-                                        isFinal = false;
-                                        break;
-                                    }
-                                }
-                                if (isFinal) {
-                                    Log.d(TAG, "[MJPEG] Found final boundary, stream ending...");
-                                    return;
-                                }
-                            }
-                            break;
+    // Sends the frame size and quality for the current model to every running camera.
+    private void negotiateCameraSettings() {
+        int width = inferenceWidth;
+        int height = inferenceHeight;
+        if (width <= 0 || height <= 0) return;
+
+        for (ESP32CameraStream stream : streams) {
+            if (!stream.isSupervising() || !stream.getSource().isLive()) continue;
+            String ipAddress = controlHost(stream.getIpAddress());
+            String cameraId = stream.getCameraId();
+            controlExecutor.execute(() -> {
+                try {
+                    ESP32CameraControl.FrameSize frameSize = cameraControl.applyForModel(ipAddress, width, height);
+                    if (frameSize != null) {
+                        Log.d(TAG, String.format(Locale.US, "[CONTROL] [%s] Frame size %s for %dx%d model",
+                                cameraId, frameSize, width, height));
                     }
+                } catch (IOException e) {
+                    Log.w(TAG, "[CONTROL] [" + cameraId + "] Could not set camera frame size: " + e.getMessage());
                 }
-            }
+            });
+        }
+    }
 
-            Log.d(TAG, "[MJPEG] Stream parser ended...");
+    /**
+     * Skips the full-size preview decode while nothing shows it. Frames then only carry the
+     * inference bitmap, unless no inference size is set.
+     */
+    public void setPreviewEnabled(boolean enabled) {
+        previewEnabled = enabled;
+        for (ESP32CameraStream stream : streams) {
+            stream.setPreviewEnabled(enabled);
         }
+    }
 
-        private void processJPEGFrame(byte[] frameData, int length, int frameNumber) {
-            if (length <= 100) {
-                Log.w(TAG, "[JPEG] Frame too small: " + length + " bytes.");
-                return;
-            }
+    public void setStallTimeoutMs(long stallTimeoutMs) {
+        this.stallTimeoutMs = stallTimeoutMs;
+        for (ESP32CameraStream stream : streams) {
+            stream.setStallTimeoutMs(stallTimeoutMs);
+        }
+    }
 
-            if (frameData[0] != (byte)0xFF || frameData[1] != (byte)0xD8) {
-                Log.w(TAG, "[JPEG] Invalid JPEG start marker in frame " + frameNumber);
-                return;
-            }
+    /**
+     * Tells the streams how often a frame is actually used. Slow intervals switch every camera to
+     * snapshot polling at that rate, faster ones go back to the MJPEG stream.
+     */
+    public void setFrameIntervalMs(long intervalMs) {
+        long snapshotInterval = intervalMs >= SNAPSHOT_MODE_MIN_INTERVAL_MS ? intervalMs : 0;
+        if (snapshotInterval == snapshotIntervalMs) return;
+
+        snapshotIntervalMs = snapshotInterval;
+        for (ESP32CameraStream stream : streams) {
+            stream.setSnapshotIntervalMs(snapshotInterval);
+        }
+    }
 
-            boolean hasEndMarker = false;
-            for (int i = length - 2; i >= Math.max(0, length - 100); i--) {
-                if (i + 1 < length && frameData[i] == (byte)0xFF && frameData[i + 1] == (byte)0xD9) {
-                    hasEndMarker = true;
-                    break;
-                }
-            }
+    public boolean isSnapshotMode() {
+        return snapshotIntervalMs > 0;
+    }
 
-            if (!hasEndMarker) {
-                Log.w(TAG, "[JPEG] No JPEG end marker in frame " + frameNumber);
-                return;
-            }
+    /**
+     * Where recordings are written and "replay:" names are looked up.
+     */
+    public void setRecordingDirectory(File directory) {
+        recordingDirectory = directory;
+    }
 
-            executor.execute(() -> {
-                try {
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inPreferredConfig = Bitmap.Config.ARGB_8888; // Try ARGB instead of RGB_565
-                    options.inMutable = true;
+    public File getRecordingDirectory() {
+        return recordingDirectory;
+    }
 
-                    Bitmap frame = BitmapFactory.decodeByteArray(frameData, 0, length, options);
+    /**
+     * Records the raw MJPEG sessions of every live camera (they stream MJPEG while recording,
+     * snapshots are paused) until turned off again.
+     */
+    public void setRecording(boolean enabled) {
+        recording = enabled && recordingDirectory != null;
+        for (ESP32CameraStream stream : streams) {
+            stream.setRecordingDirectory(recording ? recordingDirectory : null);
+        }
+    }
 
-                    if (frame == null) {
-                        options.inSampleSize = 2;
-                        frame = BitmapFactory.decodeByteArray(frameData, 0, length, options);
-                    }
+    public boolean isRecording() {
+        return recording;
+    }
 
-                    if (frame != null) {
-                        if (frameNumber < 10) {
-                            Log.d(TAG, String.format("[JPEG] Frame %d decoded: %dx%d, %d bytes.",
-                                    frameNumber, frame.getWidth(), frame.getHeight(), length));
-                        }
-
-                        final Bitmap finalFrame = frame;
-                        mainHandler.post(() -> {
-                            if (streamListener != null && isStreaming) {
-                                streamListener.onFrameReceived(finalFrame);
-                            }
-                        });
-                    } else {
-                        if (frameNumber < 5) {
-                            StringBuilder hex = new StringBuilder();
-                            for (int i = 0; i < 20; i++) {
-                                hex.append(String.format("%02X ", frameData[i]));
-                            }
-                            Log.w(TAG, "[JPEG] Decode failed. First 20 bytes: " + hex);
-                        }
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "[ERROR} Error processing frame " + frameNumber + ": " + e.getMessage());
-                }
-            });
+    public String getSnapshotStats() {
+        StringBuilder summary = new StringBuilder();
+        for (ESP32CameraStream stream : streams) {
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(stream.getCameraId()).append(": ").append(stream.getSnapshotStats());
         }
+        return summary.toString();
     }
 
-    public void stopStream() {
-        Log.d(TAG, "[STREAM] Stopping stream...");
-        isStreaming = false;
+    public String getDecodeQueueStats() {
+        StringBuilder summary = new StringBuilder();
+        for (ESP32CameraStream stream : streams) {
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(stream.getCameraId()).append(": ").append(stream.getDecodeQueueStats());
+        }
+        return summary.toString();
+    }
 
-        if (streamThread != null) {
-            streamThread.interrupt();
-            try {
-                streamThread.join(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            streamThread = null;
+    public String getDecodeStats() {
+        StringBuilder summary = new StringBuilder();
+        for (ESP32CameraStream stream : streams) {
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(stream.getCameraId()).append(": ").append(stream.getDecodeStats());
         }
+        return summary.toString();
     }
 
-    public Bitmap prepareFrameForInference(Bitmap originalFrame, int targetWidth, int targetHeight) {
-        if (originalFrame == null) return null;
-        return Bitmap.createScaledBitmap(originalFrame, targetWidth, targetHeight, true);
+    public String getHealthStats() {
+        StringBuilder summary = new StringBuilder();
+        for (ESP32CameraStream stream : streams) {
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(stream.getCameraId()).append(": ").append(stream.getHealth().getStatsSummary());
+        }
+        return summary.toString();
     }
 
     public void cleanup() {
@@ -375,5 +398,8 @@ public class ESP32CameraHelper {
         if (executor != null) {
             executor.shutdownNow();
         }
+        controlExecutor.shutdownNow();
+        watchdog.shutdownNow();
+        bitmapPool.clear();
     }
-}
\ No newline at end of file
+}
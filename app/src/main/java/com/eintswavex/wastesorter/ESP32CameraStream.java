@@ -0,0 +1,942 @@
+package com.eintswavex.wastesorter;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.UnknownServiceException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * One ESP32-CAM stream: its own supervisor thread, parser, decode queue and stats. Decode
+ * threads, the HTTP client, the watchdog and the bitmap pool are shared through ESP32CameraHelper,
+ * which creates one of these per camera.
+ *
+ * Frames come either from the MjpegSource (the camera's MJPEG stream on port 81, or a recorded
+ * session) or, when a snapshot interval is set on a live camera, from single /capture requests
+ * on port 80 at that interval. Both feed the same decode path. Live sessions can be recorded for
+ * replay with setRecordingDirectory().
+ */
+public class ESP32CameraStream {
+    private static final String TAG = "ESP32CameraStream";
+
+    private final String cameraId;
+    private final String ipAddress;
+    private final MjpegSource source;
+    private final ESP32CameraHelper.CameraStreamListener streamListener;
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+    private final OkHttpClient okHttpClient;
+    private final ScheduledExecutorService watchdog;
+    private final BitmapPool bitmapPool;
+    private final int maxDecoders;
+
+    private volatile boolean isStreaming = false;   // Connected and receiving
+    private volatile boolean supervising = false;   // Between start() and stop(), reconnects while set
+    private Thread streamThread;
+
+    // Supervisor state
+    private final StreamHealth health = new StreamHealth();
+    private volatile ScheduledFuture<?> watchdogTask;
+    private final Random random = new Random();
+    private volatile StreamRunnable activeStream;
+    private volatile MjpegSource.Session activeSession;
+    private volatile Call activeCall;       // Snapshot request in flight
+    private volatile boolean stalled = false;
+    private volatile long stallTimeoutMs = DEFAULT_STALL_TIMEOUT_MS;
+
+    private volatile MjpegStreamParser activeParser;
+
+    private volatile File recordingDirectory;       // null records nothing
+    private volatile StreamRecorder activeRecorder;
+
+    // Snapshot polling, 0 streams MJPEG instead
+    private volatile long snapshotIntervalMs = 0;
+    private volatile boolean reconnectRequested = false;
+    private final AtomicLong snapshotCount = new AtomicLong(0);
+    private volatile float captureLatencyMs = 0;   // Smoothed request-to-last-byte time of /capture
+
+    private final LatestFrameQueue<PendingFrame> pendingFrames = new LatestFrameQueue<>(1);
+    private final AtomicInteger activeDecoders = new AtomicInteger(0);
+    private final AtomicLong frameSequence = new AtomicLong(0);
+    private final SequenceGate deliveryOrder = new SequenceGate();  // Admits on the main thread
+
+    private volatile boolean previewEnabled = true;
+    private volatile int inferenceWidth = 0;   // 0 disables the model-size decode
+    private volatile int inferenceHeight = 0;
+    private final DecodeStats previewDecodeStats = new DecodeStats();
+    private final DecodeStats inferenceDecodeStats = new DecodeStats();
+
+    private static final int THROUGHPUT_LOG_INTERVAL = 300;
+    private static final long INITIAL_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 15000;
+    private static final long DEFAULT_STALL_TIMEOUT_MS = 5000;
+    private static final long WATCHDOG_INTERVAL_MS = 500;
+    private static final float CAPTURE_LATENCY_SMOOTHING = 0.2f;
+
+    ESP32CameraStream(String cameraId, String ipAddress, MjpegSource source, ESP32CameraHelper.CameraStreamListener listener,
+                      ExecutorService executor, Handler mainHandler, OkHttpClient okHttpClient,
+                      ScheduledExecutorService watchdog, BitmapPool bitmapPool, int maxDecoders) {
+        this.cameraId = cameraId;
+        this.ipAddress = ipAddress;
+        this.source = source;
+        this.streamListener = listener;
+        this.executor = executor;
+        this.mainHandler = mainHandler;
+        this.okHttpClient = okHttpClient;
+        this.watchdog = watchdog;
+        this.bitmapPool = bitmapPool;
+        this.maxDecoders = maxDecoders;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public MjpegSource getSource() {
+        return source;
+    }
+
+    public boolean isStreaming() {
+        return isStreaming;
+    }
+
+    public boolean isSupervising() {
+        return supervising;
+    }
+
+    void start() {
+        if (supervising) return;
+
+        pendingFrames.resetStats();
+        frameSequence.set(0);
+        deliveryOrder.reset();
+        previewDecodeStats.reset();
+        inferenceDecodeStats.reset();
+        health.reset();
+        snapshotCount.set(0);
+        captureLatencyMs = 0;
+        reconnectRequested = false;
+
+        Log.d(TAG, String.format(Locale.US, "[STREAM] [%s] Starting %s: %s", cameraId,
+                isSnapshotMode() ? "snapshot polling" : "stream", source.describe()));
+
+        supervising = true;
+        watchdogTask = watchdog.scheduleWithFixedDelay(this::checkStreamHealth,
+                WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        StreamRunnable runnable = new StreamRunnable();
+        activeStream = runnable;
+        streamThread = new Thread(runnable);
+        streamThread.setName("ESP32-Stream-Thread-" + cameraId);
+        streamThread.start();
+    }
+
+    /**
+     * Runs on the watchdog thread: refreshes the health rates and cancels the current call when
+     * no bytes arrived for the stall timeout, which makes the stream thread reconnect.
+     */
+    private void checkStreamHealth() {
+        health.sample();
+
+        Call call = activeCall;
+        MjpegSource.Session session = activeSession;
+        boolean callOpen = call != null && !call.isCanceled();
+        boolean sessionOpen = session != null && !session.isCanceled();
+        if (!callOpen && !sessionOpen) return;
+
+        long idleMs = health.getIdleMs();
+        if (idleMs > stallTimeoutMs) {
+            Log.w(TAG, String.format(Locale.US, "[STREAM] [%s] No data for %d ms, dropping connection", cameraId, idleMs));
+            health.onStall();
+            stalled = true;
+            if (callOpen) call.cancel();
+            if (sessionOpen) session.cancel();
+        }
+    }
+
+    /**
+     * Reconnect delay with exponential backoff and equal jitter, so several cameras that dropped
+     * together do not hammer the access point in lockstep.
+     */
+    private long backoffDelayMs(int attempt) {
+        long delay = INITIAL_BACKOFF_MS << Math.min(attempt, 16);
+        delay = Math.min(delay, MAX_BACKOFF_MS);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (half + 1));
+    }
+
+    private class StreamRunnable implements Runnable {
+        private final String captureUrl;
+        private long framesThisConnection = 0;
+
+        public StreamRunnable() {
+            this.captureUrl = String.format(Locale.US, "http://%s/capture", ipAddress);
+        }
+
+        // A runnable left over from a previous start() must not keep reconnecting.
+        private boolean isActive() {
+            return supervising && activeStream == this;
+        }
+
+        @Override
+        public void run() {
+            int attempt = 0;
+
+            try {
+                while (isActive()) {
+                    String reason;
+                    reconnectRequested = false;
+                    try {
+                        if (isSnapshotMode()) {
+                            pollSnapshots();
+                        } else {
+                            streamOnce();
+                        }
+                        reason = "stream ended";
+                    } catch (UnknownServiceException e) {
+                        // Cleartext traffic is blocked, retrying will not help.
+                        Log.e(TAG, "[ERROR] Stream error: " + e.getMessage(), e);
+                        mainHandler.post(() -> {
+                            if (streamListener != null) {
+                                streamListener.onStreamError(cameraId, e.getMessage());
+                            }
+                        });
+                        break;
+                    } catch (Exception e) {
+                        reason = stalled
+                                ? String.format(Locale.US, "no data for %d ms", stallTimeoutMs)
+                                : e.getMessage();
+                        if (isActive() && !reconnectRequested) {
+                            Log.e(TAG, "[ERROR] Stream error: " + e.getMessage(), e);
+                        }
+                    }
+                    stalled = false;
+                    if (!isActive()) break;
+
+                    // Switching between MJPEG and snapshots or starting a recording is not a failure,
+                    // reconnect right away.
+                    if (reconnectRequested) {
+                        reconnectRequested = false;
+                        attempt = 0;
+                        Log.d(TAG, String.format(Locale.US, "[STREAM] [%s] Reconnecting for %s", cameraId,
+                                isSnapshotMode() ? "snapshot polling" : "MJPEG stream"));
+                        continue;
+                    }
+
+                    // A replay is over once its recording has been played.
+                    if (!source.isLive()) {
+                        Log.d(TAG, "[STREAM] [" + cameraId + "] Source finished: " + reason);
+                        break;
+                    }
+
+                    // A connection that delivered frames was healthy, start the backoff over.
+                    if (framesThisConnection > 0) attempt = 0;
+                    long delay = backoffDelayMs(attempt++);
+                    health.onBackoff();
+                    Log.w(TAG, String.format(Locale.US, "[STREAM] [%s] Reconnecting in %d ms (attempt %d): %s",
+                            cameraId, delay, attempt, reason));
+                    Log.d(TAG, "[HEALTH] [" + cameraId + "] " + health.getStatsSummary());
+
+                    final int currentAttempt = attempt;
+                    final String currentReason = reason;
+                    mainHandler.post(() -> {
+                        if (streamListener != null && isActive()) {
+                            streamListener.onReconnecting(cameraId, currentAttempt, delay, currentReason);
+                        }
+                    });
+
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                isStreaming = false;
+                // The supervisor also ends on its own after a fatal error, the stream is down then too.
+                if (activeStream == this) supervising = false;
+                health.onStopped();
+                Log.d(TAG, "[HEALTH] [" + cameraId + "] " + health.getStatsSummary());
+                mainHandler.post(() -> {
+                    if (streamListener != null) {
+                        streamListener.onStreamStopped(cameraId);
+                    }
+                });
+            }
+        }
+
+        private void streamOnce() throws Exception {
+            framesThisConnection = 0;
+            Log.d(TAG, "[STREAM] [" + cameraId + "] Connecting to " + source.describe() + "...");
+
+            health.onConnecting();
+            MjpegSource.Session session = source.newSession();
+            activeSession = session;
+            // stop() or a mode switch may have run between the loop check and publishing the session.
+            if (!isActive() || reconnectRequested) session.cancel();
+
+            try (MjpegSource.Session ignored = session) {
+                session.connect();
+                String contentType = session.getContentType();
+                startRecording(contentType);
+
+                isStreaming = true;
+                health.onConnected();
+                mainHandler.post(() -> {
+                    if (streamListener != null) {
+                        streamListener.onStreamStarted(cameraId);
+                    }
+                });
+
+                try (InputStream inputStream = new HealthInputStream(session.getInputStream())) {
+                    parseMJPEGStream(inputStream, contentType);
+                }
+            } finally {
+                activeSession = null;
+                isStreaming = false;
+                stopRecording();
+            }
+        }
+
+        // Live sessions only, replaying a recording into a new one would just copy it.
+        private void startRecording(String contentType) {
+            File directory = recordingDirectory;
+            if (directory == null || !source.isLive()) return;
+
+            String name = cameraId + "_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date());
+            try {
+                activeRecorder = new StreamRecorder(new File(directory, name), contentType);
+                Log.d(TAG, "[RECORD] [" + cameraId + "] Recording to " + activeRecorder.getDataFile());
+            } catch (IOException e) {
+                Log.e(TAG, "[RECORD] [" + cameraId + "] Cannot record: " + e.getMessage());
+            }
+        }
+
+        private void stopRecording() {
+            StreamRecorder recorder = activeRecorder;
+            if (recorder == null) return;
+            activeRecorder = null;
+            try {
+                recorder.close();
+                Log.d(TAG, String.format(Locale.US, "[RECORD] [%s] Recorded %d frames, %d bytes to %s", cameraId,
+                        recorder.getFramesRecorded(), recorder.getBytesWritten(), recorder.getDataFile()));
+            } catch (IOException e) {
+                Log.e(TAG, "[RECORD] [" + cameraId + "] Error closing recording: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Fetches one JPEG from /capture per snapshot interval over a kept-alive connection. Each
+         * request is sent early by the usual capture time, so the next frame is already on its way
+         * while the current one is decoded and inferred, and arrives about when it is due.
+         */
+        private void pollSnapshots() throws Exception {
+            framesThisConnection = 0;
+            Log.d(TAG, "[SNAPSHOT] [" + cameraId + "] Polling " + captureUrl + " every " + snapshotIntervalMs + " ms");
+
+            Request request = new Request.Builder()
+                    .url(captureUrl)
+                    .header("User-Agent", "MJPEG-Client")
+                    .header("Accept", "image/jpeg")
+                    .header("Connection", "keep-alive")
+                    .build();
+
+            health.onConnecting();
+            long nextDueNanos = System.nanoTime();
+
+            try {
+                while (isActive() && !reconnectRequested) {
+                    long intervalMs = snapshotIntervalMs;
+                    if (intervalMs <= 0) {
+                        reconnectRequested = true;
+                        break;
+                    }
+
+                    // Sleep in short steps so stop() and mode switches are noticed quickly.
+                    long waitNanos;
+                    while ((waitNanos = nextDueNanos - (long) (captureLatencyMs * 1e6f) - System.nanoTime()) > 0
+                            && isActive() && !reconnectRequested) {
+                        TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, WATCHDOG_INTERVAL_MS * 1_000_000L));
+                    }
+                    if (!isActive() || reconnectRequested) break;
+
+                    long requestStart = System.nanoTime();
+                    byte[] jpeg = fetchSnapshot(request);
+                    long requestNanos = System.nanoTime() - requestStart;
+                    captureLatencyMs += CAPTURE_LATENCY_SMOOTHING * (requestNanos / 1e6f - captureLatencyMs);
+
+                    if (!isStreaming) {
+                        isStreaming = true;
+                        health.onConnected();
+                        mainHandler.post(() -> {
+                            if (streamListener != null) {
+                                streamListener.onStreamStarted(cameraId);
+                            }
+                        });
+                    }
+
+                    health.onFrame();
+                    framesThisConnection++;
+                    long frameNumber = snapshotCount.getAndIncrement();
+                    if (isCompleteJpeg(jpeg, jpeg.length, frameNumber)) {
+                        queueFrame(jpeg, jpeg.length);
+                    }
+
+                    if (frameNumber > 0 && frameNumber % (THROUGHPUT_LOG_INTERVAL / 10) == 0) {
+                        Log.d(TAG, "[SNAPSHOT] [" + cameraId + "] " + getSnapshotStats());
+                        Log.d(TAG, "[HEALTH] [" + cameraId + "] " + health.getStatsSummary());
+                    }
+
+                    // Keep the cadence, but after a slow capture start over instead of bursting to catch up.
+                    nextDueNanos += intervalMs * 1_000_000L;
+                    nextDueNanos = Math.max(nextDueNanos, System.nanoTime());
+                }
+            } finally {
+                isStreaming = false;
+            }
+        }
+
+        private byte[] fetchSnapshot(Request request) throws Exception {
+            health.onRequest();
+            Call call = okHttpClient.newCall(request);
+            activeCall = call;
+            if (!isActive() || reconnectRequested) call.cancel();
+
+            try (Response response = call.execute()) {
+                if (!response.isSuccessful()) {
+                    throw new Exception("[ERROR] HTTP error: " + response.code());
+                }
+                ResponseBody body = response.body();
+                byte[] jpeg = body.bytes();
+                health.onBytes(jpeg.length);
+                return jpeg;
+            } finally {
+                activeCall = null;
+            }
+        }
+
+        private void parseMJPEGStream(InputStream inputStream, String contentType) throws Exception {
+            String boundary = MjpegStreamParser.boundaryFromContentType(contentType);
+            MjpegStreamParser parser = new MjpegStreamParser(boundary);
+            activeParser = parser;
+
+            Log.d(TAG, "[MJPEG] Starting MJPEG parser with boundary: " + boundary);
+
+            long startTime = System.nanoTime();
+            parser.parse(inputStream, (data, length, frameNumber) -> {
+                markRecordedFrame();
+                health.onFrame();
+                framesThisConnection++;
+                processJPEGFrame(data, length, frameNumber);
+
+                if (frameNumber > 0 && frameNumber % THROUGHPUT_LOG_INTERVAL == 0) {
+                    double seconds = (System.nanoTime() - startTime) / 1e9;
+                    Log.d(TAG, String.format(Locale.US, "[MJPEG] [%s] %d frames, %.2f MB/s (%d with Content-Length)",
+                            cameraId, frameNumber, parser.getBytesConsumed() / 1e6 / seconds, parser.getFramesWithLength()));
+                    Log.d(TAG, "[DECODE] [" + cameraId + "] " + getDecodeQueueStats());
+                    Log.d(TAG, "[DECODE] [" + cameraId + "] " + getDecodeStats());
+                    Log.d(TAG, "[POOL] " + bitmapPool.getStatsSummary());
+                    Log.d(TAG, "[HEALTH] [" + cameraId + "] " + health.getStatsSummary());
+                }
+            });
+            activeParser = null;
+
+            Log.d(TAG, String.format(Locale.US, "[MJPEG] Stream parser ended after %d frames, %d bytes...",
+                    parser.getFramesParsed(), parser.getBytesConsumed()));
+        }
+
+        private void processJPEGFrame(byte[] data, int length, long frameNumber) {
+            if (!isCompleteJpeg(data, length, frameNumber)) return;
+
+            // The parser reuses its buffer, so the decoder gets its own copy of the frame.
+            queueFrame(Arrays.copyOf(data, length), length);
+        }
+
+        private boolean isCompleteJpeg(byte[] data, int length, long frameNumber) {
+            if (length <= 100) {
+                Log.w(TAG, "[JPEG] Frame too small: " + length + " bytes.");
+                return false;
+            }
+
+            if (data[0] != (byte)0xFF || data[1] != (byte)0xD8) {
+                Log.w(TAG, "[JPEG] Invalid JPEG start marker in frame " + frameNumber);
+                return false;
+            }
+
+            boolean hasEndMarker = false;
+            for (int i = length - 2; i >= Math.max(0, length - 100); i--) {
+                if (i + 1 < length && data[i] == (byte)0xFF && data[i + 1] == (byte)0xD9) {
+                    hasEndMarker = true;
+                    break;
+                }
+            }
+
+            if (!hasEndMarker) {
+                Log.w(TAG, "[JPEG] No JPEG end marker in frame " + frameNumber);
+                return false;
+            }
+            return true;
+        }
+
+        private void queueFrame(byte[] frameData, int length) {
+            // Only the newest pending frames are kept, stale ones are dropped before decoding.
+            pendingFrames.offer(new PendingFrame(frameData, length, frameSequence.getAndIncrement(),
+                    System.currentTimeMillis(), System.nanoTime()));
+            scheduleDecode();
+        }
+    }
+
+    // Feeds every byte read into the health stats, which is what the stall watchdog looks at.
+    private class HealthInputStream extends FilterInputStream {
+        HealthInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                health.onBytes(1);
+                record(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                health.onBytes(count);
+                record(buffer, offset, count);
+            }
+            return count;
+        }
+
+        private void record(byte[] buffer, int offset, int count) {
+            StreamRecorder recorder = activeRecorder;
+            if (recorder == null) return;
+            try {
+                recorder.writeChunk(buffer, offset, count);
+            } catch (IOException e) {
+                // A full disk must not take the stream down, just stop recording.
+                abandonRecording(recorder, e);
+            }
+        }
+    }
+
+    private void markRecordedFrame() {
+        StreamRecorder recorder = activeRecorder;
+        if (recorder == null) return;
+        try {
+            recorder.markFrame();
+        } catch (IOException e) {
+            abandonRecording(recorder, e);
+        }
+    }
+
+    // Stops a recording whose write failed and closes its files, which may fail as well.
+    private void abandonRecording(StreamRecorder recorder, IOException cause) {
+        Log.e(TAG, "[RECORD] [" + cameraId + "] Recording stopped: " + cause.getMessage());
+        if (activeRecorder == recorder) activeRecorder = null;
+        try {
+            recorder.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class PendingFrame {
+        final byte[] data;
+        final int length;
+        final long sequence;
+        final long timestampMillis;
+        final long receivedNanos;
+
+        PendingFrame(byte[] data, int length, long sequence, long timestampMillis, long receivedNanos) {
+            this.data = data;
+            this.length = length;
+            this.sequence = sequence;
+            this.timestampMillis = timestampMillis;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    private static class DecodeStats {
+        final AtomicLong frames = new AtomicLong(0);
+        final AtomicLong nanos = new AtomicLong(0);
+        final AtomicLong bytes = new AtomicLong(0);
+
+        void add(long decodeNanos, Bitmap bitmap) {
+            frames.incrementAndGet();
+            nanos.addAndGet(decodeNanos);
+            bytes.addAndGet(bitmap.getByteCount());
+        }
+
+        void reset() {
+            frames.set(0);
+            nanos.set(0);
+            bytes.set(0);
+        }
+
+        String summary() {
+            long count = frames.get();
+            if (count == 0) return "off";
+            return String.format(Locale.US, "%d frames, %.2f ms / %d KB per frame",
+                    count, nanos.get() / (count * 1e6f), bytes.get() / count / 1024);
+        }
+    }
+
+    private void scheduleDecode() {
+        int running = activeDecoders.get();
+        while (running < maxDecoders) {
+            if (activeDecoders.compareAndSet(running, running + 1)) {
+                executor.execute(this::drainDecodeQueue);
+                return;
+            }
+            running = activeDecoders.get();
+        }
+    }
+
+    private void drainDecodeQueue() {
+        try {
+            PendingFrame pending;
+            while ((pending = pendingFrames.poll()) != null) {
+                decodeFrame(pending);
+            }
+        } finally {
+            activeDecoders.decrementAndGet();
+            // A frame may have arrived between the last poll and the decrement.
+            if (!pendingFrames.isEmpty()) {
+                scheduleDecode();
+            }
+        }
+    }
+
+    private void decodeFrame(PendingFrame pending) {
+        byte[] frameData = pending.data;
+        int length = pending.length;
+        long frameNumber = pending.sequence;
+
+        // Another decoder already delivered a newer frame, decoding this one would be wasted.
+        if (deliveryOrder.isStale(frameNumber)) {
+            return;
+        }
+
+        try {
+            long decodeStart = System.nanoTime();
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(frameData, 0, length, bounds);
+
+            int targetWidth = inferenceWidth;
+            int targetHeight = inferenceHeight;
+            boolean decodeInference = targetWidth > 0 && targetHeight > 0 && bounds.outWidth > 0 && bounds.outHeight > 0;
+
+            Bitmap inferenceFrame = null;
+            if (decodeInference) {
+                long start = System.nanoTime();
+                inferenceFrame = decodeAtModelSize(frameData, length, bounds.outWidth, bounds.outHeight,
+                        targetWidth, targetHeight);
+                if (inferenceFrame != null) inferenceDecodeStats.add(System.nanoTime() - start, inferenceFrame);
+            }
+
+            // Without a preview or a model-sized frame there is nothing to hand out, so decode the preview anyway.
+            Bitmap frame = null;
+            if (previewEnabled || inferenceFrame == null) {
+                long start = System.nanoTime();
+                frame = decodeIntoPooledBitmap(frameData, length, bounds.outWidth, bounds.outHeight);
+                if (frame != null) previewDecodeStats.add(System.nanoTime() - start, frame);
+            }
+
+            if (frame != null || inferenceFrame != null) {
+                if (frameNumber < 10) {
+                    Log.d(TAG, String.format("[JPEG] Frame %d decoded: %dx%d, %d bytes, inference %s.",
+                            frameNumber, bounds.outWidth, bounds.outHeight, length,
+                            inferenceFrame != null ? inferenceFrame.getWidth() + "x" + inferenceFrame.getHeight() : "off"));
+                }
+
+                CameraFrame cameraFrame = new CameraFrame(cameraId, frame, inferenceFrame, bitmapPool, frameNumber,
+                        pending.timestampMillis, pending.receivedNanos, System.nanoTime() - decodeStart);
+                mainHandler.post(() -> deliverFrame(cameraFrame));
+            } else {
+                if (frameNumber < 5) {
+                    StringBuilder hex = new StringBuilder();
+                    for (int i = 0; i < 20; i++) {
+                        hex.append(String.format("%02X ", frameData[i]));
+                    }
+                    Log.w(TAG, "[JPEG] Decode failed. First 20 bytes: " + hex);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "[ERROR} Error processing frame " + frameNumber + ": " + e.getMessage());
+        }
+    }
+
+    private Bitmap decodeIntoPooledBitmap(byte[] frameData, int length, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888; // Try ARGB instead of RGB_565
+        options.inMutable = true;
+
+        if (width > 0 && height > 0) {
+            Bitmap frame = decodeWithPooledBitmap(frameData, length, options, width, height);
+            if (frame != null) return frame;
+        }
+
+        // A rejected pooled bitmap is no reason to halve the preview, only a failed full decode is.
+        Bitmap frame = BitmapFactory.decodeByteArray(frameData, 0, length, options);
+        if (frame == null) {
+            options.inSampleSize = 2;
+            frame = BitmapFactory.decodeByteArray(frameData, 0, length, options);
+        }
+        bitmapPool.track(frame);
+        return frame;
+    }
+
+    /**
+     * Decodes straight to roughly the model input size: inSampleSize lets the JPEG decoder skip
+     * whole DCT blocks, then density scaling brings the shorter side down to the target, so the
+     * full-size frame is never materialized. The result covers the target in both dimensions.
+     */
+    private Bitmap decodeAtModelSize(byte[] frameData, int length, int srcWidth, int srcHeight,
+                                     int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (srcWidth / (sampleSize * 2) >= targetWidth && srcHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        int sampledWidth = srcWidth / sampleSize;
+        int sampledHeight = srcHeight / sampleSize;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inSampleSize = sampleSize;
+
+        // Scale by whichever side needs the larger factor so neither ends up below the target.
+        int decodedWidth = sampledWidth;
+        int decodedHeight = sampledHeight;
+        if ((long) sampledWidth * targetHeight >= (long) sampledHeight * targetWidth) {
+            if (sampledHeight > targetHeight) {
+                options.inScaled = true;
+                options.inDensity = sampledHeight;
+                options.inTargetDensity = targetHeight;
+                decodedWidth = (int) (sampledWidth * (float) targetHeight / sampledHeight + 0.5f);
+                decodedHeight = targetHeight;
+            }
+        } else if (sampledWidth > targetWidth) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+            decodedWidth = targetWidth;
+            decodedHeight = (int) (sampledHeight * (float) targetWidth / sampledWidth + 0.5f);
+        }
+
+        Bitmap frame = decodeWithPooledBitmap(frameData, length, options, decodedWidth, decodedHeight);
+        if (frame == null) {
+            frame = BitmapFactory.decodeByteArray(frameData, 0, length, options);
+            bitmapPool.track(frame);
+        }
+        // Density scaling leaves the target density on the bitmap, reset it so later draws are 1:1.
+        if (frame != null) frame.setDensity(Bitmap.DENSITY_NONE);
+        return frame;
+    }
+
+    private Bitmap decodeWithPooledBitmap(byte[] frameData, int length, BitmapFactory.Options options,
+                                          int width, int height) {
+        Bitmap reusable = bitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        options.inBitmap = reusable;
+        try {
+            Bitmap frame = BitmapFactory.decodeByteArray(frameData, 0, length, options);
+            if (frame != null) return frame;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "[JPEG] Could not decode into pooled bitmap: " + e.getMessage());
+        }
+        bitmapPool.release(reusable);
+        options.inBitmap = null;
+        return null;
+    }
+
+    // Runs on the main thread, so deliveries are serialized and never go back in sequence.
+    private void deliverFrame(CameraFrame frame) {
+        if (!deliveryOrder.admit(frame.getSequence())) {
+            frame.release();
+            return;
+        }
+
+        if (streamListener != null && isStreaming) {
+            streamListener.onFrameReceived(frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    public long getStaleFrameCount() {
+        return deliveryOrder.getStaleCount();
+    }
+
+    public void setMaxPendingFrames(int maxPendingFrames) {
+        pendingFrames.setCapacity(Math.max(1, maxPendingFrames));
+        Log.d(TAG, "[DECODE] [" + cameraId + "] Max pending frames set to " + pendingFrames.getCapacity());
+    }
+
+    public String getDecodeQueueStats() {
+        return pendingFrames.getStatsSummary() + ", stale " + deliveryOrder.getStaleCount();
+    }
+
+    /**
+     * Also decode every frame close to this size for inference, or pass 0 to turn that off.
+     */
+    public void setInferenceSize(int width, int height) {
+        inferenceWidth = Math.max(0, width);
+        inferenceHeight = Math.max(0, height);
+        Log.d(TAG, String.format(Locale.US, "[DECODE] [%s] Inference decode size set to %dx%d", cameraId, inferenceWidth, inferenceHeight));
+    }
+
+    /**
+     * Skips the full-size preview decode while nothing shows it. Frames then only carry the
+     * inference bitmap, unless no inference size is set.
+     */
+    public void setPreviewEnabled(boolean enabled) {
+        previewEnabled = enabled;
+        Log.d(TAG, "[DECODE] [" + cameraId + "] Preview decode " + (enabled ? "enabled" : "disabled"));
+    }
+
+    public String getDecodeStats() {
+        return "preview " + previewDecodeStats.summary() + " | inference " + inferenceDecodeStats.summary();
+    }
+
+    /**
+     * Polls /capture every intervalMs instead of streaming MJPEG, or streams again with 0. A running
+     * stream switches over right away.
+     */
+    public void setSnapshotIntervalMs(long intervalMs) {
+        long previous = snapshotIntervalMs;
+        snapshotIntervalMs = Math.max(0, intervalMs);
+        if ((previous > 0) == (snapshotIntervalMs > 0)) return;
+
+        Log.d(TAG, "[SNAPSHOT] [" + cameraId + "] " + (snapshotIntervalMs > 0
+                ? "Snapshot polling every " + snapshotIntervalMs + " ms" : "Snapshot polling off"));
+        if (!supervising) return;
+
+        if (!source.isLive()) return;
+        requestReconnect();
+    }
+
+    // Ends the current session without counting it as a failure, the supervisor reconnects at once.
+    private void requestReconnect() {
+        reconnectRequested = true;
+        MjpegStreamParser parser = activeParser;
+        if (parser != null) {
+            parser.stop();
+        }
+        cancelActiveRequests();
+    }
+
+    private void cancelActiveRequests() {
+        Call call = activeCall;
+        if (call != null) {
+            call.cancel();
+        }
+        MjpegSource.Session session = activeSession;
+        if (session != null) {
+            session.cancel();
+        }
+    }
+
+    /**
+     * Records every live MJPEG session into this directory for ReplayMjpegSource, or pass null to
+     * stop. Snapshot polling pauses while recording. A running stream reconnects, so the recording
+     * starts on a frame boundary and the stream can switch between MJPEG and snapshots.
+     */
+    public void setRecordingDirectory(File directory) {
+        File previous = recordingDirectory;
+        recordingDirectory = directory;
+        if (directory == null) {
+            StreamRecorder recorder = activeRecorder;
+            activeRecorder = null;
+            if (recorder != null) {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "[RECORD] [" + cameraId + "] Error closing recording: " + e.getMessage());
+                }
+            }
+        }
+        if ((previous == null) != (directory == null) && supervising && source.isLive()) {
+            requestReconnect();
+        }
+    }
+
+    public boolean isRecording() {
+        return activeRecorder != null;
+    }
+
+    // Only live cameras have a /capture endpoint, and recordings need the MJPEG stream.
+    public boolean isSnapshotMode() {
+        return snapshotIntervalMs > 0 && source.isLive() && recordingDirectory == null;
+    }
+
+    public String getSnapshotStats() {
+        return String.format(Locale.US, "%d snapshots, capture %.1f ms, interval %d ms",
+                snapshotCount.get(), captureLatencyMs, snapshotIntervalMs);
+    }
+
+    public StreamHealth getHealth() {
+        return health;
+    }
+
+    public void setStallTimeoutMs(long stallTimeoutMs) {
+        this.stallTimeoutMs = Math.max(WATCHDOG_INTERVAL_MS, stallTimeoutMs);
+        Log.d(TAG, "[STREAM] [" + cameraId + "] Stall timeout set to " + this.stallTimeoutMs + " ms");
+    }
+
+    void stop() {
+        Log.d(TAG, "[STREAM] [" + cameraId + "] Stopping stream...");
+        supervising = false;
+        isStreaming = false;
+
+        if (watchdogTask != null) {
+            watchdogTask.cancel(false);
+            watchdogTask = null;
+        }
+
+        MjpegStreamParser parser = activeParser;
+        if (parser != null) {
+            parser.stop();
+        }
+        cancelActiveRequests();
+        pendingFrames.clear(null);
+
+        if (streamThread != null) {
+            streamThread.interrupt();
+            try {
+                streamThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            streamThread = null;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.eintswavex.wastesorter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs several models on the same input at once, each on its own interpreter and thread, and
+ * combines their softmax outputs. WEIGHTED_AVERAGE averages the probabilities by member weight;
+ * MAJORITY_VOTE picks the label most members chose, the averaged probabilities breaking ties.
+ * A frame costs about as long as its slowest member. Keeps each member's latency and how often
+ * the members agree.
+ */
+public class Ensemble<I> implements Closeable {
+    public enum Mode { WEIGHTED_AVERAGE, MAJORITY_VOTE }
+
+    public interface Member<I> {
+        boolean classify(I input, InferenceEngine.Result result);
+    }
+
+    private static class Entry<I> {
+        final String name;
+        final float weight;
+        final Member<I> member;
+        final InferenceEngine.Result result = new InferenceEngine.Result();
+        boolean success;
+        long nanos;
+        long runs;
+        long totalNanos;
+        long agreedWithEnsemble;
+
+        Entry(String name, float weight, Member<I> member) {
+            this.name = name;
+            this.weight = weight;
+            this.member = member;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Entry<I>> entries = new ArrayList<>();
+    private volatile Mode mode;
+    private ExecutorService executor;
+    private float[] sums = new float[0];
+    private int[] votes = new int[0];
+
+    private long frames;
+    private long unanimous;
+    private long failed;
+    private long wallNanos;
+
+    public Ensemble(Mode mode) {
+        this.mode = mode;
+    }
+
+    // weight only counts for WEIGHTED_AVERAGE; 0 or less is taken as 1.
+    public Ensemble<I> add(String name, float weight, Member<I> member) {
+        if (executor != null) throw new IllegalStateException("Members must be added before the first frame");
+        entries.add(new Entry<>(name, weight > 0 ? weight : 1f, member));
+        return this;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getMemberCount() {
+        return entries.size();
+    }
+
+    /**
+     * Classifies input with every member and writes the combined answer into result. Returns
+     * false when no member succeeded. result.inferenceTimeNanos is the wall time of the frame.
+     */
+    public boolean classify(I input, InferenceEngine.Result result) {
+        lock.lock();
+        try {
+            if (entries.isEmpty()) return false;
+            if (executor == null && entries.size() > 1) {
+                executor = Executors.newFixedThreadPool(entries.size() - 1, runnable -> {
+                    Thread thread = new Thread(runnable, "Ensemble-Member");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            long start = System.nanoTime();
+            CountDownLatch done = new CountDownLatch(entries.size() - 1);
+            for (int i = 1; i < entries.size(); i++) {
+                Entry<I> entry = entries.get(i);
+                executor.execute(() -> {
+                    try {
+                        run(entry, input);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            run(entries.get(0), input);  // The calling thread takes the first member
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            long nanos = System.nanoTime() - start;
+
+            frames++;
+            wallNanos += nanos;
+            if (!combine(result)) {
+                failed++;
+                return false;
+            }
+            result.inferenceTimeNanos = nanos;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Entry<I> entry, I input) {
+        long start = System.nanoTime();
+        try {
+            entry.success = entry.member.classify(input, entry.result);
+        } catch (RuntimeException e) {
+            entry.success = false;
+        }
+        entry.nanos = System.nanoTime() - start;
+    }
+
+    private boolean combine(InferenceEngine.Result result) {
+        int classes = -1;
+        for (Entry<I> entry : entries) {
+            if (!entry.success) continue;
+            int count = entry.result.probabilities.length;
+            if (classes >= 0 && count != classes) {
+                entry.success = false;  // A member with other labels cannot be combined
+                continue;
+            }
+            classes = count;
+        }
+        if (classes <= 0) return false;
+        if (sums.length != classes) {
+            sums = new float[classes];
+            votes = new int[classes];
+        }
+        Arrays.fill(sums, 0f);
+        Arrays.fill(votes, 0);
+
+        float weightSum = 0f;
+        int firstLabel = -2;
+        boolean agree = true;
+        Mode currentMode = mode;
+        for (Entry<I> entry : entries) {
+            entry.runs++;
+            entry.totalNanos += entry.nanos;
+            if (!entry.success) continue;
+            float weight = currentMode == Mode.WEIGHTED_AVERAGE ? entry.weight : 1f;
+            for (int c = 0; c < classes; c++) sums[c] += weight * entry.result.probabilities[c];
+            weightSum += weight;
+            int label = entry.result.labelIndex;
+            if (label >= 0 && label < classes) votes[label]++;
+            if (firstLabel == -2) {
+                firstLabel = label;
+            } else if (label != firstLabel) {
+                agree = false;
+            }
+        }
+
+        if (result.probabilities.length != classes) result.probabilities = new float[classes];
+        for (int c = 0; c < classes; c++) result.probabilities[c] = sums[c] / weightSum;
+
+        int best = 0;
+        for (int c = 1; c < classes; c++) {
+            boolean better = currentMode == Mode.MAJORITY_VOTE
+                    ? votes[c] > votes[best] || (votes[c] == votes[best] && result.probabilities[c] > result.probabilities[best])
+                    : result.probabilities[c] > result.probabilities[best];
+            if (better) best = c;
+        }
+        result.labelIndex = best;
+        result.confidence = result.probabilities[best];
+
+        if (agree) unanimous++;
+        for (Entry<I> entry : entries) {
+            if (entry.success && entry.result.labelIndex == best) entry.agreedWithEnsemble++;
+        }
+        return true;
+    }
+
+    public void resetStats() {
+        lock.lock();
+        try {
+            for (Entry<I> entry : entries) {
+                entry.runs = 0;
+                entry.totalNanos = 0;
+                entry.agreedWithEnsemble = 0;
+            }
+            frames = 0;
+            unanimous = 0;
+            failed = 0;
+            wallNanos = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Share of combined frames on which every successful member gave the same label, 0-1.
+    public float getAgreementRate() {
+        lock.lock();
+        try {
+            long combined = frames - failed;
+            return combined == 0 ? 0f : (float) unanimous / combined;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float getMeanFrameMs() {
+        lock.lock();
+        try {
+            return frames == 0 ? 0f : wallNanos / 1e6f / frames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Short form for the metrics line.
+    public String getMetricsLabel() {
+        lock.lock();
+        try {
+            StringBuilder label = new StringBuilder("Ensemble:");
+            for (Entry<I> entry : entries) {
+                label.append(String.format(Locale.US, " %s %.0f ms,", entry.name, entry.runs == 0 ? 0f : entry.totalNanos / 1e6f / entry.runs));
+            }
+            return label.append(String.format(Locale.US, " frame %.0f ms, agree %.0f%%", getMeanFrameMs(), getAgreementRate() * 100)).toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            StringBuilder summary = new StringBuilder(String.format(Locale.US,
+                    "%d frames, %s, %.1f ms per frame, members agree on %.1f%%",
+                    frames, mode == Mode.WEIGHTED_AVERAGE ? "weighted average" : "majority vote",
+                    getMeanFrameMs(), getAgreementRate() * 100));
+            if (failed > 0) summary.append(", ").append(failed).append(" failed");
+            for (Entry<I> entry : entries) {
+                summary.append(String.format(Locale.US, "\n    %s: weight %.2f, %.1f ms each, agrees with the ensemble on %.1f%%",
+                        entry.name, entry.weight, entry.runs == 0 ? 0f : entry.totalNanos / 1e6f / entry.runs,
+                        frames == failed ? 0f : entry.agreedWithEnsemble * 100f / (frames - failed)));
+            }
+            return summary.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (executor != null) executor.shutdownNow();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -27,6 +27,15 @@ public class FirebaseHelper {
     private String lastUploadedImagePath = "";
     private float lastUploadedConfidence = 0.0f;
     private long lastUploadTime = 0;
+
+    // Last upload of each camera, so one busy camera cannot throttle the others.
+    private final Map<String, UploadRecord> lastUploads = new HashMap<>();
+
+    private static class UploadRecord {
+        String imagePath = "";
+        float confidence = 0.0f;
+        long time = 0;
+    }
     private static final long MIN_UPLOAD_INTERVAL = 1000; // 1 seconds minimum between uploads
 
     private FirebaseHelper() {
@@ -104,14 +113,29 @@ public class FirebaseHelper {
 
     // ==================== INFERENCE DATA ====================
     public void uploadInferenceData(String imagePath, String category, float confidence, String modelVersion, String inferenceMode) {
-        if (shouldUpload(imagePath, confidence)) {
-            Log.d(TAG, "[FIREBASE] Skipping upload - duplicate or too soon!");
+        uploadInferenceData(imagePath, category, confidence, modelVersion, inferenceMode, ESP32CameraHelper.DEFAULT_CAMERA_ID);
+    }
+
+    public void uploadInferenceData(String imagePath, String category, float confidence, String modelVersion,
+                                    String inferenceMode, String cameraId) {
+        UploadRecord lastUpload;
+        synchronized (lastUploads) {
+            lastUpload = lastUploads.get(cameraId);
+            if (lastUpload == null) {
+                lastUpload = new UploadRecord();
+                lastUploads.put(cameraId, lastUpload);
+            }
+        }
+        if (shouldUpload(lastUpload, imagePath, confidence)) {
+            Log.d(TAG, "[FIREBASE] Skipping upload for " + cameraId + " - duplicate or too soon!");
             return;
         }
 
         try {
-            // Use fixed key instead of push ID - This overwrites previous data
-            String inferenceId = "latest_inference";  // Fixed key for latest data
+            // Use fixed key instead of push ID - This overwrites previous data.
+            // The first camera keeps the original key, others get their own.
+            String inferenceId = ESP32CameraHelper.DEFAULT_CAMERA_ID.equals(cameraId)
+                    ? "latest_inference" : "latest_inference_" + cameraId;
             // OR use: String inferenceId = "current"; // Alternative fixed key
 
             // Alternative: Use timestamp-based key for ordering
@@ -132,15 +156,19 @@ public class FirebaseHelper {
             inference.put("model_version", modelVersion);
             inference.put("inference_mode", inferenceMode);
             inference.put("image_path", imagePath); // Store image path for reference
+            inference.put("camera_id", cameraId);
 
-            // Overwriting any existing data at /inference_data/latest_inference.
+            // Overwriting any existing data at /inference_data/<inferenceId>.
+            UploadRecord record = lastUpload;
             inferenceDataRef.child(inferenceId).setValue(inference)
                     .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "[FIREBASE] Inference data uploaded and replaced previous: " + category + " (" + (confidence*100) + "%)");
+                        Log.d(TAG, "[FIREBASE] Inference data uploaded and replaced previous: " + category + " (" + (confidence*100) + "%) from " + cameraId);
 
-                        lastUploadedImagePath = imagePath;
-                        lastUploadedConfidence = confidence;
-                        lastUploadTime = System.currentTimeMillis();
+                        synchronized (record) {
+                            record.imagePath = imagePath;
+                            record.confidence = confidence;
+                            record.time = System.currentTimeMillis();
+                        }
                     })
                     .addOnFailureListener(e ->
                             Log.e(TAG, "[FIREBASE] Failed to upload inference data: " + e.getMessage()));
@@ -198,6 +226,23 @@ public class FirebaseHelper {
         }
     }
 
+    private boolean shouldUpload(UploadRecord lastUpload, String imagePath, float confidence) {
+        synchronized (lastUpload) {
+            long currentTime = System.currentTimeMillis();
+
+            if (currentTime - lastUpload.time < MIN_UPLOAD_INTERVAL) {
+                return true;
+            }
+
+            if (imagePath.equals(lastUpload.imagePath)) {
+                return true;
+            }
+
+            // 1% difference threshold
+            return Math.abs(confidence - lastUpload.confidence) < 0.01f;
+        }
+    }
+
     private boolean shouldUpload(String imagePath, float confidence) {
         long currentTime = System.currentTimeMillis();
 
@@ -191,6 +191,7 @@ class GraphView extends View {
     private Paint textPaint;
     private Path plasticPath, paperPath, metalPath;
     private ProbabilityHistory history;
+    private String cameraFilter = null;  // null plots every camera
     private boolean isInitialized = false;
 
     public GraphView(Context context) {
@@ -229,6 +230,9 @@ class GraphView extends View {
         // Set background color
         setBackgroundColor(Color.parseColor("#1a1a1a"));
 
+        // Tap to step through the cameras that have data
+        setOnClickListener(v -> cycleCameraFilter());
+
         isInitialized = true;
     }
 
@@ -265,6 +269,11 @@ class GraphView extends View {
 
         // Draw legend
         drawLegend(canvas, width, height);
+
+        if (history.getCameraIds().size() > 1 || cameraFilter != null) {
+            canvas.drawText("Camera: " + (cameraFilter == null ? "All" : cameraFilter) + " (tap to switch)",
+                    padding, padding - 15, textPaint);
+        }
     }
 
     private void drawGrid(Canvas canvas, int width, int height, int padding) {
@@ -308,9 +317,9 @@ class GraphView extends View {
     }
 
     private void drawGraphLines(Canvas canvas, int graphWidth, int graphHeight, int padding) {
-        List<Float> plasticHistory = history.getPlasticHistory();
-        List<Float> paperHistory = history.getPaperHistory();
-        List<Float> metalHistory = history.getMetalHistory();
+        List<Float> plasticHistory = history.getPlasticHistory(cameraFilter);
+        List<Float> paperHistory = history.getPaperHistory(cameraFilter);
+        List<Float> metalHistory = history.getMetalHistory(cameraFilter);
 
         if (plasticHistory.isEmpty()) {
             // Draw "No data yet" message
@@ -425,4 +434,11 @@ class GraphView extends View {
     public void updateGraph() {
         invalidate();
     }
+
+    private void cycleCameraFilter() {
+        List<String> cameraIds = history.getCameraIds();
+        int index = cameraFilter == null ? -1 : cameraIds.indexOf(cameraFilter);
+        cameraFilter = index + 1 < cameraIds.size() ? cameraIds.get(index + 1) : null;
+        invalidate();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.eintswavex.wastesorter;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The MJPEG stream of a live ESP32-CAM, one HTTP request per session.
+ */
+public class HttpMjpegSource implements MjpegSource {
+    private static final String TAG = "HttpMjpegSource";
+
+    private final OkHttpClient okHttpClient;
+    private final String streamUrl;
+
+    public HttpMjpegSource(OkHttpClient okHttpClient, String streamUrl) {
+        this.okHttpClient = okHttpClient;
+        this.streamUrl = streamUrl;
+    }
+
+    @Override
+    public Session newSession() {
+        Request request = new Request.Builder()
+                .url(streamUrl)
+                .header("User-Agent", "MJPEG-Client")
+                .header("Accept", "*/*")
+                .header("Connection", "keep-alive")
+                .build();
+
+        return new HttpSession(okHttpClient.newCall(request));
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public String describe() {
+        return streamUrl;
+    }
+
+    private static class HttpSession implements Session {
+        private final Call call;
+        private Response response;
+        private InputStream inputStream;
+        private String contentType;
+
+        HttpSession(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            response = call.execute();
+            if (!response.isSuccessful()) {
+                int code = response.code();
+                response.close();
+                throw new IOException("[ERROR] HTTP error: " + code);
+            }
+
+            Log.d(TAG, "[STREAM] Stream connected! Headers: " + response.headers());
+
+            contentType = response.header("Content-Type", "");
+            Log.d(TAG, "[STREAM] Content-Type: " + contentType);
+
+            assert contentType != null;
+            if (!contentType.contains("multipart/x-mixed-replace") &&
+                    !contentType.contains("image/jpeg")) {
+                Log.w(TAG, "[STREAM] Unexpected Content-Type: " + contentType);
+            }
+            inputStream = response.body().byteStream();
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public void cancel() {
+            call.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return call.isCanceled();
+        }
+
+        @Override
+        public void close() {
+            if (response != null) response.close();
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package com.eintswavex.wastesorter;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Owns the TFLite interpreter of the loaded model and every buffer a classification needs. The
+ * tensor converter, input and output tensors are allocated once per model in load() and reused,
+ * so classify() allocates nothing once it has seen the largest source bitmap. Results go into a
+ * caller-owned Result. Calls may come from any thread, inference and model swaps are serialized
+ * by one lock.
+ *
+ * setBatchSize() resizes the input to [B, h, w, 3] for classifyBatch(), which fills the tensor
+ * with B images and splits the [B, classes] output again.
+ *
+ * A pipeline can convert on its own thread instead: newConverter() gives it a converter of its
+ * own for the loaded model, and classifyTensor() runs the finished input without the conversion.
+ */
+public class InferenceEngine implements Closeable {
+    private static final String TAG = "InferenceEngine";
+    private static final int ARENA_ESTIMATE_FACTOR = 8;
+
+    /**
+     * Reusable holder for one classification. probabilities is only reallocated when a model
+     * with a different number of classes is loaded.
+     */
+    public static class Result {
+        public float[] probabilities = new float[0];
+        public int labelIndex = -1;
+        public float confidence;
+        public long inferenceTimeNanos;
+
+        public long getInferenceTimeMs() {
+            return inferenceTimeNanos / 1_000_000;
+        }
+
+        public void copyFrom(Result other) {
+            if (probabilities.length != other.probabilities.length) {
+                probabilities = new float[other.probabilities.length];
+            }
+            System.arraycopy(other.probabilities, 0, probabilities, 0, probabilities.length);
+            labelIndex = other.labelIndex;
+            confidence = other.confidence;
+            inferenceTimeNanos = other.inferenceTimeNanos;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Interpreter interpreter;
+    private ByteBuffer modelBuffer;
+    private InterpreterConfig config = InterpreterConfig.defaults();
+    private int[] inputShape = new int[0];
+    private int inputWidth, inputHeight;
+    private DataType inputDataType, outputDataType;
+    private float inputScale = 1.0f, outputScale = 1.0f;
+    private int inputZeroPoint = 0, outputZeroPoint = 0;
+    private boolean missingQuantParams = false;
+    private int numClasses;
+    private int batchSize = 1;
+
+    // Per-model buffers, replaced together in load()
+    private TensorConverter converter;
+    private float converterScale;
+    private int[] pixels = new int[0];  // Grows to the largest source bitmap
+    private ByteBuffer inputBuffer;
+    private ByteBuffer outputBuffer;
+    private int imageBytes;   // One image of the input tensor
+    private int outputBytes;  // One image of the output tensor
+    private float[] logits;
+    private final Object[] inputs = new Object[1];
+    private final Map<Integer, Object> outputs = new HashMap<>();
+
+    /**
+     * Maps assets/models/modelName for load(). The mapping stays valid after the descriptor and
+     * channel are closed. Fails for an asset stored compressed, which has no file descriptor.
+     */
+    public static MappedByteBuffer mapModel(AssetManager assets, String modelName) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = assets.openFd("models/" + modelName);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+             FileChannel fileChannel = inputStream.getChannel()) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        }
+    }
+
+    public void load(ByteBuffer modelBuffer) throws IOException {
+        load(modelBuffer, InterpreterConfig.defaults());
+    }
+
+    /**
+     * Replaces the current model. Waits for an inference in progress to finish first.
+     */
+    public void load(ByteBuffer modelBuffer, InterpreterConfig config) throws IOException {
+        lock.lock();
+        try {
+            release();
+
+            Interpreter newInterpreter;
+            try {
+                newInterpreter = new Interpreter(modelBuffer, config.toOptions());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Cannot create interpreter (" + config.getLabel() + "): " + e.getMessage(), e);
+            }
+            try {
+                newInterpreter.allocateTensors();
+                configure(newInterpreter);
+            } catch (IOException | RuntimeException e) {
+                newInterpreter.close();
+                release();
+                throw e;
+            }
+            interpreter = newInterpreter;
+            this.modelBuffer = modelBuffer;
+            this.config = config;
+            batchSize = 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void configure(Interpreter newInterpreter) throws IOException {
+        Tensor inputTensor = newInterpreter.getInputTensor(0);
+        inputShape = inputTensor.shape();
+        inputHeight = inputShape[1];
+        inputWidth = inputShape[2];
+        inputDataType = inputTensor.dataType();
+        if (inputDataType != DataType.FLOAT32 && inputDataType != DataType.INT8 && inputDataType != DataType.UINT8) {
+            throw new IOException("Unsupported input type: " + inputDataType);
+        }
+
+        missingQuantParams = false;
+        inputScale = 1.0f;
+        inputZeroPoint = 0;
+        converterScale = 0f;  // Lets the converter fall back to its defaults
+        if (inputDataType != DataType.FLOAT32) {
+            Tensor.QuantizationParams params = inputTensor.quantizationParams();
+            if (params != null) {
+                inputScale = params.getScale();
+                inputZeroPoint = params.getZeroPoint();
+                converterScale = inputScale;
+            } else {
+                missingQuantParams = true;
+            }
+        }
+
+        Tensor outputTensor = newInterpreter.getOutputTensor(0);
+        int[] outputShape = outputTensor.shape();
+        numClasses = outputShape[outputShape.length - 1];
+        outputDataType = outputTensor.dataType();
+        if (outputDataType != DataType.FLOAT32 && outputDataType != DataType.INT8 && outputDataType != DataType.UINT8) {
+            throw new IOException("Unsupported output type: " + outputDataType);
+        }
+
+        outputScale = 1.0f;
+        outputZeroPoint = 0;
+        if (outputDataType != DataType.FLOAT32) {
+            Tensor.QuantizationParams params = outputTensor.quantizationParams();
+            if (params != null) {
+                outputScale = params.getScale();
+                outputZeroPoint = params.getZeroPoint();
+            } else {
+                missingQuantParams = true;
+            }
+        }
+
+        converter = new TensorConverter(converterFormat(inputDataType), inputWidth, inputHeight,
+                converterScale, inputZeroPoint);
+        if (converter.getTensorBytes() != inputTensor.numBytes()) {
+            throw new IOException(String.format(Locale.US, "Unsupported input shape %s, expected [1, h, w, 3]",
+                    Arrays.toString(inputShape)));
+        }
+        if (pixels.length < inputWidth * inputHeight) pixels = new int[inputWidth * inputHeight];
+        imageBytes = inputTensor.numBytes();
+        outputBytes = outputTensor.numBytes();
+        allocateBuffers(1);
+        logits = new float[numClasses];
+
+        Log.d(TAG, String.format(Locale.US, "[ENGINE] Loaded %dx%d %s -> %d x %s, buffers %d + %d bytes",
+                inputWidth, inputHeight, inputDataType, numClasses, outputDataType,
+                inputBuffer.capacity(), outputBuffer.capacity()));
+    }
+
+    private void allocateBuffers(int batch) {
+        inputBuffer = ByteBuffer.allocateDirect(imageBytes * batch).order(ByteOrder.nativeOrder());
+        outputBuffer = ByteBuffer.allocateDirect(outputBytes * batch).order(ByteOrder.nativeOrder());
+        inputs[0] = inputBuffer;
+        outputs.put(0, outputBuffer);
+    }
+
+    /**
+     * Resizes the input tensor to batchSize images. Throws when no model is loaded or the model
+     * has a fixed batch dimension; the engine then stays at its previous batch size.
+     */
+    public void setBatchSize(int batchSize) throws IOException {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1");
+        lock.lock();
+        try {
+            if (interpreter == null) throw new IOException("No model loaded");
+            if (batchSize == this.batchSize) return;
+
+            try {
+                resize(batchSize);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                resize(this.batchSize);
+                throw new IOException("Model cannot run batches of " + batchSize + ": " + e.getMessage(), e);
+            }
+            if (interpreter.getOutputTensor(0).numBytes() != outputBytes * batchSize) {
+                resize(this.batchSize);
+                throw new IOException("Output does not follow the input batch size");
+            }
+            allocateBuffers(batchSize);
+            this.batchSize = batchSize;
+            Log.d(TAG, String.format(Locale.US, "[ENGINE] Batch size %d, buffers %d + %d bytes",
+                    batchSize, inputBuffer.capacity(), outputBuffer.capacity()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resize(int batch) {
+        interpreter.resizeInput(0, new int[]{batch, inputHeight, inputWidth, 3});
+        interpreter.allocateTensors();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Classifies a bitmap of any size into result. Returns false when no model is loaded. With a
+     * batch size above 1 the whole batch still runs, so use classifyBatch() there.
+     */
+    public boolean classify(Bitmap bitmap, Result result) {
+        if (bitmap == null) return false;
+
+        lock.lock();
+        try {
+            if (interpreter == null) return false;
+            long start = System.nanoTime();
+
+            convertInto(bitmap, 0);
+            outputBuffer.rewind();
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            readOutput(0, result);
+
+            result.inferenceTimeNanos = System.nanoTime() - start;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Classifies the first count bitmaps in one invoke, count at most getBatchSize(). Null
+     * bitmaps are skipped and their results left alone. Each result gets the invoke time divided
+     * by count. Returns the number classified, 0 when no model is loaded.
+     */
+    public int classifyBatch(Bitmap[] bitmaps, int count, Result[] results) {
+        lock.lock();
+        try {
+            if (interpreter == null) return 0;
+            if (count > batchSize) throw new IllegalArgumentException(count + " images for a batch of " + batchSize);
+            long start = System.nanoTime();
+
+            int classified = 0;
+            for (int i = 0; i < count; i++) {
+                if (bitmaps[i] == null) continue;
+                convertInto(bitmaps[i], i);
+                classified++;
+            }
+            if (classified == 0) return 0;
+
+            outputBuffer.rewind();
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+
+            long nanosPerImage = (System.nanoTime() - start) / classified;
+            for (int i = 0; i < count; i++) {
+                if (bitmaps[i] == null) continue;
+                readOutput(i, results[i]);
+                results[i].inferenceTimeNanos = nanosPerImage;
+            }
+            return classified;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A converter for the loaded model that is not shared with the engine, so bitmaps can be
+     * converted on another thread for classifyTensor(). Null when no model is loaded.
+     */
+    public TensorConverter newConverter() {
+        lock.lock();
+        try {
+            if (interpreter == null) return null;
+            return new TensorConverter(converterFormat(inputDataType), inputWidth, inputHeight,
+                    converterScale, inputZeroPoint);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Classifies one image that is already in the input tensor layout, as written by a
+     * newConverter() converter. inferenceTimeNanos only covers the invoke. Returns false when no
+     * model is loaded or input does not fit it, as after a model swap.
+     */
+    public boolean classifyTensor(ByteBuffer input, Result result) {
+        lock.lock();
+        try {
+            if (interpreter == null || batchSize != 1 || input.capacity() != imageBytes) return false;
+            long start = System.nanoTime();
+
+            input.rewind();
+            outputBuffer.rewind();
+            inputs[0] = input;
+            try {
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            } finally {
+                inputs[0] = inputBuffer;
+            }
+            readOutput(0, result);
+
+            result.inferenceTimeNanos = System.nanoTime() - start;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the model runs times on the blank input, so lazy delegate and arena setup happen here
+     * instead of on the first real frame. Returns the time of the first run, 0 when no model is
+     * loaded.
+     */
+    public long warmUp(int runs) {
+        lock.lock();
+        try {
+            if (interpreter == null) return 0;
+            long first = 0;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                inputBuffer.rewind();
+                outputBuffer.rewind();
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+                if (i == 0) first = System.nanoTime() - start;
+            }
+            return first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Other sizes are resampled inside the converter, in the same pass as the normalization.
+    private void convertInto(Bitmap bitmap, int slot) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (pixels.length < width * height) pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        converter.convert(pixels, width, height, inputBuffer, slot * imageBytes);
+    }
+
+    // Dequantizes the output, applies softmax when it is not already a distribution, and picks the label.
+    private void readOutput(int slot, Result result) {
+        ByteBuffer buffer = outputBuffer;
+        int base = slot * outputBytes;
+        float maxLogit = -Float.MAX_VALUE;
+        float minLogit = Float.MAX_VALUE;
+
+        for (int i = 0; i < numClasses; i++) {
+            float logit;
+            if (outputDataType == DataType.FLOAT32) {
+                logit = buffer.getFloat(base + i * 4);
+            } else if (outputDataType == DataType.UINT8) {
+                logit = ((buffer.get(base + i) & 0xFF) - outputZeroPoint) * outputScale;
+            } else {
+                logit = (buffer.get(base + i) - outputZeroPoint) * outputScale;
+            }
+            logits[i] = logit;
+            if (logit > maxLogit) maxLogit = logit;
+            if (logit < minLogit) minLogit = logit;
+        }
+
+        if (maxLogit > 1.0f || minLogit < 0.0f) {
+            float sumExp = 0.0f;
+            for (int i = 0; i < numClasses; i++) {
+                logits[i] = (float) Math.exp(logits[i] - maxLogit);
+                sumExp += logits[i];
+            }
+            for (int i = 0; i < numClasses; i++) {
+                logits[i] /= sumExp;
+            }
+        }
+
+        if (result.probabilities.length != numClasses) {
+            result.probabilities = new float[numClasses];
+        }
+        int largest = 0;
+        for (int i = 0; i < numClasses; i++) {
+            result.probabilities[i] = logits[i];
+            if (logits[i] > logits[largest]) largest = i;
+        }
+        result.labelIndex = numClasses > 0 ? largest : -1;
+        result.confidence = numClasses > 0 ? logits[largest] : 0f;
+    }
+
+    private static TensorConverter.Format converterFormat(DataType dataType) {
+        switch (dataType) {
+            case FLOAT32:
+                return TensorConverter.Format.FLOAT32;
+            case INT8:
+                return TensorConverter.Format.INT8;
+            default:
+                return TensorConverter.Format.UINT8;
+        }
+    }
+
+    public boolean isLoaded() {
+        lock.lock();
+        try {
+            return interpreter != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public InterpreterConfig getConfig() {
+        return config;
+    }
+
+    // The model the interpreter runs, null when none is loaded.
+    public ByteBuffer getModelBuffer() {
+        return modelBuffer;
+    }
+
+    /**
+     * Rough memory held for the loaded model: the model buffer, the input and output buffers, and
+     * an arena of ARENA_ESTIMATE_FACTOR input tensors, since TFLite does not report its arena.
+     */
+    public long getMemoryEstimate() {
+        lock.lock();
+        try {
+            if (interpreter == null) return 0;
+            return modelBuffer.capacity() + inputBuffer.capacity() + outputBuffer.capacity()
+                    + (long) ARENA_ESTIMATE_FACTOR * imageBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public int[] getInputShape() {
+        return inputShape.clone();
+    }
+
+    public DataType getInputDataType() {
+        return inputDataType;
+    }
+
+    public DataType getOutputDataType() {
+        return outputDataType;
+    }
+
+    public float getInputScale() {
+        return inputScale;
+    }
+
+    public int getInputZeroPoint() {
+        return inputZeroPoint;
+    }
+
+    public float getOutputScale() {
+        return outputScale;
+    }
+
+    public int getOutputZeroPoint() {
+        return outputZeroPoint;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    // True when a quantized tensor came without scale and zero point, so 1.0 and 0 are assumed.
+    public boolean isMissingQuantParams() {
+        return missingQuantParams;
+    }
+
+    private void release() {
+        if (interpreter != null) {
+            interpreter.close();
+            interpreter = null;
+        }
+        modelBuffer = null;
+        converter = null;
+        inputs[0] = null;
+        outputs.clear();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.eintswavex.wastesorter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares one inference worker between several cameras. Every camera has a single pending slot
+ * (a newer job replaces the waiting one), and poll() serves the cameras round-robin, so a camera
+ * that submits faster than the others cannot starve them.
+ */
+public class InferenceScheduler<T> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Slot<T>> slots = new ArrayList<>();
+    private int nextSlot = 0;
+
+    private static class Slot<T> {
+        final String cameraId;
+        T pending;
+        long pendingSinceNanos;
+        long submitted = 0;
+        long replaced = 0;
+        long served = 0;
+        long totalWaitNanos = 0;
+
+        Slot(String cameraId) {
+            this.cameraId = cameraId;
+        }
+    }
+
+    /**
+     * Queues a job for the camera, returning the job it replaced (so the caller can recycle it)
+     * or null.
+     */
+    public T submit(String cameraId, T job) {
+        lock.lock();
+        try {
+            Slot<T> slot = findSlot(cameraId);
+            T replaced = slot.pending;
+            slot.pending = job;
+            slot.pendingSinceNanos = System.nanoTime();
+            slot.submitted++;
+            if (replaced != null) slot.replaced++;
+            return replaced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next pending job, starting from the camera after the one served last, or returns
+     * null when no camera has anything pending.
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            int count = slots.size();
+            for (int i = 0; i < count; i++) {
+                int index = (nextSlot + i) % count;
+                Slot<T> slot = slots.get(index);
+                if (slot.pending == null) continue;
+
+                T job = slot.pending;
+                slot.pending = null;
+                slot.served++;
+                slot.totalWaitNanos += System.nanoTime() - slot.pendingSinceNanos;
+                nextSlot = (index + 1) % count;
+                return job;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasPending() {
+        lock.lock();
+        try {
+            for (Slot<T> slot : slots) {
+                if (slot.pending != null) return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every pending job, handing each to the callback (may be null), and forgets the cameras.
+     */
+    public void clear(LatestFrameQueue.DropCallback<T> callback) {
+        lock.lock();
+        try {
+            for (Slot<T> slot : slots) {
+                if (slot.pending != null && callback != null) callback.onDropped(slot.pending);
+                slot.pending = null;
+            }
+            slots.clear();
+            nextSlot = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Slot<T> findSlot(String cameraId) {
+        for (Slot<T> slot : slots) {
+            if (slot.cameraId.equals(cameraId)) return slot;
+        }
+        Slot<T> slot = new Slot<>(cameraId);
+        slots.add(slot);
+        return slot;
+    }
+
+    public long getServedCount(String cameraId) {
+        lock.lock();
+        try {
+            for (Slot<T> slot : slots) {
+                if (slot.cameraId.equals(cameraId)) return slot.served;
+            }
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            StringBuilder summary = new StringBuilder();
+            for (Slot<T> slot : slots) {
+                if (summary.length() > 0) summary.append('\n');
+                summary.append(String.format(Locale.US, "%s: submitted %d, served %d, replaced %d, wait avg %.1f ms",
+                        slot.cameraId, slot.submitted, slot.served, slot.replaced,
+                        slot.served == 0 ? 0 : slot.totalWaitNanos / (slot.served * 1e6f)));
+            }
+            return summary.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.eintswavex.wastesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps loaded and warmed interpreters of recently used models, keyed by model name, so a model
+ * switch only has to put one in place. Least recently used entries are closed once the byte
+ * budget is exceeded. Loading and warming run on the cache's own thread for the async calls.
+ *
+ * take() hands an engine over to the caller, who gives it back with put() when done with it.
+ * An entry only serves a request for the config it was loaded with.
+ */
+public class InterpreterCache<E extends Closeable> implements Closeable {
+
+    public interface Loader<E> {
+        E load(String modelName, InterpreterConfig config) throws IOException;
+
+        long sizeOf(E engine);
+
+        // Runs the model once or twice, so the first real frame is not the slow one.
+        void warmUp(E engine);
+    }
+
+    // Called on the cache thread.
+    public interface Callback<E> {
+        void onReady(E engine, boolean hit, long loadNanos);
+
+        void onError(IOException e);
+    }
+
+    private static class Entry<E> {
+        final E engine;
+        final InterpreterConfig config;
+        final long bytes;
+
+        Entry(E engine, InterpreterConfig config, long bytes) {
+            this.engine = engine;
+            this.config = config;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry<E>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Loader<E> loader;
+    private final long budgetBytes;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Interpreter-Cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean closed;
+    private long residentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long prefetched;
+    private long loadNanos;
+
+    public InterpreterCache(long budgetBytes, Loader<E> loader) {
+        this.budgetBytes = budgetBytes;
+        this.loader = loader;
+    }
+
+    /**
+     * Removes the cached engine of modelName and returns it, or loads and warms one when there is
+     * none for config. The caller owns the engine until it is put() back.
+     */
+    public E take(String modelName, InterpreterConfig config) throws IOException {
+        lock.lock();
+        try {
+            Entry<E> entry = entries.remove(modelName);
+            if (entry != null) {
+                residentBytes -= entry.bytes;
+                if (entry.config.equals(config)) {
+                    hits++;
+                    return entry.engine;
+                }
+                closeQuietly(entry.engine);  // Loaded with another config
+            }
+            misses++;
+        } finally {
+            lock.unlock();
+        }
+
+        long start = System.nanoTime();
+        E engine = loadAndWarm(modelName, config);
+        long nanos = System.nanoTime() - start;
+        lock.lock();
+        try {
+            loadNanos += nanos;
+        } finally {
+            lock.unlock();
+        }
+        return engine;
+    }
+
+    // take() on the cache thread, after the loads queued before it.
+    public void takeAsync(String modelName, InterpreterConfig config, Callback<E> callback) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            boolean hit = contains(modelName, config);
+            E engine;
+            try {
+                engine = take(modelName, config);
+            } catch (IOException e) {
+                callback.onError(e);
+                return;
+            }
+            callback.onReady(engine, hit, System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * Caches engine as the most recently used one, closing the least recently used entries that
+     * no longer fit. Returns false when engine alone exceeds the budget or the cache is closed;
+     * it is closed then.
+     */
+    public boolean put(String modelName, InterpreterConfig config, E engine) {
+        long bytes = loader.sizeOf(engine);
+        List<E> closing = new ArrayList<>();
+        lock.lock();
+        try {
+            if (closed || bytes > budgetBytes) {
+                closing.add(engine);
+                return false;
+            }
+            Entry<E> previous = entries.put(modelName, new Entry<>(engine, config, bytes));
+            if (previous != null) {
+                residentBytes -= previous.bytes;
+                if (previous.engine != engine) closing.add(previous.engine);
+            }
+            residentBytes += bytes;
+
+            Iterator<Map.Entry<String, Entry<E>>> iterator = entries.entrySet().iterator();
+            while (residentBytes > budgetBytes && iterator.hasNext()) {
+                Map.Entry<String, Entry<E>> eldest = iterator.next();
+                if (eldest.getKey().equals(modelName)) continue;
+                iterator.remove();
+                residentBytes -= eldest.getValue().bytes;
+                closing.add(eldest.getValue().engine);
+                evictions++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+            for (E stale : closing) closeQuietly(stale);
+        }
+    }
+
+    /**
+     * Loads and warms the models that are not cached yet on the cache thread, in map order, as
+     * long as they fit next to what is cached. Never evicts, a model in use beats a guess.
+     */
+    public void prefetchAsync(Map<String, InterpreterConfig> models) {
+        for (Map.Entry<String, InterpreterConfig> model : models.entrySet()) {
+            executor.execute(() -> prefetch(model.getKey(), model.getValue()));
+        }
+    }
+
+    private void prefetch(String modelName, InterpreterConfig config) {
+        if (contains(modelName, config)) return;
+        E engine;
+        try {
+            engine = loadAndWarm(modelName, config);
+        } catch (IOException e) {
+            return;  // It loads again, with its error, when it is asked for
+        }
+        long bytes = loader.sizeOf(engine);
+        lock.lock();
+        try {
+            if (!closed && !entries.containsKey(modelName) && residentBytes + bytes <= budgetBytes) {
+                entries.put(modelName, new Entry<>(engine, config, bytes));
+                residentBytes += bytes;
+                prefetched++;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(engine);
+    }
+
+    private E loadAndWarm(String modelName, InterpreterConfig config) throws IOException {
+        E engine = loader.load(modelName, config);
+        try {
+            loader.warmUp(engine);
+        } catch (RuntimeException e) {
+            closeQuietly(engine);
+            throw new IOException("Warm-up of " + modelName + " failed: " + e.getMessage(), e);
+        }
+        return engine;
+    }
+
+    public boolean contains(String modelName, InterpreterConfig config) {
+        lock.lock();
+        try {
+            Entry<E> entry = entries.get(modelName);
+            return entry != null && entry.config.equals(config);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getResidentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Closes every cached engine; the ones taken stay with their callers.
+    public void clear() {
+        List<E> closing = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Entry<E> entry : entries.values()) closing.add(entry.engine);
+            entries.clear();
+            residentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+        for (E engine : closing) closeQuietly(engine);
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            return String.format(Locale.US, "%d cached (%s), %.1f of %.1f MB, %d hit/%d miss, %d prefetched, %d evicted, %.1f ms per load",
+                    entries.size(), String.join(", ", entries.keySet()), residentBytes / 1048576f, budgetBytes / 1048576f,
+                    hits, misses, prefetched, evictions, misses == 0 ? 0f : loadNanos / 1e6f / misses);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void closeQuietly(Closeable engine) {
+        try {
+            engine.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;  // Engines still loading are closed when they arrive
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdownNow();
+        clear();
+    }
+}
@@ -0,0 +1,124 @@
+package com.eintswavex.wastesorter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * How the TFLite interpreter of a model is set up: CPU thread count, whether the XNNPACK
+ * delegate is used, and whether float ops may run in FP16. Immutable; every model keeps its own
+ * config in SharedPreferences, so switching models restores what was tuned for each.
+ */
+public class InterpreterConfig {
+    private static final String TAG = "InterpreterConfig";
+    private static final String PREFS_NAME = "InterpreterConfig";
+
+    public static final int THREADS_AUTO = -1;  // Let TFLite decide
+    public static final int MAX_THREADS = 8;
+
+    private final int numThreads;
+    private final boolean useXnnpack;
+    private final boolean allowFp16;
+    private transient String label;  // getLabel(), built on first use
+
+    public InterpreterConfig(int numThreads, boolean useXnnpack, boolean allowFp16) {
+        this.numThreads = numThreads <= 0 ? THREADS_AUTO : Math.min(numThreads, MAX_THREADS);
+        this.useXnnpack = useXnnpack;
+        this.allowFp16 = allowFp16;
+    }
+
+    // What new Interpreter(buffer) does without options.
+    public static InterpreterConfig defaults() {
+        return new InterpreterConfig(THREADS_AUTO, true, false);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean isUseXnnpack() {
+        return useXnnpack;
+    }
+
+    public boolean isAllowFp16() {
+        return allowFp16;
+    }
+
+    public InterpreterConfig withNumThreads(int numThreads) {
+        return new InterpreterConfig(numThreads, useXnnpack, allowFp16);
+    }
+
+    public InterpreterConfig withXnnpack(boolean useXnnpack) {
+        return new InterpreterConfig(numThreads, useXnnpack, allowFp16);
+    }
+
+    public InterpreterConfig withFp16(boolean allowFp16) {
+        return new InterpreterConfig(numThreads, useXnnpack, allowFp16);
+    }
+
+    public Interpreter.Options toOptions() {
+        return new Interpreter.Options()
+                .setNumThreads(numThreads)
+                .setUseXNNPACK(useXnnpack)
+                .setAllowFp16PrecisionForFp32(allowFp16);
+    }
+
+    /**
+     * Short form for the metrics line, e.g. "4T XNNPACK FP16" or "auto CPU".
+     */
+    public String getLabel() {
+        if (label == null) {
+            label = String.format(Locale.US, "%s %s%s",
+                    numThreads == THREADS_AUTO ? "auto" : numThreads + "T",
+                    useXnnpack ? "XNNPACK" : "CPU",
+                    allowFp16 ? " FP16" : "");
+        }
+        return label;
+    }
+
+    public static InterpreterConfig load(Context context, String modelName) {
+        String json = prefs(context).getString(modelName, null);
+        if (json == null) return defaults();
+        try {
+            InterpreterConfig config = new Gson().fromJson(json, InterpreterConfig.class);
+            return config != null ? new InterpreterConfig(config.numThreads, config.useXnnpack, config.allowFp16) : defaults();
+        } catch (JsonSyntaxException e) {
+            Log.w(TAG, "Ignoring unreadable config for " + modelName + ": " + e.getMessage());
+            return defaults();
+        }
+    }
+
+    public void save(Context context, String modelName) {
+        prefs(context).edit().putString(modelName, new Gson().toJson(this)).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InterpreterConfig)) return false;
+        InterpreterConfig other = (InterpreterConfig) o;
+        return numThreads == other.numThreads && useXnnpack == other.useXnnpack && allowFp16 == other.allowFp16;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(numThreads, useXnnpack, allowFp16);
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+}
@@ -0,0 +1,321 @@
+package com.eintswavex.wastesorter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs up to MAX_WORKERS InferenceEngines of the same model side by side. Every engine maps the
+ * same model buffer, so the weights exist once and each worker only adds its own tensor arena.
+ * submit() hands a bitmap to the next free engine and the callbacks come back in submission
+ * order, whichever worker finishes first.
+ *
+ * The loaded model, its primary engine and workers, sits in a ModelSlot. install() swaps in a new
+ * one without waiting: jobs already running finish on the previous model, later jobs run on the
+ * new one, and the previous model is retired once its last user released it. The primary answers
+ * the model questions (input size, types, config) and can be used directly, with a reference
+ * from acquire() around the classification.
+ */
+public class InterpreterPool implements Closeable {
+    private static final String TAG = "InterpreterPool";
+    private static final String PREFS_NAME = "InterpreterPool";
+    private static final String KEY_WORKERS = "workers";
+
+    public static final int MAX_WORKERS = 4;
+    private static final int JOB_POOL_SIZE = MAX_WORKERS * 2;
+
+    /**
+     * Called in submission order on a worker thread. success is false when no model was loaded
+     * or classification failed; result is the one passed to submit().
+     */
+    public interface Callback {
+        void onClassified(InferenceEngine.Result result, boolean success);
+    }
+
+    /**
+     * Receives the primary engine of a retired model once nothing uses it anymore, on the thread
+     * of the last user. Without a listener the engine is closed.
+     */
+    public interface RetireListener {
+        void onRetired(ModelHandle<Model> handle, InferenceEngine primary);
+    }
+
+    // One loaded model: the primary and the extra workers built from its buffer.
+    public static class Model {
+        private final InferenceEngine primary;
+        private final InterpreterConfig config;
+        private final List<InferenceEngine> engines;
+        private final BlockingQueue<InferenceEngine> idle = new ArrayBlockingQueue<>(MAX_WORKERS);
+
+        Model(InferenceEngine primary, InterpreterConfig config, List<InferenceEngine> engines) {
+            this.primary = primary;
+            this.config = config;
+            this.engines = Collections.unmodifiableList(engines);
+            idle.addAll(engines);
+        }
+
+        public InferenceEngine getPrimary() {
+            return primary;
+        }
+
+        // The config as requested, before the cores were split between workers.
+        public InterpreterConfig getConfig() {
+            return config;
+        }
+
+        public int getWorkerCount() {
+            return engines.size();
+        }
+    }
+
+    // Reused through freeJobs once its callback has been delivered.
+    private class Job implements Runnable {
+        long sequence;
+        Bitmap source;
+        InferenceEngine.Result result;
+        Callback callback;
+        boolean success;
+
+        @Override
+        public void run() {
+            InterpreterPool.this.run(this);
+        }
+    }
+
+    private final ModelSlot<Model> slot = new ModelSlot<>();
+    private final InferenceEngine empty = new InferenceEngine();  // Stands in before the first model
+    private final ExecutorService workers = Executors.newFixedThreadPool(MAX_WORKERS, runnable -> {
+        Thread thread = new Thread(runnable, "Inference-Worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Resequencer<Job> resequencer = new Resequencer<>((sequence, job) -> deliver(job));
+    private final BlockingQueue<Job> freeJobs = new ArrayBlockingQueue<>(JOB_POOL_SIZE);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile Runnable idleListener;
+    private volatile RetireListener retireListener;
+
+    /**
+     * Loads the model into workerCount new engines and installs them. With THREADS_AUTO the
+     * cores are split between the workers instead of every interpreter claiming all of them.
+     */
+    public void load(ByteBuffer modelBuffer, InterpreterConfig config, int workerCount) throws IOException {
+        InferenceEngine primary = new InferenceEngine();
+        try {
+            primary.load(modelBuffer, workerConfig(config, workerCount));
+        } catch (IOException e) {
+            primary.close();
+            throw e;
+        }
+        install("model", primary, config, workerCount);
+    }
+
+    /**
+     * Makes primary, loaded with workerConfig(config, workerCount), the pool's model once the
+     * other workers are loaded from its buffer. Does not wait for running classifications; the
+     * previous model goes to the retire listener when they are done. Returns the time the swap
+     * itself took.
+     */
+    public long install(String modelName, InferenceEngine primary, InterpreterConfig config, int workerCount) {
+        int count = Math.max(1, Math.min(workerCount, MAX_WORKERS));
+        List<InferenceEngine> engines = new ArrayList<>();
+        engines.add(primary);
+        for (int i = 1; i < count; i++) {
+            InferenceEngine engine = new InferenceEngine();
+            try {
+                engine.load(primary.getModelBuffer(), primary.getConfig());
+                engines.add(engine);
+            } catch (IOException e) {
+                // Out of memory for another arena, say; the pool just stays smaller.
+                engine.close();
+                Log.w(TAG, "[POOL] Worker " + i + " not loaded: " + e.getMessage());
+                break;
+            }
+        }
+
+        Model model = new Model(primary, config, engines);
+        long start = System.nanoTime();
+        slot.swap(new ModelHandle<>(modelName, model, this::retire));
+        long swapNanos = System.nanoTime() - start;
+        Log.d(TAG, String.format(Locale.US, "[POOL] %s installed in %.3f ms, %d worker(s), %s each",
+                modelName, swapNanos / 1e6f, engines.size(), primary.getConfig().getLabel()));
+        return swapNanos;
+    }
+
+    private void retire(ModelHandle<Model> handle) {
+        Model model = handle.get();
+        for (InferenceEngine engine : model.engines) {
+            if (engine != model.primary) engine.close();
+        }
+        Log.d(TAG, String.format(Locale.US, "[POOL] %s retired after %d frame(s), drained %.1f ms after the swap",
+                handle.getName(), handle.getFrames(), handle.getDrainNanos() / 1e6f));
+        RetireListener listener = retireListener;
+        if (listener != null) {
+            listener.onRetired(handle, model.primary);
+        } else {
+            model.primary.close();
+        }
+    }
+
+    public void setRetireListener(RetireListener listener) {
+        retireListener = listener;
+    }
+
+    // With THREADS_AUTO and more than one worker, the cores split between the workers.
+    public static InterpreterConfig workerConfig(InterpreterConfig config, int workerCount) {
+        int count = Math.max(1, Math.min(workerCount, MAX_WORKERS));
+        if (count > 1 && config.getNumThreads() == InterpreterConfig.THREADS_AUTO) {
+            return config.withNumThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / count));
+        }
+        return config;
+    }
+
+    /**
+     * The current model with a reference held, null before the first install(). Release it once
+     * done with its engines, which stay open until then even when another model is installed.
+     */
+    public ModelHandle<Model> acquire() {
+        return slot.acquire();
+    }
+
+    /**
+     * The current primary for model questions, an unloaded engine before the first install().
+     * It may be retired at any time, so classifications go through acquire().
+     */
+    public InferenceEngine getPrimary() {
+        ModelHandle<Model> handle = slot.peek();
+        return handle != null ? handle.get().primary : empty;
+    }
+
+    public String getModelName() {
+        ModelHandle<Model> handle = slot.peek();
+        return handle != null ? handle.getName() : null;
+    }
+
+    // The config as requested, before the cores were split between workers.
+    public InterpreterConfig getConfig() {
+        ModelHandle<Model> handle = slot.peek();
+        return handle != null ? handle.get().config : InterpreterConfig.defaults();
+    }
+
+    public int getWorkerCount() {
+        ModelHandle<Model> handle = slot.peek();
+        return handle != null ? handle.get().engines.size() : 1;
+    }
+
+    /**
+     * Claims a free worker, atomically, so dispatchers on several threads never oversubscribe the
+     * pool. Follow with submitReserved(), or cancelReservation() when there is nothing to submit.
+     */
+    public boolean tryReserve() {
+        while (true) {
+            int count = inFlight.get();
+            if (count >= getWorkerCount()) return false;
+            if (inFlight.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    public void cancelReservation() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Runs after each job has freed its worker, before its callback may be delivered. Lets a
+     * dispatcher feed the pool from its own queue.
+     */
+    public void setIdleListener(Runnable listener) {
+        idleListener = listener;
+    }
+
+    /**
+     * Classifies source into result on the next free worker of the model that is current when
+     * the job starts. The callback is delivered after the callbacks of every earlier submission.
+     */
+    public void submit(Bitmap source, InferenceEngine.Result result, Callback callback) {
+        inFlight.incrementAndGet();
+        submitReserved(source, result, callback);
+    }
+
+    // submit() on the worker claimed with tryReserve().
+    public void submitReserved(Bitmap source, InferenceEngine.Result result, Callback callback) {
+        Job job = freeJobs.poll();
+        if (job == null) job = new Job();
+        job.source = source;
+        job.result = result;
+        job.callback = callback;
+        job.success = false;
+        job.sequence = resequencer.next();
+        workers.execute(job);
+    }
+
+    private void run(Job job) {
+        ModelHandle<Model> handle = slot.acquire();
+        InferenceEngine engine = null;
+        try {
+            if (handle != null) {
+                engine = handle.get().idle.take();
+                job.success = engine.classify(job.source, job.result);
+                if (job.success) handle.countFrame();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "[POOL] Inference failed: " + e.getMessage(), e);
+        } finally {
+            if (engine != null) handle.get().idle.add(engine);
+            if (handle != null) handle.release();
+            inFlight.decrementAndGet();
+        }
+
+        Runnable listener = idleListener;
+        if (listener != null) listener.run();
+        resequencer.complete(job.sequence, job);
+    }
+
+    // Recycles the job before the callback, which may well submit the next one.
+    private void deliver(Job job) {
+        Callback callback = job.callback;
+        InferenceEngine.Result result = job.result;
+        boolean success = job.success;
+        job.source = null;
+        job.result = null;
+        job.callback = null;
+        freeJobs.offer(job);
+        callback.onClassified(result, success);
+    }
+
+    public String getStatsSummary() {
+        ModelHandle<Model> handle = slot.peek();
+        return String.format(Locale.US, "%s, %d worker(s), %d frame(s), in flight %d, %s",
+                handle != null ? handle.getName() : "no model", getWorkerCount(),
+                handle != null ? handle.getFrames() : 0, inFlight.get(), resequencer.getStatsSummary());
+    }
+
+    public static int loadWorkerCount(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getInt(KEY_WORKERS, 1);
+    }
+
+    public static void saveWorkerCount(Context context, int workerCount) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().putInt(KEY_WORKERS, workerCount).apply();
+    }
+
+    // Retires the model; its engines close once the jobs still running are done.
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        slot.swap(null);
+    }
+}
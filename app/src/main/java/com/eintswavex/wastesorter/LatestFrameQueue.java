@@ -0,0 +1,255 @@
+package com.eintswavex.wastesorter;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded hand-off queue that keeps only the newest N items. Offering into a full queue drops
+ * the oldest pending item, so consumers that fall behind skip stale frames instead of queueing
+ * them up.
+ */
+public class LatestFrameQueue<T> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private Object[] items;
+    private long[] enqueueTimes;
+    private int head = 0;
+    private int count = 0;
+
+    private long offeredCount = 0;
+    private long droppedCount = 0;
+    private long takenCount = 0;
+    private long totalQueueAgeNanos = 0;
+    private long maxQueueAgeNanos = 0;
+    private long lastQueueAgeNanos = 0;
+
+    public LatestFrameQueue(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        items = new Object[capacity];
+        enqueueTimes = new long[capacity];
+    }
+
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return items.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the capacity, keeping the newest pending items.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        lock.lock();
+        try {
+            if (capacity == items.length) return;
+
+            Object[] newItems = new Object[capacity];
+            long[] newTimes = new long[capacity];
+            int skip = Math.max(0, count - capacity);
+            int kept = count - skip;
+            for (int i = 0; i < kept; i++) {
+                int index = (head + skip + i) % items.length;
+                newItems[i] = items[index];
+                newTimes[i] = enqueueTimes[index];
+            }
+            droppedCount += skip;
+            items = newItems;
+            enqueueTimes = newTimes;
+            head = 0;
+            count = kept;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item, returning the stale item it displaced (so the caller can recycle it) or null.
+     */
+    @SuppressWarnings("unchecked")
+    public T offer(T item) {
+        lock.lock();
+        try {
+            offeredCount++;
+            T dropped = null;
+            if (count == items.length) {
+                dropped = (T) items[head];
+                items[head] = null;
+                head = (head + 1) % items.length;
+                count--;
+                droppedCount++;
+            }
+
+            int tail = (head + count) % items.length;
+            items[tail] = item;
+            enqueueTimes[tail] = System.nanoTime();
+            count++;
+            notEmpty.signal();
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest pending item, or returns null if the queue is empty.
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T dequeue() {
+        T item = (T) items[head];
+        long age = System.nanoTime() - enqueueTimes[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        count--;
+
+        takenCount++;
+        lastQueueAgeNanos = age;
+        totalQueueAgeNanos += age;
+        if (age > maxQueueAgeNanos) maxQueueAgeNanos = age;
+        return item;
+    }
+
+    /**
+     * Empties the queue, handing every pending item to the given callback (may be null).
+     */
+    @SuppressWarnings("unchecked")
+    public void clear(DropCallback<T> callback) {
+        lock.lock();
+        try {
+            while (count > 0) {
+                T item = (T) items[head];
+                items[head] = null;
+                head = (head + 1) % items.length;
+                count--;
+                if (callback != null) callback.onDropped(item);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public interface DropCallback<T> {
+        void onDropped(T item);
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return count == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getOfferedCount() {
+        lock.lock();
+        try {
+            return offeredCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float getAverageQueueAgeMs() {
+        lock.lock();
+        try {
+            return takenCount == 0 ? 0 : totalQueueAgeNanos / (takenCount * 1e6f);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float getMaxQueueAgeMs() {
+        lock.lock();
+        try {
+            return maxQueueAgeNanos / 1e6f;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float getLastQueueAgeMs() {
+        lock.lock();
+        try {
+            return lastQueueAgeNanos / 1e6f;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resetStats() {
+        lock.lock();
+        try {
+            offeredCount = 0;
+            droppedCount = 0;
+            takenCount = 0;
+            totalQueueAgeNanos = 0;
+            maxQueueAgeNanos = 0;
+            lastQueueAgeNanos = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            float dropRate = offeredCount == 0 ? 0 : droppedCount * 100f / offeredCount;
+            return String.format(Locale.US, "offered %d, dropped %d (%.1f%%), queue age avg %.1f ms / max %.1f ms",
+                    offeredCount, droppedCount, dropRate,
+                    takenCount == 0 ? 0 : totalQueueAgeNanos / (takenCount * 1e6f), maxQueueAgeNanos / 1e6f);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
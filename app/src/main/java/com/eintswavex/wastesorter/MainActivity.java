@@ -4,7 +4,6 @@ import static android.os.Build.VERSION.SDK_INT;
 
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
-import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.content.res.ColorStateList;
 import android.content.Intent;
@@ -16,6 +15,8 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.view.Window;
@@ -46,27 +47,24 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.crashlytics.buildtools.reloc.com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 
-import org.tensorflow.lite.DataType;
-import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.Tensor;
-
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Condition;
@@ -86,21 +84,19 @@ public class MainActivity extends AppCompatActivity {
     private ProgressBar plasticProgressBar, paperProgressBar, metalProgressBar;
     private ImageView camView, rawView;
     private TextView camViewHint, rawViewHint;
-    private Button btnStart, btnPause, btnStop, btnRestart, btnClearLog, btnViewGraph, btnClearFirebase;
+    private Button btnStart, btnPause, btnStop, btnRestart, btnClearLog, btnViewGraph, btnClearFirebase, btnRetune, btnMeasureScaling, btnTuneBatch, btnCascadeStats;
     private RadioButton radioSingle, radioTemporal;
-    private Spinner modelSpinner, modeSpinner, datasetSpinner;
+    private Spinner modelSpinner, modeSpinner, datasetSpinner, threadsSpinner, latencyBudgetSpinner, workersSpinner, batchSpinner, cascadeSpinner, ensembleSpinner, ensembleModeSpinner;
     private SeekBar confidenceSlider, framesSlider, intervalSlider;
     private TextView confidenceValueText, framesValueText, intervalValueText;
-    private CheckBox debugCheckBox;
+    private CheckBox debugCheckBox, recordCheckBox, xnnpackCheckBox, fp16CheckBox;
 
     private List<String> imagePaths;
-    private Interpreter interpreter;
-    private int inputWidth, inputHeight;
+    // ESP32 frames go through the pool's workers; the primary engine also serves the simulation
+    // and describes the loaded model. Models are swapped in while sessions keep running.
+    private final InterpreterPool interpreterPool = new InterpreterPool();
     public static String currentModelName;
     private String selectedDataset;
-    private DataType inputDataType, outputDataType;
-    private float outputScale;
-    private int outputZeroPoint;
     private ProbabilityHistory probabilityHistory;
     private boolean finishedInference = false;
 
@@ -130,27 +126,124 @@ public class MainActivity extends AppCompatActivity {
     private float[] paperBarColor = COLOR_RED;
     private float[] metalBarColor = COLOR_RED;
 
-    private static final Pattern IP_ADDRESS = Pattern.compile("((25[0-5]|2[0-4][0-9]|[0-1][0-9]{2}|[1-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[0-1][0-9]{2}|[1-9][0-9]?)");
+    // Thread counts offered by threadsSpinner, in the order of R.array.threads_array
+    private static final int[] THREAD_CHOICES = {InterpreterConfig.THREADS_AUTO, 1, 2, 3, 4, 6, 8};
+    // Matches latency_budget_array, 0 = most accurate
+    private static final int[] LATENCY_BUDGETS_MS = {0, 10, 20, 30, 50, 100};
+    private ModelTuner modelTuner;
+    // Matches batch_array: per image, tuned, then fixed sizes
+    private static final int BATCH_TUNED = 0;
+    private static final int[] BATCH_SPINNER_CHOICES = {1, BATCH_TUNED, 2, 4, 8, 16, 32};
+    private static final int DEFAULT_BATCH_SIZE = 8;
+    // Matches cascade_array: input sizes of the models, cheapest first; none = off
+    private static final int[][] CASCADE_CHOICES = {{}, {96, 160}, {96, 240}, {96, 160, 240}};
+    private final CachedEngines cascadeEngines = new CachedEngines();  // Executor thread only
+    private volatile int cascadeLoadGeneration;  // A newer loadCascade() drops the older one's result
+    private volatile Cascade<SimulationFrame> cascade;
+    private volatile TensorConverter cascadeInputConverter;   // Of the first model, for the tensors
+    private volatile TensorConverter cascadeDecodeConverter;  // Of the largest model, for decoding
+    // Matches ensemble_array: input sizes of the members; none = off
+    private static final int[][] ENSEMBLE_CHOICES = {{}, {96, 240}, {160, 240}, {96, 160, 240}, {96, 128, 160, 240}};
+    // Matches ensemble_mode_array
+    private static final Ensemble.Mode[] ENSEMBLE_MODES = {Ensemble.Mode.WEIGHTED_AVERAGE, Ensemble.Mode.MAJORITY_VOTE};
+    private final CachedEngines ensembleEngines = new CachedEngines();  // Executor thread only
+    private Ensemble<Bitmap> loadedEnsemble;  // Executor thread only, published as ensemble when ready
+    private volatile int ensembleLoadGeneration;
+    private volatile Ensemble<Bitmap> ensemble;
+    private volatile TensorConverter ensembleDecodeConverter;  // Of the largest member, for decoding
+    // Loaded and warmed interpreters of recent models; switching takes one from here
+    private static final long INTERPRETER_CACHE_BYTES = 32L << 20;
+    private static final int WARMUP_RUNS = 2;
+    private InterpreterCache<InferenceEngine> interpreterCache;
+    private volatile int modelLoadGeneration = 0;  // A newer loadModel() drops the older one's result
+    private final List<String> modelNames = new ArrayList<>();
+    // Cold start to first label; only the first activity of the process counts from process start
+    private static boolean processLaunched;
+    private StartupMetrics startupMetrics;
+
+    private static final Pattern IP_ADDRESS = Pattern.compile("((25[0-5]|2[0-4][0-9]|[0-1][0-9]{2}|[1-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[0-1][0-9]{2}|[1-9][0-9]?)(:[0-9]{1,5})?");
 
     private volatile Bitmap latestBitmap;
-    private volatile String latestLabel = null;
-    private volatile float latestConfidence = 0.0f;
-    private volatile float[] latestProbabilities = null;
+    private volatile InferenceEngine.Result latestResult = null;
     private volatile long latestInferenceTime;
     private volatile float latestFps;
     private FirebaseHelper firebaseHelper;
-    private long lastInferenceTime = 0;
+    private final Map<String, Long> lastInferenceTimes = new HashMap<>();  // Per camera, UI thread only
+    private final InferenceScheduler<Esp32InferenceJob> inferenceScheduler = new InferenceScheduler<>();
+    // Results handed to the UI thread come back here. FIFO, so a released result is only reused
+    // after RESULT_POOL_SIZE - 1 newer ones, long after the UI finished reading it.
+    private static final int RESULT_POOL_SIZE = InterpreterPool.MAX_WORKERS + 4;
+    private final ArrayBlockingQueue<InferenceEngine.Result> freeResults = new ArrayBlockingQueue<>(RESULT_POOL_SIZE);
+    // ESP32 jobs are reused the same way: one waiting per camera, the rest in the pool or on the UI thread.
+    private final ArrayBlockingQueue<Esp32InferenceJob> freeEsp32Jobs = new ArrayBlockingQueue<>(RESULT_POOL_SIZE);
+    private final StringBuilder esp32Text = new StringBuilder();  // Per-frame texts, UI thread only
+
+    // Per-image simulation, see runPipelinedSimulation()
+    private static final int PIPELINE_SLOTS = 6;
+    private static final int PIPELINE_REPORT_EVERY = 100;
+    private volatile StagedPipeline<SimulationFrame> simulationPipeline;
+    private static final long PIPELINE_STOP_TIMEOUT_MS = 5000;
+    private StagedPipeline<SimulationFrame> stoppedPipeline;  // UI thread, until its threads are joined
+    private boolean stopPending;  // UI thread; a stopped run may still be finishing its current image
+    private final TensorCache tensorCache = new TensorCache(Runtime.getRuntime().maxMemory() / 4);
+    private DatasetPacker datasetPacker;
+    private volatile DatasetPack datasetPack;  // For the loaded model, null while it is built
+
+    // Engines a cascade or ensemble took from interpreterCache, given back together.
+    private static class CachedEngines {
+        final List<String> modelNames = new ArrayList<>();
+        final List<InterpreterConfig> configs = new ArrayList<>();
+        final List<InferenceEngine> engines = new ArrayList<>();
+
+        InferenceEngine take(InterpreterCache<InferenceEngine> cache, String modelName, InterpreterConfig config) throws IOException {
+            InferenceEngine engine = cache.take(modelName, config);
+            modelNames.add(modelName);
+            configs.add(config);
+            engines.add(engine);
+            return engine;
+        }
+
+        InferenceEngine last() {
+            return engines.get(engines.size() - 1);
+        }
+
+        // Nothing may use the engines anymore; the cache keeps them warm or closes them.
+        void release(InterpreterCache<InferenceEngine> cache) {
+            for (int i = 0; i < engines.size(); i++) cache.put(modelNames.get(i), configs.get(i), engines.get(i));
+            modelNames.clear();
+            configs.clear();
+            engines.clear();
+        }
+    }
+
+    private static class SimulationFrame {
+        int index;
+        String path;
+        Bitmap bitmap;
+        ByteBuffer input;  // Tensor layout, allocated once per slot
+        TensorConverter converter;  // The one input was or will be written with
+        ModelHandle<InterpreterPool.Model> preparedFor;  // Pool model input was converted for, null with a cascade or ensemble
+        String cacheKey;
+        boolean preprocessed;  // input came from the pack or tensor cache, bitmap is a preview
+        int decidedBy;         // Cascade stage that gave the result
+        InferenceEngine.Result result;
+        long workNanos;    // Decode, preprocess and inference, without the queue waits
+    }
+    private String previewCameraId = ESP32CameraHelper.DEFAULT_CAMERA_ID;  // Camera shown in camView
+    private CameraFrame displayedCameraFrame;  // UI thread only
+    private CameraFrame displayedInferenceFrame;  // UI thread only, shown in rawView
 
     private final Runnable uiUpdater = new Runnable() {
         @Override
         public void run() {
             if (!isRunning || isPaused) return;
 
+            InferenceEngine.Result result = latestResult;
             updateUI(
                     latestBitmap,
-                    latestLabel,
-                    latestConfidence,
-                    latestProbabilities,
+                    result != null ? wasteTypes[result.labelIndex] : null,
+                    result != null ? result.confidence : 0.0f,
+                    result != null ? result.probabilities : null,
                     latestInferenceTime,
                     latestFps
             );
@@ -162,6 +255,11 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        boolean cold = !processLaunched;
+        processLaunched = true;
+        startupMetrics = new StartupMetrics(cold ? Process.getStartElapsedRealtime() * 1_000_000L : SystemClock.elapsedRealtimeNanos(),
+                cold, this::onStartupPhase);
+        startupMetrics.mark(StartupMetrics.Phase.CREATED, SystemClock.elapsedRealtimeNanos());
 
         requestWindowFeature(Window.FEATURE_NO_TITLE);
         getWindow().setFlags(
@@ -172,6 +270,45 @@ public class MainActivity extends AppCompatActivity {
 
         setContentView(R.layout.activity_main);
         setupFullscreen();
+        // A post from here runs right after the first traversal, so after the first frame is drawn.
+        getWindow().getDecorView().post(() -> startupMetrics.mark(StartupMetrics.Phase.FIRST_DRAW, SystemClock.elapsedRealtimeNanos()));
+
+        modelTuner = new ModelTuner(this);
+        datasetPacker = new DatasetPacker(this);
+        interpreterCache = new InterpreterCache<>(INTERPRETER_CACHE_BYTES, new InterpreterCache.Loader<InferenceEngine>() {
+            @Override
+            public InferenceEngine load(String modelName, InterpreterConfig config) throws IOException {
+                InferenceEngine engine = new InferenceEngine();
+                try {
+                    engine.load(InferenceEngine.mapModel(getAssets(), modelName),
+                            InterpreterPool.workerConfig(config, InterpreterPool.loadWorkerCount(MainActivity.this)));
+                } catch (IOException e) {
+                    engine.close();
+                    throw e;
+                }
+                return engine;
+            }
+
+            @Override
+            public long sizeOf(InferenceEngine engine) {
+                return engine.getMemoryEstimate();
+            }
+
+            @Override
+            public void warmUp(InferenceEngine engine) {
+                long start = System.nanoTime();
+                long firstNanos = engine.warmUp(WARMUP_RUNS);
+                Log.d(TAG, String.format(Locale.US, "[MODEL] Warm-up %dx%d: first invoke %.1f ms, %d runs %.1f ms",
+                        engine.getInputWidth(), engine.getInputHeight(), firstNanos / 1e6f, WARMUP_RUNS, (System.nanoTime() - start) / 1e6f));
+            }
+        });
+        interpreterPool.setIdleListener(this::dispatchEsp32Inference);
+        // The model a swap replaced, once its last frame is done; kept warm for switching back.
+        interpreterPool.setRetireListener((handle, primary) -> {
+            updateDebugLog(String.format(Locale.US, "[MODEL] %s retired: served %d frame(s), released %.1f ms after the swap\n",
+                    handle.getName(), handle.getFrames(), handle.getDrainNanos() / 1e6f));
+            interpreterCache.put(handle.getName(), handle.get().getConfig(), primary);
+        });
 
         setupViews();
         setupBottomSheet();
@@ -188,6 +325,8 @@ public class MainActivity extends AppCompatActivity {
         setupFirebaseListeners();
 
         esp32CameraHelper = ESP32CameraHelper.getInstance();
+        File filesDir = getExternalFilesDir(null);
+        esp32CameraHelper.setRecordingDirectory(new File(filesDir != null ? filesDir : getFilesDir(), "recordings"));
 
         updateButtonStates(State.IDLE);
         updateHints("Simulation"); // Set initial hint state
@@ -197,6 +336,17 @@ public class MainActivity extends AppCompatActivity {
         updateDebugLog("[INFO] Waste Sorter started!\n");
     }
 
+    private void onStartupPhase(StartupMetrics.Phase phase, long millis) {
+        Log.d(TAG, String.format(Locale.US, "[STARTUP] %s %d ms after %s", phase.getLabel(), millis,
+                startupMetrics.isCold() ? "process start" : "onCreate"));
+        if (phase == StartupMetrics.Phase.INTERACTIVE) {
+            reportFullyDrawn();
+            updateDebugLog(String.format(Locale.US, "[STARTUP] Time to interactive: %d ms\n    %s\n", millis, startupMetrics.getSummary()));
+        } else if (phase == StartupMetrics.Phase.FIRST_LABEL) {
+            updateDebugLog(String.format(Locale.US, "[STARTUP] Time to first inference: %d ms\n    %s\n", millis, startupMetrics.getSummary()));
+        }
+    }
+
     @Override
     public void onWindowFocusChanged(boolean hasFocus) {
         super.onWindowFocusChanged(hasFocus);
@@ -211,11 +361,35 @@ public class MainActivity extends AppCompatActivity {
         setupFullscreen();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (esp32CameraHelper != null) {
+            esp32CameraHelper.setPreviewEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Nothing shows the preview while we are in the background, inference keeps running on model-sized frames.
+        if (esp32CameraHelper != null) {
+            esp32CameraHelper.setPreviewEnabled(false);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
+        // Loads still queued drop their engines, the ones in use go back to the closed cache.
+        cascadeLoadGeneration++;
+        ensembleLoadGeneration++;
         if (executor != null && !executor.isShutdown()) {
+            executor.execute(() -> {
+                cascadeEngines.release(interpreterCache);
+                releaseEnsemble();
+            });
             executor.shutdown();
         }
         if (firebaseHelper != null) {
@@ -224,6 +398,18 @@ public class MainActivity extends AppCompatActivity {
         if (esp32CameraHelper != null) {
             esp32CameraHelper.cleanup();
         }
+        interpreterPool.close();
+        modelTuner.shutdown();
+        datasetPacker.shutdown();
+        interpreterCache.close();
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        tensorCache.clear();
+        interpreterCache.clear();
+        Log.w(TAG, "[CACHE] Low memory, tensor and interpreter caches cleared");
     }
 
     private void setupFullscreen() {
@@ -306,6 +492,20 @@ public class MainActivity extends AppCompatActivity {
         framesValueText = findViewById(R.id.frames_value_text);
         intervalValueText = findViewById(R.id.interval_value_text);
         debugCheckBox = findViewById(R.id.checkbox_debug);
+        recordCheckBox = findViewById(R.id.checkbox_record);
+        threadsSpinner = findViewById(R.id.threads_spinner);
+        xnnpackCheckBox = findViewById(R.id.checkbox_xnnpack);
+        fp16CheckBox = findViewById(R.id.checkbox_fp16);
+        latencyBudgetSpinner = findViewById(R.id.latency_budget_spinner);
+        btnRetune = findViewById(R.id.btn_retune);
+        workersSpinner = findViewById(R.id.workers_spinner);
+        btnMeasureScaling = findViewById(R.id.btn_measure_scaling);
+        batchSpinner = findViewById(R.id.batch_spinner);
+        btnTuneBatch = findViewById(R.id.btn_tune_batch);
+        cascadeSpinner = findViewById(R.id.cascade_spinner);
+        btnCascadeStats = findViewById(R.id.btn_cascade_stats);
+        ensembleSpinner = findViewById(R.id.ensemble_spinner);
+        ensembleModeSpinner = findViewById(R.id.ensemble_mode_spinner);
     }
 
     private void setupBottomSheet() {
@@ -350,6 +550,40 @@ public class MainActivity extends AppCompatActivity {
         datasetAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         datasetSpinner.setAdapter(datasetAdapter);
 
+        ArrayAdapter<CharSequence> threadsAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.threads_array));
+        threadsAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        threadsSpinner.setAdapter(threadsAdapter);
+        showInterpreterConfig(InterpreterConfig.defaults());
+
+        ArrayAdapter<CharSequence> budgetAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.latency_budget_array));
+        budgetAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        latencyBudgetSpinner.setAdapter(budgetAdapter);
+        ArrayAdapter<CharSequence> workersAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.workers_array));
+        workersAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        workersSpinner.setAdapter(workersAdapter);
+        workersSpinner.setSelection(InterpreterPool.loadWorkerCount(this) - 1);
+
+        ArrayAdapter<CharSequence> batchAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.batch_array));
+        batchAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        batchSpinner.setAdapter(batchAdapter);
+
+        ArrayAdapter<CharSequence> cascadeAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.cascade_array));
+        cascadeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        cascadeSpinner.setAdapter(cascadeAdapter);
+
+        ArrayAdapter<CharSequence> ensembleAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.ensemble_array));
+        ensembleAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        ensembleSpinner.setAdapter(ensembleAdapter);
+
+        ArrayAdapter<CharSequence> ensembleModeAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, getResources().getTextArray(R.array.ensemble_mode_array));
+        ensembleModeAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        ensembleModeSpinner.setAdapter(ensembleModeAdapter);
+
+        int budgetMs = ModelTuner.getLatencyBudgetMs(this);
+        for (int i = 0; i < LATENCY_BUDGETS_MS.length; i++) {
+            if (LATENCY_BUDGETS_MS[i] == budgetMs) latencyBudgetSpinner.setSelection(i);
+        }
+
         discoverModels();
 
         modeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
@@ -394,10 +628,10 @@ public class MainActivity extends AppCompatActivity {
         modelSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                if (isRunning) {
-                    stopSimulation();
-                }
-                currentModelName = parent.getItemAtPosition(position).toString();
+                // Running sessions keep going, frames move to the new model once it is loaded.
+                String modelName = parent.getItemAtPosition(position).toString();
+                if (modelName.equals(currentModelName)) return;  // The first layout, the startup already loads it
+                currentModelName = modelName;
                 loadModel(currentModelName);
 
                 Toast.makeText(MainActivity.this, "Switching to a different model...", Toast.LENGTH_SHORT).show();
@@ -408,6 +642,86 @@ public class MainActivity extends AppCompatActivity {
             public void onNothingSelected(AdapterView<?> parent) {}
         });
 
+        threadsSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                applyInterpreterConfig(interpreterPool.getConfig().withNumThreads(THREAD_CHOICES[position]));
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        workersSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                int workers = position + 1;
+                if (workers == InterpreterPool.loadWorkerCount(MainActivity.this)) return;
+                InterpreterPool.saveWorkerCount(MainActivity.this, workers);
+                interpreterCache.clear();  // Its interpreters split the cores for the old count
+                updateDebugLog(String.format(Locale.US, "[INFO] Inference workers: %d\n", workers));
+                if (currentModelName != null) loadModel(currentModelName);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        cascadeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (isRunning) {
+                    stopSimulation();
+                }
+                // Cascade and ensemble both replace the inference step, only one can be on.
+                if (position != 0) ensembleSpinner.setSelection(0);
+                loadCascade(CASCADE_CHOICES[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        ensembleSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (isRunning) {
+                    stopSimulation();
+                }
+                if (position != 0) cascadeSpinner.setSelection(0);
+                loadEnsemble(ENSEMBLE_CHOICES[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        ensembleModeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                Ensemble<Bitmap> current = ensemble;
+                if (current != null) {
+                    current.setMode(ENSEMBLE_MODES[position]);
+                    current.resetStats();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        // Also fires once at startup, before the models are found; onModelsDiscovered() starts with the tuned model.
+        latencyBudgetSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                ModelTuner.setLatencyBudgetMs(MainActivity.this, LATENCY_BUDGETS_MS[position]);
+                applyTuningReport();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
         datasetSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
@@ -426,18 +740,39 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupButtons() {
+        // With several cameras, tapping the preview switches to the next one.
+        camView.setOnClickListener(v -> cyclePreviewCamera());
+        // Long press to pin the camera frame size instead of deriving it from the model.
+        camView.setOnLongClickListener(v -> {
+            showFrameSizeDialog();
+            return true;
+        });
+
         btnStart.setOnClickListener(v -> {
+            if (modelTuner.isRunning()) {
+                Toast.makeText(MainActivity.this, "Auto-tuning in progress, please wait!", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (!interpreterPool.getPrimary().isLoaded()) {
+                Toast.makeText(MainActivity.this, "Model is still loading, please wait!", Toast.LENGTH_SHORT).show();
+                return;
+            }
             if (modeSpinner.getSelectedItem().toString().equals("ESP32-CAM")) {
-                String ip = esp32Ip.getText().toString();
+                String ip = esp32Ip.getText().toString().trim();
                 if (ip.isEmpty() || ip.equals("x.x.x.x")) {
                     Toast.makeText(MainActivity.this, "Please enter a valid ESP32-CAM IP address!", Toast.LENGTH_SHORT).show();
                     updateDebugLog("[ERROR] Please enter a valid ESP32-CAM IP address!\n");
                     return;
                 }
-                if (!IP_ADDRESS.matcher(ip).matches()) {
-                    Toast.makeText(MainActivity.this, "Invalid IP address format!", Toast.LENGTH_SHORT).show();
-                    updateDebugLog("[ERROR] Invalid IP address format!\n");
-                    return;
+                // Several cameras can be given as a comma separated list, one per sorting chute.
+                for (String address : ESP32CameraHelper.parseIpAddresses(ip)) {
+                    // "replay:<recording>[@speed]" plays a recorded session instead of a camera.
+                    if (address.startsWith(ESP32CameraHelper.REPLAY_PREFIX)) continue;
+                    if (!IP_ADDRESS.matcher(address).matches()) {
+                        Toast.makeText(MainActivity.this, "Invalid IP address format!", Toast.LENGTH_SHORT).show();
+                        updateDebugLog(String.format(Locale.US, "[ERROR] Invalid IP address format: %s\n", address));
+                        return;
+                    }
                 }
 
                 saveIpAddress(ip);
@@ -509,7 +844,7 @@ public class MainActivity extends AppCompatActivity {
             stopSimulation();
             Toast.makeText(MainActivity.this, "Restarting the inference process...", Toast.LENGTH_SHORT).show();
             updateDebugLog("[STREAM] Restarting the inference process...\n");
-            handler.postDelayed(this::startSimulation, 100); // Give time for stop to complete
+            startSimulation();  // Starts once the stopped run has finished
         });
 
         btnClearLog.setOnClickListener(v -> {
@@ -524,6 +859,28 @@ public class MainActivity extends AppCompatActivity {
         });
 
         btnClearFirebase.setOnClickListener(v -> showClearFirebaseDialog());
+
+        btnRetune.setOnClickListener(v -> startTuning());
+        btnMeasureScaling.setOnClickListener(v -> measurePoolScaling());
+        btnTuneBatch.setOnClickListener(v -> tuneBatchSize());
+        btnCascadeStats.setOnClickListener(v -> {
+            Cascade<SimulationFrame> current = cascade;
+            updateDebugLog(current != null
+                    ? String.format(Locale.US, "[CASCADE] %s\n", current.getStatsSummary())
+                    : "[CASCADE] Cascade is off, select the models in the settings first.\n");
+        });
+
+        xnnpackCheckBox.setOnCheckedChangeListener((buttonView, isChecked) ->
+                applyInterpreterConfig(interpreterPool.getConfig().withXnnpack(isChecked)));
+        fp16CheckBox.setOnCheckedChangeListener((buttonView, isChecked) ->
+                applyInterpreterConfig(interpreterPool.getConfig().withFp16(isChecked)));
+
+        // Recordings land in the app's external files and can be replayed as "replay:<name>".
+        recordCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            esp32CameraHelper.setRecording(isChecked);
+            updateDebugLog(String.format(Locale.US, "[ESP32] Stream recording %s (%s)\n",
+                    isChecked ? "on" : "off", esp32CameraHelper.getRecordingDirectory()));
+        });
     }
 
     private void setupSliders() {
@@ -539,6 +896,8 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 confidenceValueText.setText(String.format(Locale.US, "%d%%", progress + 30));
+                Cascade<SimulationFrame> current = cascade;
+                if (current != null) current.setThreshold(getConfidenceThreshold());
             }
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {}
@@ -564,11 +923,22 @@ public class MainActivity extends AppCompatActivity {
                     Toast.makeText(MainActivity.this, "It is recommended to use a longer interval (at least 3s) for ESP32-CAM streaming...", Toast.LENGTH_SHORT).show();
                 }
                 intervalValueText.setText(String.format(Locale.US, "%.1fs", (progress + 1) / 10.0f));
+                // Slow intervals fetch single snapshots instead of streaming.
+                if (esp32CameraHelper != null) {
+                    esp32CameraHelper.setFrameIntervalMs((long)(progress + 1) * 100);
+                }
             }
             @Override
-            public void onStartTrackingTouch(SeekBar seekBar) {}
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                // Closes the figures of the old interval, the pipeline starts over for the new one.
+                StagedPipeline<SimulationFrame> pipeline = simulationPipeline;
+                if (pipeline != null) logPipelineStats(pipeline);
+            }
             @Override
-            public void onStopTrackingTouch(SeekBar seekBar) {}
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                StagedPipeline<SimulationFrame> pipeline = simulationPipeline;
+                if (pipeline != null) pipeline.resetStats();
+            }
         });
     }
 
@@ -609,302 +979,858 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void discoverModels() {
-        AssetManager assetManager = getAssets();
-        String modelPath = "models";
-        try {
-            String[] modelFiles = assetManager.list(modelPath);
-            if (modelFiles != null && modelFiles.length > 0) {
-                List<String> tfliteModels = new ArrayList<>();
-                for (String file : modelFiles) {
-                    if (file.endsWith(".tflite")) {
-                        tfliteModels.add(file);
-                    }
-                }
+    // Reloads the current model when the settings sheet changed its interpreter config.
+    private void applyInterpreterConfig(InterpreterConfig config) {
+        if (currentModelName == null || config.equals(interpreterPool.getConfig())) return;
 
-                if (tfliteModels.isEmpty()) {
-                    Toast.makeText(MainActivity.this, "No .tflite files found in assets/models!", Toast.LENGTH_SHORT).show();
-                    updateDebugLog("[ERROR] No .tflite files found in assets/models!\n");
-                    return;
-                }
+        config.save(this, currentModelName);
+        updateDebugLog(String.format(Locale.US, "[INFO] Interpreter for %s: %s\n", currentModelName, config.getLabel()));
+        loadModel(currentModelName);
+    }
 
-                ArrayAdapter<String> modelAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, tfliteModels);
-                modelAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                modelSpinner.setAdapter(modelAdapter);
+    // Only moves the controls, their listeners ignore a config that is already loaded.
+    private void showInterpreterConfig(InterpreterConfig config) {
+        int position = 0;
+        for (int i = 0; i < THREAD_CHOICES.length; i++) {
+            if (THREAD_CHOICES[i] == config.getNumThreads()) position = i;
+        }
+        threadsSpinner.setSelection(position);
+        xnnpackCheckBox.setChecked(config.isUseXnnpack());
+        fp16CheckBox.setChecked(config.isAllowFp16());
+    }
 
-                Toast.makeText(MainActivity.this, String.format(Locale.US, "Found %d model(s) in assets/%s!", tfliteModels.size(), modelPath), Toast.LENGTH_SHORT).show();
-                updateDebugLog(String.format(Locale.US, "[INFO] Found %d model(s) in assets/%s!\n", tfliteModels.size(), modelPath));
+    // Benchmarks every model on the bundled dataset; inference has to be idle so it does not skew the timings.
+    private void startTuning() {
+        if (modelTuner.isRunning() || modelNames.isEmpty()) return;
+        if (isRunning) {
+            Toast.makeText(MainActivity.this, "Stop the inference process before auto-tuning!", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-                if (!tfliteModels.isEmpty()) {
-                    currentModelName = tfliteModels.get(0);
-                    loadModel(currentModelName);
-                } else {
-                    Toast.makeText(MainActivity.this, "No models found in assets/models!", Toast.LENGTH_SHORT).show();
-                    updateDebugLog("[ERROR] No models found in assets/models!\n");
-                }
+        setTuningButtonsEnabled(false);
+        Toast.makeText(MainActivity.this, "Auto-tuning models for this device...", Toast.LENGTH_SHORT).show();
+        updateDebugLog(String.format(Locale.US, "[TUNER] Benchmarking %d model(s) on the bundled dataset...\n", modelNames.size()));
 
-            } else {
-                Toast.makeText(MainActivity.this, "No models found in assets/models!", Toast.LENGTH_SHORT).show();
-                updateDebugLog("[ERROR] No models found in assets/models!\n");
+        modelTuner.start(modelNames, new ModelTuner.Listener() {
+            @Override
+            public void onProgress(int done, int total, String step) {
+                updateDebugLog(String.format(Locale.US, "[TUNER] (%d/%d) %s\n", done, total, step));
             }
-        } catch (IOException e) {
-            Log.e(TAG, "[ERROR] Error discovering models from path: assets/models!", e);
-            updateDebugLog("[ERROR] Could not discover models: " + e.getMessage() + "\n");
-        }
-    }
 
-    private void loadModel(String modelName) {
-        try {
-            String modelPath = "models/" + modelName;
-            AssetFileDescriptor fileDescriptor = getAssets().openFd(modelPath);
-            FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-            FileChannel fileChannel = inputStream.getChannel();
-            long startOffset = fileDescriptor.getStartOffset();
-            long declaredLength = fileDescriptor.getDeclaredLength();
-            MappedByteBuffer modelBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-
-            if (interpreter != null) {
-                interpreter.close();
-            }
-            interpreter = new Interpreter(modelBuffer);
-            interpreter.allocateTensors();
-
-            Tensor inputTensor = interpreter.getInputTensor(0);
-            inputWidth = inputTensor.shape()[2];
-            inputHeight = inputTensor.shape()[1];
-            inputDataType = inputTensor.dataType();
-
-            float inputScale;
-            int inputZeroPoint;
-            if (inputDataType == DataType.UINT8 || inputDataType == DataType.INT8) {
-                Tensor.QuantizationParams inputQuantParams = inputTensor.quantizationParams();
-                if (inputQuantParams != null) {
-                    inputScale = inputQuantParams.getScale();
-                    inputZeroPoint = inputQuantParams.getZeroPoint();
-                } else {
-                    inputScale = 1.0f;
-                    inputZeroPoint = 0;
-                    updateDebugLog("[WARNING] No input quantization params for quantized model!\n");
+            @Override
+            public void onComplete(TuningReport report) {
+                setTuningButtonsEnabled(true);
+                updateDebugLog(String.format(Locale.US, "[TUNER] Done, %d image(s) per config. Pareto front:\n", report.imagesPerModel));
+                for (TuningReport.Entry entry : report.getParetoFront()) {
+                    updateDebugLog("    > " + entry + "\n");
                 }
-            } else {
-                inputScale = 1.0f;
-                inputZeroPoint = 0;
-            }
-
-            Tensor outputTensor = interpreter.getOutputTensor(0);
-            outputDataType = outputTensor.dataType();
-
-            if (outputDataType == DataType.UINT8 || outputDataType == DataType.INT8) {
-                Tensor.QuantizationParams outputQuantParams = outputTensor.quantizationParams();
-                if (outputQuantParams != null) {
-                    outputScale = outputQuantParams.getScale();
-                    outputZeroPoint = outputQuantParams.getZeroPoint();
-                } else {
-                    outputScale = 1.0f;
-                    outputZeroPoint = 0;
-                    updateDebugLog("[WARNING] No output quantization params for quantized model!\n");
+                // Every model keeps its fastest config, the budget then decides which model runs.
+                for (String model : report.modelNames) {
+                    TuningReport.Entry fastest = report.fastestFor(model);
+                    if (fastest != null) fastest.toConfig().save(MainActivity.this, model);
                 }
-            } else {
-                outputScale = 1.0f;
-                outputZeroPoint = 0;
-            }
-
-            updateDebugLog("[INFO] Model Info:\n");
-            updateDebugLog(String.format(Locale.US, "    Name:              %s\n", modelName));
-            updateDebugLog(String.format(Locale.US, "    Input Shape:       [%d, %d, %d, %d]\n",
-                    inputTensor.shape()[0], inputTensor.shape()[1],
-                    inputTensor.shape()[2], inputTensor.shape()[3]));
-            updateDebugLog(String.format(Locale.US, "    Input Type:        %s\n", inputDataType));
-            updateDebugLog(String.format(Locale.US, "    Input Scale:       %.2f\n", inputScale));
-            updateDebugLog(String.format(Locale.US, "    Input Zero Point:  %d\n", inputZeroPoint));
-            updateDebugLog(String.format(Locale.US, "    Output Type:       %s\n", outputDataType));
-            updateDebugLog(String.format(Locale.US, "    Output Scale:      %.2f\n", outputScale));
-            updateDebugLog(String.format(Locale.US, "    Output Zero Point: %d\n", outputZeroPoint));
-
-            Toast.makeText(MainActivity.this, String.format(Locale.US, "Successfully loaded model: %s (%dx%d)!", modelName, inputWidth, inputHeight), Toast.LENGTH_SHORT).show();
-            updateDebugLog("[INFO] Model loaded successfully!\n");
-            updateDebugLog("[INFO] See more detailed model's parameters at 'View Graph & Model Details >> Model Details >> Model Summary'...\n");
-
-            String metrics = "";
-            if (modeSpinner.getSelectedItem().toString().equals("ESP32-CAM")) {
-                metrics = String.format(Locale.US, "Model: %s (%dx%d) | Inference: -- ms | IP: %s",
-                        modelName, inputWidth, inputHeight, (currentEsp32Ip.isEmpty() ? "x.x.x.x" : currentEsp32Ip));
-            } else {
-                metrics = String.format(Locale.US, "Model: %s (%dx%d) | Inference: -- ms | FPS: --/--",
-                        modelName, inputWidth, inputHeight);
+                Toast.makeText(MainActivity.this, "Auto-tuning finished!", Toast.LENGTH_SHORT).show();
+                applyTuningReport();
             }
 
-            metricsText.setText(metrics);
+            @Override
+            public void onError(String error) {
+                setTuningButtonsEnabled(true);
+                updateDebugLog(String.format(Locale.US, "[ERROR] Auto-tuning failed: %s\n", error));
+            }
+        });
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "[ERROR] Error loading model!", e);
-            Toast.makeText(MainActivity.this, String.format(Locale.US, "Failed to load model: %s!", modelName), Toast.LENGTH_SHORT).show();
-            updateDebugLog(String.format(Locale.US, "[ERROR] Failed to load model: %s\n", modelName));
-            updateDebugLog(String.format(Locale.US, "     ...%s.\n", e.getMessage()));
+    // Logs how throughput grows from 1 to MAX_WORKERS pool workers with the current model and config.
+    private void measurePoolScaling() {
+        if (modelTuner.isRunning() || currentModelName == null) return;
+        if (isRunning) {
+            Toast.makeText(MainActivity.this, "Stop the inference process before measuring!", Toast.LENGTH_SHORT).show();
+            return;
         }
-    }
 
-    private void loadDataset() {
-        imagePaths = new ArrayList<>();
-        AssetManager assetManager = getAssets();
-        String datasetPath = "dataset";
-        selectedDataset = datasetSpinner.getSelectedItem().toString();
+        setTuningButtonsEnabled(false);
+        updateDebugLog(String.format(Locale.US, "[POOL] Measuring throughput of %s (%s) with 1-%d workers...\n",
+                currentModelName, interpreterPool.getConfig().getLabel(), InterpreterPool.MAX_WORKERS));
 
-        try {
-            List<String> categoriesToLoad = new ArrayList<>();
-            if (selectedDataset.equalsIgnoreCase("All Dataset")) {
-                Collections.addAll(categoriesToLoad, "plastic", "paper", "metal");
-            } else {
-                categoriesToLoad.add(selectedDataset.toLowerCase());
+        modelTuner.measureScaling(currentModelName, interpreterPool.getConfig(), InterpreterPool.MAX_WORKERS, new ModelTuner.ThroughputListener() {
+            @Override
+            public void onResult(int workers, float imagesPerSecond, float speedup, String poolStats) {
+                updateDebugLog(String.format(Locale.US, "    > %d worker(s): %.1f images/s (%.2fx)\n      %s\n",
+                        workers, imagesPerSecond, speedup, poolStats));
             }
 
-            for (String category : categoriesToLoad) {
-                String categoryPath = datasetPath + "/" + category;
-                String[] images = assetManager.list(categoryPath);
-                if (images != null && images.length > 0) {
-                    for (String image : images) {
-                        imagePaths.add(categoryPath + "/" + image);
-                    }
-                } else {
-                    Toast.makeText(MainActivity.this, String.format(Locale.US, "No images found in assets/%s!", categoryPath), Toast.LENGTH_SHORT).show();
-                    updateDebugLog(String.format(Locale.US, "[WARNING] No images found in assets/%s!\n", categoryPath));
-                }
+            @Override
+            public void onComplete(int bestWorkers) {
+                setTuningButtonsEnabled(true);
+                updateDebugLog(String.format(Locale.US, "[POOL] Throughput measurement finished, best with %d worker(s)!\n", bestWorkers));
             }
-            Toast.makeText(MainActivity.this, String.format(Locale.US, "Dataset loaded! Found %d images!", imagePaths.size()), Toast.LENGTH_SHORT).show();
-            updateDebugLog(String.format(Locale.US, "[INFO] Dataset loaded! Found %d images!\n", imagePaths.size()));
-        } catch (IOException e) {
-            Log.e(TAG, "[ERROR] Error loading dataset", e);
-            Toast.makeText(MainActivity.this, "Failed to load dataset '" + selectedDataset + "'!", Toast.LENGTH_SHORT).show();
-            updateDebugLog("[ERROR] Failed to load dataset '" + selectedDataset + "'!\n");
-        }
+
+            @Override
+            public void onError(String error) {
+                setTuningButtonsEnabled(true);
+                updateDebugLog(String.format(Locale.US, "[ERROR] Throughput measurement failed: %s\n", error));
+            }
+        });
     }
 
-    private void startSimulation() {
-        if (isRunning) return;
-        if (interpreter == null) {
-            Log.e(TAG, "[ERROR] Interpreter not initialized.");
-            Toast.makeText(MainActivity.this, "Interpreter not initialized. Select a model first!", Toast.LENGTH_SHORT).show();
-            updateDebugLog("[ERROR] Interpreter not initialized. Select a model first!\n");
-            return;
-        }
-        if (imagePaths == null || imagePaths.isEmpty()) {
-            Log.e(TAG, "[ERROR] Dataset not loaded or is empty.");
-            Toast.makeText(MainActivity.this, "Dataset not loaded or is empty. Select Simulation mode first!", Toast.LENGTH_SHORT).show();
-            updateDebugLog("[ERROR] Dataset not loaded or is empty. Select Simulation mode first!\n");
+    // Finds the fastest batch size of the current model for batched simulation runs.
+    private void tuneBatchSize() {
+        if (modelTuner.isRunning() || currentModelName == null) return;
+        if (isRunning) {
+            Toast.makeText(MainActivity.this, "Stop the inference process before tuning!", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        isRunning = true;
-        isPaused = false;
-        currentImageIndex = 0;
-        updateButtonStates(State.RUNNING);
-        statusText.setText(R.string.running);
-        statusText.setTextColor(0xFF44FF44);
-        lastRecordedImageIndex = -1;
-        lastImagePath = "";
-
-        Toast.makeText(MainActivity.this, "Starting the inference process in Simulation mode...", Toast.LENGTH_SHORT).show();
-        updateDebugLog("[STATUS] SIMULATION STARTED!\n");
-
-        handler.post(uiUpdater);
+        setTuningButtonsEnabled(false);
+        updateDebugLog(String.format(Locale.US, "[BATCH] Measuring batch sizes of %s (%s)...\n",
+                currentModelName, interpreterPool.getConfig().getLabel()));
 
-        executor.execute(() -> {
-            long frameCount = 0;
-            long startTime = System.currentTimeMillis();
+        String modelName = currentModelName;
+        modelTuner.tuneBatchSize(modelName, interpreterPool.getConfig(), new ModelTuner.ThroughputListener() {
+            @Override
+            public void onResult(int batch, float imagesPerSecond, float speedup, String details) {
+                updateDebugLog(String.format(Locale.US, "    > Batch %d: %.1f images/s (%.2fx), %s\n",
+                        batch, imagesPerSecond, speedup, details));
+            }
 
-            while (isRunning) {
-                long loopStartTime = System.currentTimeMillis();
-                pauseLock.lock();
-                try {
-                    while (isPaused) {
-                        unpaused.await();
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } finally {
-                    pauseLock.unlock();
-                }
+            @Override
+            public void onComplete(int bestBatch) {
+                setTuningButtonsEnabled(true);
+                updateDebugLog(String.format(Locale.US, "[BATCH] Tuned batch size for %s: %d\n", modelName, bestBatch));
+            }
 
-                if (!isRunning) break;
-                if (currentImageIndex >= imagePaths.size()) {
-                    handler.post(() -> {
-                        Toast.makeText(MainActivity.this, String.format(Locale.US, "Finished processing %s dataset. Waiting for next run...", selectedDataset), Toast.LENGTH_SHORT).show();
-                        pauseSimulation();
-                        finishedInference = true;
-                    });
-                    break;
-                }
+            @Override
+            public void onError(String error) {
+                setTuningButtonsEnabled(true);
+                updateDebugLog(String.format(Locale.US, "[ERROR] Batch tuning failed: %s\n", error));
+            }
+        });
+    }
 
-                long inferenceStartTime = System.currentTimeMillis();
-                String imagePath = imagePaths.get(currentImageIndex);
+    private void setTuningButtonsEnabled(boolean enabled) {
+        btnRetune.setEnabled(enabled);
+        btnMeasureScaling.setEnabled(enabled);
+        btnTuneBatch.setEnabled(enabled);
+    }
 
-                if (imagePath.equals(lastImagePath)) {
-                    currentImageIndex++;
-                    continue;
-                }
+    private String getCascadeMetricsLabel() {
+        Cascade<SimulationFrame> current = cascade;
+        if (current == null) return "";
+        return String.format(Locale.US, "Cascade: %.0f%% escalated, %.1f ms/frame | ",
+                current.getEscalationRate() * 100, current.getMeanFrameMs());
+    }
 
-                lastImagePath = imagePath;
+    private String getEnsembleMetricsLabel() {
+        Ensemble<Bitmap> current = ensemble;
+        return current != null ? current.getMetricsLabel() + " | " : "";
+    }
 
-                Bitmap bitmap = loadBitmapFromAssets(imagePath);
-                ByteBuffer inputBuffer = preprocessImage(bitmap);
+    // Top probability below which the cascade hands a frame to the next model.
+    private float getConfidenceThreshold() {
+        return (confidenceSlider.getProgress() + 30) / 100f;
+    }
 
-                if (inputBuffer == null) {
-                    Log.e(TAG, "[ERROR] Skipping image, failed to preprocess: " + imagePath);
-                    Toast.makeText(MainActivity.this, String.format(Locale.US, "Failed to preprocess image: %s!", imagePath), Toast.LENGTH_SHORT).show();
-                    updateDebugLog(String.format(Locale.US, "[ERROR] Failed to preprocess image: %s\n", imagePath));
-                    currentImageIndex++;
-                    continue;
-                }
+    /**
+     * Loads one engine per cascade model next to the selected model and keeps them loaded; an
+     * empty sizes turns the cascade off. Simulation frames are then converted for the first,
+     * cheapest model and decoded for the largest, which later stages resample from.
+     *
+     * The engines come from interpreterCache on the executor, once a stopped run has exited, and
+     * the previous cascade's go back to it; the new cascade is published when all are ready.
+     */
+    private void loadCascade(int[] sizes) {
+        cascade = null;  // New runs go without it from here on
+        int run = ++cascadeLoadGeneration;
+        StagedPipeline<SimulationFrame> stopping = stoppedPipeline;
+        float threshold = getConfidenceThreshold();
+        List<String> stageModels = new ArrayList<>();
+        for (int size : sizes) stageModels.add(findModelForSize(size));
 
-                Object output = (outputDataType == DataType.FLOAT32)
-                        ? new float[1][wasteTypes.length]
-                        : new byte[1][wasteTypes.length];
+        executor.execute(() -> {
+            if (!awaitStoppedRun(stopping)) return;
+            cascadeInputConverter = null;
+            cascadeDecodeConverter = null;
+            cascadeEngines.release(interpreterCache);
+            if (sizes.length == 0 || run != cascadeLoadGeneration) return;
+
+            long start = System.nanoTime();
+            Cascade<SimulationFrame> newCascade = new Cascade<>(threshold);
+            try {
+                for (int i = 0; i < sizes.length; i++) {
+                    String modelName = stageModels.get(i);
+                    if (modelName == null) throw new IOException("No model with input size " + sizes[i]);
+                    InferenceEngine engine = cascadeEngines.take(interpreterCache, modelName, InterpreterConfig.load(this, modelName));
+
+                    if (i == 0) {
+                        newCascade.add(String.valueOf(sizes[i]), (frame, result) -> engine.classifyTensor(frame.input, result));
+                    } else {
+                        newCascade.add(String.valueOf(sizes[i]), (frame, result) -> {
+                            Bitmap source = getCascadeSource(frame);
+                            return source != null && engine.classify(source, result);
+                        });
+                    }
+                }
+            } catch (IOException e) {
+                cascadeEngines.release(interpreterCache);
+                Log.e(TAG, "[ERROR] Cascade not loaded", e);
+                updateDebugLog(String.format(Locale.US, "[ERROR] Cascade not loaded: %s\n", e.getMessage()));
+                return;
+            }
+            if (run != cascadeLoadGeneration) {
+                cascadeEngines.release(interpreterCache);  // Changed again meanwhile
+                return;
+            }
 
-                interpreter.run(inputBuffer, output);
+            cascadeInputConverter = cascadeEngines.engines.get(0).newConverter();
+            cascadeDecodeConverter = cascadeEngines.last().newConverter();
+            cascade = newCascade;
+            updateDebugLog(String.format(Locale.US, "[CASCADE] %s ready in %.1f ms, escalating below %.0f%% confidence\n",
+                    String.join(" -> ", stageModels), (System.nanoTime() - start) / 1e6f, threshold * 100));
+        });
+    }
 
-                float[] probabilities = dequantizeAndApplySoftmax(output);
+    /**
+     * Loads one engine per ensemble member, each with its own interpreter so the members run at
+     * the same time; an empty sizes turns the ensemble off. With auto threads the cores are split
+     * between the members. Members are weighted by their accuracy in the tuning report, equally
+     * until the models were tuned. Simulation frames are decoded for the largest member.
+     *
+     * Like the cascade, the members come from interpreterCache on the executor. The previous
+     * ensemble is closed there once a stopped run has exited, the new one published when ready.
+     */
+    private void loadEnsemble(int[] sizes) {
+        ensemble = null;  // New runs go without it from here on
+        int run = ++ensembleLoadGeneration;
+        StagedPipeline<SimulationFrame> stopping = stoppedPipeline;
+        Ensemble.Mode mode = ENSEMBLE_MODES[ensembleModeSpinner.getSelectedItemPosition()];
+        List<String> memberModels = new ArrayList<>();
+        for (int size : sizes) memberModels.add(findModelForSize(size));
 
-                long inferenceTime = System.currentTimeMillis() - inferenceStartTime;
-                frameCount++;
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                float fps = (elapsedTime > 0) ? (frameCount * 1000.0f) / elapsedTime : 0;
+        executor.execute(() -> {
+            if (!awaitStoppedRun(stopping)) return;
+            releaseEnsemble();
+            if (sizes.length == 0 || run != ensembleLoadGeneration) return;
+
+            long start = System.nanoTime();
+            TuningReport report = ModelTuner.loadReport(this);
+            Ensemble<Bitmap> newEnsemble = new Ensemble<>(mode);
+            StringBuilder names = new StringBuilder();
+            try {
+                for (int i = 0; i < sizes.length; i++) {
+                    String modelName = memberModels.get(i);
+                    if (modelName == null) throw new IOException("No model with input size " + sizes[i]);
+                    InterpreterConfig config = InterpreterConfig.load(this, modelName);
+                    if (config.getNumThreads() == InterpreterConfig.THREADS_AUTO) {
+                        config = config.withNumThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / sizes.length));
+                    }
+                    InferenceEngine engine = ensembleEngines.take(interpreterCache, modelName, config);
 
-                int maxIndex = getIndexOfLargest(probabilities);
-                if (maxIndex == -1) {
-                    currentImageIndex++;
-                    continue;
+                    TuningReport.Entry measured = report != null ? report.fastestFor(modelName) : null;
+                    float weight = measured != null ? measured.accuracy : 1f;
+                    newEnsemble.add(String.valueOf(sizes[i]), weight, engine::classify);
+                    names.append(names.length() == 0 ? "" : " + ")
+                            .append(String.format(Locale.US, "%s (weight %.2f)", modelName, weight));
+                }
+            } catch (IOException e) {
+                newEnsemble.close();
+                ensembleEngines.release(interpreterCache);
+                Log.e(TAG, "[ERROR] Ensemble not loaded", e);
+                updateDebugLog(String.format(Locale.US, "[ERROR] Ensemble not loaded: %s\n", e.getMessage()));
+                return;
+            }
+            loadedEnsemble = newEnsemble;
+            if (run != ensembleLoadGeneration) {
+                releaseEnsemble();  // Changed again meanwhile
+                return;
+            }
+
+            ensembleDecodeConverter = ensembleEngines.last().newConverter();
+            ensemble = newEnsemble;
+            updateDebugLog(String.format(Locale.US, "[ENSEMBLE] %s ready in %.1f ms, %s\n", names, (System.nanoTime() - start) / 1e6f,
+                    mode == Ensemble.Mode.WEIGHTED_AVERAGE ? "weighted average" : "majority vote"));
+        });
+    }
+
+    // On the executor, once no run uses the loaded ensemble anymore.
+    private void releaseEnsemble() {
+        ensembleDecodeConverter = null;
+        if (loadedEnsemble != null) loadedEnsemble.close();
+        loadedEnsemble = null;
+        ensembleEngines.release(interpreterCache);
+    }
+
+    private String findModelForSize(int size) {
+        String prefix = "waste_classifier-" + size + "-";
+        for (String modelName : modelNames) {
+            if (modelName.startsWith(prefix)) return modelName;
+        }
+        return null;
+    }
+
+    // Escalated frames from the pack or tensor cache only carry a preview, so they are decoded here.
+    private Bitmap getCascadeSource(SimulationFrame frame) {
+        if (!frame.preprocessed) return frame.bitmap;
+        TensorConverter decodeConverter = cascadeDecodeConverter;
+        if (decodeConverter == null) return null;
+        Bitmap decoded = loadBitmapFromAssets(frame.path, decodeConverter);
+        if (decoded != null) {
+            frame.bitmap = decoded;
+            frame.preprocessed = false;
+        }
+        return decoded;
+    }
+
+    // 1 runs the per-image loop; "Tuned" falls back to DEFAULT_BATCH_SIZE until the model was tuned.
+    private int getSimulationBatchSize() {
+        int choice = BATCH_SPINNER_CHOICES[batchSpinner.getSelectedItemPosition()];
+        if (choice != BATCH_TUNED) return choice;
+        int tuned = currentModelName != null ? ModelTuner.getBatchSize(this, currentModelName) : 0;
+        if (tuned == 0) {
+            updateDebugLog(String.format(Locale.US, "[BATCH] %s not tuned yet, using batches of %d\n", currentModelName, DEFAULT_BATCH_SIZE));
+            return DEFAULT_BATCH_SIZE;
+        }
+        return tuned;
+    }
+
+    // Switches to the model and config the stored report picks for the latency budget.
+    private void applyTuningReport() {
+        TuningReport report = ModelTuner.loadReport(this);
+        if (report == null || modelTuner.isRunning() || isRunning) return;
+
+        int budgetMs = LATENCY_BUDGETS_MS[latencyBudgetSpinner.getSelectedItemPosition()];
+        TuningReport.Entry entry = report.pick(budgetMs);
+        int position = modelNames.indexOf(entry != null ? entry.modelName : null);
+        if (position < 0) return;
+
+        InterpreterConfig config = entry.toConfig();
+        if (entry.modelName.equals(currentModelName) && config.equals(interpreterPool.getConfig())) return;
+
+        config.save(this, entry.modelName);
+        updateDebugLog(String.format(Locale.US, "[TUNER] %s picked:\n    > %s\n",
+                budgetMs > 0 ? "Budget " + budgetMs + " ms" : "Most accurate", entry));
+        if (entry.modelName.equals(currentModelName)) {
+            loadModel(currentModelName);
+        } else {
+            modelSpinner.setSelection(position);  // Its listener loads the model
+        }
+    }
+
+    /**
+     * The startup pipeline: lists the bundled models on the executor, then fills the model spinner
+     * and loads the first model on the interpreter cache thread. The UI is up meanwhile and shows
+     * the progress in the metrics line.
+     */
+    private void discoverModels() {
+        String modelPath = "models";
+        metricsText.setText(R.string.startup_discovering);
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                String[] modelFiles = getAssets().list(modelPath);
+                List<String> tfliteModels = new ArrayList<>();
+                if (modelFiles != null) {
+                    for (String file : modelFiles) {
+                        if (file.endsWith(".tflite")) {
+                            tfliteModels.add(file);
+                        }
+                    }
+                }
+                long listNanos = System.nanoTime() - start;
+                handler.post(() -> onModelsDiscovered(modelPath, tfliteModels, listNanos));
+            } catch (IOException e) {
+                Log.e(TAG, "[ERROR] Error discovering models from path: assets/models!", e);
+                updateDebugLog("[ERROR] Could not discover models: " + e.getMessage() + "\n");
+                handler.post(() -> metricsText.setText(R.string.startup_no_models));
+            }
+        });
+    }
+
+    private void onModelsDiscovered(String modelPath, List<String> tfliteModels, long listNanos) {
+        if (isFinishing() || isDestroyed()) return;
+        startupMetrics.mark(StartupMetrics.Phase.MODELS_FOUND, SystemClock.elapsedRealtimeNanos());
+        if (tfliteModels.isEmpty()) {
+            Toast.makeText(MainActivity.this, "No .tflite files found in assets/models!", Toast.LENGTH_SHORT).show();
+            updateDebugLog("[ERROR] No .tflite files found in assets/models!\n");
+            metricsText.setText(R.string.startup_no_models);
+            return;
+        }
+
+        modelNames.clear();
+        modelNames.addAll(tfliteModels);
+        // The model tuned for the latency budget, the first one before there is a report.
+        TuningReport report = ModelTuner.loadReport(this);
+        TuningReport.Entry tuned = report != null ? report.pick(ModelTuner.getLatencyBudgetMs(this)) : null;
+        int initial = tuned != null ? tfliteModels.indexOf(tuned.modelName) : -1;
+        if (initial >= 0) {
+            tuned.toConfig().save(this, tuned.modelName);
+            updateDebugLog(String.format(Locale.US, "[TUNER] Starting with the tuned model:\n    > %s\n", tuned));
+        }
+        currentModelName = tfliteModels.get(Math.max(0, initial));
+        ArrayAdapter<String> modelAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_white, tfliteModels);
+        modelAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        modelSpinner.setAdapter(modelAdapter);
+        modelSpinner.setSelection(Math.max(0, initial));  // Its listener skips the model already loading
+
+        Toast.makeText(MainActivity.this, String.format(Locale.US, "Found %d model(s) in assets/%s!", tfliteModels.size(), modelPath), Toast.LENGTH_SHORT).show();
+        updateDebugLog(String.format(Locale.US, "[INFO] Found %d model(s) in assets/%s in %.1f ms!\n", tfliteModels.size(), modelPath, listNanos / 1e6f));
+        metricsText.setText(getString(R.string.startup_loading, currentModelName));
+        loadModel(currentModelName);
+        prefetchModels();
+
+        // First launch, or the bundled models changed since the last tuning run.
+        if (report == null || !report.covers(modelNames)) {
+            startTuning();
+        }
+    }
+
+    /**
+     * Puts modelName in the pool without stopping a running session. The interpreter comes from
+     * interpreterCache, already warmed when the model was used or prefetched before, otherwise it
+     * is built and warmed there; either way on the cache thread. Frames in flight finish on the
+     * previous model, which returns to the cache once released.
+     */
+    private void loadModel(String modelName) {
+        InterpreterConfig interpreterConfig = InterpreterConfig.load(this, modelName);
+        int workers = InterpreterPool.loadWorkerCount(this);
+        int run = ++modelLoadGeneration;
+        long requestNanos = System.nanoTime();
+        interpreterCache.takeAsync(modelName, interpreterConfig, new InterpreterCache.Callback<InferenceEngine>() {
+            @Override
+            public void onReady(InferenceEngine engine, boolean hit, long loadNanos) {
+                if (run != modelLoadGeneration) {
+                    interpreterCache.put(modelName, interpreterConfig, engine);  // Switched again meanwhile
+                    return;
+                }
+                long swapNanos = interpreterPool.install(modelName, engine, interpreterConfig, workers);
+                long switchNanos = System.nanoTime() - requestNanos;
+                Log.d(TAG, String.format(Locale.US, "[MODEL] %s ready in %.1f ms (%s), swapped in %.3f ms",
+                        modelName, loadNanos / 1e6f, hit ? "warm from cache" : "loaded", swapNanos / 1e6f));
+                handler.post(() -> onModelLoaded(modelName, interpreterConfig, hit, switchNanos, swapNanos));
+            }
+
+            @Override
+            public void onError(IOException e) {
+                handler.post(() -> onModelLoadFailed(modelName, e));
+            }
+        });
+    }
+
+    private void onModelLoaded(String modelName, InterpreterConfig interpreterConfig, boolean hit, long switchNanos, long swapNanos) {
+        if (isFinishing() || isDestroyed()) return;
+        startupMetrics.mark(StartupMetrics.Phase.MODEL_READY, SystemClock.elapsedRealtimeNanos());
+        updateDebugLog(String.format(Locale.US, "[MODEL] Switched to %s %.1f ms after the request (%s), swap %.3f ms%s\n    Interpreter cache: %s\n",
+                modelName, switchNanos / 1e6f, hit ? "warm from cache" : "loaded and warmed", swapNanos / 1e6f,
+                isRunning ? ", session kept running" : "", interpreterCache.getStatsSummary()));
+        InferenceEngine inferenceEngine = interpreterPool.getPrimary();
+        showInterpreterConfig(interpreterConfig);
+        int inputWidth = inferenceEngine.getInputWidth();
+        int inputHeight = inferenceEngine.getInputHeight();
+        if (esp32CameraHelper != null) {
+            esp32CameraHelper.setInferenceSize(inputWidth, inputHeight);
+        }
+        if (inferenceEngine.isMissingQuantParams()) {
+            updateDebugLog("[WARNING] No quantization params for quantized model!\n");
+        }
+
+        int[] inputShape = inferenceEngine.getInputShape();
+        updateDebugLog("[INFO] Model Info:\n");
+        updateDebugLog(String.format(Locale.US, "    Name:              %s\n", modelName));
+        updateDebugLog(String.format(Locale.US, "    Input Shape:       [%d, %d, %d, %d]\n",
+                inputShape[0], inputShape[1], inputShape[2], inputShape[3]));
+        updateDebugLog(String.format(Locale.US, "    Input Type:        %s\n", inferenceEngine.getInputDataType()));
+        updateDebugLog(String.format(Locale.US, "    Input Scale:       %.2f\n", inferenceEngine.getInputScale()));
+        updateDebugLog(String.format(Locale.US, "    Input Zero Point:  %d\n", inferenceEngine.getInputZeroPoint()));
+        updateDebugLog(String.format(Locale.US, "    Output Type:       %s\n", inferenceEngine.getOutputDataType()));
+        updateDebugLog(String.format(Locale.US, "    Output Scale:      %.2f\n", inferenceEngine.getOutputScale()));
+        updateDebugLog(String.format(Locale.US, "    Output Zero Point: %d\n", inferenceEngine.getOutputZeroPoint()));
+        updateDebugLog(String.format(Locale.US, "    Interpreter:       %s\n", interpreterConfig.getLabel()));
+        updateDebugLog(String.format(Locale.US, "    Workers:           %d\n", interpreterPool.getWorkerCount()));
+
+        Toast.makeText(MainActivity.this, String.format(Locale.US, "Successfully loaded model: %s (%dx%d)!", modelName, inputWidth, inputHeight), Toast.LENGTH_SHORT).show();
+        updateDebugLog("[INFO] Model loaded successfully!\n");
+        updateDebugLog("[INFO] See more detailed model's parameters at 'View Graph & Model Details >> Model Details >> Model Summary'...\n");
+
+        String metrics = "";
+        if (modeSpinner.getSelectedItem().toString().equals("ESP32-CAM")) {
+            metrics = String.format(Locale.US, "Model: %s (%dx%d) | Inference: -- ms (%s) | IP: %s",
+                    modelName, inputWidth, inputHeight, interpreterConfig.getLabel(), (currentEsp32Ip.isEmpty() ? "x.x.x.x" : currentEsp32Ip));
+        } else {
+            metrics = String.format(Locale.US, "Model: %s (%dx%d) | Inference: -- ms (%s) | FPS: --/--",
+                    modelName, inputWidth, inputHeight, interpreterConfig.getLabel());
+        }
+
+        metricsText.setText(metrics);
+        prepareDatasetPack();
+    }
+
+    private void onModelLoadFailed(String modelName, IOException e) {
+        Log.e(TAG, "[ERROR] Error loading model!", e);
+        Toast.makeText(MainActivity.this, String.format(Locale.US, "Failed to load model: %s!", modelName), Toast.LENGTH_SHORT).show();
+        updateDebugLog(String.format(Locale.US, "[ERROR] Failed to load model: %s\n", modelName));
+        updateDebugLog(String.format(Locale.US, "     ...%s.\n", e.getMessage()));
+        if (!interpreterPool.getPrimary().isLoaded()) {
+            metricsText.setText(String.format(Locale.US, "Failed to load model: %s!", modelName));
+        }
+    }
+
+    // Loads and warms the other models in the background while the cache has room for them.
+    private void prefetchModels() {
+        Map<String, InterpreterConfig> models = new LinkedHashMap<>();
+        for (String modelName : modelNames) {
+            if (!modelName.equals(currentModelName)) models.put(modelName, InterpreterConfig.load(this, modelName));
+        }
+        interpreterCache.prefetchAsync(models);
+    }
+
+    private void loadDataset() {
+        imagePaths = new ArrayList<>();
+        AssetManager assetManager = getAssets();
+        String datasetPath = "dataset";
+        selectedDataset = datasetSpinner.getSelectedItem().toString();
+
+        try {
+            List<String> categoriesToLoad = new ArrayList<>();
+            if (selectedDataset.equalsIgnoreCase("All Dataset")) {
+                Collections.addAll(categoriesToLoad, "plastic", "paper", "metal");
+            } else {
+                categoriesToLoad.add(selectedDataset.toLowerCase());
+            }
+
+            for (String category : categoriesToLoad) {
+                String categoryPath = datasetPath + "/" + category;
+                String[] images = assetManager.list(categoryPath);
+                if (images != null && images.length > 0) {
+                    for (String image : images) {
+                        imagePaths.add(categoryPath + "/" + image);
+                    }
+                } else {
+                    Toast.makeText(MainActivity.this, String.format(Locale.US, "No images found in assets/%s!", categoryPath), Toast.LENGTH_SHORT).show();
+                    updateDebugLog(String.format(Locale.US, "[WARNING] No images found in assets/%s!\n", categoryPath));
                 }
+            }
+            Toast.makeText(MainActivity.this, String.format(Locale.US, "Dataset loaded! Found %d images!", imagePaths.size()), Toast.LENGTH_SHORT).show();
+            updateDebugLog(String.format(Locale.US, "[INFO] Dataset loaded! Found %d images!\n", imagePaths.size()));
+            prepareDatasetPack();
+        } catch (IOException e) {
+            Log.e(TAG, "[ERROR] Error loading dataset", e);
+            Toast.makeText(MainActivity.this, "Failed to load dataset '" + selectedDataset + "'!", Toast.LENGTH_SHORT).show();
+            updateDebugLog("[ERROR] Failed to load dataset '" + selectedDataset + "'!\n");
+        }
+    }
 
-                float confidence = probabilities[maxIndex];
-                String label = wasteTypes[maxIndex];
+    // Simulation mode only; the pack is built on the first run with this model's input.
+    private void prepareDatasetPack() {
+        if (imagePaths == null) return;
+        TensorConverter converter = interpreterPool.getPrimary().newConverter();
+        if (converter == null) return;
+        DatasetPack pack = datasetPack;
+        if (pack != null && pack.matches(converter)) return;
 
-                latestBitmap = bitmap;
-                latestLabel = label;
-                latestConfidence = confidence;
-                latestProbabilities = probabilities;
-                latestInferenceTime = inferenceTime;
-                latestFps = fps;
+        datasetPack = null;
+        datasetPacker.prepare(converter, new DatasetPacker.Listener() {
+            private int lastQuarter = 0;
 
-                if (!debugCheckBox.isChecked()) {
-                    updateDebugLog(String.format(Locale.US, "[DEBUG] Image: %s | Label: %s | Confidence: %.2f%%\n", imagePath, label, confidence * 100));
+            @Override
+            public void onProgress(int done, int total) {
+                int quarter = done * 4 / total;
+                if (done == 1) {
+                    updateDebugLog(String.format(Locale.US, "[PACK] Packing %d images as %dx%d %s tensors...\n",
+                            total, converter.getWidth(), converter.getHeight(), converter.getFormat()));
+                } else if (quarter > lastQuarter) {
+                    lastQuarter = quarter;
+                    updateDebugLog(String.format(Locale.US, "[PACK] %d%% packed\n", quarter * 25));
                 }
+            }
+
+            @Override
+            public void onReady(DatasetPack pack, String report) {
+                datasetPack = pack;
+                updateDebugLog(String.format(Locale.US, "[PACK] Dataset pack ready: %s\n    > %s\n", pack, report));
+            }
+
+            @Override
+            public void onError(String error) {
+                updateDebugLog(String.format(Locale.US, "[PACK] No dataset pack, decoding JPEGs: %s\n", error));
+            }
+        });
+    }
+
+    private void startSimulation() {
+        if (isRunning) return;
+        if (stopPending) {
+            // Batched runs end on the executor, so this queues behind them; pipelines are joined.
+            StagedPipeline<SimulationFrame> stopping = stoppedPipeline;
+            stopPending = false;
+            stoppedPipeline = null;
+            executor.execute(() -> {
+                if (awaitStoppedRun(stopping)) handler.post(this::startSimulation);
+            });
+            return;
+        }
+        if (!interpreterPool.getPrimary().isLoaded()) {
+            Log.e(TAG, "[ERROR] Interpreter not initialized.");
+            Toast.makeText(MainActivity.this, "Interpreter not initialized. Select a model first!", Toast.LENGTH_SHORT).show();
+            updateDebugLog("[ERROR] Interpreter not initialized. Select a model first!\n");
+            return;
+        }
+        if (imagePaths == null || imagePaths.isEmpty()) {
+            Log.e(TAG, "[ERROR] Dataset not loaded or is empty.");
+            Toast.makeText(MainActivity.this, "Dataset not loaded or is empty. Select Simulation mode first!", Toast.LENGTH_SHORT).show();
+            updateDebugLog("[ERROR] Dataset not loaded or is empty. Select Simulation mode first!\n");
+            return;
+        }
+        // Resolved before any state changes, so a run that cannot start leaves the UI idle.
+        Cascade<SimulationFrame> activeCascade = cascade;
+        Ensemble<Bitmap> activeEnsemble = ensemble;
+        TensorConverter fixedConverter = activeCascade != null ? cascadeInputConverter : null;
+        TensorConverter fixedDecodeConverter = activeEnsemble != null ? ensembleDecodeConverter : cascadeDecodeConverter;
+        if ((activeCascade != null || activeEnsemble != null)
+                && (activeEnsemble == null && fixedConverter == null || fixedDecodeConverter == null)) {
+            Log.e(TAG, "[ERROR] Cascade or ensemble has no input converter.");
+            Toast.makeText(MainActivity.this, "Cascade or ensemble not ready yet. Try again!", Toast.LENGTH_SHORT).show();
+            updateDebugLog("[ERROR] Cascade or ensemble not ready yet, no input converter. Try again!\n");
+            return;
+        }
+
+        isRunning = true;
+        isPaused = false;
+        currentImageIndex = 0;
+        updateButtonStates(State.RUNNING);
+        statusText.setText(R.string.running);
+        statusText.setTextColor(0xFF44FF44);
+        lastRecordedImageIndex = -1;
+        lastImagePath = "";
+
+        Toast.makeText(MainActivity.this, "Starting the inference process in Simulation mode...", Toast.LENGTH_SHORT).show();
+        updateDebugLog("[STATUS] SIMULATION STARTED!\n");
+
+        handler.post(uiUpdater);
+
+        int batchSize = activeCascade == null && activeEnsemble == null ? getSimulationBatchSize() : 1;
+        if (batchSize > 1) {
+            ByteBuffer modelBuffer = interpreterPool.getPrimary().getModelBuffer();
+            InterpreterConfig config = interpreterPool.getConfig();
+            executor.execute(() -> runBatchSimulation(modelBuffer, config, batchSize));
+            return;
+        }
 
-                currentImageIndex++;
-                
-                long loopTime = System.currentTimeMillis() - loopStartTime;
-                long targetInterval = (long)(intervalSlider.getProgress() + 1) * 100;
-                long sleepTime = targetInterval - loopTime;
-                if (sleepTime > 0) {
+        runPipelinedSimulation(activeCascade, activeEnsemble, fixedConverter, fixedDecodeConverter);
+    }
+
+    // On the executor: waits for a stopped pipeline, null for none. False when interrupted.
+    private boolean awaitStoppedRun(StagedPipeline<SimulationFrame> stopping) {
+        try {
+            if (stopping != null && !stopping.awaitTermination(PIPELINE_STOP_TIMEOUT_MS)) {
+                Log.w(TAG, "[SIMULATION] Stopped pipeline still running after " + PIPELINE_STOP_TIMEOUT_MS + " ms");
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The per-image simulation as a staged pipeline: while one image is inferred, the next ones
+     * are already decoded and converted to tensors on other threads. The inference stage waits
+     * while paused, the last stage shows each result and keeps the interval. Stage utilization
+     * is logged every PIPELINE_REPORT_EVERY images, when the interval changes and at the end.
+     *
+     * Without a cascade or ensemble the run follows model swaps: frames are converted for the
+     * pool's model at decode time, and the few already converted for the previous model when the
+     * swap lands are converted again by the new engine. The cascade, ensemble and their
+     * converters come checked from startSimulation().
+     */
+    private void runPipelinedSimulation(Cascade<SimulationFrame> activeCascade, Ensemble<Bitmap> activeEnsemble,
+                                        TensorConverter fixedConverter, TensorConverter fixedDecodeConverter) {
+        boolean followsPool = activeCascade == null && activeEnsemble == null;
+        if (activeCascade != null) activeCascade.resetStats();
+        if (activeEnsemble != null) activeEnsemble.resetStats();
+        // Ensemble members convert the decoded image themselves, so no tensors are prepared.
+        boolean tensorsNeeded = activeEnsemble == null;
+        String inputSource = tensorsNeeded && datasetPack != null ? "mmap pack" : "JPEG";
+        long runStartNanos = System.nanoTime();
+        int[][] previewPixels = {new int[0]};
+        @SuppressWarnings("unchecked")
+        ModelHandle<InterpreterPool.Model>[] poolModel = new ModelHandle[1];
+        TensorConverter[] poolConverter = new TensorConverter[1];
+        int[] decodeIndex = {0};
+        String[] lastDecodedPath = {""};
+        long[] frameCount = {0};
+        long[] lastShownNanos = {0};
+        long startTime = System.currentTimeMillis();
+
+        List<SimulationFrame> slots = new ArrayList<>();
+        for (int i = 0; i < PIPELINE_SLOTS; i++) slots.add(new SimulationFrame());
+
+        StagedPipeline<SimulationFrame> pipeline = new StagedPipeline<>("Simulation", slots);
+        pipeline.source("decode", frame -> {
+            while (decodeIndex[0] < imagePaths.size()) {
+                int index = decodeIndex[0]++;
+                String imagePath = imagePaths.get(index);
+                if (imagePath.equals(lastDecodedPath[0])) continue;
+                lastDecodedPath[0] = imagePath;
+
+                long decodeStart = System.nanoTime();
+                TensorConverter converter = fixedConverter;
+                TensorConverter decodeConverter = fixedDecodeConverter;
+                frame.preparedFor = null;
+                if (followsPool) {
+                    ModelHandle<InterpreterPool.Model> current = interpreterPool.acquire();
+                    if (current == null) return false;
                     try {
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
+                        if (current != poolModel[0]) {
+                            poolConverter[0] = current.get().getPrimary().newConverter();
+                            poolModel[0] = current;
+                        }
+                    } finally {
+                        current.release();
+                    }
+                    converter = poolConverter[0];
+                    if (converter == null) return false;
+                    decodeConverter = converter;
+                    frame.preparedFor = poolModel[0];
+                }
+                frame.converter = converter;
+
+                DatasetPack currentPack = datasetPack;
+                DatasetPack pack = tensorsNeeded && currentPack != null
+                        && currentPack.matches(converter) ? currentPack : null;
+                int packIndex = pack != null ? pack.indexOf(imagePath) : -1;
+                if (!tensorsNeeded) {
+                    frame.preprocessed = false;
+                } else if (packIndex >= 0) {
+                    frame.input = pack.getTensor(packIndex);  // A slice of the mapping, nothing copied
+                    frame.preprocessed = true;
+                } else {
+                    if (frame.input == null || frame.input.isReadOnly() || frame.input.capacity() != converter.getTensorBytes()) {
+                        frame.input = ByteBuffer.allocateDirect(converter.getTensorBytes()).order(ByteOrder.nativeOrder());
                     }
+                    frame.cacheKey = TensorCache.key(imagePath, converter.getWidth(), converter.getHeight(), converter.getFormat());
+                    frame.preprocessed = tensorCache.get(frame.cacheKey, frame.input);
                 }
+
+                Bitmap bitmap;
+                if (frame.preprocessed) {
+                    // Only a preview to show, the tensor is ready.
+                    int previewSize = converter.getWidth() * converter.getHeight();
+                    if (previewPixels[0].length != previewSize) previewPixels[0] = new int[previewSize];
+                    converter.toPixels(frame.input, previewPixels[0]);
+                    bitmap = Bitmap.createBitmap(previewPixels[0], converter.getWidth(), converter.getHeight(), Bitmap.Config.ARGB_8888);
+                } else {
+                    bitmap = loadBitmapFromAssets(imagePath, decodeConverter);
+                }
+                if (bitmap == null) {
+                    Log.e(TAG, "[ERROR] Skipping image, failed to decode: " + imagePath);
+                    updateDebugLog(String.format(Locale.US, "[ERROR] Failed to decode image: %s\n", imagePath));
+                    continue;
+                }
+                frame.index = index;
+                frame.path = imagePath;
+                frame.bitmap = bitmap;
+                frame.workNanos = System.nanoTime() - decodeStart;
+                return true;
+            }
+            return false;
+        });
+        pipeline.stage("preprocess", new StagedPipeline.Stage<SimulationFrame>() {
+            private int[] stagePixels = new int[0];
+
+            @Override
+            public boolean process(SimulationFrame frame) {
+                if (frame.preprocessed || !tensorsNeeded) return true;
+                long preprocessStart = System.nanoTime();
+                int width = frame.bitmap.getWidth();
+                int height = frame.bitmap.getHeight();
+                if (stagePixels.length < width * height) stagePixels = new int[width * height];
+                frame.bitmap.getPixels(stagePixels, 0, width, 0, 0, width, height);
+                frame.converter.convert(stagePixels, width, height, frame.input);
+                tensorCache.put(frame.cacheKey, frame.input);
+                frame.workNanos += System.nanoTime() - preprocessStart;
+                return true;
+            }
+        });
+        pipeline.stage("inference", frame -> {
+            pauseLock.lock();
+            try {
+                while (isPaused) {
+                    unpaused.await();
+                }
+            } finally {
+                pauseLock.unlock();
+            }
+            if (!isRunning) return false;
+
+            InferenceEngine.Result result = acquireResult();
+            if (activeEnsemble != null) {
+                frame.decidedBy = activeEnsemble.classify(frame.bitmap, result) ? 0 : -1;
+            } else if (activeCascade != null) {
+                frame.decidedBy = activeCascade.classify(frame, result);
+            } else {
+                frame.decidedBy = classifyOnPool(frame, result) ? 0 : -1;
+            }
+            if (frame.decidedBy < 0
+                    || result.labelIndex < 0 || result.labelIndex >= wasteTypes.length) {
+                releaseResult(result);
+                Log.e(TAG, "[ERROR] Skipping image, inference failed: " + frame.path);
+                updateDebugLog(String.format(Locale.US, "[ERROR] Inference failed for image: %s\n", frame.path));
+                frame.bitmap = null;
+                return false;
+            }
+            frame.result = result;
+            frame.workNanos += result.inferenceTimeNanos;
+            return true;
+        });
+        pipeline.stage("display", frame -> {
+            frameCount[0]++;
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            if (frameCount[0] == 1) {
+                updateDebugLog(String.format(Locale.US, "[SIMULATION] First image after %.1f ms (%s)\n",
+                        (System.nanoTime() - runStartNanos) / 1e6f, inputSource));
+            }
+
+            latestBitmap = frame.bitmap;
+            InferenceEngine.Result previous = latestResult;
+            latestResult = frame.result;
+            if (previous != null) releaseResult(previous);
+            latestInferenceTime = frame.workNanos / 1_000_000;
+            latestFps = (elapsedTime > 0) ? (frameCount[0] * 1000.0f) / elapsedTime : 0;
+            currentImageIndex = frame.index;
+
+            if (!debugCheckBox.isChecked()) {
+                updateDebugLog(String.format(Locale.US, "[DEBUG] Image: %s | Label: %s | Confidence: %.2f%%%s\n",
+                        frame.path, wasteTypes[frame.result.labelIndex], frame.result.confidence * 100,
+                        activeCascade != null ? " | Model: " + activeCascade.getStageName(frame.decidedBy) : ""));
+            }
+            if (frameCount[0] % PIPELINE_REPORT_EVERY == 0) logPipelineStats(pipeline);
+            frame.bitmap = null;
+            frame.result = null;
+
+            // The interval counts from the previous image, the next one is usually ready by then.
+            long targetInterval = (long)(intervalSlider.getProgress() + 1) * 100;
+            long sleepTime = targetInterval - (System.nanoTime() - lastShownNanos[0]) / 1_000_000;
+            if (sleepTime > 0) Thread.sleep(sleepTime);
+            lastShownNanos[0] = System.nanoTime();
+            return true;
+        });
+        pipeline.onTerminated(completed -> {
+            logPipelineStats(pipeline);
+            if (completed) {
+                updateDebugLog(String.format(Locale.US, "[SIMULATION] Full pass of %d images in %.1f s (%s)\n",
+                        frameCount[0], (System.nanoTime() - runStartNanos) / 1e9f, inputSource));
+            }
+            if (completed && isRunning && simulationPipeline == pipeline) {
+                simulationPipeline = null;
+                handler.post(() -> {
+                    Toast.makeText(MainActivity.this, String.format(Locale.US, "Finished processing %s dataset. Waiting for next run...", selectedDataset), Toast.LENGTH_SHORT).show();
+                    pauseSimulation();
+                    finishedInference = true;
+                });
             }
 
-            if (isStopped) {
+            // Unless a newer run already started, after a stop that timed out.
+            if (isStopped && simulationPipeline == null) {
                 handler.post(this::clearVisuals);
                 isStopped = false;
             }
@@ -912,6 +1838,165 @@ public class MainActivity extends AppCompatActivity {
             lastRecordedImageIndex = -1;
             lastImagePath = "";
         });
+
+        simulationPipeline = pipeline;
+        pipeline.start();
+    }
+
+    // Runs frame on the pool's current model, holding it until the result is read.
+    private boolean classifyOnPool(SimulationFrame frame, InferenceEngine.Result result) {
+        ModelHandle<InterpreterPool.Model> model = interpreterPool.acquire();
+        if (model == null) return false;
+        try {
+            InferenceEngine engine = model.get().getPrimary();
+            boolean classified;
+            if (frame.preparedFor == model) {
+                classified = engine.classifyTensor(frame.input, result);
+            } else {
+                // Converted for the model before a swap, so the new engine converts it again.
+                Bitmap source = frame.bitmap;
+                if (frame.preprocessed) {
+                    TensorConverter converter = engine.newConverter();
+                    source = converter != null ? loadBitmapFromAssets(frame.path, converter) : null;
+                    if (source != null) frame.bitmap = source;
+                }
+                classified = source != null && engine.classify(source, result);
+            }
+            if (classified) model.countFrame();
+            return classified;
+        } finally {
+            model.release();
+        }
+    }
+
+    private void logPipelineStats(StagedPipeline<SimulationFrame> pipeline) {
+        updateDebugLog(String.format(Locale.US, "[PIPELINE] Interval %.1fs:\n%s\nTensor cache: %s\n",
+                (intervalSlider.getProgress() + 1) / 10.0f, pipeline.getStatsSummary(), tensorCache.getStatsSummary()));
+        Cascade<SimulationFrame> current = cascade;
+        if (current != null) updateDebugLog(String.format(Locale.US, "[CASCADE] %s\n", current.getStatsSummary()));
+        Ensemble<Bitmap> currentEnsemble = ensemble;
+        if (currentEnsemble != null) updateDebugLog(String.format(Locale.US, "[ENSEMBLE] %s\n", currentEnsemble.getStatsSummary()));
+    }
+
+    /**
+     * Throughput mode of the simulation, on the executor: batchSize images per invoke on an
+     * engine of its own, without the interval wait. Each label is checked against a batch-1 run
+     * on the primary engine, which is left out of the images/s figures.
+     */
+    private void runBatchSimulation(ByteBuffer modelBuffer, InterpreterConfig config, int batchSize) {
+        InferenceEngine batchEngine = new InferenceEngine();
+        try {
+            batchEngine.load(modelBuffer, config);
+            batchEngine.setBatchSize(batchSize);
+        } catch (IOException e) {
+            batchEngine.close();
+            Log.e(TAG, "[ERROR] Batched simulation not possible", e);
+            handler.post(() -> {
+                updateDebugLog(String.format(Locale.US, "[ERROR] Batched simulation not possible: %s\n", e.getMessage()));
+                stopSimulation();
+            });
+            return;
+        }
+        TensorConverter batchConverter = batchEngine.newConverter();
+        updateDebugLog(String.format(Locale.US, "[BATCH] Running %d images in batches of %d...\n", imagePaths.size(), batchSize));
+
+        Bitmap[] bitmaps = new Bitmap[batchSize];
+        InferenceEngine.Result[] results = new InferenceEngine.Result[batchSize];
+        for (int i = 0; i < batchSize; i++) results[i] = new InferenceEngine.Result();
+        InferenceEngine.Result reference = new InferenceEngine.Result();
+
+        long startTime = System.nanoTime();
+        long inferenceNanos = 0;
+        long verifyNanos = 0;
+        int classified = 0;
+        int mismatches = 0;
+        try {
+            while (isRunning) {
+                pauseLock.lock();
+                try {
+                    while (isPaused) {
+                        unpaused.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } finally {
+                    pauseLock.unlock();
+                }
+
+                if (!isRunning) break;
+                if (currentImageIndex >= imagePaths.size()) {
+                    handler.post(() -> {
+                        Toast.makeText(MainActivity.this, String.format(Locale.US, "Finished processing %s dataset. Waiting for next run...", selectedDataset), Toast.LENGTH_SHORT).show();
+                        pauseSimulation();
+                        finishedInference = true;
+                    });
+                    break;
+                }
+
+                int first = currentImageIndex;
+                int count = 0;
+                while (count < batchSize && currentImageIndex < imagePaths.size()) {
+                    bitmaps[count++] = loadBitmapFromAssets(imagePaths.get(currentImageIndex++), batchConverter);
+                }
+
+                long batchStart = System.nanoTime();
+                int done = batchEngine.classifyBatch(bitmaps, count, results);
+                inferenceNanos += System.nanoTime() - batchStart;
+                if (done == 0) continue;
+
+                long verifyStart = System.nanoTime();
+                // The batch engine keeps the model the run started with; after a swap there is nothing to compare to.
+                ModelHandle<InterpreterPool.Model> model = interpreterPool.acquire();
+                if (model != null) {
+                    try {
+                        InferenceEngine engine = model.get().getPrimary();
+                        for (int i = 0; i < count && engine.getModelBuffer() == modelBuffer; i++) {
+                            if (bitmaps[i] == null) continue;
+                            if (engine.classify(bitmaps[i], reference) && reference.labelIndex != results[i].labelIndex) {
+                                mismatches++;
+                                Log.w(TAG, "[BATCH] Label differs from batch 1: " + imagePaths.get(first + i));
+                            }
+                        }
+                    } finally {
+                        model.release();
+                    }
+                }
+                verifyNanos += System.nanoTime() - verifyStart;
+                classified += done;
+
+                // The last image of each batch is the one the UI shows.
+                int last = count - 1;
+                while (bitmaps[last] == null) last--;
+                if (results[last].labelIndex >= 0 && results[last].labelIndex < wasteTypes.length) {
+                    InferenceEngine.Result shown = acquireResult();
+                    shown.copyFrom(results[last]);
+                    latestBitmap = bitmaps[last];
+                    InferenceEngine.Result previous = latestResult;
+                    latestResult = shown;
+                    if (previous != null) releaseResult(previous);
+                    latestInferenceTime = shown.getInferenceTimeMs();
+                    latestFps = classified * 1e9f / (System.nanoTime() - startTime - verifyNanos);
+                }
+                Arrays.fill(bitmaps, null);
+            }
+        } finally {
+            batchEngine.close();
+        }
+
+        if (classified > 0) {
+            updateDebugLog(String.format(Locale.US,
+                    "[BATCH] %d images, batch %d: %.1f images/s inference, %.1f images/s with decoding, %d label(s) differ from batch 1\n",
+                    classified, batchSize, classified * 1e9f / inferenceNanos,
+                    classified * 1e9f / (System.nanoTime() - startTime - verifyNanos), mismatches));
+        }
+
+        if (isStopped) {
+            handler.post(this::clearVisuals);
+            isStopped = false;
+        }
+        lastRecordedImageIndex = -1;
+        lastImagePath = "";
     }
 
     private void pauseSimulation() {
@@ -964,6 +2049,13 @@ public class MainActivity extends AppCompatActivity {
 
         isStopped = true;
         isRunning = false;
+        stopPending = true;
+        StagedPipeline<SimulationFrame> pipeline = simulationPipeline;
+        if (pipeline != null) {
+            simulationPipeline = null;
+            stoppedPipeline = pipeline;
+            pipeline.stop();
+        }
 
         lastRecordedImageIndex = -1;
         lastImagePath = "";
@@ -998,39 +2090,64 @@ public class MainActivity extends AppCompatActivity {
 
         camView.setImageResource(android.R.color.transparent);
         rawView.setImageResource(android.R.color.transparent);
+        releaseDisplayedEsp32Frames();
         camViewHint.setText(R.string.esp32_cam_view);
         rawViewHint.setText(R.string.predicted_raw_image);
         camViewHint.setVisibility(View.VISIBLE);
         rawViewHint.setVisibility(View.VISIBLE);
 
-        updateDebugLog(String.format(Locale.US, "[ESP32] Connecting to camera at %s...\n", ipAddress));
+        List<String> ipAddresses = ESP32CameraHelper.parseIpAddresses(ipAddress);
+        for (int i = 0; i < ipAddresses.size(); i++) {
+            updateDebugLog(String.format(Locale.US, "[ESP32] Connecting to %s at %s...\n",
+                    ESP32CameraHelper.cameraIdForIndex(i), ipAddresses.get(i)));
+        }
+        previewCameraId = ESP32CameraHelper.DEFAULT_CAMERA_ID;
+        lastInferenceTimes.clear();
+        InferenceEngine engine = interpreterPool.getPrimary();
+        esp32CameraHelper.setInferenceSize(engine.getInputWidth(), engine.getInputHeight());
+        esp32CameraHelper.setFrameIntervalMs((long)(intervalSlider.getProgress() + 1) * 100);
 
-        esp32CameraHelper.startStream(ipAddress, new ESP32CameraHelper.CameraStreamListener() {
+        esp32CameraHelper.startStreams(ipAddresses, new ESP32CameraHelper.CameraStreamListener() {
             @Override
-            public void onFrameReceived(Bitmap frame) {
+            public void onFrameReceived(CameraFrame frame) {
                 runOnUiThread(() -> {
-                    if (camView != null && frame != null) {
-                        camView.setImageBitmap(frame);
+                    if (camView == null || frame == null) {
+                        if (frame != null) frame.release();
+                        return;
+                    }
+
+                    if (isRunning && !isPaused && interpreterPool.getPrimary().isLoaded()) {
+                        processEsp32Frame(frame);
+                    }
+
+                    // Every camera feeds inference, only the selected one is shown.
+                    if (frame.getBitmap() != null && frame.getCameraId().equals(previewCameraId)) {
+                        camView.setImageBitmap(frame.getBitmap());
                         camViewHint.setVisibility(View.GONE);
 
-                        if (isRunning && !isPaused && interpreter != null) {
-                            processEsp32Frame(frame);
+                        // The previous frame is off screen now, so its bitmap can go back to the pool.
+                        if (displayedCameraFrame != null) {
+                            displayedCameraFrame.release();
                         }
+                        displayedCameraFrame = frame;
+                    } else {
+                        frame.release();
                     }
                 });
             }
 
             @Override
-            public void onStreamError(String error) {
+            public void onStreamError(String cameraId, String error) {
                 runOnUiThread(() -> {
                     updateDebugLog(String.format(Locale.US,
-                            "[ESP32] Error: %s\n", error));
+                            "[ESP32] %s error: %s\n", cameraId, error));
+                    if (!cameraId.equals(previewCameraId)) return;
 
                     // Check if it's a cleartext error
                     if (error.contains("Cleartext") || error.contains("cleartext")) {
                         camViewHint.setText("[ERROR] HTTP not allowed. Add to AndroidManifest.xml:\nandroid:usesCleartextTraffic=\"true\"");
                     } else if (error.contains("ENETUNREACH") || error.contains("ECONNREFUSED")) {
-                        camViewHint.setText(String.format(Locale.US, "[ERROR] Cannot connect to %s:81/stream\nCheck IP and ESP32-CAM is running!", currentEsp32Ip));
+                        camViewHint.setText(String.format(Locale.US, "[ERROR] Cannot connect to %s:81/stream\nCheck IP and ESP32-CAM is running!", getEsp32IpAddress(cameraId)));
                     } else {
                         camViewHint.setText(String.format(Locale.US, "[ERROR] %s", error));
                     }
@@ -1039,9 +2156,26 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            public void onStreamStarted() {
+            public void onReconnecting(String cameraId, int attempt, long delayMs, String reason) {
+                runOnUiThread(() -> {
+                    updateDebugLog(String.format(Locale.US,
+                            "[ESP32] %s connection lost (%s), reconnecting in %d ms (attempt %d)\n", cameraId, reason, delayMs, attempt));
+                    if (!cameraId.equals(previewCameraId)) return;
+                    camViewHint.setText(String.format(Locale.US,
+                            "[ESP32] Reconnecting to %s:81/stream (attempt %d)...", getEsp32IpAddress(cameraId), attempt));
+                    camViewHint.setVisibility(View.VISIBLE);
+                });
+            }
+
+            @Override
+            public void onStreamStarted(String cameraId) {
                 runOnUiThread(() -> {
-                    updateDebugLog("[ESP32] Stream started on port 81\n");
+                    updateDebugLog(String.format(Locale.US, "[ESP32] %s stream started on port 81\n", cameraId));
+                    ESP32CameraStream stream = esp32CameraHelper.getStream(cameraId);
+                    if (stream != null && stream.getHealth().getReconnectCount() > 0) {
+                        updateDebugLog(String.format(Locale.US, "[ESP32] %s reconnected (%d so far)\n",
+                                cameraId, stream.getHealth().getReconnectCount()));
+                    }
                     statusText.setText(R.string.running);
                     statusText.setTextColor(0xFF44FF44);
 
@@ -1050,10 +2184,25 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            public void onStreamStopped() {
+            public void onStreamStopped(String cameraId) {
                 runOnUiThread(() -> {
+                    updateDebugLog(String.format(Locale.US, "[ESP32] %s stream stopped\n", cameraId));
+                    ESP32CameraStream stream = esp32CameraHelper.getStream(cameraId);
+                    if (stream != null) {
+                        updateDebugLog(String.format(Locale.US, "[ESP32] %s decode queue: %s\n", cameraId, stream.getDecodeQueueStats()));
+                        updateDebugLog(String.format(Locale.US, "[ESP32] %s decode: %s\n", cameraId, stream.getDecodeStats()));
+                        updateDebugLog(String.format(Locale.US, "[ESP32] %s health: %s\n", cameraId, stream.getHealth().getStatsSummary()));
+                        if (stream.isSnapshotMode()) {
+                            updateDebugLog(String.format(Locale.US, "[ESP32] %s snapshots: %s\n", cameraId, stream.getSnapshotStats()));
+                        }
+                    }
+                    // The rest only once the last camera is down.
+                    if (esp32CameraHelper.hasActiveStreams()) return;
+
                     updateButtonStates(State.IDLE);
-                    updateDebugLog("[ESP32] Stream stopped\n");
+                    updateDebugLog(String.format(Locale.US, "[ESP32] Bitmap pool: %s\n", esp32CameraHelper.getBitmapPool().getStatsSummary()));
+                    updateDebugLog(String.format(Locale.US, "[ESP32] Inference scheduler:\n%s\n", inferenceScheduler.getStatsSummary()));
+                    updateDebugLog(String.format(Locale.US, "[ESP32] Interpreter pool: %s\n", interpreterPool.getStatsSummary()));
 
                     if (isEsp32Mode.get()) {
                         statusText.setText(R.string.stopped);
@@ -1071,9 +2220,11 @@ public class MainActivity extends AppCompatActivity {
 
             private void clearVisuals() {
                 resultText.setText(R.string.result);
+                InferenceEngine engine = interpreterPool.getPrimary();
                 metricsText.setText(String.format(Locale.US,
-                        "Model: %s (%dx%d) | Inference: -- ms | IP: %s",
-                        currentModelName, inputWidth, inputHeight, currentEsp32Ip));
+                        "Model: %s (%dx%d) | Inference: -- ms (%s) | IP: %s",
+                        currentModelName, engine.getInputWidth(), engine.getInputHeight(),
+                        engine.getConfig().getLabel(), currentEsp32Ip));
                 plasticProgressText.setText(R.string.plastic_progress);
                 paperProgressText.setText(R.string.paper_progress);
                 metalProgressText.setText(R.string.metal_progress);
@@ -1082,6 +2233,7 @@ public class MainActivity extends AppCompatActivity {
                 metalProgressBar.setProgress(0);
                 camView.setImageResource(android.R.color.transparent);
                 rawView.setImageResource(android.R.color.transparent);
+                releaseDisplayedEsp32Frames();
                 updateHints(modeSpinner.getSelectedItem().toString());
                 statusText.setText(R.string.stopped);
                 updateButtonStates(State.IDLE);
@@ -1090,7 +2242,7 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private void processEsp32Frame(Bitmap frame) {
+    private void processEsp32Frame(CameraFrame frame) {
         pauseLock.lock();
         try {
             if (isPaused) {
@@ -1100,106 +2252,243 @@ public class MainActivity extends AppCompatActivity {
             pauseLock.unlock();
         }
 
+        String cameraId = frame.getCameraId();
         long currentTime = System.currentTimeMillis();
         long targetInterval = (long)(intervalSlider.getProgress() + 1) * 100;
 
-        if (shouldProcessFrame(currentTime, targetInterval)) {
-            if (interpreter != null && isRunning) {
-                Bitmap preparedFrame = esp32CameraHelper.prepareFrameForInference(frame, inputWidth, inputHeight);
-
-                if (preparedFrame != null) {
-                    executor.execute(() -> runInferenceOnFrame(preparedFrame));
+        if (shouldProcessFrame(cameraId, currentTime, targetInterval)) {
+            // Prefer the model-sized decode, the preview is only resampled as a fallback.
+            Bitmap source = frame.getInferenceBitmap() != null ? frame.getInferenceBitmap() : frame.getBitmap();
+            if (isRunning && interpreterPool.getPrimary().isLoaded() && source != null) {
+                // The engine resamples while converting, so the decoded bitmap is used as is and
+                // the job only keeps the frame alive. Cameras share the pool's workers, the
+                // scheduler serves them in turn.
+                Esp32InferenceJob replaced = inferenceScheduler.submit(cameraId, acquireEsp32Job(frame.retain(), source));
+                if (replaced != null) {
+                    replaced.frame.release();
+                    releaseEsp32Job(replaced);
                 }
+                dispatchEsp32Inference();
+            }
+        }
+    }
+
+    // Owns one reference to frame until the result is shown or dropped. Is its own pool callback
+    // and UI runnable, so a frame allocates no closures on its way through.
+    private class Esp32InferenceJob implements InterpreterPool.Callback, Runnable {
+        CameraFrame frame;
+        Bitmap source;
+        InferenceEngine.Result result;
+
+        @Override
+        public void onClassified(InferenceEngine.Result result, boolean success) {
+            if (!success || result.labelIndex < 0 || result.labelIndex >= wasteTypes.length) {
+                releaseResult(result);
+                frame.release();
+                releaseEsp32Job(this);
+                return;
+            }
+            this.result = result;
+            runOnUiThread(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                showEsp32Result(this, result);
+            } finally {
+                releaseResult(result);
+                releaseEsp32Job(this);
+            }
+        }
+    }
+
+    private Esp32InferenceJob acquireEsp32Job(CameraFrame frame, Bitmap source) {
+        Esp32InferenceJob job = freeEsp32Jobs.poll();
+        if (job == null) job = new Esp32InferenceJob();
+        job.frame = frame;
+        job.source = source;
+        return job;
+    }
+
+    // The frame reference has to be released or handed on before.
+    private void releaseEsp32Job(Esp32InferenceJob job) {
+        job.frame = null;
+        job.source = null;
+        job.result = null;
+        freeEsp32Jobs.offer(job);
+    }
+
+    // Hands scheduled jobs to free workers. Waiting jobs stay in the scheduler, where a newer
+    // frame of the same camera can still replace them. Also runs whenever a worker frees up, so
+    // on the UI and worker threads at once; a worker is reserved before a job is taken.
+    private void dispatchEsp32Inference() {
+        while (interpreterPool.tryReserve()) {
+            Esp32InferenceJob job = inferenceScheduler.poll();
+            if (job != null) {
+                runInferenceOnFrame(job);
+                continue;
             }
+            interpreterPool.cancelReservation();
+            // A job scheduled meanwhile may have found no free worker because of our reservation.
+            if (!inferenceScheduler.hasPending()) return;
         }
     }
 
-    private boolean shouldProcessFrame(long currentTime, long targetInterval) {
-        if (lastInferenceTime == 0) {
-            lastInferenceTime = currentTime;
+    private String getEsp32IpAddress(String cameraId) {
+        ESP32CameraStream stream = esp32CameraHelper.getStream(cameraId);
+        return stream != null ? stream.getIpAddress() : currentEsp32Ip;
+    }
+
+    private void cyclePreviewCamera() {
+        List<ESP32CameraStream> streams = esp32CameraHelper.getStreams();
+        if (streams.size() < 2) return;
+
+        int index = 0;
+        for (int i = 0; i < streams.size(); i++) {
+            if (streams.get(i).getCameraId().equals(previewCameraId)) {
+                index = (i + 1) % streams.size();
+                break;
+            }
+        }
+        previewCameraId = streams.get(index).getCameraId();
+
+        camView.setImageResource(android.R.color.transparent);
+        rawView.setImageResource(android.R.color.transparent);
+        releaseDisplayedEsp32Frames();
+        Toast.makeText(this, String.format(Locale.US, "Showing %s (%s)", previewCameraId,
+                streams.get(index).getIpAddress()), Toast.LENGTH_SHORT).show();
+        updateDebugLog(String.format(Locale.US, "[ESP32] Preview switched to %s\n", previewCameraId));
+    }
+
+    // The interval applies per camera, so adding a camera does not slow the others down.
+    private boolean shouldProcessFrame(String cameraId, long currentTime, long targetInterval) {
+        // Snapshots are already fetched at the interval, network jitter must not make us skip one.
+        ESP32CameraStream stream = esp32CameraHelper.getStream(cameraId);
+        if (stream != null && stream.isSnapshotMode()) {
+            lastInferenceTimes.put(cameraId, currentTime);
+            return true;
+        }
+
+        Long lastInferenceTime = lastInferenceTimes.get(cameraId);
+        if (lastInferenceTime == null) {
+            lastInferenceTimes.put(cameraId, currentTime);
             return true;
         }
 
         long timeSinceLastInference = currentTime - lastInferenceTime;
         if (timeSinceLastInference >= targetInterval) {
-            lastInferenceTime = currentTime;
+            lastInferenceTimes.put(cameraId, currentTime);
             return true;
         }
 
         return false;
     }
 
-    private void runInferenceOnFrame(Bitmap preparedFrame) {
-        try {
-            long inferenceStartTime = System.currentTimeMillis();
-
-            ByteBuffer inputBuffer = preprocessImage(preparedFrame);
-            if (inputBuffer == null) return;
+    // Results arrive in dispatch order, so a slow worker never lets an older frame overwrite a newer one.
+    private void runInferenceOnFrame(Esp32InferenceJob job) {
+        interpreterPool.submitReserved(job.source, acquireResult(), job);
+    }
 
-            Object output = (outputDataType == DataType.FLOAT32)
-                    ? new float[1][wasteTypes.length]
-                    : new byte[1][wasteTypes.length];
+    // UI thread. Takes over the job's frame reference, result stays with the caller.
+    private void showEsp32Result(Esp32InferenceJob job, InferenceEngine.Result result) {
+        String cameraId = job.frame.getCameraId();
+        float[] probabilities = result.probabilities;
+        float confidence = result.confidence;
+        String label = wasteTypes[result.labelIndex];
+        long inferenceTime = result.getInferenceTimeMs();
 
-            interpreter.run(inputBuffer, output);
+        if (probabilities.length >= 3) {
+            probabilityHistory.addData(cameraId, probabilities[2] * 100, probabilities[1] * 100, probabilities[0] * 100);
+        }
 
-            long inferenceTime = System.currentTimeMillis() - inferenceStartTime;
+        if (firebaseHelper != null && confidence >= 0.5f) {
+            String modelVersion = currentModelName != null ? currentModelName : "unknown";
+            String inferenceMode = getInferenceMode();
+
+            firebaseHelper.uploadInferenceData(
+                    "esp32_frame_" + cameraId + "_" + System.currentTimeMillis(),
+                    label.toLowerCase(),
+                    confidence,
+                    modelVersion,
+                    inferenceMode,
+                    cameraId
+            );
+        }
 
-            float[] probabilities = dequantizeAndApplySoftmax(output);
-            int maxIndex = getIndexOfLargest(probabilities);
-            if (maxIndex == -1) return;
+        // Results of the other cameras go to the history and Firebase only.
+        if (!cameraId.equals(previewCameraId)) {
+            job.frame.release();
+            return;
+        }
 
-            float confidence = probabilities[maxIndex];
-            String label = wasteTypes[maxIndex];
+        startupMetrics.mark(StartupMetrics.Phase.FIRST_LABEL, SystemClock.elapsedRealtimeNanos());
+        boolean multiCamera = esp32CameraHelper.getCameraCount() > 1;
+        // Built in esp32Text rather than with String.format, which costs a Formatter per call.
+        StringBuilder text = esp32Text;
+        text.setLength(0);
+        appendFixed(text.append("Label: ").append(label.toUpperCase()).append(" ("), confidence * 100, 2).append("%)");
+        if (multiCamera) text.append(" [").append(cameraId).append(']');
+        resultText.setText(text);
 
-            runOnUiThread(() -> {
-                resultText.setText(String.format(Locale.US, "Label: %s (%.2f%%)", label.toUpperCase(), confidence * 100));
+        rawView.setImageBitmap(job.source);
+        rawViewHint.setVisibility(View.GONE);
 
-                rawView.setImageBitmap(preparedFrame);
-                rawViewHint.setVisibility(View.GONE);
+        if (displayedInferenceFrame != null) {
+            displayedInferenceFrame.release();
+        }
+        displayedInferenceFrame = job.frame;
 
-                if (probabilities.length >= 3) {
-                    float plastic = probabilities[2] * 100;
-                    float paper = probabilities[1] * 100;
-                    float metal = probabilities[0] * 100;
+        if (probabilities.length >= 3) {
+            float plastic = probabilities[2] * 100;
+            float paper = probabilities[1] * 100;
+            float metal = probabilities[0] * 100;
 
-                    probabilityHistory.addData(plastic, paper, metal);
+            setPercentText(plasticProgressText, "Plastic ", plastic);
+            setPercentText(paperProgressText, "Paper ", paper);
+            setPercentText(metalProgressText, "Metal ", metal);
 
-                    plasticProgressText.setText(String.format(Locale.US, "Plastic %.2f%%", plastic));
-                    paperProgressText.setText(String.format(Locale.US, "Paper %.2f%%", paper));
-                    metalProgressText.setText(String.format(Locale.US, "Metal %.2f%%", metal));
+            plasticProgressBar.setProgress((int)plastic);
+            paperProgressBar.setProgress((int)paper);
+            metalProgressBar.setProgress((int)metal);
 
-                    plasticProgressBar.setProgress((int)plastic);
-                    paperProgressBar.setProgress((int)paper);
-                    metalProgressBar.setProgress((int)metal);
+            updateBarColors(probabilities[0], probabilities[1], probabilities[2]);
+        }
 
-                    updateBarColors(probabilities[0], probabilities[1], probabilities[2]);
-                }
+        ESP32CameraStream stream = esp32CameraHelper.getStream(cameraId);
+        InferenceEngine engine = interpreterPool.getPrimary();
+        text.setLength(0);
+        text.append("Model: ").append(currentModelName)
+                .append(" (").append(engine.getInputWidth()).append('x').append(engine.getInputHeight())
+                .append(") | Inference: ").append(inferenceTime).append(" ms (").append(engine.getConfig().getLabel())
+                .append(") | ");
+        if (multiCamera) text.append(cameraId).append(' ');
+        appendFixed(text.append("IP: ").append(getEsp32IpAddress(cameraId)).append(" ("),
+                stream != null ? stream.getHealth().getFramesPerSecond() : 0f, 1).append(" FPS");
+        if (stream != null && stream.isSnapshotMode()) text.append(", snapshots");
+        metricsText.setText(text.append(')'));
+    }
 
-                metricsText.setText(String.format(Locale.US,
-                        "Model: %s (%dx%d) | Inference: %d ms | IP: %s",
-                        currentModelName, inputWidth, inputHeight, inferenceTime, currentEsp32Ip));
-
-                if (firebaseHelper != null && confidence >= 0.5f) {
-                    String modelVersion = currentModelName != null ? currentModelName : "unknown";
-                    String inferenceMode = getInferenceMode();
-
-                    firebaseHelper.uploadInferenceData(
-                            "esp32_frame_" + System.currentTimeMillis(),
-                            label.toLowerCase(),
-                            confidence,
-                            modelVersion,
-                            inferenceMode
-                    );
-                }
-            });
+    // "Plastic 42.17%", as String.format(Locale.US, "%s%.2f%%") would write it. UI thread.
+    private void setPercentText(TextView view, String prefix, float percent) {
+        esp32Text.setLength(0);
+        view.setText(appendFixed(esp32Text.append(prefix), percent, 2).append('%'));
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "[ERROR] ESP32 inference error: " + e.getMessage(), e);
-            runOnUiThread(() -> {
-                Toast.makeText(MainActivity.this, "Oops, something went wrong with ESP32-CAM inference: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                updateDebugLog(String.format(Locale.US, "[ERROR] ESP32 inference error: %s\n", e.getMessage()));
-            });
+    // Appends value rounded half up to decimals digits, like %.Nf in Locale.US.
+    static StringBuilder appendFixed(StringBuilder out, float value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long scaled = Math.round(Math.abs((double) value) * scale);
+        if (value < 0 && scaled != 0) out.append('-');
+        out.append(scaled / scale);
+        if (decimals > 0) {
+            out.append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > fraction && digit > 1; digit /= 10) out.append('0');
+            out.append(fraction);
         }
+        return out;
     }
 
     private void resumeEsp32Inference() {
@@ -1219,6 +2508,11 @@ public class MainActivity extends AppCompatActivity {
     private void stopEsp32CameraStream() {
         if (esp32CameraHelper != null) {
             esp32CameraHelper.stopStream();
+            inferenceScheduler.clear(job -> {
+                job.frame.release();
+                releaseEsp32Job(job);
+            });
+            lastInferenceTimes.clear();
 
             if (isRunning) {
                 isRunning = false;
@@ -1230,6 +2524,7 @@ public class MainActivity extends AppCompatActivity {
             runOnUiThread(() -> {
                 camView.setImageResource(android.R.color.transparent);
                 rawView.setImageResource(android.R.color.transparent);
+                releaseDisplayedEsp32Frames();
                 camViewHint.setVisibility(View.VISIBLE);
                 rawViewHint.setVisibility(View.VISIBLE);
 
@@ -1245,6 +2540,7 @@ public class MainActivity extends AppCompatActivity {
             resultText.setText(R.string.result);
             return;
         }
+        startupMetrics.mark(StartupMetrics.Phase.FIRST_LABEL, SystemClock.elapsedRealtimeNanos());
 
         if (bitmap != null) {
             camView.setImageBitmap(bitmap);
@@ -1258,9 +2554,11 @@ public class MainActivity extends AppCompatActivity {
         float targetInterval = (intervalSlider.getProgress() + 1) / 10.0f;
         float targetFps = 1.0f / targetInterval;
 
+        InferenceEngine engine = interpreterPool.getPrimary();
         metricsText.setText(String.format(Locale.US,
-                "Model: %s (%dx%d) | Inference: %d ms | FPS: %.0f/%.0f",
-                currentModelName, inputWidth, inputHeight, inferenceTime, fps, targetFps));
+                "Model: %s (%dx%d) | Inference: %d ms (%s) | FPS: %.0f/%.0f | %s",
+                currentModelName, engine.getInputWidth(), engine.getInputHeight(), inferenceTime,
+                engine.getConfig().getLabel(), fps, targetFps, getCascadeMetricsLabel() + getEnsembleMetricsLabel() + tensorCache.getMetricsLabel()));
 
         if (currentImageIndex != lastRecordedImageIndex &&probabilities.length >= 3) {
             float metal = probabilities[0] * 100;
@@ -1376,9 +2674,11 @@ public class MainActivity extends AppCompatActivity {
 
     private void clearVisuals() {
         resultText.setText(R.string.result);
+        InferenceEngine engine = interpreterPool.getPrimary();
         metricsText.setText(String.format(Locale.US,
-                "Model: %s (%dx%d) | Inference: -- ms | FPS: --/--",
-                currentModelName, inputWidth, inputHeight));
+                "Model: %s (%dx%d) | Inference: -- ms (%s) | FPS: --/--",
+                currentModelName, engine.getInputWidth(), engine.getInputHeight(),
+                engine.getConfig().getLabel()));
         plasticProgressText.setText(R.string.plastic_progress);
         paperProgressText.setText(R.string.paper_progress);
         metalProgressText.setText(R.string.metal_progress);
@@ -1387,12 +2687,25 @@ public class MainActivity extends AppCompatActivity {
         metalProgressBar.setProgress(0);
         camView.setImageResource(android.R.color.transparent);
         rawView.setImageResource(android.R.color.transparent);
+        releaseDisplayedEsp32Frames();
         updateHints(modeSpinner.getSelectedItem().toString());
         statusText.setText(R.string.stopped);
         updateButtonStates(State.IDLE);
         updateDebugLog("[STATUS] STOPPED!\n");
     }
 
+    // Must run on the UI thread after camView/rawView stopped showing the ESP32 bitmaps.
+    private void releaseDisplayedEsp32Frames() {
+        if (displayedCameraFrame != null) {
+            displayedCameraFrame.release();
+            displayedCameraFrame = null;
+        }
+        if (displayedInferenceFrame != null) {
+            displayedInferenceFrame.release();
+            displayedInferenceFrame = null;
+        }
+    }
+
     private void updateDebugLog(String message) {
         handler.post(() -> {
             debugLog.append(message);
@@ -1403,136 +2716,34 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private Bitmap loadBitmapFromAssets(String path) {
-        try (InputStream inputStream = getAssets().open(path)) {
-            return BitmapFactory.decodeStream(inputStream);
-        } catch (IOException e) {
-            Log.e(TAG, "Error loading bitmap from assets", e);
-            return null;
-        }
+    private InferenceEngine.Result acquireResult() {
+        InferenceEngine.Result result = freeResults.poll();
+        return result != null ? result : new InferenceEngine.Result();
     }
 
-    private ByteBuffer preprocessImage(Bitmap bitmap) {
-        if (bitmap == null) return null;
-
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, inputWidth, inputHeight, true);
-        int[] intValues = new int[inputWidth * inputHeight];
-        resizedBitmap.getPixels(intValues, 0, inputWidth, 0, 0, inputWidth, inputHeight);
-
-        ByteBuffer byteBuffer;
-        int pixel = 0;
-
-        switch (inputDataType) {
-            case FLOAT32:
-                byteBuffer = ByteBuffer.allocateDirect(4 * inputWidth * inputHeight * 3);
-                byteBuffer.order(ByteOrder.nativeOrder());
-                for (int i = 0; i < inputHeight; ++i) {
-                    for (int j = 0; j < inputWidth; ++j) {
-                        final int val = intValues[pixel++];
-                        byteBuffer.putFloat(((val >> 16) & 0xFF) / 255.0f);  // R
-                        byteBuffer.putFloat(((val >> 8) & 0xFF) / 255.0f);   // G
-                        byteBuffer.putFloat((val & 0xFF) / 255.0f);          // B
-                    }
-                }
-                Log.d(TAG, "FLOAT32: Normalized to 0.0-1.0");
-                break;
-
-            case INT8:
-                byteBuffer = ByteBuffer.allocateDirect(inputWidth * inputHeight * 3);
-                byteBuffer.order(ByteOrder.nativeOrder());
-                for (int i = 0; i < inputHeight; ++i) {
-                    for (int j = 0; j < inputWidth; ++j) {
-                        final int val = intValues[pixel++];
-                        int r = ((val >> 16) & 0xFF) - 128;
-                        int g = ((val >> 8) & 0xFF) - 128;
-                        int b = (val & 0xFF) - 128;
-
-                        byteBuffer.put((byte) r);
-                        byteBuffer.put((byte) g);
-                        byteBuffer.put((byte) b);
-                    }
-                }
-                Log.d(TAG, "INT8: Centered around 0 with clipping");
-                break;
-
-            case UINT8:
-                byteBuffer = ByteBuffer.allocateDirect(inputWidth * inputHeight * 3);
-                byteBuffer.order(ByteOrder.nativeOrder());
-                for (int i = 0; i < inputHeight; ++i) {
-                    for (int j = 0; j < inputWidth; ++j) {
-                        final int val = intValues[pixel++];
-                        byteBuffer.put((byte) ((val >> 16) & 0xFF));  // R
-                        byteBuffer.put((byte) ((val >> 8) & 0xFF));   // G
-                        byteBuffer.put((byte) (val & 0xFF));          // B
-                    }
-                }
-                Log.d(TAG, "UINT8: Direct 0-255 values");
-                break;
-
-            default:
-                Log.e(TAG, "Unsupported dtype: " + inputDataType);
-                return null;
-        }
-
-        byteBuffer.rewind();
-        return byteBuffer;
+    private void releaseResult(InferenceEngine.Result result) {
+        freeResults.offer(result);
     }
 
-    private float[] dequantizeAndApplySoftmax(Object output) {
-        float[] logits;
-
-        if (outputDataType == DataType.INT8) {
-            byte[] rawOutput = ((byte[][]) output)[0];
-            logits = new float[rawOutput.length];
-
-            for (int i = 0; i < rawOutput.length; i++) {
-                logits[i] = (rawOutput[i] - outputZeroPoint) * outputScale;
-            }
-        } else if (outputDataType == DataType.UINT8) {
-            byte[] rawOutput = ((byte[][]) output)[0];
-            logits = new float[rawOutput.length];
-
-            for (int i = 0; i < rawOutput.length; i++) {
-                int unsigned = rawOutput[i] & 0xFF;
-                logits[i] = (unsigned - outputZeroPoint) * outputScale;
-            }
-        } else { // FLOAT32
-            logits = ((float[][]) output)[0];
-            Log.d(TAG, "FLOAT32 raw: " + logits[0] + ", " + logits[1] + ", " + logits[2]);
-        }
-
-        float maxLogit = -Float.MAX_VALUE;
-        float minLogit = Float.MAX_VALUE;
-        for (float logit : logits) {
-            if (logit > maxLogit) maxLogit = logit;
-            if (logit < minLogit) minLogit = logit;
-        }
-
-        if (maxLogit > 1.0f || minLogit < 0.0f) {
-            Log.d(TAG, "Applying softmax (outside 0-1 range)");
-
-            float[] expLogits = new float[logits.length];
-            float sumExp = 0.0f;
-
-            for (int i = 0; i < logits.length; i++) {
-                expLogits[i] = (float) Math.exp(logits[i] - maxLogit);
-                sumExp += expLogits[i];
-            }
-            for (int i = 0; i < logits.length; i++) {
-                logits[i] = expLogits[i] / sumExp;
-            }
+    // Decoded at the largest inSampleSize that still covers the converter's input size.
+    private Bitmap loadBitmapFromAssets(String path, TensorConverter converter) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = getAssets().open(path)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading bitmap from assets", e);
+            return null;
         }
 
-        return logits;
-    }
-
-    private int getIndexOfLargest(float[] array) {
-        if (array == null || array.length == 0) return -1;
-        int largest = 0;
-        for (int i = 1; i < array.length; i++) {
-            if (array[i] > array[largest]) largest = i;
+        options.inSampleSize = options.outWidth > 0 ? converter.sampleSizeFor(options.outWidth, options.outHeight) : 1;
+        options.inJustDecodeBounds = false;
+        try (InputStream inputStream = getAssets().open(path)) {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading bitmap from assets", e);
+            return null;
         }
-        return largest;
     }
 
     private enum State { IDLE, RUNNING, PAUSED }
@@ -1592,6 +2803,33 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void showFrameSizeDialog() {
+        ESP32CameraControl control = esp32CameraHelper.getCameraControl();
+        ESP32CameraControl.FrameSize[] sizes = ESP32CameraControl.FrameSize.values();
+        InferenceEngine engine = interpreterPool.getPrimary();
+        ESP32CameraControl.FrameSize autoSize = ESP32CameraControl.smallestCovering(engine.getInputWidth(), engine.getInputHeight());
+
+        CharSequence[] items = new CharSequence[sizes.length + 1];
+        items[0] = "Auto: " + autoSize;
+        for (int i = 0; i < sizes.length; i++) {
+            items[i + 1] = sizes[i].toString();
+        }
+        ESP32CameraControl.FrameSize override = control.getFrameSizeOverride();
+        int checked = override == null ? 0 : override.ordinal() + 1;
+
+        new AlertDialog.Builder(this)
+                .setTitle("ESP32-CAM Frame Size")
+                .setSingleChoiceItems(items, checked, (dialog, which) -> {
+                    ESP32CameraControl.FrameSize selected = which == 0 ? null : sizes[which - 1];
+                    esp32CameraHelper.setFrameSizeOverride(selected);
+                    updateDebugLog(String.format(Locale.US, "[ESP32] Frame size: %s\n",
+                            selected == null ? "auto (" + autoSize + ")" : selected.toString()));
+                    dialog.dismiss();
+                })
+                .setNegativeButton("[CANCEL]", null)
+                .show();
+    }
+
     private void showClearFirebaseDialog() {
         new AlertDialog.Builder(this)
                 .setTitle("Clear Firebase Data")
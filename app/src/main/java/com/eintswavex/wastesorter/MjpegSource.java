@@ -0,0 +1,42 @@
+package com.eintswavex.wastesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where an ESP32CameraStream reads its multipart MJPEG bytes from: a live camera over HTTP
+ * (HttpMjpegSource) or a recorded session played back from disk (ReplayMjpegSource).
+ */
+public interface MjpegSource {
+    /**
+     * A new, not yet connected session, e.g. one HTTP request.
+     */
+    Session newSession();
+
+    /**
+     * A live camera reconnects when its stream ends and supports snapshots and /control.
+     * Anything else stops once its session ends.
+     */
+    boolean isLive();
+
+    String describe();
+
+    interface Session extends Closeable {
+        /**
+         * Blocks until the bytes can be read. Fails right away if the session was cancelled.
+         */
+        void connect() throws IOException;
+
+        String getContentType();
+
+        InputStream getInputStream();
+
+        /**
+         * Makes pending and future reads fail. Safe to call from any thread, e.g. the stall watchdog.
+         */
+        void cancel();
+
+        boolean isCanceled();
+    }
+}
@@ -0,0 +1,332 @@
+package com.eintswavex.wastesorter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass MJPEG (multipart/x-mixed-replace) parser. Parts with a Content-Length header are
+ * bulk-read, parts without one fall back to a boundary scan. The frame buffer is reused, so
+ * listeners must copy the data if they keep it past onFrame().
+ */
+public class MjpegStreamParser {
+    public static final String DEFAULT_BOUNDARY = "--123456789000000000000987654321";
+    public static final int MAX_FRAME_SIZE = 4 * 1024 * 1024; // 4MB, larger parts are dropped
+
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final int MAX_HEADER_LINE = 1024;
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+
+    public interface FrameListener {
+        void onFrame(byte[] data, int length, long frameNumber);
+    }
+
+    private final byte[] boundary;
+    private final int[] boundaryFailure;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private final byte[] lineBuffer = new byte[MAX_HEADER_LINE];
+    private byte[] frameBuffer = new byte[65536]; // 64KB initial, grows to the largest frame seen
+    private int readPos = 0;
+    private int readLimit = 0;
+    private int boundaryMatch = 0;
+    private boolean endOfStream = false;
+    private volatile boolean stopped = false;
+
+    private long bytesConsumed = 0;
+    private long framesParsed = 0;
+    private long framesWithLength = 0;
+    private long framesDropped = 0;
+
+    public MjpegStreamParser(String boundary) {
+        this.boundary = boundary.getBytes(StandardCharsets.US_ASCII);
+        this.boundaryFailure = buildFailureTable(this.boundary);
+    }
+
+    public MjpegStreamParser() {
+        this(DEFAULT_BOUNDARY);
+    }
+
+    /**
+     * Returns the delimiter to scan for, taken from the boundary parameter of a
+     * Content-Type such as {@code multipart/x-mixed-replace;boundary=123456789000000000000987654321}.
+     */
+    public static String boundaryFromContentType(String contentType) {
+        if (contentType == null) return DEFAULT_BOUNDARY;
+
+        int index = contentType.toLowerCase(java.util.Locale.US).indexOf("boundary=");
+        if (index < 0) return DEFAULT_BOUNDARY;
+
+        String value = contentType.substring(index + "boundary=".length());
+        int end = value.indexOf(';');
+        if (end >= 0) value = value.substring(0, end);
+        value = value.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if (value.isEmpty()) return DEFAULT_BOUNDARY;
+
+        // Some servers already put the dashes in the parameter and then send it verbatim.
+        return value.startsWith("--") ? value : "--" + value;
+    }
+
+    public String getBoundary() {
+        return new String(boundary, StandardCharsets.US_ASCII);
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getBytesConsumed() {
+        return bytesConsumed;
+    }
+
+    public long getFramesParsed() {
+        return framesParsed;
+    }
+
+    public long getFramesWithLength() {
+        return framesWithLength;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * Parses until the stream ends, the final boundary is seen, or stop() is called.
+     */
+    public void parse(InputStream inputStream, FrameListener listener) throws IOException {
+        if (!skipToBoundary(inputStream)) return;
+
+        while (!stopped) {
+            // Rest of the boundary line, "--" marks the end of the multipart body.
+            int rest = readLine(inputStream);
+            if (rest < 0) return;
+            if (rest >= 2 && lineBuffer[0] == '-' && lineBuffer[1] == '-') return;
+
+            int contentLength = readHeaders(inputStream);
+            if (contentLength == -2) return;
+
+            if (contentLength >= 0) {
+                // Deliver before looking for the next boundary, the ESP32 only sends it with the next frame.
+                int frameLength = readBody(inputStream, contentLength);
+                if (frameLength < 0) return;
+                framesWithLength++;
+                deliver(listener, frameLength);
+                if (!skipToBoundary(inputStream)) return;
+            } else {
+                int frameLength = scanBody(inputStream);
+                if (frameLength < 0) return;
+                deliver(listener, frameLength);
+            }
+        }
+    }
+
+    private void deliver(FrameListener listener, int frameLength) {
+        if (frameLength == 0) return;
+        if (frameLength > MAX_FRAME_SIZE) {
+            framesDropped++;
+            return;
+        }
+        listener.onFrame(frameBuffer, frameLength, framesParsed++);
+    }
+
+    private boolean fill(InputStream inputStream) throws IOException {
+        if (readPos < readLimit) return true;
+        if (endOfStream || stopped) return false;
+
+        int bytesRead = inputStream.read(readBuffer, 0, readBuffer.length);
+        if (bytesRead <= 0) {
+            endOfStream = true;
+            return false;
+        }
+        readPos = 0;
+        readLimit = bytesRead;
+        bytesConsumed += bytesRead;
+        return true;
+    }
+
+    /**
+     * Reads one CRLF (or LF) terminated line into lineBuffer and returns its length without the
+     * terminator, truncating overlong lines, or -1 at end of stream.
+     */
+    private int readLine(InputStream inputStream) throws IOException {
+        int length = 0;
+        while (fill(inputStream)) {
+            byte b = readBuffer[readPos++];
+            if (b == '\n') {
+                if (length > 0 && lineBuffer[length - 1] == '\r') length--;
+                return length;
+            }
+            if (length < lineBuffer.length) lineBuffer[length++] = b;
+        }
+        return -1;
+    }
+
+    /**
+     * Consumes part headers up to the blank line. Returns the Content-Length, -1 when the part
+     * has none, or -2 at end of stream.
+     */
+    private int readHeaders(InputStream inputStream) throws IOException {
+        int contentLength = -1;
+        while (true) {
+            int length = readLine(inputStream);
+            if (length < 0) return -2;
+            if (length == 0) return contentLength;
+
+            if (length > CONTENT_LENGTH.length && startsWithIgnoreCase(lineBuffer, CONTENT_LENGTH)) {
+                contentLength = parseDigits(lineBuffer, CONTENT_LENGTH.length, length);
+            }
+        }
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] line, byte[] lowerPrefix) {
+        for (int i = 0; i < lowerPrefix.length; i++) {
+            int c = line[i];
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            if (c != lowerPrefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int parseDigits(byte[] line, int from, int to) {
+        long value = 0;
+        boolean hasDigits = false;
+        for (int i = from; i < to; i++) {
+            byte b = line[i];
+            if (b == ' ' || b == '\t') {
+                if (hasDigits) break;
+                continue;
+            }
+            if (b < '0' || b > '9') return -1;
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE) return -1;
+            hasDigits = true;
+        }
+        return hasDigits ? (int) value : -1;
+    }
+
+    /**
+     * Bulk-reads exactly contentLength bytes into the frame buffer. Returns the frame length,
+     * or -1 if the stream ended early.
+     */
+    private int readBody(InputStream inputStream, int contentLength) throws IOException {
+        boolean keep = contentLength <= MAX_FRAME_SIZE;
+        if (keep) ensureCapacity(contentLength);
+
+        int copied = 0;
+        int buffered = Math.min(readLimit - readPos, contentLength);
+        if (keep) System.arraycopy(readBuffer, readPos, frameBuffer, 0, buffered);
+        readPos += buffered;
+        copied += buffered;
+
+        while (copied < contentLength) {
+            if (stopped) return -1;
+            int bytesRead = keep
+                    ? inputStream.read(frameBuffer, copied, contentLength - copied)
+                    : inputStream.read(readBuffer, 0, Math.min(readBuffer.length, contentLength - copied));
+            if (bytesRead <= 0) {
+                endOfStream = true;
+                return -1;
+            }
+            bytesConsumed += bytesRead;
+            copied += bytesRead;
+        }
+        return contentLength;
+    }
+
+    /**
+     * Copies bytes into the frame buffer until the next boundary. Returns the frame length with
+     * the trailing CRLF before the boundary removed, or -1 if the stream ended first. Once a
+     * chunk no longer fits, the rest of the part is only scanned and the frame is reported as
+     * oversized, even if its data ends up below MAX_FRAME_SIZE, since it has a hole.
+     */
+    private int scanBody(InputStream inputStream) throws IOException {
+        int frameLength = 0;
+        boolean overflowed = false;
+        boundaryMatch = 0;
+
+        while (fill(inputStream)) {
+            int start = readPos;
+            int end = scanForBoundary();
+
+            int chunk = end - start;
+            if (!overflowed && frameLength + chunk <= MAX_FRAME_SIZE) {
+                ensureCapacity(frameLength + chunk);
+                System.arraycopy(readBuffer, start, frameBuffer, frameLength, chunk);
+                frameLength += chunk;
+            } else {
+                overflowed = true;
+            }
+
+            if (boundaryMatch == boundary.length) {
+                boundaryMatch = 0;
+                if (overflowed) return MAX_FRAME_SIZE + 1;  // deliver() drops it
+                frameLength -= boundary.length;
+                while (frameLength > 0 &&
+                        (frameBuffer[frameLength - 1] == '\n' || frameBuffer[frameLength - 1] == '\r')) {
+                    frameLength--;
+                }
+                return frameLength;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Discards bytes up to and including the next boundary.
+     */
+    private boolean skipToBoundary(InputStream inputStream) throws IOException {
+        boundaryMatch = 0;
+        while (fill(inputStream)) {
+            scanForBoundary();
+            if (boundaryMatch == boundary.length) {
+                boundaryMatch = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances readPos through the buffered bytes with the KMP automaton, stopping right after a
+     * complete boundary match. Returns the new readPos.
+     */
+    private int scanForBoundary() {
+        int match = boundaryMatch;
+        int pos = readPos;
+        while (pos < readLimit) {
+            byte b = readBuffer[pos++];
+            while (match > 0 && b != boundary[match]) {
+                match = boundaryFailure[match - 1];
+            }
+            if (b == boundary[match]) match++;
+            if (match == boundary.length) break;
+        }
+        boundaryMatch = match;
+        readPos = pos;
+        return pos;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= frameBuffer.length) return;
+        int newSize = Math.max(capacity, Math.min(frameBuffer.length * 2, MAX_FRAME_SIZE));
+        byte[] grown = new byte[newSize];
+        System.arraycopy(frameBuffer, 0, grown, 0, frameBuffer.length);
+        frameBuffer = grown;
+    }
+
+    private static int[] buildFailureTable(byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) k++;
+            failure[i] = k;
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,80 @@
+package com.eintswavex.wastesorter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference-counted access to one loaded model. A ModelSlot holds the first reference while the
+ * model is current; every user takes one with tryAcquire() and gives it back with release(). Once
+ * the slot has moved on and the last user released, the retirer runs exactly once, on the thread
+ * of that last release, and takes care of closing or keeping the model.
+ */
+public class ModelHandle<M> {
+
+    public interface Retirer<M> {
+        void onRetired(ModelHandle<M> handle);
+    }
+
+    private final String name;
+    private final M model;
+    private final Retirer<M> retirer;
+    private final AtomicInteger references = new AtomicInteger(1);  // The slot's own
+    private final AtomicLong frames = new AtomicLong();
+    private volatile long retiredAtNanos;
+    private volatile long drainNanos;
+
+    public ModelHandle(String name, M model, Retirer<M> retirer) {
+        this.name = name;
+        this.model = model;
+        this.retirer = retirer;
+    }
+
+    /**
+     * Takes a reference, unless the model is already retired and released by everyone. Every
+     * successful call needs one release().
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) return false;
+            if (references.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count < 0) throw new IllegalStateException("Released more often than acquired: " + name);
+        if (count == 0) {
+            drainNanos = System.nanoTime() - retiredAtNanos;
+            retirer.onRetired(this);
+        }
+    }
+
+    // Drops the slot's reference, called by ModelSlot once it no longer hands this model out.
+    void retire() {
+        retiredAtNanos = System.nanoTime();
+        release();
+    }
+
+    public M get() {
+        return model;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Counts one frame served by this model.
+    public void countFrame() {
+        frames.incrementAndGet();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    // From leaving the slot to the last release, set when the retirer runs.
+    public long getDrainNanos() {
+        return drainNanos;
+    }
+}
@@ -0,0 +1,37 @@
+package com.eintswavex.wastesorter;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The current model, replaced atomically. acquire() always returns the current handle with a
+ * reference held, or null when no model is set; swap() publishes a new handle and retires the
+ * old one, which stays usable beside the new one until its users have released it.
+ */
+public class ModelSlot<M> {
+    private final AtomicReference<ModelHandle<M>> current = new AtomicReference<>();
+
+    public ModelHandle<M> acquire() {
+        while (true) {
+            ModelHandle<M> handle = current.get();
+            if (handle == null) return null;
+            if (!handle.tryAcquire()) continue;  // Retired and drained since get(), there is a newer one
+            if (current.get() == handle) return handle;
+            handle.release();  // Swapped meanwhile, new users go to the new model
+        }
+    }
+
+    // The current handle without a reference, for looking at it only.
+    public ModelHandle<M> peek() {
+        return current.get();
+    }
+
+    /**
+     * Makes next, which must hold only its initial reference, the current model. Returns the
+     * previous handle, already retired, or null.
+     */
+    public ModelHandle<M> swap(ModelHandle<M> next) {
+        ModelHandle<M> previous = current.getAndSet(next);
+        if (previous != null) previous.retire();
+        return previous;
+    }
+}
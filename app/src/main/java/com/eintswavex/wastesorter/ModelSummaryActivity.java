@@ -1,6 +1,5 @@
 package com.eintswavex.wastesorter;
 
-import android.content.res.AssetManager;
 import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -268,9 +267,7 @@ public class ModelSummaryActivity extends AppCompatActivity {
     }
 
     private void loadImageFromAssets(String path, ImageView imageView) {
-        try {
-            AssetManager assetManager = getAssets();
-            InputStream is = assetManager.open(path);
+        try (InputStream is = getAssets().open(path)) {
             Bitmap bitmap = BitmapFactory.decodeStream(is);
 
             // Wait for layout to be measured
@@ -300,8 +297,6 @@ public class ModelSummaryActivity extends AppCompatActivity {
                     imageView.setImageBitmap(bitmap);
                 }
             });
-
-            is.close();
         } catch (IOException e) {
             e.printStackTrace();
             // Show error icon
@@ -313,19 +308,11 @@ public class ModelSummaryActivity extends AppCompatActivity {
     private String loadTextFromAssets(String path) {
         StringBuilder content = new StringBuilder();
 
-        try {
-            AssetManager assetManager = getAssets();
-            InputStream is = assetManager.open(path);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getAssets().open(path)))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 content.append(line).append("\n");
             }
-
-            reader.close();
-            is.close();
-
         } catch (IOException e) {
             e.printStackTrace();
             content.append(getString(R.string.error_loading_summary_file)).append(": ").append(path).append("\n");
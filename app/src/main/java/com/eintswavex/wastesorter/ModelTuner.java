@@ -0,0 +1,431 @@
+package com.eintswavex.wastesorter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks every bundled model at several interpreter thread counts on a fixed sample of the
+ * bundled dataset, and keeps the resulting TuningReport in SharedPreferences. Each config gets
+ * its own interpreter, a few warm-up runs that are not timed, then one timed classification per
+ * sample image; decoding is kept out of the timings. measureScaling() and tuneBatchSize() measure
+ * throughput instead, as pool workers are added or as the batch grows. Runs on its own thread,
+ * listener calls arrive on the main thread.
+ */
+public class ModelTuner {
+    private static final String TAG = "ModelTuner";
+    private static final String PREFS_NAME = "ModelTuner";
+    private static final String KEY_REPORT = "report";
+    private static final String KEY_BUDGET_MS = "latency_budget_ms";
+
+    // Folder order is the models' label order: METAL, PAPER, PLASTIC.
+    private static final String[] CLASSES = {"metal", "paper", "plastic"};
+    private static final int IMAGES_PER_CLASS = 20;
+    private static final int WARMUP_RUNS = 5;
+    // Throughput runs use a smaller, half-resolution sample so every bitmap stays in memory.
+    private static final int THROUGHPUT_IMAGES_PER_CLASS = 11;
+    private static final int THROUGHPUT_ROUNDS = 4;
+    private static final String KEY_BATCH_PREFIX = "batch_size_";
+
+    public static final int[] BATCH_CHOICES = {1, 2, 4, 8, 16, 32};
+
+    public interface Listener {
+        void onProgress(int done, int total, String step);
+        void onComplete(TuningReport report);
+        void onError(String error);
+    }
+
+    // One result per worker count or batch size; speedup is relative to the first.
+    public interface ThroughputListener {
+        void onResult(int size, float imagesPerSecond, float speedup, String details);
+        void onComplete(int bestSize);
+        void onError(String error);
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean running = false;
+    private volatile boolean cancelled = false;
+
+    public ModelTuner(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start(List<String> modelNames, Listener listener) {
+        if (running) return;
+        running = true;
+        cancelled = false;
+        List<String> models = new ArrayList<>(modelNames);
+        executor.execute(() -> {
+            try {
+                TuningReport report = tune(models, listener);
+                if (report == null) {
+                    mainHandler.post(() -> listener.onError("Tuning cancelled"));
+                    return;
+                }
+                saveReport(context, report);
+                mainHandler.post(() -> listener.onComplete(report));
+            } catch (IOException e) {
+                Log.e(TAG, "[TUNER] Tuning failed", e);
+                mainHandler.post(() -> listener.onError(e.getMessage()));
+            } finally {
+                running = false;
+            }
+        });
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void shutdown() {
+        cancelled = true;
+        executor.shutdownNow();
+    }
+
+    // Thread counts worth comparing on this phone: 1, 2, 4 and all cores.
+    static List<Integer> threadChoices(int cores) {
+        Set<Integer> choices = new LinkedHashSet<>();
+        for (int threads : new int[]{1, 2, 4, cores}) {
+            if (threads <= cores) choices.add(Math.min(threads, InterpreterConfig.MAX_THREADS));
+        }
+        return new ArrayList<>(choices);
+    }
+
+    private TuningReport tune(List<String> models, Listener listener) throws IOException {
+        List<String> images = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        sampleDataset(images, labels, IMAGES_PER_CLASS);
+        if (images.isEmpty()) throw new IOException("No images in assets/dataset");
+
+        List<Integer> threads = threadChoices(Runtime.getRuntime().availableProcessors());
+        int total = models.size() * threads.size();
+        int done = 0;
+
+        TuningReport report = new TuningReport();
+        report.modelNames = new ArrayList<>(models);
+        report.imagesPerModel = images.size();
+
+        long[] nanos = new long[images.size()];
+        InferenceEngine.Result result = new InferenceEngine.Result();
+        for (String model : models) {
+            MappedByteBuffer modelBuffer;
+            try {
+                modelBuffer = InferenceEngine.mapModel(context.getAssets(), model);
+            } catch (IOException e) {
+                // A model that cannot be mapped (a compressed asset, say) is skipped like a config.
+                Log.w(TAG, String.format(Locale.US, "[TUNER] Skipping %s: %s", model, e.getMessage()));
+                done += threads.size();
+                continue;
+            }
+            for (int numThreads : threads) {
+                if (cancelled) return null;
+                InterpreterConfig config = InterpreterConfig.defaults().withNumThreads(numThreads);
+                int step = ++done;
+                mainHandler.post(() -> listener.onProgress(step, total, model + " " + config.getLabel()));
+
+                try (InferenceEngine engine = new InferenceEngine()) {
+                    engine.load(modelBuffer, config);
+
+                    Bitmap warmup = decode(images.get(0));
+                    for (int i = 0; i < WARMUP_RUNS; i++) engine.classify(warmup, result);
+                    if (warmup != null) warmup.recycle();
+
+                    int count = 0;
+                    int correct = 0;
+                    for (int i = 0; i < images.size() && !cancelled; i++) {
+                        Bitmap bitmap = decode(images.get(i));
+                        if (bitmap == null) continue;
+                        if (engine.classify(bitmap, result)) {
+                            nanos[count++] = result.inferenceTimeNanos;
+                            if (result.labelIndex == labels.get(i)) correct++;
+                        }
+                        bitmap.recycle();
+                    }
+                    if (count == 0) continue;
+
+                    TuningReport.Entry entry = new TuningReport.Entry();
+                    entry.modelName = model;
+                    entry.numThreads = numThreads;
+                    entry.useXnnpack = config.isUseXnnpack();
+                    entry.allowFp16 = config.isAllowFp16();
+                    entry.accuracy = (float) correct / count;
+                    TuningReport.summarize(nanos, count, entry);
+                    report.entries.add(entry);
+                    Log.d(TAG, "[TUNER] " + entry);
+                } catch (IOException e) {
+                    // One config the phone cannot run does not spoil the rest.
+                    Log.w(TAG, String.format(Locale.US, "[TUNER] Skipping %s %s: %s", model, config.getLabel(), e.getMessage()));
+                }
+            }
+        }
+        if (cancelled) return null;
+        if (report.entries.isEmpty()) throw new IOException("No model could be benchmarked");
+
+        report.markParetoFront();
+        report.createdAt = System.currentTimeMillis();
+        return report;
+    }
+
+    /**
+     * Measures pool throughput with 1 to maxWorkers workers: every sample image is submitted
+     * THROUGHPUT_ROUNDS times as fast as the pool takes them, after one untimed round.
+     */
+    public void measureScaling(String modelName, InterpreterConfig config, int maxWorkers, ThroughputListener listener) {
+        if (running) return;
+        running = true;
+        cancelled = false;
+        executor.execute(() -> {
+            List<Bitmap> bitmaps = new ArrayList<>();
+            try {
+                decodeThroughputSample(bitmaps);
+                MappedByteBuffer modelBuffer = InferenceEngine.mapModel(context.getAssets(), modelName);
+                float baseline = 0f;
+                float bestRate = 0f;
+                int bestWorkers = 1;
+                for (int workers = 1; workers <= maxWorkers && !cancelled; workers++) {
+                    try (InterpreterPool pool = new InterpreterPool()) {
+                        pool.load(modelBuffer, config, workers);
+                        runThrough(pool, bitmaps, 1);
+
+                        long start = System.nanoTime();
+                        int classified = runThrough(pool, bitmaps, THROUGHPUT_ROUNDS);
+                        float imagesPerSecond = classified * 1e9f / (System.nanoTime() - start);
+                        if (workers == 1) baseline = imagesPerSecond;
+
+                        int actualWorkers = pool.getWorkerCount();
+                        if (imagesPerSecond > bestRate) {
+                            bestRate = imagesPerSecond;
+                            bestWorkers = actualWorkers;
+                        }
+                        float speedup = baseline > 0 ? imagesPerSecond / baseline : 0f;
+                        String stats = pool.getStatsSummary();
+                        Log.d(TAG, String.format(Locale.US, "[TUNER] %s x%d: %.1f images/s (%.2fx), %s",
+                                modelName, actualWorkers, imagesPerSecond, speedup, stats));
+                        mainHandler.post(() -> listener.onResult(actualWorkers, imagesPerSecond, speedup, stats));
+                    }
+                }
+                int best = bestWorkers;
+                mainHandler.post(() -> listener.onComplete(best));
+            } catch (IOException e) {
+                Log.e(TAG, "[TUNER] Scaling measurement failed", e);
+                mainHandler.post(() -> listener.onError(e.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (Bitmap bitmap : bitmaps) bitmap.recycle();
+                running = false;
+            }
+        });
+    }
+
+    /**
+     * Finds the batch size with the highest throughput for a model and stores it. Every batch
+     * size runs the sample THROUGHPUT_ROUNDS times after one untimed pass, and its labels are
+     * compared with the batch-1 labels. Stops at the first size the model cannot take.
+     */
+    public void tuneBatchSize(String modelName, InterpreterConfig config, ThroughputListener listener) {
+        if (running) return;
+        running = true;
+        cancelled = false;
+        executor.execute(() -> {
+            List<Bitmap> bitmaps = new ArrayList<>();
+            try (InferenceEngine engine = new InferenceEngine()) {
+                decodeThroughputSample(bitmaps);
+                engine.load(InferenceEngine.mapModel(context.getAssets(), modelName), config);
+
+                int count = bitmaps.size();
+                int[] reference = null;
+                float baseline = 0f;
+                float bestRate = 0f;
+                int bestBatch = 1;
+                for (int batch : BATCH_CHOICES) {
+                    if (cancelled || batch > count) break;
+                    try {
+                        engine.setBatchSize(batch);
+                    } catch (IOException e) {
+                        Log.w(TAG, "[TUNER] " + e.getMessage());
+                        break;
+                    }
+
+                    int[] labels = new int[count];
+                    Bitmap[] chunk = new Bitmap[batch];
+                    InferenceEngine.Result[] results = new InferenceEngine.Result[batch];
+                    for (int i = 0; i < batch; i++) results[i] = new InferenceEngine.Result();
+                    runBatches(engine, bitmaps, chunk, results, labels);
+
+                    long start = System.nanoTime();
+                    for (int round = 0; round < THROUGHPUT_ROUNDS; round++) {
+                        runBatches(engine, bitmaps, chunk, results, labels);
+                    }
+                    float imagesPerSecond = count * THROUGHPUT_ROUNDS * 1e9f / (System.nanoTime() - start);
+
+                    if (reference == null) {
+                        reference = labels;
+                        baseline = imagesPerSecond;
+                    }
+                    int mismatches = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (labels[i] != reference[i]) mismatches++;
+                    }
+                    if (mismatches == 0 && imagesPerSecond > bestRate) {
+                        bestRate = imagesPerSecond;
+                        bestBatch = batch;
+                    }
+
+                    float speedup = imagesPerSecond / baseline;
+                    String details = String.format(Locale.US, "%d/%d labels differ from batch 1", mismatches, count);
+                    Log.d(TAG, String.format(Locale.US, "[TUNER] %s batch %d: %.1f images/s (%.2fx), %s",
+                            modelName, batch, imagesPerSecond, speedup, details));
+                    mainHandler.post(() -> listener.onResult(batch, imagesPerSecond, speedup, details));
+                }
+
+                saveBatchSize(context, modelName, bestBatch);
+                int best = bestBatch;
+                mainHandler.post(() -> listener.onComplete(best));
+            } catch (IOException e) {
+                Log.e(TAG, "[TUNER] Batch tuning failed", e);
+                mainHandler.post(() -> listener.onError(e.getMessage()));
+            } finally {
+                for (Bitmap bitmap : bitmaps) bitmap.recycle();
+                running = false;
+            }
+        });
+    }
+
+    private static void runBatches(InferenceEngine engine, List<Bitmap> bitmaps, Bitmap[] chunk,
+                                   InferenceEngine.Result[] results, int[] labels) {
+        for (int start = 0; start < bitmaps.size(); start += chunk.length) {
+            int count = Math.min(chunk.length, bitmaps.size() - start);
+            for (int i = 0; i < count; i++) chunk[i] = bitmaps.get(start + i);
+            engine.classifyBatch(chunk, count, results);
+            for (int i = 0; i < count; i++) labels[start + i] = results[i].labelIndex;
+        }
+    }
+
+    private void decodeThroughputSample(List<Bitmap> bitmaps) throws IOException {
+        List<String> images = new ArrayList<>();
+        sampleDataset(images, new ArrayList<>(), THROUGHPUT_IMAGES_PER_CLASS);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 2;
+        for (String image : images) {
+            Bitmap bitmap = decode(image, options);
+            if (bitmap != null) bitmaps.add(bitmap);
+        }
+        if (bitmaps.isEmpty()) throw new IOException("No images in assets/dataset");
+    }
+
+    // Submits every bitmap rounds times and waits for the last callback. Returns the successful classifications.
+    private static int runThrough(InterpreterPool pool, List<Bitmap> bitmaps, int rounds) throws IOException, InterruptedException {
+        int total = bitmaps.size() * rounds;
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger nextExpected = new AtomicInteger();
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+
+        for (int i = 0; i < total; i++) {
+            final int index = i;
+            pool.submit(bitmaps.get(i % bitmaps.size()), new InferenceEngine.Result(), (result, success) -> {
+                if (nextExpected.getAndIncrement() != index) outOfOrder.set(true);
+                if (success) succeeded.incrementAndGet();
+                done.countDown();
+            });
+        }
+        done.await();
+        if (outOfOrder.get()) throw new IOException("Pool delivered results out of order");
+        return succeeded.get();
+    }
+
+    // Evenly spaced over each class folder, so the sample is the same on every run.
+    private void sampleDataset(List<String> images, List<Integer> labels, int imagesPerClass) throws IOException {
+        AssetManager assets = context.getAssets();
+        for (int label = 0; label < CLASSES.length; label++) {
+            String folder = "dataset/" + CLASSES[label];
+            String[] files = assets.list(folder);
+            if (files == null || files.length == 0) continue;
+            int count = Math.min(imagesPerClass, files.length);
+            for (int i = 0; i < count; i++) {
+                images.add(folder + "/" + files[i * files.length / count]);
+                labels.add(label);
+            }
+        }
+    }
+
+    private Bitmap decode(String path) {
+        return decode(path, null);
+    }
+
+    private Bitmap decode(String path, BitmapFactory.Options options) {
+        try (InputStream inputStream = context.getAssets().open(path)) {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException e) {
+            Log.w(TAG, "[TUNER] Cannot decode " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static TuningReport loadReport(Context context) {
+        String json = prefs(context).getString(KEY_REPORT, null);
+        if (json == null) return null;
+        try {
+            TuningReport report = new Gson().fromJson(json, TuningReport.class);
+            return report != null && report.entries != null && !report.entries.isEmpty() ? report : null;
+        } catch (JsonSyntaxException e) {
+            Log.w(TAG, "Ignoring unreadable tuning report: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static void saveReport(Context context, TuningReport report) {
+        prefs(context).edit().putString(KEY_REPORT, new Gson().toJson(report)).apply();
+    }
+
+    // 0 means no budget: pick the most accurate model.
+    public static int getLatencyBudgetMs(Context context) {
+        return prefs(context).getInt(KEY_BUDGET_MS, 0);
+    }
+
+    public static void setLatencyBudgetMs(Context context, int budgetMs) {
+        prefs(context).edit().putInt(KEY_BUDGET_MS, budgetMs).apply();
+    }
+
+    // 0 until tuneBatchSize() has run for the model.
+    public static int getBatchSize(Context context, String modelName) {
+        return prefs(context).getInt(KEY_BATCH_PREFIX + modelName, 0);
+    }
+
+    static void saveBatchSize(Context context, String modelName, int batchSize) {
+        prefs(context).edit().putInt(KEY_BATCH_PREFIX + modelName, batchSize).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -1,15 +1,19 @@
 package com.eintswavex.wastesorter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 public class ProbabilityHistory {
     private static ProbabilityHistory instance;
     private final List<Float> plasticHistory = new ArrayList<>();
     private final List<Float> paperHistory = new ArrayList<>();
     private final List<Float> metalHistory = new ArrayList<>();
+    private final List<String> cameraHistory = new ArrayList<>();  // Camera of each entry
     private final List<HistoryUpdateListener> listeners = new ArrayList<>();
-    private long lastUpdateTime = 0;
+    private final Map<String, Long> lastUpdateTimes = new HashMap<>();  // Throttled per camera
     private static final long MIN_UPDATE_INTERVAL = 100; // Minimum 100ms between update
 
     public interface HistoryUpdateListener {
@@ -26,24 +30,32 @@ public class ProbabilityHistory {
     }
 
     public void addData(float plastic, float paper, float metal) {
+        addData(ESP32CameraHelper.DEFAULT_CAMERA_ID, plastic, paper, metal);
+    }
+
+    public void addData(String cameraId, float plastic, float paper, float metal) {
         long currentTime = System.currentTimeMillis();
-        if (currentTime - lastUpdateTime < MIN_UPDATE_INTERVAL) {
-            return;
-        }
 
         synchronized (this) {
+            Long lastUpdateTime = lastUpdateTimes.get(cameraId);
+            if (lastUpdateTime != null && currentTime - lastUpdateTime < MIN_UPDATE_INTERVAL) {
+                return;
+            }
+
             plasticHistory.add(plastic);
             paperHistory.add(paper);
             metalHistory.add(metal);
+            cameraHistory.add(cameraId);
 
             int maxHistorySize = 100;
             if (plasticHistory.size() > maxHistorySize) {
                 plasticHistory.remove(0);
                 paperHistory.remove(0);
                 metalHistory.remove(0);
+                cameraHistory.remove(0);
             }
 
-            lastUpdateTime = currentTime;
+            lastUpdateTimes.put(cameraId, currentTime);
 
             // Notify listeners
             notifyListeners();
@@ -55,6 +67,8 @@ public class ProbabilityHistory {
             plasticHistory.clear();
             paperHistory.clear();
             metalHistory.clear();
+            cameraHistory.clear();
+            lastUpdateTimes.clear();
             notifyListeners();
         }
     }
@@ -71,6 +85,33 @@ public class ProbabilityHistory {
         return new ArrayList<>(metalHistory);
     }
 
+    // The per-camera getters return every camera's entries when cameraId is null.
+    public List<Float> getPlasticHistory(String cameraId) {
+        return filterByCamera(plasticHistory, cameraId);
+    }
+
+    public List<Float> getPaperHistory(String cameraId) {
+        return filterByCamera(paperHistory, cameraId);
+    }
+
+    public List<Float> getMetalHistory(String cameraId) {
+        return filterByCamera(metalHistory, cameraId);
+    }
+
+    public synchronized List<String> getCameraIds() {
+        return new ArrayList<>(new LinkedHashSet<>(cameraHistory));
+    }
+
+    private synchronized List<Float> filterByCamera(List<Float> values, String cameraId) {
+        if (cameraId == null) return new ArrayList<>(values);
+
+        List<Float> filtered = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (cameraId.equals(cameraHistory.get(i))) filtered.add(values.get(i));
+        }
+        return filtered;
+    }
+
     public void addListener(HistoryUpdateListener listener) {
         listeners.add(listener);
     }
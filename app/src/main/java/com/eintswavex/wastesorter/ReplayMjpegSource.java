@@ -0,0 +1,232 @@
+package com.eintswavex.wastesorter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a session written by StreamRecorder back through the normal stream pipeline. Every
+ * recorded network read is handed out at its original arrival time divided by the speed, so a
+ * speed of 1 reproduces the camera's pacing and SPEED_UNLIMITED reads as fast as possible.
+ */
+public class ReplayMjpegSource implements MjpegSource {
+    public static final float SPEED_UNLIMITED = 0;
+
+    // Longest single wait, so a cancelled replay stops promptly.
+    private static final long MAX_PARK_NANOS = 50_000_000L;
+
+    private final File dataFile;
+    private final float speed;
+    private final String contentType;
+    private final long startWallMillis;
+    private final long[] chunkEnds;
+    private final long[] chunkNanos;
+    private final int chunkCount;
+    private final int frameCount;
+    private final long durationNanos;
+
+    /**
+     * @param baseFile the recording without extension, as passed to StreamRecorder
+     * @param speed    1 for original pacing, N for N times faster, SPEED_UNLIMITED for no pacing
+     */
+    public ReplayMjpegSource(File baseFile, float speed) throws IOException {
+        this.dataFile = new File(baseFile.getPath() + StreamRecorder.DATA_EXTENSION);
+        this.speed = speed;
+        if (!dataFile.isFile()) throw new IOException("No recording at " + dataFile);
+
+        long[] ends = new long[1024];
+        long[] nanos = new long[1024];
+        int chunks = 0;
+        int frames = 0;
+        long lastNanos = 0;
+
+        File indexFile = new File(baseFile.getPath() + StreamRecorder.INDEX_EXTENSION);
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (index.readInt() != StreamRecorder.INDEX_MAGIC) {
+                throw new IOException("Not a stream recording index: " + indexFile);
+            }
+            contentType = index.readUTF();
+            startWallMillis = index.readLong();
+
+            while (true) {
+                byte type;
+                long end;
+                long at;
+                try {
+                    type = index.readByte();
+                    end = index.readLong();
+                    at = index.readLong();
+                } catch (EOFException e) {
+                    break;  // The recorder may have died mid-record, keep what is complete
+                }
+                lastNanos = at;
+                if (type == StreamRecorder.RECORD_FRAME) {
+                    frames++;
+                } else if (type == StreamRecorder.RECORD_CHUNK) {
+                    if (chunks == ends.length) {
+                        ends = Arrays.copyOf(ends, chunks * 2);
+                        nanos = Arrays.copyOf(nanos, chunks * 2);
+                    }
+                    ends[chunks] = end;
+                    nanos[chunks] = at;
+                    chunks++;
+                }
+            }
+        }
+
+        // Bytes written after the last flushed index record cannot be paced, leave them out.
+        long dataLength = dataFile.length();
+        while (chunks > 0 && ends[chunks - 1] > dataLength) chunks--;
+
+        chunkEnds = ends;
+        chunkNanos = nanos;
+        chunkCount = chunks;
+        frameCount = frames;
+        durationNanos = lastNanos;
+    }
+
+    /**
+     * Parses "1x", "4x", "0.5" or "max" into a speed.
+     */
+    public static float parseSpeed(String text) {
+        if (text == null || text.isEmpty()) return 1f;
+        String value = text.trim().toLowerCase(Locale.US);
+        if (value.equals("max") || value.equals("fast")) return SPEED_UNLIMITED;
+        if (value.endsWith("x")) value = value.substring(0, value.length() - 1);
+        try {
+            float speed = Float.parseFloat(value);
+            return speed > 0 ? speed : SPEED_UNLIMITED;
+        } catch (NumberFormatException e) {
+            return 1f;
+        }
+    }
+
+    @Override
+    public Session newSession() {
+        return new ReplaySession();
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return String.format(Locale.US, "replay %s (%d frames, %.1f s, %s)", dataFile.getName(), frameCount,
+                durationNanos / 1e9f, speed == SPEED_UNLIMITED ? "max speed" : speed + "x");
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getStartWallMillis() {
+        return startWallMillis;
+    }
+
+    public long getDataLength() {
+        return chunkCount == 0 ? 0 : chunkEnds[chunkCount - 1];
+    }
+
+    private class ReplaySession implements Session {
+        private volatile boolean canceled = false;
+        private InputStream inputStream;
+
+        @Override
+        public void connect() throws IOException {
+            if (canceled) throw new IOException("Canceled");
+            inputStream = new PacedInputStream(new FileInputStream(dataFile));
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inputStream != null) inputStream.close();
+        }
+
+        // Hands out at most one recorded chunk per read, once its replay time has come.
+        private class PacedInputStream extends InputStream {
+            private final InputStream in;
+            private final long replayStartNanos = System.nanoTime();
+            private final long limit = getDataLength();
+            private long position = 0;
+            private int chunk = 0;
+
+            PacedInputStream(InputStream in) {
+                this.in = new BufferedInputStream(in, 64 * 1024);
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int count = read(single, 0, 1);
+                return count < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (canceled) throw new InterruptedIOException("Replay canceled");
+                if (position >= limit) return -1;
+                if (length == 0) return 0;
+
+                long available = limit - position;
+                if (speed != SPEED_UNLIMITED) {
+                    while (chunk < chunkCount && chunkEnds[chunk] <= position) chunk++;
+                    awaitChunk(chunkNanos[chunk]);
+                    available = chunkEnds[chunk] - position;
+                }
+
+                int count = in.read(buffer, offset, (int) Math.min(length, available));
+                if (count > 0) position += count;
+                return count;
+            }
+
+            private void awaitChunk(long recordedNanos) throws IOException {
+                long dueNanos = replayStartNanos + (long) (recordedNanos / speed);
+                long waitNanos;
+                while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+                    if (canceled) throw new InterruptedIOException("Replay canceled");
+                    LockSupport.parkNanos(Math.min(waitNanos, MAX_PARK_NANOS));
+                    if (Thread.interrupted()) throw new InterruptedIOException("Replay interrupted");
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        }
+    }
+}
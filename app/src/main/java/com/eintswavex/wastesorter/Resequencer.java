@@ -0,0 +1,100 @@
+package com.eintswavex.wastesorter;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Puts items finished out of order by parallel workers back into the order they were started.
+ * next() hands out sequence numbers; complete() holds an item until every earlier one has
+ * completed, then delivers the run of ready items to the consumer. Delivery happens on the
+ * completing thread under the lock, so the consumer should only hand the item on.
+ */
+public class Resequencer<T> {
+    public interface Consumer<T> {
+        void accept(long sequence, T item);
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, T> waiting = new HashMap<>();
+    private final Consumer<T> consumer;
+    private long nextSequence = 0;
+    private long nextToDeliver = 0;
+
+    private long delivered = 0;
+    private long heldBack = 0;  // Items that completed before an earlier one
+    private int maxWaiting = 0;
+
+    public Resequencer(Consumer<T> consumer) {
+        this.consumer = consumer;
+    }
+
+    public long next() {
+        lock.lock();
+        try {
+            return nextSequence++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void complete(long sequence, T item) {
+        lock.lock();
+        try {
+            if (sequence < nextToDeliver || waiting.containsKey(sequence)) {
+                throw new IllegalStateException("Sequence " + sequence + " completed twice");
+            }
+            if (sequence != nextToDeliver) {
+                waiting.put(sequence, item);
+                heldBack++;
+                maxWaiting = Math.max(maxWaiting, waiting.size());
+                return;
+            }
+
+            deliver(sequence, item);
+            while (!waiting.isEmpty()) {
+                T ready = waiting.remove(nextToDeliver);
+                if (ready == null) break;
+                deliver(nextToDeliver, ready);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(long sequence, T item) {
+        nextToDeliver = sequence + 1;
+        delivered++;
+        consumer.accept(sequence, item);
+    }
+
+    // Started but not delivered yet, waiting in a worker or here.
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return (int) (nextSequence - nextToDeliver);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxWaiting() {
+        lock.lock();
+        try {
+            return maxWaiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            return String.format(Locale.US, "delivered %d, held back %d (%.1f%%), max waiting %d",
+                    delivered, heldBack, delivered == 0 ? 0f : heldBack * 100f / delivered, maxWaiting);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
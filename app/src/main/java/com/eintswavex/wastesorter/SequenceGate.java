@@ -0,0 +1,37 @@
+package com.eintswavex.wastesorter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the frames a camera delivers in sequence order when several decoders finish out of
+ * order. A frame is stale once a frame with the same or a higher sequence went out: decoders can
+ * skip it early with isStale(), and admit() rejects it at delivery. admit() must always be called
+ * on the same thread (the main thread for ESP32 frames); isStale() is safe from any thread.
+ */
+public class SequenceGate {
+    private volatile long lastAdmitted = -1;
+    private final AtomicLong staleCount = new AtomicLong(0);
+
+    // True, and counted as stale, when sequence can no longer be admitted.
+    public boolean isStale(long sequence) {
+        if (sequence > lastAdmitted) return false;
+        staleCount.incrementAndGet();
+        return true;
+    }
+
+    // Lets sequence through if it is newer than everything admitted before. Delivery thread only.
+    public boolean admit(long sequence) {
+        if (isStale(sequence)) return false;
+        lastAdmitted = sequence;
+        return true;
+    }
+
+    public void reset() {
+        lastAdmitted = -1;
+        staleCount.set(0);
+    }
+
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+}
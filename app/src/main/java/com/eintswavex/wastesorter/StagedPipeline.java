@@ -0,0 +1,289 @@
+package com.eintswavex.wastesorter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs a chain of stages on one thread each, so every stage works on a different item at the
+ * same time. Items are reusable slots: the source fills a free slot, each stage works on it in
+ * place and hands it on through a bounded queue, and after the last stage it goes back to the
+ * free pool. The slot count therefore caps the work in flight, and a slow stage makes the ones
+ * before it block instead of piling up.
+ *
+ * Every stage keeps track of the time it spends working, waiting for input (starved) and
+ * waiting for room downstream (blocked), which shows where the bottleneck is.
+ */
+public class StagedPipeline<T> {
+    private static final Object END = new Object();
+
+    public interface Source<T> {
+        /**
+         * Fills item with the next input. Returns false at the end of the input.
+         */
+        boolean next(T item) throws InterruptedException;
+    }
+
+    public interface Stage<T> {
+        /**
+         * Works on item in place. Returns false to drop it, which skips the later stages. A
+         * RuntimeException drops the item too and is counted as a failure.
+         */
+        boolean process(T item) throws InterruptedException;
+    }
+
+    public interface TerminationListener {
+        /**
+         * completed is true when the whole input went through, false after stop().
+         */
+        void onTerminated(boolean completed);
+    }
+
+    private static class StageStats {
+        final String name;
+        long items;
+        long busyNanos;
+        long starvedNanos;
+        long blockedNanos;
+        long failed;
+
+        StageStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private final String name;
+    private final BlockingQueue<T> free;
+    private final List<String> stageNames = new ArrayList<>();
+    private final List<Stage<T>> stages = new ArrayList<>();
+    private final List<StageStats> stats = new ArrayList<>();
+    private final ReentrantLock statsLock = new ReentrantLock();
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger alive = new AtomicInteger();
+    private Source<T> source;
+    private String sourceName;
+    private TerminationListener terminationListener;
+    private volatile boolean stopped;
+    private long statsSinceNanos;
+
+    public StagedPipeline(String name, List<T> slots) {
+        this.name = name;
+        free = new ArrayBlockingQueue<>(slots.size(), false, slots);
+    }
+
+    public StagedPipeline<T> source(String stageName, Source<T> source) {
+        this.sourceName = stageName;
+        this.source = source;
+        return this;
+    }
+
+    public StagedPipeline<T> stage(String stageName, Stage<T> stage) {
+        stageNames.add(stageName);
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Runs once on the last thread to exit, after the input ended or stop() was called.
+     */
+    public StagedPipeline<T> onTerminated(TerminationListener listener) {
+        terminationListener = listener;
+        return this;
+    }
+
+    public void start() {
+        if (source == null || stages.isEmpty()) throw new IllegalStateException("Pipeline needs a source and a stage");
+        int capacity = free.size() + free.remainingCapacity();
+
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) queues.add(new ArrayBlockingQueue<>(capacity + 1));  // + END
+
+        statsLock.lock();
+        try {
+            stats.add(new StageStats(sourceName));
+            for (String stageName : stageNames) stats.add(new StageStats(stageName));
+            statsSinceNanos = System.nanoTime();
+        } finally {
+            statsLock.unlock();
+        }
+
+        alive.set(stages.size() + 1);
+        threads.add(new Thread(() -> runSource(queues.get(0), stats.get(0)), name + "-" + sourceName));
+        for (int i = 0; i < stages.size(); i++) {
+            BlockingQueue<Object> in = queues.get(i);
+            BlockingQueue<Object> out = i + 1 < queues.size() ? queues.get(i + 1) : null;
+            Stage<T> stage = stages.get(i);
+            StageStats stageStats = stats.get(i + 1);
+            threads.add(new Thread(() -> runStage(stage, in, out, stageStats), name + "-" + stageNames.get(i)));
+        }
+        for (Thread thread : threads) thread.start();
+    }
+
+    // Interrupts the threads and returns; awaitTermination() waits for them to exit.
+    public void stop() {
+        stopped = true;
+        for (Thread thread : threads) thread.interrupt();
+    }
+
+    /**
+     * Waits until every thread has exited and the termination listener has returned. Returns false
+     * when some stage is still running after timeoutMs, stuck in a call that ignores interrupts.
+     */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000;
+        for (Thread thread : threads) {
+            long leftMs = (deadline - System.nanoTime()) / 1_000_000;
+            if (leftMs > 0) thread.join(leftMs);
+            if (thread.isAlive()) return false;
+        }
+        return true;
+    }
+
+    private void runSource(BlockingQueue<Object> out, StageStats stageStats) {
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                T item = free.take();
+                long busyStart = System.nanoTime();
+                boolean more = false;
+                try {
+                    more = source.next(item);
+                } catch (RuntimeException e) {
+                    recordFailure(stageStats);  // Ends the input
+                }
+                long busyEnd = System.nanoTime();
+                if (!more) {
+                    free.add(item);
+                    break;
+                }
+                out.put(item);
+                record(stageStats, busyStart - waitStart, busyEnd - busyStart, System.nanoTime() - busyEnd);
+            }
+            out.put(END);
+        } catch (InterruptedException e) {
+            // stop()
+        } finally {
+            exited();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runStage(Stage<T> stage, BlockingQueue<Object> in, BlockingQueue<Object> out, StageStats stageStats) {
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                Object next = in.take();
+                if (next == END) {
+                    if (out != null) out.put(END);
+                    break;
+                }
+                T item = (T) next;
+                long busyStart = System.nanoTime();
+                boolean keep = false;
+                try {
+                    keep = stage.process(item);
+                } catch (RuntimeException e) {
+                    recordFailure(stageStats);
+                }
+                long busyEnd = System.nanoTime();
+                if (keep && out != null) {
+                    out.put(item);
+                } else {
+                    free.add(item);
+                }
+                record(stageStats, busyStart - waitStart, busyEnd - busyStart, System.nanoTime() - busyEnd);
+            }
+        } catch (InterruptedException e) {
+            // stop()
+        } finally {
+            exited();
+        }
+    }
+
+    private void record(StageStats stageStats, long starved, long busy, long blocked) {
+        statsLock.lock();
+        try {
+            stageStats.items++;
+            stageStats.starvedNanos += starved;
+            stageStats.busyNanos += busy;
+            stageStats.blockedNanos += blocked;
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    private void recordFailure(StageStats stageStats) {
+        statsLock.lock();
+        try {
+            stageStats.failed++;
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    private void exited() {
+        if (alive.decrementAndGet() == 0 && terminationListener != null) {
+            terminationListener.onTerminated(!stopped);
+        }
+    }
+
+    public void resetStats() {
+        statsLock.lock();
+        try {
+            for (StageStats stageStats : stats) {
+                stageStats.items = 0;
+                stageStats.busyNanos = 0;
+                stageStats.starvedNanos = 0;
+                stageStats.blockedNanos = 0;
+                stageStats.failed = 0;
+            }
+            statsSinceNanos = System.nanoTime();
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    /**
+     * The stage that spent the most time working since start (or the last reset), or null
+     * before any item went through.
+     */
+    public String getBottleneck() {
+        statsLock.lock();
+        try {
+            StageStats busiest = null;
+            for (StageStats stageStats : stats) {
+                if (stageStats.items > 0 && (busiest == null || stageStats.busyNanos > busiest.busyNanos)) {
+                    busiest = stageStats;
+                }
+            }
+            return busiest != null ? busiest.name : null;
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    // The source first, then the stages in order.
+    public String getStatsSummary() {
+        statsLock.lock();
+        try {
+            long elapsed = Math.max(1, System.nanoTime() - statsSinceNanos);
+            StringBuilder summary = new StringBuilder();
+            for (StageStats s : stats) {
+                if (summary.length() > 0) summary.append('\n');
+                summary.append(String.format(Locale.US, "%-10s busy %3.0f%%, starved %3.0f%%, blocked %3.0f%%, %d items, %.1f ms each",
+                        s.name, s.busyNanos * 100f / elapsed, s.starvedNanos * 100f / elapsed, s.blockedNanos * 100f / elapsed,
+                        s.items, s.items == 0 ? 0f : s.busyNanos / 1e6f / s.items));
+                if (s.failed > 0) summary.append(", ").append(s.failed).append(" failed");
+            }
+            String bottleneck = getBottleneck();
+            if (bottleneck != null) summary.append("\nBottleneck: ").append(bottleneck);
+            return summary.toString();
+        } finally {
+            statsLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.eintswavex.wastesorter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The startup timeline of one launch, in milliseconds from the origin (process start on a cold
+ * start). Every phase is recorded once, the first time it is reached. INTERACTIVE is not marked
+ * by the caller: it is reached with the later of FIRST_DRAW and MODEL_READY, when the UI shows
+ * and a model can classify.
+ */
+public class StartupMetrics {
+
+    public enum Phase {
+        CREATED("created"),
+        MODELS_FOUND("models found"),
+        FIRST_DRAW("first draw"),
+        MODEL_READY("model ready"),
+        INTERACTIVE("interactive"),
+        FIRST_LABEL("first label");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // Called on the thread that marked the phase, once per phase.
+    public interface Listener {
+        void onPhase(Phase phase, long millis);
+    }
+
+    private final long originNanos;
+    private final boolean cold;
+    private final Listener listener;
+    private final long[] reachedNanos = new long[Phase.values().length];
+
+    public StartupMetrics(long originNanos, boolean cold, Listener listener) {
+        this.originNanos = originNanos;
+        this.cold = cold;
+        this.listener = listener;
+        Arrays.fill(reachedNanos, -1);
+    }
+
+    // Records phase at nowNanos unless it was reached before. Returns whether it was recorded.
+    public boolean mark(Phase phase, long nowNanos) {
+        if (phase == Phase.INTERACTIVE) throw new IllegalArgumentException("INTERACTIVE follows from FIRST_DRAW and MODEL_READY");
+        List<Phase> recorded = new ArrayList<>(2);
+        synchronized (this) {
+            if (reachedNanos[phase.ordinal()] >= 0) return false;
+            reachedNanos[phase.ordinal()] = nowNanos;
+            recorded.add(phase);
+            if (reachedNanos[Phase.INTERACTIVE.ordinal()] < 0
+                    && reachedNanos[Phase.FIRST_DRAW.ordinal()] >= 0 && reachedNanos[Phase.MODEL_READY.ordinal()] >= 0) {
+                reachedNanos[Phase.INTERACTIVE.ordinal()] = Math.max(reachedNanos[Phase.FIRST_DRAW.ordinal()],
+                        reachedNanos[Phase.MODEL_READY.ordinal()]);
+                recorded.add(Phase.INTERACTIVE);
+            }
+        }
+        if (listener != null) {
+            for (Phase reached : recorded) listener.onPhase(reached, getMillis(reached));
+        }
+        return true;
+    }
+
+    public synchronized boolean isReached(Phase phase) {
+        return reachedNanos[phase.ordinal()] >= 0;
+    }
+
+    // Milliseconds from the origin to phase, -1 while it is not reached.
+    public synchronized long getMillis(Phase phase) {
+        long nanos = reachedNanos[phase.ordinal()];
+        return nanos < 0 ? -1 : Math.max(0, nanos - originNanos) / 1_000_000;
+    }
+
+    public boolean isCold() {
+        return cold;
+    }
+
+    // "Cold start: created 180 ms, models found 195 ms, ..." with the phases reached so far.
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder(cold ? "Cold start" : "Warm start");
+        String separator = ": ";
+        for (Phase phase : Phase.values()) {
+            long millis = getMillis(phase);
+            if (millis < 0) continue;
+            summary.append(separator).append(String.format(Locale.US, "%s %d ms", phase.getLabel(), millis));
+            separator = ", ";
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.eintswavex.wastesorter;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live connection health of one camera stream: state, reconnects, stalls, time to first frame,
+ * and smoothed bytes/s and frames/s. The stream thread reports events, sample() is called
+ * periodically by the watchdog to update the rates.
+ */
+public class StreamHealth {
+    public enum State { IDLE, CONNECTING, STREAMING, BACKOFF }
+
+    private static final float RATE_SMOOTHING = 0.5f;
+
+    private final AtomicLong totalBytes = new AtomicLong(0);
+    private final AtomicLong totalFrames = new AtomicLong(0);
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile State state = State.IDLE;
+
+    private long connectAttempts = 0;
+    private long connections = 0;
+    private long stalls = 0;
+    private long connectStartNanos = 0;
+    private boolean awaitingFirstFrame = false;
+    private long lastTimeToFirstFrameNanos = -1;
+    private long totalTimeToFirstFrameNanos = 0;
+    private long firstFrameCount = 0;
+
+    private long sampleNanos = 0;
+    private long sampleBytes = 0;
+    private long sampleFrames = 0;
+    private float bytesPerSecond = 0;
+    private float framesPerSecond = 0;
+
+    public synchronized void reset() {
+        totalBytes.set(0);
+        totalFrames.set(0);
+        lastActivityNanos = System.nanoTime();
+        state = State.IDLE;
+        connectAttempts = 0;
+        connections = 0;
+        stalls = 0;
+        awaitingFirstFrame = false;
+        lastTimeToFirstFrameNanos = -1;
+        totalTimeToFirstFrameNanos = 0;
+        firstFrameCount = 0;
+        sampleNanos = 0;
+        sampleBytes = 0;
+        sampleFrames = 0;
+        bytesPerSecond = 0;
+        framesPerSecond = 0;
+    }
+
+    public synchronized void onConnecting() {
+        state = State.CONNECTING;
+        connectAttempts++;
+        connectStartNanos = System.nanoTime();
+        lastActivityNanos = connectStartNanos;
+        awaitingFirstFrame = true;
+    }
+
+    public synchronized void onConnected() {
+        state = State.STREAMING;
+        connections++;
+        lastActivityNanos = System.nanoTime();
+    }
+
+    // A new request on an open connection, e.g. the next snapshot, counts as activity for the stall check.
+    public void onRequest() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    public void onBytes(int count) {
+        totalBytes.addAndGet(count);
+        lastActivityNanos = System.nanoTime();
+    }
+
+    public void onFrame() {
+        totalFrames.incrementAndGet();
+        if (awaitingFirstFrame) {
+            recordFirstFrame();
+        }
+    }
+
+    private synchronized void recordFirstFrame() {
+        if (!awaitingFirstFrame) return;
+        awaitingFirstFrame = false;
+        lastTimeToFirstFrameNanos = System.nanoTime() - connectStartNanos;
+        totalTimeToFirstFrameNanos += lastTimeToFirstFrameNanos;
+        firstFrameCount++;
+    }
+
+    public synchronized void onStall() {
+        stalls++;
+    }
+
+    public synchronized void onBackoff() {
+        state = State.BACKOFF;
+        awaitingFirstFrame = false;
+        bytesPerSecond = 0;
+        framesPerSecond = 0;
+    }
+
+    public synchronized void onStopped() {
+        state = State.IDLE;
+        awaitingFirstFrame = false;
+        bytesPerSecond = 0;
+        framesPerSecond = 0;
+    }
+
+    /**
+     * Updates the smoothed rates from the counters since the previous sample.
+     */
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        long bytes = totalBytes.get();
+        long frames = totalFrames.get();
+
+        if (sampleNanos != 0 && now > sampleNanos) {
+            float seconds = (now - sampleNanos) / 1e9f;
+            float byteRate = (bytes - sampleBytes) / seconds;
+            float frameRate = (frames - sampleFrames) / seconds;
+            bytesPerSecond += RATE_SMOOTHING * (byteRate - bytesPerSecond);
+            framesPerSecond += RATE_SMOOTHING * (frameRate - framesPerSecond);
+        }
+        sampleNanos = now;
+        sampleBytes = bytes;
+        sampleFrames = frames;
+    }
+
+    public long getIdleMs() {
+        return (System.nanoTime() - lastActivityNanos) / 1_000_000;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Every successful connection after the first one.
+    public synchronized long getReconnectCount() {
+        return Math.max(0, connections - 1);
+    }
+
+    public synchronized long getConnectAttempts() {
+        return connectAttempts;
+    }
+
+    public synchronized long getStallCount() {
+        return stalls;
+    }
+
+    public synchronized float getLastTimeToFirstFrameMs() {
+        return lastTimeToFirstFrameNanos < 0 ? -1 : lastTimeToFirstFrameNanos / 1e6f;
+    }
+
+    public synchronized float getAverageTimeToFirstFrameMs() {
+        return firstFrameCount == 0 ? -1 : totalTimeToFirstFrameNanos / (firstFrameCount * 1e6f);
+    }
+
+    public synchronized float getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public synchronized float getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getTotalFrames() {
+        return totalFrames.get();
+    }
+
+    public synchronized String getStatsSummary() {
+        return String.format(Locale.US,
+                "%s, %.1f fps, %.1f KB/s, reconnects %d (attempts %d, stalls %d), first frame %.0f ms (avg %.0f ms)",
+                state, framesPerSecond, bytesPerSecond / 1024f, Math.max(0, connections - 1), connectAttempts, stalls,
+                lastTimeToFirstFrameNanos < 0 ? -1f : lastTimeToFirstFrameNanos / 1e6f,
+                firstFrameCount == 0 ? -1f : totalTimeToFirstFrameNanos / (firstFrameCount * 1e6f));
+    }
+}
@@ -0,0 +1,87 @@
+package com.eintswavex.wastesorter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records one stream session to disk for ReplayMjpegSource. The raw multipart bytes go
+ * unchanged into "name.mjpeg". "name.idx" starts with a header (magic, Content-Type, wall-clock
+ * start) followed by fixed-size records: a type byte (CHUNK for every read from the network,
+ * FRAME whenever the parser completed a frame), the data file length at that moment, and the
+ * nanoseconds since the session started. Both files are only ever appended to.
+ */
+public class StreamRecorder implements Closeable {
+    public static final String DATA_EXTENSION = ".mjpeg";
+    public static final String INDEX_EXTENSION = ".idx";
+    public static final int INDEX_MAGIC = 0x4D4A5049;  // "MJPI"
+    public static final byte RECORD_CHUNK = 'C';
+    public static final byte RECORD_FRAME = 'F';
+
+    private final File dataFile;
+    private final BufferedOutputStream data;
+    private final DataOutputStream index;
+    private final long startNanos;
+    private long bytesWritten = 0;
+    private long framesRecorded = 0;
+
+    public StreamRecorder(File baseFile, String contentType) throws IOException {
+        File parent = baseFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        dataFile = new File(baseFile.getPath() + DATA_EXTENSION);
+        data = new BufferedOutputStream(new FileOutputStream(dataFile, true), 64 * 1024);
+        index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(baseFile.getPath() + INDEX_EXTENSION, true), 16 * 1024));
+
+        index.writeInt(INDEX_MAGIC);
+        index.writeUTF(contentType != null ? contentType : "");
+        index.writeLong(System.currentTimeMillis());
+        startNanos = System.nanoTime();
+    }
+
+    public synchronized void writeChunk(byte[] buffer, int offset, int length) throws IOException {
+        data.write(buffer, offset, length);
+        bytesWritten += length;
+        writeRecord(RECORD_CHUNK);
+    }
+
+    // Flushed per frame, so a crash loses at most the frame in progress.
+    public synchronized void markFrame() throws IOException {
+        writeRecord(RECORD_FRAME);
+        framesRecorded++;
+        data.flush();
+        index.flush();
+    }
+
+    private void writeRecord(byte type) throws IOException {
+        index.writeByte(type);
+        index.writeLong(bytesWritten);
+        index.writeLong(System.nanoTime() - startNanos);
+    }
+
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized long getFramesRecorded() {
+        return framesRecorded;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.eintswavex.wastesorter;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memory-bounded LRU cache of finished input tensors, so a replay of the dataset skips decoding
+ * and resizing. Entries are keyed by asset path, input size and dtype, so tensors of another
+ * model never match. The least recently used tensors are dropped once the bytes held pass the
+ * budget; a dataset larger than the budget keeps its most recent images.
+ */
+public class TensorCache {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final long budgetBytes;
+    private long residentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TensorCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static String key(String path, int width, int height, TensorConverter.Format format) {
+        return width + "x" + height + " " + format + " " + path;
+    }
+
+    /**
+     * Copies the cached tensor into out from position 0 and leaves out rewound. Returns false,
+     * leaving out alone, when the key is not cached or out has another size.
+     */
+    public boolean get(String key, ByteBuffer out) {
+        lock.lock();
+        try {
+            byte[] tensor = entries.get(key);
+            if (tensor == null || tensor.length != out.capacity()) {
+                misses++;
+                return false;
+            }
+            hits++;
+            out.rewind();
+            out.put(tensor);
+            out.rewind();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Copies the whole of tensor, its position is left alone.
+    public void put(String key, ByteBuffer tensor) {
+        int size = tensor.capacity();
+        if (size > budgetBytes) return;
+        byte[] copy = new byte[size];
+        ByteBuffer source = tensor.duplicate();
+        source.rewind();
+        source.get(copy);
+
+        lock.lock();
+        try {
+            byte[] previous = entries.put(key, copy);
+            if (previous != null) residentBytes -= previous.length;
+            residentBytes += size;
+
+            Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+            while (residentBytes > budgetBytes && eldest.hasNext()) {
+                residentBytes -= eldest.next().getValue().length;
+                eldest.remove();
+                evictions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            residentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getResidentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Short form for the metrics line.
+    public String getMetricsLabel() {
+        lock.lock();
+        try {
+            return String.format(Locale.US, "Cache: %d hit/%d miss, %.1f MB", hits, misses, residentBytes / 1048576f);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStatsSummary() {
+        lock.lock();
+        try {
+            long lookups = hits + misses;
+            return String.format(Locale.US, "%d tensors, %.1f of %.1f MB, hits %d, misses %d (%.1f%% hit), %d evicted",
+                    entries.size(), residentBytes / 1048576f, budgetBytes / 1048576f, hits, misses,
+                    lookups == 0 ? 0f : hits * 100f / lookups, evictions);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
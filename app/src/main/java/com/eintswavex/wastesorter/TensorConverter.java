@@ -0,0 +1,347 @@
+package com.eintswavex.wastesorter;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Turns ARGB_8888 pixels into the model's input tensor in a single pass. A source of another
+ * size is bilinearly resampled on the way, so no scaled bitmap is ever drawn. Each channel value
+ * then goes through a 256-entry lookup table built once from the tensor's dtype and quantization,
+ * and the whole frame reaches the tensor with one bulk put.
+ *
+ * Pure Java so the kernels can be tested and benchmarked on the JVM.
+ */
+public class TensorConverter {
+    public enum Format { FLOAT32, INT8, UINT8 }
+
+    // A quantized input whose real range reaches past this takes raw 0-255 pixels instead of 0-1.
+    private static final float RAW_PIXEL_RANGE_THRESHOLD = 2.0f;
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+    private static final int ROUNDING = 1 << (2 * WEIGHT_BITS - 1);
+
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final float scale;
+    private final int zeroPoint;
+    private final float[] floatLut;
+    private final byte[] byteLut;
+    private final float[] floatValues;
+    private final byte[] byteValues;
+    private final int[] previewLut;  // Tensor byte to pixel value, see toPixels()
+
+    // Resampling tables for the last source size seen
+    private int sourceWidth = -1;
+    private int sourceHeight = -1;
+    private final int[] columnLeft, columnRight, columnWeight;
+    private final int[] rowTop, rowBottom, rowWeight;
+    private int[] topRow, bottomRow;
+    private int topRowIndex, bottomRowIndex;
+
+    private ByteBuffer viewTarget;
+    private FloatBuffer floatView;
+
+    /**
+     * @param scale     input quantization scale, 0 or less when the model does not provide one
+     * @param zeroPoint input quantization zero point
+     */
+    public TensorConverter(Format format, int width, int height, float scale, int zeroPoint) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+
+        columnLeft = new int[width];
+        columnRight = new int[width];
+        columnWeight = new int[width];
+        rowTop = new int[height];
+        rowBottom = new int[height];
+        rowWeight = new int[height];
+        topRow = new int[width * 3];
+        bottomRow = new int[width * 3];
+
+        if (format == Format.FLOAT32) {
+            floatLut = new float[256];
+            for (int v = 0; v < 256; v++) floatLut[v] = v / 255.0f;
+            floatValues = new float[width * height * 3];
+            byteLut = null;
+            byteValues = null;
+            previewLut = null;
+        } else {
+            byteLut = buildQuantizedLut(format, scale, zeroPoint);
+            byteValues = new byte[width * height * 3];
+            floatLut = null;
+            floatValues = null;
+            previewLut = buildPreviewLut(format, byteLut);
+        }
+    }
+
+    // Inverts the quantization table; a tensor value no pixel maps to takes the next lower one's pixel.
+    private static int[] buildPreviewLut(Format format, byte[] lut) {
+        int[] preview = new int[256];
+        Arrays.fill(preview, -1);
+        for (int v = 0; v < 256; v++) {
+            int index = lut[v] & 0xFF;
+            if (preview[index] < 0) preview[index] = v;
+        }
+        int last = 0;
+        for (int k = 0; k < 256; k++) {
+            int index = (format == Format.INT8 ? k - 128 : k) & 0xFF;
+            if (preview[index] < 0) {
+                preview[index] = last;
+            } else {
+                last = preview[index];
+            }
+        }
+        return preview;
+    }
+
+    /**
+     * Maps each pixel value to its quantized tensor value. Pixels are taken as 0-1 like the float
+     * path, unless the tensor's real range shows the model was quantized on raw 0-255 values.
+     */
+    static byte[] buildQuantizedLut(Format format, float scale, int zeroPoint) {
+        int min = format == Format.INT8 ? -128 : 0;
+        int max = format == Format.INT8 ? 127 : 255;
+        if (scale <= 0) {
+            // No params: INT8 centered around 0, UINT8 unchanged
+            scale = 1.0f;
+            zeroPoint = format == Format.INT8 ? -128 : 0;
+        }
+        boolean rawPixels = (max - zeroPoint) * scale > RAW_PIXEL_RANGE_THRESHOLD;
+
+        byte[] lut = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            float real = rawPixels ? v : v / 255.0f;
+            int q = Math.round(real / scale) + zeroPoint;
+            lut[v] = (byte) Math.max(min, Math.min(max, q));
+        }
+        return lut;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // The quantization the lookup table was built from, as passed in.
+    public float getScale() {
+        return scale;
+    }
+
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    public int getTensorBytes() {
+        return width * height * 3 * (format == Format.FLOAT32 ? 4 : 1);
+    }
+
+    /**
+     * The largest power-of-two BitmapFactory inSampleSize that still decodes a srcWidth x
+     * srcHeight image at no less than the tensor size, so resampling never has to upscale.
+     */
+    public int sampleSizeFor(int srcWidth, int srcHeight) {
+        int sampleSize = 1;
+        while (srcWidth / (sampleSize * 2) >= width && srcHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Rebuilds opaque ARGB pixels (width x height) from a tensor this converter wrote, to show a
+     * cached image without decoding it. Only the quantization rounding is lost. Reads in by
+     * absolute index and does not touch the converter's buffers, so any thread may call it.
+     */
+    public void toPixels(ByteBuffer in, int[] pixels) {
+        int count = width * height;
+        for (int i = 0, j = 0; i < count; i++, j += 3) {
+            int r, g, b;
+            if (format == Format.FLOAT32) {
+                r = toPixelValue(in.getFloat(j * 4));
+                g = toPixelValue(in.getFloat((j + 1) * 4));
+                b = toPixelValue(in.getFloat((j + 2) * 4));
+            } else {
+                r = previewLut[in.get(j) & 0xFF];
+                g = previewLut[in.get(j + 1) & 0xFF];
+                b = previewLut[in.get(j + 2) & 0xFF];
+            }
+            pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static int toPixelValue(float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255.0f)));
+    }
+
+    /**
+     * Converts srcWidth x srcHeight pixels (row stride srcWidth) into out, starting at position 0.
+     * out must be a native-order buffer of at least getTensorBytes(). Leaves out rewound.
+     */
+    public void convert(int[] pixels, int srcWidth, int srcHeight, ByteBuffer out) {
+        convert(pixels, srcWidth, srcHeight, out, 0);
+    }
+
+    /**
+     * Same, starting at byte offset, e.g. k * getTensorBytes() for image k of a batched tensor.
+     */
+    public void convert(int[] pixels, int srcWidth, int srcHeight, ByteBuffer out, int offset) {
+        if (srcWidth == width && srcHeight == height) {
+            if (format == Format.FLOAT32) {
+                convertFloat(pixels);
+            } else {
+                convertBytes(pixels);
+            }
+        } else {
+            prepareResample(srcWidth, srcHeight);
+            topRowIndex = -1;  // New pixels, nothing cached
+            bottomRowIndex = -1;
+            if (format == Format.FLOAT32) {
+                resampleFloat(pixels, srcWidth);
+            } else {
+                resampleBytes(pixels, srcWidth);
+            }
+        }
+        write(out, offset);
+    }
+
+    private void convertFloat(int[] pixels) {
+        final float[] lut = floatLut;
+        final float[] values = floatValues;
+        final int count = width * height;
+        for (int i = 0, d = 0; i < count; i++, d += 3) {
+            final int p = pixels[i];
+            values[d] = lut[(p >> 16) & 0xFF];
+            values[d + 1] = lut[(p >> 8) & 0xFF];
+            values[d + 2] = lut[p & 0xFF];
+        }
+    }
+
+    private void convertBytes(int[] pixels) {
+        final byte[] lut = byteLut;
+        final byte[] values = byteValues;
+        final int count = width * height;
+        for (int i = 0, d = 0; i < count; i++, d += 3) {
+            final int p = pixels[i];
+            values[d] = lut[(p >> 16) & 0xFF];
+            values[d + 1] = lut[(p >> 8) & 0xFF];
+            values[d + 2] = lut[p & 0xFF];
+        }
+    }
+
+    private void resampleFloat(int[] pixels, int srcWidth) {
+        final float[] lut = floatLut;
+        final float[] values = floatValues;
+        final int rowValues = width * 3;
+        for (int y = 0, d = 0; y < height; y++) {
+            prepareRows(pixels, srcWidth, rowTop[y], rowBottom[y]);
+            final int[] top = topRow, bottom = bottomRow;
+            final int wy = rowWeight[y];
+            for (int i = 0; i < rowValues; i++) {
+                final int t = top[i];
+                values[d++] = lut[((t << WEIGHT_BITS) + (bottom[i] - t) * wy + ROUNDING) >> (2 * WEIGHT_BITS)];
+            }
+        }
+    }
+
+    private void resampleBytes(int[] pixels, int srcWidth) {
+        final byte[] lut = byteLut;
+        final byte[] values = byteValues;
+        final int rowValues = width * 3;
+        for (int y = 0, d = 0; y < height; y++) {
+            prepareRows(pixels, srcWidth, rowTop[y], rowBottom[y]);
+            final int[] top = topRow, bottom = bottomRow;
+            final int wy = rowWeight[y];
+            for (int i = 0; i < rowValues; i++) {
+                final int t = top[i];
+                values[d++] = lut[((t << WEIGHT_BITS) + (bottom[i] - t) * wy + ROUNDING) >> (2 * WEIGHT_BITS)];
+            }
+        }
+    }
+
+    /**
+     * Horizontally resampled channel values (scaled by WEIGHT_ONE) of the two source rows the next
+     * output row blends. Consecutive output rows mostly share source rows, so those are reused.
+     */
+    private void prepareRows(int[] pixels, int srcWidth, int top, int bottom) {
+        if (top != topRowIndex) {
+            if (top == bottomRowIndex) {
+                int[] swap = topRow;
+                topRow = bottomRow;
+                bottomRow = swap;
+                bottomRowIndex = -1;
+            } else {
+                resampleRow(pixels, top * srcWidth, topRow);
+            }
+            topRowIndex = top;
+        }
+        if (bottom != bottomRowIndex) {
+            if (bottom == topRowIndex) {
+                System.arraycopy(topRow, 0, bottomRow, 0, bottomRow.length);
+            } else {
+                resampleRow(pixels, bottom * srcWidth, bottomRow);
+            }
+            bottomRowIndex = bottom;
+        }
+    }
+
+    private void resampleRow(int[] pixels, int rowStart, int[] row) {
+        for (int x = 0, d = 0; x < width; x++) {
+            final int a = pixels[rowStart + columnLeft[x]];
+            final int b = pixels[rowStart + columnRight[x]];
+            final int wx = columnWeight[x];
+            final int ar = (a >> 16) & 0xFF, ag = (a >> 8) & 0xFF, ab = a & 0xFF;
+            row[d++] = (ar << WEIGHT_BITS) + (((b >> 16) & 0xFF) - ar) * wx;
+            row[d++] = (ag << WEIGHT_BITS) + (((b >> 8) & 0xFF) - ag) * wx;
+            row[d++] = (ab << WEIGHT_BITS) + ((b & 0xFF) - ab) * wx;
+        }
+    }
+
+    // Pixel-center aligned, like a filtered Canvas draw: the source is sampled at (x + 0.5) * ratio - 0.5.
+    private void prepareResample(int srcWidth, int srcHeight) {
+        if (srcWidth == sourceWidth && srcHeight == sourceHeight) return;
+        fillAxis(srcWidth, width, columnLeft, columnRight, columnWeight);
+        fillAxis(srcHeight, height, rowTop, rowBottom, rowWeight);
+        sourceWidth = srcWidth;
+        sourceHeight = srcHeight;
+    }
+
+    private static void fillAxis(int srcSize, int dstSize, int[] low, int[] high, int[] weight) {
+        float ratio = (float) srcSize / dstSize;
+        for (int i = 0; i < dstSize; i++) {
+            float position = Math.max(0f, (i + 0.5f) * ratio - 0.5f);
+            int index = Math.min((int) position, srcSize - 1);
+            low[i] = index;
+            high[i] = Math.min(index + 1, srcSize - 1);
+            weight[i] = Math.round((position - index) * WEIGHT_ONE);
+        }
+    }
+
+    private void write(ByteBuffer out, int offset) {
+        out.rewind();
+        if (format == Format.FLOAT32) {
+            if (out != viewTarget) {
+                viewTarget = out;
+                floatView = out.asFloatBuffer();
+            }
+            floatView.clear();
+            floatView.position(offset / 4);
+            floatView.put(floatValues);
+        } else {
+            out.position(offset);
+            out.put(byteValues);
+            out.rewind();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.eintswavex.wastesorter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What the auto-tuner measured on this phone: one entry per model and interpreter config, with
+ * its latency after outlier rejection and its accuracy on the bundled dataset. Entries no other
+ * entry beats on both latency and accuracy form the Pareto front, which is all pick() looks at.
+ *
+ * Plain fields so Gson can store it as is.
+ */
+public class TuningReport {
+    // Tukey fences: samples beyond Q3 + 1.5 IQR (GC pauses, thermal hiccups) are rejected.
+    private static final double IQR_FENCE = 1.5;
+
+    public static class Entry {
+        public String modelName;
+        public int numThreads;
+        public boolean useXnnpack;
+        public boolean allowFp16;
+        public float meanMs;
+        public float p50Ms;
+        public float p90Ms;
+        public int samples;
+        public int rejected;
+        public float accuracy;
+        public boolean pareto;
+
+        public InterpreterConfig toConfig() {
+            return new InterpreterConfig(numThreads, useXnnpack, allowFp16);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s: %.1f ms (p50 %.1f, p90 %.1f, %d/%d kept), %.1f%%%s",
+                    modelName, toConfig().getLabel(), meanMs, p50Ms, p90Ms, samples - rejected, samples,
+                    accuracy * 100, pareto ? " *" : "");
+        }
+    }
+
+    public List<Entry> entries = new ArrayList<>();
+    public List<String> modelNames = new ArrayList<>();
+    public int imagesPerModel;
+    public long createdAt;
+
+    /**
+     * Fills the latency fields of entry from raw per-inference nanos.
+     */
+    public static void summarize(long[] nanos, int count, Entry entry) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        entry.samples = count;
+        entry.rejected = 0;
+        if (count == 0) {
+            entry.meanMs = entry.p50Ms = entry.p90Ms = Float.NaN;
+            return;
+        }
+
+        double q1 = percentile(sorted, count, 0.25);
+        double q3 = percentile(sorted, count, 0.75);
+        double upper = q3 + IQR_FENCE * (q3 - q1);
+        double lower = q1 - IQR_FENCE * (q3 - q1);
+
+        long sum = 0;
+        int kept = 0;
+        int first = -1;
+        for (int i = 0; i < count; i++) {
+            if (sorted[i] < lower || sorted[i] > upper) continue;
+            if (first < 0) first = i;
+            sum += sorted[i];
+            kept++;
+        }
+        entry.rejected = count - kept;
+        long[] inliers = Arrays.copyOfRange(sorted, first, first + kept);  // Still sorted, fences are contiguous
+        entry.meanMs = (float) (sum / 1e6 / kept);
+        entry.p50Ms = (float) (percentile(inliers, kept, 0.5) / 1e6);
+        entry.p90Ms = (float) (percentile(inliers, kept, 0.9) / 1e6);
+    }
+
+    // Linear interpolation between closest ranks.
+    static double percentile(long[] sorted, int count, double fraction) {
+        double rank = fraction * (count - 1);
+        int low = (int) Math.floor(rank);
+        int high = Math.min(low + 1, count - 1);
+        return sorted[low] + (sorted[high] - sorted[low]) * (rank - low);
+    }
+
+    public void markParetoFront() {
+        for (Entry entry : entries) {
+            entry.pareto = true;
+            for (Entry other : entries) {
+                if (other == entry) continue;
+                boolean notWorse = other.meanMs <= entry.meanMs && other.accuracy >= entry.accuracy;
+                boolean better = other.meanMs < entry.meanMs || other.accuracy > entry.accuracy;
+                if (notWorse && better) {
+                    entry.pareto = false;
+                    break;
+                }
+            }
+        }
+    }
+
+    public List<Entry> getParetoFront() {
+        List<Entry> front = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.pareto) front.add(entry);
+        }
+        front.sort((a, b) -> Float.compare(a.meanMs, b.meanMs));
+        return front;
+    }
+
+    /**
+     * The most accurate entry whose mean latency fits budgetMs, the faster one on a tie. Without
+     * a budget (0 or less) the most accurate overall. When nothing fits, the fastest entry, since
+     * that is the closest the phone gets. Null for an empty report.
+     */
+    public Entry pick(float budgetMs) {
+        Entry best = null;
+        Entry fastest = null;
+        for (Entry entry : getParetoFront()) {
+            if (fastest == null) fastest = entry;
+            if (budgetMs > 0 && entry.meanMs > budgetMs) continue;
+            if (best == null || entry.accuracy > best.accuracy
+                    || (entry.accuracy == best.accuracy && entry.meanMs < best.meanMs)) {
+                best = entry;
+            }
+        }
+        return best != null ? best : fastest;
+    }
+
+    /**
+     * The fastest config measured for a model, whatever its accuracy. Null when not measured.
+     */
+    public Entry fastestFor(String modelName) {
+        Entry fastest = null;
+        for (Entry entry : entries) {
+            if (!entry.modelName.equals(modelName)) continue;
+            if (fastest == null || entry.meanMs < fastest.meanMs) fastest = entry;
+        }
+        return fastest;
+    }
+
+    // A report is stale once the bundled models change.
+    public boolean covers(List<String> models) {
+        return modelNames != null && modelNames.size() == models.size() && modelNames.containsAll(models);
+    }
+}
@@ -0,0 +1,108 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CascadeTest {
+
+    // A stage that answers label with the confidence the input asks of it.
+    private static Cascade.Stage<float[]> stage(int stageIndex, int label, List<Integer> calls) {
+        return (confidences, result) -> {
+            calls.add(stageIndex);
+            if (confidences[stageIndex] < 0) return false;
+            result.labelIndex = label;
+            result.confidence = confidences[stageIndex];
+            result.probabilities = new float[]{confidences[stageIndex]};
+            return true;
+        };
+    }
+
+    private static Cascade<float[]> threeStages(float threshold, List<Integer> calls) {
+        return new Cascade<float[]>(threshold)
+                .add("96", stage(0, 0, calls))
+                .add("160", stage(1, 1, calls))
+                .add("240", stage(2, 2, calls));
+    }
+
+    @Test
+    public void confidentFirstStage_decidesAlone() {
+        List<Integer> calls = new ArrayList<>();
+        Cascade<float[]> cascade = threeStages(0.6f, calls);
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertEquals(0, cascade.classify(new float[]{0.9f, 0.9f, 0.9f}, result));
+        assertEquals(List.of(0), calls);
+        assertEquals(0, result.labelIndex);
+        assertEquals(0f, cascade.getEscalationRate(), 0f);
+    }
+
+    @Test
+    public void lowConfidence_escalatesUntilAStageIsSure() {
+        List<Integer> calls = new ArrayList<>();
+        Cascade<float[]> cascade = threeStages(0.6f, calls);
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertEquals(1, cascade.classify(new float[]{0.4f, 0.7f, 0.9f}, result));
+        assertEquals(List.of(0, 1), calls);
+        assertEquals(1, result.labelIndex);
+        assertEquals(0.7f, result.confidence, 0f);
+
+        calls.clear();
+        assertEquals("the last stage decides even when unsure", 2, cascade.classify(new float[]{0.4f, 0.5f, 0.3f}, result));
+        assertEquals(List.of(0, 1, 2), calls);
+        assertEquals(2, result.labelIndex);
+        assertEquals(1f, cascade.getEscalationRate(), 0f);
+    }
+
+    @Test
+    public void failingLaterStage_keepsThePreviousAnswer() {
+        List<Integer> calls = new ArrayList<>();
+        Cascade<float[]> cascade = threeStages(0.6f, calls);
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertEquals(0, cascade.classify(new float[]{0.4f, -1f, 0.9f}, result));
+        assertEquals(0, result.labelIndex);
+        assertEquals(0.4f, result.confidence, 0f);
+
+        assertEquals(-1, cascade.classify(new float[]{-1f, 0.9f, 0.9f}, result));
+        assertTrue(cascade.getStatsSummary().contains("1 failed"));
+    }
+
+    @Test
+    public void threshold_canChangeBetweenFrames() {
+        List<Integer> calls = new ArrayList<>();
+        Cascade<float[]> cascade = threeStages(0.3f, calls);
+        InferenceEngine.Result result = new InferenceEngine.Result();
+        float[] frame = {0.5f, 0.8f, 0.9f};
+
+        assertEquals(0, cascade.classify(frame, result));
+        cascade.setThreshold(0.6f);
+        assertEquals(1, cascade.classify(frame, result));
+        assertEquals(0.5f, cascade.getEscalationRate(), 1e-6f);
+
+        cascade.resetStats();
+        assertEquals(0f, cascade.getEscalationRate(), 0f);
+        assertEquals(0f, cascade.getMeanFrameMs(), 0f);
+    }
+
+    @Test
+    public void statsSummary_countsEveryStage() {
+        List<Integer> calls = new ArrayList<>();
+        Cascade<float[]> cascade = threeStages(0.6f, calls);
+        InferenceEngine.Result result = new InferenceEngine.Result();
+        cascade.classify(new float[]{0.9f, 0f, 0f}, result);
+        cascade.classify(new float[]{0.9f, 0f, 0f}, result);
+        cascade.classify(new float[]{0.5f, 0.9f, 0f}, result);
+        cascade.classify(new float[]{0.5f, 0.5f, 0.9f}, result);
+
+        String summary = cascade.getStatsSummary();
+        assertTrue(summary, summary.startsWith("4 frames, threshold 60%, 50.0% escalated"));
+        assertTrue(summary, summary.contains("96: ran 4, decided 2 (50.0%)"));
+        assertTrue(summary, summary.contains("160: ran 2, decided 1 (25.0%)"));
+        assertTrue(summary, summary.contains("240: ran 1, decided 1 (25.0%)"));
+    }
+}
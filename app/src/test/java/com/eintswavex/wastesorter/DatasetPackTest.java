@@ -0,0 +1,138 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DatasetPackTest {
+    private static final List<String> CLASSES = Arrays.asList("metal", "paper", "plastic");
+    private static final List<String> PATHS = Arrays.asList(
+            "dataset/metal/metal1.jpg", "dataset/paper/paper1.jpg", "dataset/paper/paper2.jpg", "dataset/plastic/plastic1.jpg");
+    private static final byte[] LABELS = {0, 1, 1, 2};
+
+    private static File tempPack() throws IOException {
+        File dir = Files.createTempDirectory("packs").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "dataset-10x10-int8.pack");
+        file.deleteOnExit();
+        return file;
+    }
+
+    // Image i is what a converter would write for the seeded random pixels i.
+    private static ByteBuffer expectedTensor(TensorConverter converter, int index) {
+        int[] pixels = new int[converter.getWidth() * converter.getHeight()];
+        Random random = new Random(index);
+        for (int i = 0; i < pixels.length; i++) pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        ByteBuffer out = ByteBuffer.allocateDirect(converter.getTensorBytes()).order(ByteOrder.nativeOrder());
+        converter.convert(pixels, converter.getWidth(), converter.getHeight(), out);
+        return out;
+    }
+
+    private static void writePack(File file, TensorConverter converter) throws IOException {
+        DatasetPack.write(file, converter.getWidth(), converter.getHeight(), converter.getFormat(),
+                converter.getScale(), converter.getZeroPoint(), 42L, CLASSES, PATHS, LABELS, (index, out) -> out.put(expectedTensor(converter, index)));
+    }
+
+    @Test
+    public void writtenPack_readsBackEveryTensor() throws IOException {
+        for (TensorConverter.Format format : TensorConverter.Format.values()) {
+            TensorConverter converter = new TensorConverter(format, 10, 10, 0f, 0);
+            File file = tempPack();
+            writePack(file, converter);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            DatasetPack pack = DatasetPack.open(file);
+            assertTrue(pack.matches(converter));
+            assertFalse(pack.matches(new TensorConverter(format, 12, 12, 0f, 0)));
+            assertEquals(42L, pack.getSourceStamp());
+            assertEquals(CLASSES, pack.getClassNames());
+            assertEquals(PATHS.size(), pack.getCount());
+
+            for (int i = 0; i < PATHS.size(); i++) {
+                assertEquals(i, pack.indexOf(PATHS.get(i)));
+                assertEquals(PATHS.get(i), pack.getPath(i));
+                assertEquals(LABELS[i], pack.getLabel(i));
+
+                ByteBuffer tensor = pack.getTensor(i);
+                assertTrue(tensor.isReadOnly());
+                assertEquals(ByteOrder.nativeOrder(), tensor.order());
+                assertEquals(converter.getTensorBytes(), tensor.capacity());
+                assertEquals(format + " image " + i, expectedTensor(converter, i), tensor);
+            }
+            assertEquals(-1, pack.indexOf("dataset/glass/glass1.jpg"));
+        }
+    }
+
+    @Test
+    public void quantizedPack_matchesOnlyItsScaleAndZeroPoint() throws IOException {
+        TensorConverter converter = new TensorConverter(TensorConverter.Format.INT8, 10, 10, 1f / 255, -128);
+        File file = tempPack();
+        writePack(file, converter);
+
+        DatasetPack pack = DatasetPack.open(file);
+        assertEquals(1f / 255, pack.getScale(), 0f);
+        assertEquals(-128, pack.getZeroPoint());
+        assertTrue(pack.matches(new TensorConverter(TensorConverter.Format.INT8, 10, 10, 1f / 255, -128)));
+        assertFalse(pack.matches(new TensorConverter(TensorConverter.Format.INT8, 10, 10, 1f / 128, -128)));
+        assertFalse(pack.matches(new TensorConverter(TensorConverter.Format.INT8, 10, 10, 1f / 255, 0)));
+
+        TensorConverter floats = new TensorConverter(TensorConverter.Format.FLOAT32, 10, 10, 0f, 0);
+        writePack(file, floats);
+        assertTrue("float inputs are not quantized",
+                DatasetPack.open(file).matches(new TensorConverter(TensorConverter.Format.FLOAT32, 10, 10, 1f / 255, 5)));
+    }
+
+    @Test
+    public void tensorsAreSixtyFourByteAligned() throws IOException {
+        TensorConverter converter = new TensorConverter(TensorConverter.Format.INT8, 10, 10, 0f, 0);
+        File file = tempPack();
+        writePack(file, converter);
+
+        // 300-byte tensors, so the stride has to pad them to 320.
+        long expectedLength = 4096 + 320L * PATHS.size();
+        assertEquals(expectedLength, file.length());
+    }
+
+    @Test
+    public void truncatedOrForeignFile_isRejected() throws IOException {
+        TensorConverter converter = new TensorConverter(TensorConverter.Format.UINT8, 10, 10, 0f, 0);
+        File file = tempPack();
+        writePack(file, converter);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 1);
+        }
+        assertThrows(IOException.class, () -> DatasetPack.open(file));
+
+        Files.write(file.toPath(), "not a pack at all".getBytes());
+        assertThrows(IOException.class, () -> DatasetPack.open(file));
+        Files.write(file.toPath(), new byte[0]);
+        assertThrows(IOException.class, () -> DatasetPack.open(file));
+    }
+
+    @Test
+    public void failedWrite_keepsThePreviousPack() throws IOException {
+        TensorConverter converter = new TensorConverter(TensorConverter.Format.INT8, 10, 10, 0f, 0);
+        File file = tempPack();
+        writePack(file, converter);
+        long length = file.length();
+
+        assertThrows(IOException.class, () -> DatasetPack.write(file, 10, 10, TensorConverter.Format.INT8, 0f, 0, 43L, CLASSES, PATHS, LABELS, (index, out) -> {
+                    if (index == 2) throw new IOException("Cannot decode");
+                    out.put(expectedTensor(converter, index));
+                }));
+
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        assertEquals(length, file.length());
+        assertEquals(42L, DatasetPack.open(file).getSourceStamp());
+    }
+}
@@ -0,0 +1,131 @@
+package com.eintswavex.wastesorter;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs ESP32CameraControl against a local stand-in for the CameraWebServer /control endpoint
+ * that records every query it receives.
+ */
+public class ESP32CameraControlTest {
+    private HttpServer server;
+    private String host;
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private volatile int responseCode = 200;
+
+    private ESP32CameraControl control;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/control", exchange -> {
+            received.add(exchange.getRequestURI().getQuery());
+            exchange.sendResponseHeaders(responseCode, -1);
+            exchange.close();
+        });
+        server.start();
+        host = "127.0.0.1:" + server.getAddress().getPort();
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectTimeout(2, TimeUnit.SECONDS)
+                .readTimeout(2, TimeUnit.SECONDS)
+                .build();
+        control = new ESP32CameraControl(client);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void smallestCovering_picksSmallestFrameThatFitsTheModel() {
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_96X96, ESP32CameraControl.smallestCovering(96, 96));
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_QCIF, ESP32CameraControl.smallestCovering(128, 128));
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_HQVGA, ESP32CameraControl.smallestCovering(160, 160));
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_240X240, ESP32CameraControl.smallestCovering(224, 224));
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_240X240, ESP32CameraControl.smallestCovering(240, 240));
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_HVGA, ESP32CameraControl.smallestCovering(300, 300));
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_UXGA, ESP32CameraControl.smallestCovering(2000, 2000));
+    }
+
+    @Test
+    public void applyForModel_sendsFrameSizeThenQuality() throws IOException {
+        ESP32CameraControl.FrameSize applied = control.applyForModel(host, 160, 160);
+
+        assertEquals(ESP32CameraControl.FrameSize.FRAMESIZE_HQVGA, applied);
+        assertEquals(Arrays.asList("var=framesize&val=3", "var=quality&val=10"), received);
+    }
+
+    @Test
+    public void applyForModel_sameModelTwice_sendsNothingTheSecondTime() throws IOException {
+        control.applyForModel(host, 224, 224);
+        assertNull(control.applyForModel(host, 224, 224));
+        assertEquals(2, received.size());
+
+        // A different model needs new settings.
+        control.applyForModel(host, 96, 96);
+        assertEquals(Arrays.asList("var=framesize&val=4", "var=quality&val=10",
+                "var=framesize&val=0", "var=quality&val=10"), received);
+    }
+
+    @Test
+    public void overrides_replaceTheModelDerivedSettings() throws IOException {
+        control.setFrameSizeOverride(ESP32CameraControl.FrameSize.FRAMESIZE_VGA);
+        control.setQualityOverride(20);
+        control.applyForModel(host, 96, 96);
+
+        assertEquals(Arrays.asList("var=framesize&val=8", "var=quality&val=20"), received);
+
+        // Clearing the override goes back to the model size and resends.
+        control.setFrameSizeOverride(null);
+        control.setQualityOverride(0);
+        control.applyForModel(host, 96, 96);
+        assertEquals("var=framesize&val=0", received.get(2));
+        assertEquals("var=quality&val=10", received.get(3));
+    }
+
+    @Test
+    public void qualityOverride_isClampedToTheCameraRange() {
+        control.setQualityOverride(1);
+        assertEquals(ESP32CameraControl.MIN_QUALITY, control.getQualityOverride());
+        control.setQualityOverride(100);
+        assertEquals(ESP32CameraControl.MAX_QUALITY, control.getQualityOverride());
+    }
+
+    @Test
+    public void applyForModel_httpError_throwsAndRetriesNextTime() {
+        responseCode = 500;
+        try {
+            control.applyForModel(host, 96, 96);
+            fail("Expected an IOException for HTTP 500");
+        } catch (IOException expected) {
+            // The camera rejected the command
+        }
+
+        responseCode = 200;
+        received.clear();
+        try {
+            assertNotNull(control.applyForModel(host, 96, 96));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        assertEquals(2, received.size());
+    }
+}
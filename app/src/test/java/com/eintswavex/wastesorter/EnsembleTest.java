@@ -0,0 +1,126 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EnsembleTest {
+
+    // A member that answers with the probabilities the input holds at memberIndex.
+    private static Ensemble.Member<float[][]> member(int memberIndex) {
+        return (outputs, result) -> {
+            float[] probabilities = outputs[memberIndex];
+            if (probabilities == null) return false;
+            result.probabilities = probabilities.clone();
+            result.labelIndex = 0;
+            for (int c = 1; c < probabilities.length; c++) {
+                if (probabilities[c] > probabilities[result.labelIndex]) result.labelIndex = c;
+            }
+            result.confidence = probabilities[result.labelIndex];
+            return true;
+        };
+    }
+
+    @Test
+    public void weightedAverage_combinesProbabilitiesByWeight() {
+        Ensemble<float[][]> ensemble = new Ensemble<float[][]>(Ensemble.Mode.WEIGHTED_AVERAGE)
+                .add("96", 1f, member(0))
+                .add("240", 3f, member(1));
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertTrue(ensemble.classify(new float[][]{{0.8f, 0.2f, 0f}, {0.2f, 0.6f, 0.2f}}, result));
+        assertEquals(1, result.labelIndex);
+        assertEquals(0.5f, result.probabilities[1], 1e-6f);
+        assertEquals(0.35f, result.probabilities[0], 1e-6f);
+        assertEquals(0.5f, result.confidence, 1e-6f);
+        assertEquals(0f, ensemble.getAgreementRate(), 0f);
+        ensemble.close();
+    }
+
+    @Test
+    public void majorityVote_followsMostMembersAndBreaksTiesByProbability() {
+        Ensemble<float[][]> ensemble = new Ensemble<float[][]>(Ensemble.Mode.MAJORITY_VOTE)
+                .add("96", 1f, member(0))
+                .add("160", 1f, member(1))
+                .add("240", 10f, member(2));
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertTrue(ensemble.classify(new float[][]{{0.6f, 0.4f, 0f}, {0.6f, 0.4f, 0f}, {0f, 1f, 0f}}, result));
+        assertEquals("weights do not count in a vote", 0, result.labelIndex);
+
+        assertTrue(ensemble.classify(new float[][]{{0.6f, 0.4f, 0f}, {0f, 0.1f, 0.9f}, null}, result));
+        assertEquals(2, result.labelIndex);
+        assertEquals(0.45f, result.confidence, 1e-6f);
+        ensemble.close();
+    }
+
+    @Test
+    public void failingMembers_areLeftOut() {
+        Ensemble<float[][]> ensemble = new Ensemble<float[][]>(Ensemble.Mode.WEIGHTED_AVERAGE)
+                .add("96", 1f, member(0))
+                .add("160", 1f, (outputs, result) -> {
+                    throw new IllegalStateException("Interpreter closed");
+                })
+                .add("240", 1f, member(1));
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertTrue(ensemble.classify(new float[][]{{0.1f, 0.9f, 0f}, {0.3f, 0.7f, 0f}}, result));
+        assertEquals(1, result.labelIndex);
+        assertEquals(0.8f, result.confidence, 1e-6f);
+        assertEquals(1f, ensemble.getAgreementRate(), 0f);
+
+        assertFalse(ensemble.classify(new float[][]{null, null}, result));
+        assertTrue(ensemble.getStatsSummary(), ensemble.getStatsSummary().contains("1 failed"));
+        ensemble.close();
+    }
+
+    @Test(timeout = 5000)
+    public void members_runAtTheSameTime() {
+        // Each member waits for the other, which only returns when both run at once.
+        CountDownLatch started = new CountDownLatch(2);
+        Ensemble.Member<float[][]> waiting = (outputs, result) -> {
+            started.countDown();
+            try {
+                if (!started.await(2, TimeUnit.SECONDS)) return false;
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return member(0).classify(outputs, result);
+        };
+        Ensemble<float[][]> ensemble = new Ensemble<float[][]>(Ensemble.Mode.WEIGHTED_AVERAGE)
+                .add("96", 1f, waiting)
+                .add("240", 1f, waiting);
+        InferenceEngine.Result result = new InferenceEngine.Result();
+
+        assertTrue(ensemble.classify(new float[][]{{0.2f, 0.8f, 0f}}, result));
+        assertEquals(1f, ensemble.getAgreementRate(), 0f);
+        ensemble.close();
+    }
+
+    @Test
+    public void statsSummary_reportsEveryMember() {
+        Ensemble<float[][]> ensemble = new Ensemble<float[][]>(Ensemble.Mode.WEIGHTED_AVERAGE)
+                .add("96", 1f, member(0))
+                .add("240", 1f, member(1));
+        InferenceEngine.Result result = new InferenceEngine.Result();
+        ensemble.classify(new float[][]{{0.9f, 0.1f, 0f}, {0.8f, 0.2f, 0f}}, result);
+        ensemble.classify(new float[][]{{0.9f, 0.1f, 0f}, {0.8f, 0.2f, 0f}}, result);
+        ensemble.classify(new float[][]{{0.9f, 0.1f, 0f}, {0.8f, 0.2f, 0f}}, result);
+        ensemble.classify(new float[][]{{0.6f, 0.4f, 0f}, {0f, 1f, 0f}}, result);
+
+        String summary = ensemble.getStatsSummary();
+        assertTrue(summary, summary.startsWith("4 frames, weighted average"));
+        assertTrue(summary, summary.contains("members agree on 75.0%"));
+        assertTrue(summary, summary.contains("96: weight 1.00"));
+        assertTrue(summary, summary.contains("agrees with the ensemble on 75.0%"));
+        assertTrue(summary, summary.contains("agrees with the ensemble on 100.0%"));
+        assertTrue(ensemble.getMetricsLabel(), ensemble.getMetricsLabel().endsWith("agree 75%"));
+
+        ensemble.resetStats();
+        assertEquals(0f, ensemble.getMeanFrameMs(), 0f);
+        ensemble.close();
+    }
+}
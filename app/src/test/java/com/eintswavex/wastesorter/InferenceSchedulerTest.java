@@ -0,0 +1,81 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InferenceSchedulerTest {
+
+    @Test
+    public void poll_servesCamerasRoundRobin() {
+        InferenceScheduler<String> scheduler = new InferenceScheduler<>();
+        assertNull(scheduler.poll());
+        assertFalse(scheduler.hasPending());
+
+        scheduler.submit("cam1", "1a");
+        scheduler.submit("cam2", "2a");
+        scheduler.submit("cam3", "3a");
+        assertTrue(scheduler.hasPending());
+        assertEquals("1a", scheduler.poll());
+
+        // cam1 submits again at once, but cam2 and cam3 were waiting longer.
+        scheduler.submit("cam1", "1b");
+        assertEquals("2a", scheduler.poll());
+        assertEquals("3a", scheduler.poll());
+        assertEquals("1b", scheduler.poll());
+        assertNull(scheduler.poll());
+        assertFalse(scheduler.hasPending());
+    }
+
+    @Test
+    public void fastCamera_cannotStarveTheOthers() {
+        InferenceScheduler<String> scheduler = new InferenceScheduler<>();
+        for (int i = 0; i < 100; i++) {
+            scheduler.submit("fast", "f" + i);
+            if (i % 10 == 0) scheduler.submit("slow", "s" + i);
+            if (i % 5 == 0) scheduler.poll();
+        }
+        while (scheduler.poll() != null) { }
+
+        assertEquals("every slow job is served, none replaced", 10, scheduler.getServedCount("slow"));
+        assertTrue(scheduler.getServedCount("fast") >= 10);
+        assertEquals(0, scheduler.getServedCount("unknown"));
+    }
+
+    @Test
+    public void submit_replacesTheWaitingJobOfTheSameCamera() {
+        InferenceScheduler<String> scheduler = new InferenceScheduler<>();
+        assertNull(scheduler.submit("cam1", "old"));
+        assertNull(scheduler.submit("cam2", "other"));
+        assertEquals("old", scheduler.submit("cam1", "new"));
+
+        assertEquals("new", scheduler.poll());
+        assertEquals("other", scheduler.poll());
+        assertNull("the slot is empty again", scheduler.submit("cam1", "next"));
+        assertEquals(1, scheduler.getServedCount("cam1"));
+        assertTrue(scheduler.getStatsSummary().startsWith("cam1: submitted 3, served 1, replaced 1"));
+    }
+
+    @Test
+    public void clear_dropsEveryPendingJobAndForgetsTheCameras() {
+        InferenceScheduler<String> scheduler = new InferenceScheduler<>();
+        scheduler.submit("cam1", "1a");
+        scheduler.submit("cam2", "2a");
+        scheduler.submit("cam3", "3a");
+        scheduler.poll();
+
+        List<String> dropped = new ArrayList<>();
+        scheduler.clear(dropped::add);
+        assertEquals(List.of("2a", "3a"), dropped);
+        assertNull(scheduler.poll());
+        assertEquals(0, scheduler.getServedCount("cam1"));
+        assertEquals("", scheduler.getStatsSummary());
+
+        scheduler.submit("cam2", "2b");
+        scheduler.clear(null);
+        assertFalse(scheduler.hasPending());
+    }
+}
@@ -0,0 +1,154 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class InterpreterCacheTest {
+
+    private static class FakeEngine implements Closeable {
+        final String modelName;
+        final long bytes;
+        int warmUps;
+        boolean closed;
+
+        FakeEngine(String modelName, long bytes) {
+            this.modelName = modelName;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // Every model takes 10 bytes, except "big" which takes 100.
+    private static class FakeLoader implements InterpreterCache.Loader<FakeEngine> {
+        final List<String> loaded = new ArrayList<>();
+
+        @Override
+        public FakeEngine load(String modelName, InterpreterConfig config) throws IOException {
+            if (modelName.equals("broken")) throw new IOException("Cannot create interpreter");
+            loaded.add(modelName);
+            return new FakeEngine(modelName, modelName.equals("big") ? 100 : 10);
+        }
+
+        @Override
+        public long sizeOf(FakeEngine engine) {
+            return engine.bytes;
+        }
+
+        @Override
+        public void warmUp(FakeEngine engine) {
+            engine.warmUps++;
+        }
+    }
+
+    private static final InterpreterConfig CONFIG = InterpreterConfig.defaults();
+
+    @Test
+    public void take_returnsTheWarmEngineThatWasPutBack() throws IOException {
+        FakeLoader loader = new FakeLoader();
+        InterpreterCache<FakeEngine> cache = new InterpreterCache<>(50, loader);
+
+        FakeEngine engine = cache.take("96", CONFIG);
+        assertEquals(1, engine.warmUps);
+        assertTrue(cache.put("96", CONFIG, engine));
+        assertSame(engine, cache.take("96", CONFIG));
+        assertEquals("loaded once", List.of("96"), loader.loaded);
+        assertEquals(1, engine.warmUps);
+        assertEquals(0, cache.size());
+        assertTrue(cache.getStatsSummary(), cache.getStatsSummary().contains("1 hit/1 miss"));
+        cache.close();
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsed() throws IOException {
+        InterpreterCache<FakeEngine> cache = new InterpreterCache<>(25, new FakeLoader());
+        FakeEngine first = cache.take("96", CONFIG);
+        FakeEngine second = cache.take("128", CONFIG);
+        FakeEngine third = cache.take("160", CONFIG);
+        cache.put("96", CONFIG, first);
+        cache.put("128", CONFIG, second);
+        cache.contains("96", CONFIG);  // A lookup counts as a use
+        cache.put("160", CONFIG, third);
+
+        assertTrue(second.closed);
+        assertFalse(first.closed);
+        assertFalse(third.closed);
+        assertEquals(20, cache.getResidentBytes());
+        assertTrue(cache.contains("96", CONFIG));
+        assertFalse(cache.contains("128", CONFIG));
+        cache.close();
+        assertTrue(first.closed);
+        assertTrue(third.closed);
+    }
+
+    @Test
+    public void oversizedEngineOrOtherConfig_isNotKept() throws IOException {
+        FakeLoader loader = new FakeLoader();
+        InterpreterCache<FakeEngine> cache = new InterpreterCache<>(50, loader);
+        FakeEngine big = cache.take("big", CONFIG);
+        assertFalse(cache.put("big", CONFIG, big));
+        assertTrue(big.closed);
+
+        FakeEngine engine = cache.take("96", CONFIG);
+        cache.put("96", CONFIG, engine);
+        InterpreterConfig fourThreads = CONFIG.withNumThreads(4);
+        assertFalse(cache.contains("96", fourThreads));
+        FakeEngine reloaded = cache.take("96", fourThreads);
+        assertNotSame(engine, reloaded);
+        assertTrue("the stale interpreter is closed", engine.closed);
+        assertEquals(0, cache.getResidentBytes());
+
+        assertThrows(IOException.class, () -> cache.take("broken", CONFIG));
+        cache.close();
+    }
+
+    @Test(timeout = 5000)
+    public void prefetch_fillsOnlyTheFreeBudget() throws InterruptedException {
+        FakeLoader loader = new FakeLoader();
+        InterpreterCache<FakeEngine> cache = new InterpreterCache<>(25, loader);
+        Map<String, InterpreterConfig> models = new LinkedHashMap<>();
+        models.put("96", CONFIG);
+        models.put("broken", CONFIG);
+        models.put("128", CONFIG);
+        models.put("160", CONFIG);
+        cache.prefetchAsync(models);
+
+        // Queued behind the prefetches, so it finds 96 warm.
+        CountDownLatch ready = new CountDownLatch(1);
+        AtomicReference<Boolean> hit = new AtomicReference<>();
+        cache.takeAsync("96", CONFIG, new InterpreterCache.Callback<FakeEngine>() {
+            @Override
+            public void onReady(FakeEngine engine, boolean wasHit, long loadNanos) {
+                hit.set(wasHit);
+                ready.countDown();
+            }
+
+            @Override
+            public void onError(IOException e) {
+                ready.countDown();
+            }
+        });
+        assertTrue(ready.await(2, TimeUnit.SECONDS));
+
+        assertEquals(Boolean.TRUE, hit.get());
+        assertEquals(List.of("96", "128", "160"), loader.loaded);
+        assertTrue(cache.contains("128", CONFIG));
+        assertFalse("no room left for 160", cache.contains("160", CONFIG));
+        assertEquals(10, cache.getResidentBytes());
+        cache.close();
+    }
+}
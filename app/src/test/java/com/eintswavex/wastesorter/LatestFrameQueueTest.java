@@ -0,0 +1,157 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LatestFrameQueueTest {
+
+    @Test
+    public void offer_intoFullQueueDisplacesTheOldest() {
+        LatestFrameQueue<String> queue = new LatestFrameQueue<>(2);
+        assertNull(queue.offer("a"));
+        assertNull(queue.offer("b"));
+        assertEquals("a", queue.offer("c"));
+        assertEquals("b", queue.offer("d"));
+
+        assertEquals("c", queue.poll());
+        assertEquals("d", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(4, queue.getOfferedCount());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void setCapacity_keepsTheNewest() {
+        LatestFrameQueue<String> queue = new LatestFrameQueue<>(3);
+        queue.offer("a");
+        queue.offer("b");
+        queue.offer("c");
+
+        queue.setCapacity(1);
+        assertEquals(1, queue.getCapacity());
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals("c", queue.offer("d"));
+        assertEquals("d", queue.poll());
+        assertThrows(IllegalArgumentException.class, () -> queue.setCapacity(0));
+    }
+
+    @Test
+    public void clear_handsEveryPendingItemToTheCallback() {
+        LatestFrameQueue<String> queue = new LatestFrameQueue<>(3);
+        queue.offer("a");
+        queue.offer("b");
+        queue.offer("c");
+        queue.poll();
+
+        List<String> dropped = new ArrayList<>();
+        queue.clear(dropped::add);
+        assertEquals(List.of("b", "c"), dropped);
+        assertTrue(queue.isEmpty());
+
+        queue.offer("d");
+        queue.clear(null);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void take_waitsForTheNextOffer() throws InterruptedException {
+        LatestFrameQueue<String> queue = new LatestFrameQueue<>(1);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.offer("a");
+        });
+        producer.start();
+        assertEquals("a", queue.take());
+        producer.join();
+    }
+
+    @Test
+    public void sequenceGate_neverGoesBack() {
+        SequenceGate gate = new SequenceGate();
+        assertTrue(gate.admit(0));
+        assertTrue(gate.admit(2));
+        assertTrue(gate.isStale(1));
+        assertFalse(gate.admit(1));
+        assertFalse("delivered already", gate.admit(2));
+        assertFalse(gate.isStale(3));
+        assertTrue(gate.admit(3));
+        assertEquals(3, gate.getStaleCount());
+
+        gate.reset();
+        assertTrue("a restarted stream counts from 0 again", gate.admit(0));
+        assertEquals(0, gate.getStaleCount());
+    }
+
+    // The ESP32 decode path: one parser offers frames, several decoders finish them out of order,
+    // one delivery thread admits them.
+    @Test(timeout = 10000)
+    public void parallelDecoders_deliverInSequence() throws InterruptedException {
+        int frames = 500;
+        int decoders = 3;
+        LatestFrameQueue<Long> queue = new LatestFrameQueue<>(2);
+        SequenceGate gate = new SequenceGate();
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(decoders);
+        List<Long> delivered = new ArrayList<>();  // Delivery thread only
+        AtomicInteger displaced = new AtomicInteger();
+        AtomicBoolean parsed = new AtomicBoolean(false);
+
+        for (int i = 0; i < decoders; i++) {
+            long seed = i;
+            workers.execute(() -> {
+                Random random = new Random(seed);
+                try {
+                    while (true) {
+                        boolean finished = parsed.get();
+                        Long frame = queue.poll(5, TimeUnit.MILLISECONDS);
+                        if (frame == null) {
+                            if (finished) return;
+                            continue;
+                        }
+                        if (gate.isStale(frame)) continue;
+                        Thread.sleep(random.nextInt(3));  // Decoding
+                        delivery.execute(() -> {
+                            if (gate.admit(frame)) delivered.add(frame);
+                        });
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        Random random = new Random(42);
+        for (long sequence = 0; sequence < frames; sequence++) {
+            if (queue.offer(sequence) != null) displaced.incrementAndGet();
+            if (random.nextInt(4) == 0) Thread.sleep(1);
+        }
+        parsed.set(true);
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+        delivery.shutdown();
+        assertTrue(delivery.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i < delivered.size(); i++) {
+            assertTrue("frame " + delivered.get(i) + " after " + delivered.get(i - 1), delivered.get(i) > delivered.get(i - 1));
+        }
+        assertEquals("the newest frame is never dropped", frames - 1, (long) delivered.get(delivered.size() - 1));
+        assertEquals(displaced.get(), queue.getDroppedCount());
+        assertEquals(frames, delivered.size() + gate.getStaleCount() + displaced.get());
+    }
+}
@@ -0,0 +1,56 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures MjpegStreamParser throughput on ESP32-like streams, with and without Content-Length.
+ * Only runs with ./gradlew testDebugUnitTest -Pbenchmarks.
+ */
+public class MjpegStreamParserBenchmark {
+    private static final String BOUNDARY = "--" + MjpegStreamParserTest.ESP32_BOUNDARY;
+
+    @Before
+    public void onlyWhenAsked() {
+        assumeTrue("Benchmarks run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+    }
+
+    @Test
+    public void throughput() throws IOException {
+        // Roughly 640x480 ESP32 frames, 30KB each.
+        List<byte[]> frames = MjpegStreamParserTest.randomFrames(50, 25000, 35000, 6);
+        byte[] stream = MjpegStreamParserTest.recordStream(MjpegStreamParserTest.ESP32_BOUNDARY, frames, true);
+        byte[] scanStream = MjpegStreamParserTest.recordStream(MjpegStreamParserTest.ESP32_BOUNDARY, frames, false);
+        int passes = 40;
+
+        double lengthMBps = measure(stream, passes);
+        double scanMBps = measure(scanStream, passes);
+
+        System.out.println(String.format(Locale.US,
+                "[MJPEG] Parser throughput: %.1f MB/s with Content-Length, %.1f MB/s with boundary scan",
+                lengthMBps, scanMBps));
+    }
+
+    private static double measure(byte[] stream, int passes) throws IOException {
+        final long[] frameCount = {0};
+        // Warm-up pass so the JIT has compiled the scanning loops.
+        new MjpegStreamParser(BOUNDARY).parse(new ByteArrayInputStream(stream), (d, l, n) -> {});
+
+        long start = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            new MjpegStreamParser(BOUNDARY).parse(new ByteArrayInputStream(stream),
+                    (data, length, frameNumber) -> frameCount[0]++);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertTrue(frameCount[0] > 0);
+        return (double) stream.length * passes / 1e6 / seconds;
+    }
+}
@@ -0,0 +1,194 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds MjpegStreamParser streams laid out byte-for-byte like the ESP32 CameraWebServer
+ * (boundary, part headers with Content-Length and X-Timestamp, then the JPEG).
+ */
+public class MjpegStreamParserTest {
+    static final String ESP32_BOUNDARY = "123456789000000000000987654321";
+
+    @Test
+    public void boundaryFromContentType_readsParameter() {
+        assertEquals("--" + ESP32_BOUNDARY,
+                MjpegStreamParser.boundaryFromContentType("multipart/x-mixed-replace;boundary=" + ESP32_BOUNDARY));
+        assertEquals("--frame",
+                MjpegStreamParser.boundaryFromContentType("multipart/x-mixed-replace; boundary=\"frame\"; charset=x"));
+        assertEquals("--already",
+                MjpegStreamParser.boundaryFromContentType("multipart/x-mixed-replace;boundary=--already"));
+        assertEquals(MjpegStreamParser.DEFAULT_BOUNDARY, MjpegStreamParser.boundaryFromContentType("image/jpeg"));
+        assertEquals(MjpegStreamParser.DEFAULT_BOUNDARY, MjpegStreamParser.boundaryFromContentType(null));
+    }
+
+    @Test
+    public void parse_withContentLength() throws IOException {
+        List<byte[]> frames = randomFrames(20, 2000, 30000, 1);
+        byte[] stream = recordStream(ESP32_BOUNDARY, frames, true);
+
+        MjpegStreamParser parser = new MjpegStreamParser("--" + ESP32_BOUNDARY);
+        List<byte[]> parsed = parseAll(parser, new ByteArrayInputStream(stream));
+
+        assertFrames(frames, parsed);
+        assertEquals(frames.size(), parser.getFramesWithLength());
+        assertEquals(stream.length, parser.getBytesConsumed());
+    }
+
+    @Test
+    public void parse_withoutContentLength_fallsBackToBoundaryScan() throws IOException {
+        List<byte[]> frames = randomFrames(20, 2000, 30000, 2);
+        byte[] stream = recordStream(ESP32_BOUNDARY, frames, false);
+
+        MjpegStreamParser parser = new MjpegStreamParser("--" + ESP32_BOUNDARY);
+        List<byte[]> parsed = parseAll(parser, new ByteArrayInputStream(stream));
+
+        // The last part has no trailing boundary, so the scan cannot complete it.
+        assertFrames(frames.subList(0, frames.size() - 1), parsed);
+        assertEquals(0, parser.getFramesWithLength());
+    }
+
+    @Test
+    public void parse_boundaryScanHandlesPartialMatchesInsideFrames() throws IOException {
+        String boundary = "--xx--xxy";
+        byte[] trap = "--xx--xx--xx--xxz".getBytes(StandardCharsets.US_ASCII);
+        byte[] frame = jpeg(concat(trap, new byte[500], trap));
+        List<byte[]> frames = Arrays.asList(frame, frame, frame);
+        byte[] stream = concat(recordStream("xx--xxy", frames, false), "\r\n--xx--xxy--\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        List<byte[]> parsed = parseAll(new MjpegStreamParser(boundary), new ByteArrayInputStream(stream));
+
+        assertFrames(frames, parsed);
+    }
+
+    @Test
+    public void parse_oneByteReads() throws IOException {
+        List<byte[]> frames = randomFrames(5, 500, 5000, 3);
+        byte[] withLength = recordStream(ESP32_BOUNDARY, frames, true);
+        byte[] withoutLength = recordStream(ESP32_BOUNDARY, frames, false);
+
+        assertFrames(frames, parseAll(new MjpegStreamParser("--" + ESP32_BOUNDARY), trickle(withLength)));
+        assertFrames(frames.subList(0, frames.size() - 1),
+                parseAll(new MjpegStreamParser("--" + ESP32_BOUNDARY), trickle(withoutLength)));
+    }
+
+    @Test
+    public void parse_stopsAtFinalBoundary() throws IOException {
+        List<byte[]> frames = randomFrames(3, 500, 1000, 4);
+        byte[] stream = concat(recordStream(ESP32_BOUNDARY, frames, true),
+                ("\r\n--" + ESP32_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII),
+                recordStream(ESP32_BOUNDARY, frames, true));
+
+        List<byte[]> parsed = parseAll(new MjpegStreamParser("--" + ESP32_BOUNDARY), new ByteArrayInputStream(stream));
+
+        assertFrames(frames, parsed);
+    }
+
+    @Test
+    public void parse_truncatedStreamDropsPartialFrame() throws IOException {
+        List<byte[]> frames = randomFrames(4, 2000, 3000, 5);
+        byte[] stream = recordStream(ESP32_BOUNDARY, frames, true);
+        byte[] truncated = Arrays.copyOf(stream, stream.length - 1000);
+
+        List<byte[]> parsed = parseAll(new MjpegStreamParser("--" + ESP32_BOUNDARY), new ByteArrayInputStream(truncated));
+
+        assertFrames(frames.subList(0, 3), parsed);
+    }
+
+    @Test
+    public void parse_oversizedScannedFrameIsDroppedWhole() throws IOException {
+        List<byte[]> small = randomFrames(2, 500, 1000, 7);
+        byte[] oversized = jpeg(new byte[MjpegStreamParser.MAX_FRAME_SIZE - 16]);
+        new Random(8).nextBytes(oversized);
+        byte[] stream = concat(recordStream(ESP32_BOUNDARY, Arrays.asList(small.get(0), oversized, small.get(1)), false),
+                ("\r\n--" + ESP32_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        MjpegStreamParser parser = new MjpegStreamParser("--" + ESP32_BOUNDARY);
+        List<byte[]> parsed = parseAll(parser, new ByteArrayInputStream(stream));
+
+        // Its data and trailing CRLF fit, the boundary does not: the frame was only partly copied.
+        assertFrames(small, parsed);
+        assertEquals(1, parser.getFramesDropped());
+    }
+
+    private static List<byte[]> parseAll(MjpegStreamParser parser, InputStream inputStream) throws IOException {
+        List<byte[]> parsed = new ArrayList<>();
+        parser.parse(inputStream, (data, length, frameNumber) -> {
+            assertEquals(parsed.size(), frameNumber);
+            parsed.add(Arrays.copyOf(data, length));
+        });
+        return parsed;
+    }
+
+    private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("frame " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    static byte[] recordStream(String boundary, List<byte[]> frames, boolean withLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int timestamp = 0;
+        for (byte[] frame : frames) {
+            out.write(("\r\n--" + boundary + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            String header = withLength
+                    ? String.format(Locale.US, "Content-Type: image/jpeg\r\nContent-Length: %d\r\nX-Timestamp: %d.%06d\r\n\r\n",
+                            frame.length, timestamp / 1000, (timestamp % 1000) * 1000)
+                    : "Content-Type: image/jpeg\r\n\r\n";
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+            out.write(frame);
+            timestamp += 66;
+        }
+        return out.toByteArray();
+    }
+
+    static List<byte[]> randomFrames(int count, int minSize, int maxSize, long seed) {
+        Random random = new Random(seed);
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] body = new byte[minSize + random.nextInt(maxSize - minSize)];
+            random.nextBytes(body);
+            frames.add(jpeg(body));
+        }
+        return frames;
+    }
+
+    private static byte[] jpeg(byte[] body) {
+        byte[] frame = new byte[body.length + 4];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xD8;
+        System.arraycopy(body, 0, frame, 2, body.length);
+        frame[frame.length - 2] = (byte) 0xFF;
+        frame[frame.length - 1] = (byte) 0xD9;
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+
+    private static InputStream trickle(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ModelSlotTest {
+
+    private final List<String> retired = new ArrayList<>();
+
+    private ModelHandle<String> handle(String name) {
+        return new ModelHandle<>(name, name, h -> retired.add(h.getName()));
+    }
+
+    @Test
+    public void swap_retiresTheOldModelAfterItsLastUser() {
+        ModelSlot<String> slot = new ModelSlot<>();
+        assertNull(slot.acquire());
+        slot.swap(handle("96"));
+
+        ModelHandle<String> inFlight = slot.acquire();
+        assertEquals("96", inFlight.get());
+        inFlight.countFrame();
+
+        assertSame(inFlight, slot.swap(handle("240")));
+        assertTrue("still in use", retired.isEmpty());
+        ModelHandle<String> next = slot.acquire();
+        assertEquals("new users get the new model", "240", next.get());
+        next.release();
+
+        inFlight.countFrame();
+        inFlight.release();
+        assertEquals(List.of("96"), retired);
+        assertEquals(2, inFlight.getFrames());
+        assertFalse("a drained model is not handed out again", inFlight.tryAcquire());
+
+        slot.swap(null);
+        assertEquals(List.of("96", "240"), retired);
+        assertNull(slot.acquire());
+        assertThrows(IllegalStateException.class, inFlight::release);
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentSwaps_retireEveryModelOnceWhileNobodyUsesIt() throws InterruptedException {
+        ModelSlot<AtomicBoolean> slot = new ModelSlot<>();
+        AtomicInteger retirements = new AtomicInteger();
+        AtomicInteger usedAfterRetire = new AtomicInteger();
+        ModelHandle.Retirer<AtomicBoolean> retirer = h -> {
+            if (!h.get().compareAndSet(false, true)) usedAfterRetire.incrementAndGet();  // Retired twice
+            retirements.incrementAndGet();
+        };
+        slot.swap(new ModelHandle<>("0", new AtomicBoolean(), retirer));
+
+        int users = 4;
+        AtomicBoolean swapping = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(users);
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        for (int i = 0; i < users; i++) {
+            executor.execute(() -> {
+                while (swapping.get()) {
+                    ModelHandle<AtomicBoolean> model = slot.acquire();
+                    if (model.get().get()) usedAfterRetire.incrementAndGet();
+                    model.countFrame();
+                    model.release();
+                }
+                done.countDown();
+            });
+        }
+        int swaps = 2000;
+        for (int i = 1; i <= swaps; i++) {
+            slot.swap(new ModelHandle<>(String.valueOf(i), new AtomicBoolean(), retirer));
+        }
+        swapping.set(false);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(swaps, retirements.get());
+        assertEquals(0, usedAfterRetire.get());
+        slot.swap(null);
+        assertEquals(swaps + 1, retirements.get());
+    }
+}
@@ -0,0 +1,78 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResequencerTest {
+
+    @Test
+    public void deliversInOrder_whenCompletedOutOfOrder() {
+        List<String> delivered = new ArrayList<>();
+        Resequencer<String> resequencer = new Resequencer<>((sequence, item) -> delivered.add(sequence + ":" + item));
+        long a = resequencer.next(), b = resequencer.next(), c = resequencer.next();
+
+        resequencer.complete(c, "c");
+        resequencer.complete(b, "b");
+        assertTrue(delivered.isEmpty());
+        assertEquals(3, resequencer.getPendingCount());
+
+        resequencer.complete(a, "a");
+        assertEquals(List.of("0:a", "1:b", "2:c"), delivered);
+        assertEquals(0, resequencer.getPendingCount());
+        assertEquals(2, resequencer.getMaxWaiting());
+    }
+
+    @Test
+    public void inOrderCompletion_isNeverHeldBack() {
+        List<Long> delivered = new ArrayList<>();
+        Resequencer<Long> resequencer = new Resequencer<>((sequence, item) -> delivered.add(item));
+        for (long i = 0; i < 5; i++) {
+            resequencer.complete(resequencer.next(), i);
+            assertEquals(i + 1, delivered.size());
+        }
+        assertEquals(0, resequencer.getMaxWaiting());
+    }
+
+    @Test
+    public void completingTwice_fails() {
+        Resequencer<String> resequencer = new Resequencer<>((sequence, item) -> { });
+        long sequence = resequencer.next();
+        resequencer.complete(sequence, "x");
+        assertThrows(IllegalStateException.class, () -> resequencer.complete(sequence, "x"));
+    }
+
+    @Test
+    public void parallelWorkers_keepSubmissionOrder() throws InterruptedException {
+        int count = 2000;
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        Resequencer<Long> resequencer = new Resequencer<>((sequence, item) -> delivered.add(item));
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        Random random = new Random(7);
+
+        for (int i = 0; i < count; i++) {
+            long sequence = resequencer.next();
+            int workNanos = random.nextInt(200_000);
+            workers.execute(() -> {
+                long end = System.nanoTime() + workNanos;
+                while (System.nanoTime() < end) Thread.onSpinWait();
+                resequencer.complete(sequence, sequence);
+            });
+        }
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(count, delivered.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, delivered.get(i).longValue());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StagedPipelineTest {
+
+    private static class Item {
+        int value;
+    }
+
+    private static List<Item> slots(int count) {
+        List<Item> slots = new ArrayList<>();
+        for (int i = 0; i < count; i++) slots.add(new Item());
+        return slots;
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) Thread.onSpinWait();
+    }
+
+    @Test
+    public void itemsPassEveryStageInOrder() throws InterruptedException {
+        int count = 500;
+        AtomicInteger next = new AtomicInteger();
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean completed = new AtomicBoolean();
+
+        StagedPipeline<Item> pipeline = new StagedPipeline<Item>("Test", slots(3))
+                .source("source", item -> {
+                    if (next.get() == count) return false;
+                    item.value = next.getAndIncrement();
+                    return true;
+                })
+                .stage("double", item -> {
+                    item.value *= 2;
+                    return true;
+                })
+                .stage("sink", item -> {
+                    seen.add(item.value);
+                    return true;
+                })
+                .onTerminated(result -> {
+                    completed.set(result);
+                    done.countDown();
+                });
+        pipeline.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(completed.get());
+        assertEquals(count, seen.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i * 2, seen.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void droppedItemsSkipLaterStagesAndReturnToThePool() throws InterruptedException {
+        int count = 100;
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger sunk = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        StagedPipeline<Item> pipeline = new StagedPipeline<Item>("Test", slots(2))
+                .source("source", item -> {
+                    if (next.get() == count) return false;
+                    item.value = next.getAndIncrement();
+                    return true;
+                })
+                .stage("filter", item -> {
+                    if (item.value % 10 == 0) throw new IllegalStateException("bad item");
+                    return item.value % 2 == 0;
+                })
+                .stage("sink", item -> {
+                    sunk.incrementAndGet();
+                    return true;
+                })
+                .onTerminated(completed -> done.countDown());
+        pipeline.start();
+
+        // With only two slots, a leaked item would stall the source long before the end.
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(40, sunk.get());
+        assertTrue(pipeline.getStatsSummary().contains("10 failed"));
+    }
+
+    @Test
+    public void slowestStage_isTheBottleneck() throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        StagedPipeline<Item> pipeline = new StagedPipeline<Item>("Test", slots(4))
+                .source("decode", item -> {
+                    if (next.getAndIncrement() == 40) return false;
+                    spin(200_000);
+                    return true;
+                })
+                .stage("inference", item -> {
+                    spin(2_000_000);
+                    return true;
+                })
+                .stage("display", item -> {
+                    spin(100_000);
+                    return true;
+                })
+                .onTerminated(completed -> done.countDown());
+        pipeline.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("inference", pipeline.getBottleneck());
+        assertTrue(pipeline.getStatsSummary().endsWith("Bottleneck: inference"));
+    }
+
+    @Test
+    public void stop_endsABlockedPipeline() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean completed = new AtomicBoolean(true);
+
+        StagedPipeline<Item> pipeline = new StagedPipeline<Item>("Test", slots(2))
+                .source("source", item -> true)
+                .stage("stuck", item -> {
+                    Thread.sleep(60_000);
+                    return true;
+                })
+                .onTerminated(result -> {
+                    completed.set(result);
+                    done.countDown();
+                });
+        pipeline.start();
+        Thread.sleep(50);
+        pipeline.stop();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(completed.get());
+    }
+
+    @Test
+    public void awaitTermination_returnsOnceTheListenerHasRun() throws InterruptedException {
+        AtomicBoolean listenerDone = new AtomicBoolean();
+        AtomicBoolean stageExited = new AtomicBoolean();
+
+        StagedPipeline<Item> pipeline = new StagedPipeline<Item>("Test", slots(2))
+                .source("source", item -> true)
+                .stage("busy", item -> {
+                    try {
+                        Thread.sleep(60_000);
+                    } finally {
+                        spin(20_000_000);  // Still inside the invoke after the interrupt
+                        stageExited.set(true);
+                    }
+                    return true;
+                })
+                .onTerminated(result -> {
+                    spin(20_000_000);
+                    listenerDone.set(true);
+                });
+        pipeline.start();
+        Thread.sleep(50);
+        pipeline.stop();
+
+        assertTrue(pipeline.awaitTermination(10_000));
+        assertTrue(stageExited.get());
+        assertTrue(listenerDone.get());
+    }
+
+    @Test
+    public void startWithoutStages_fails() {
+        StagedPipeline<Item> pipeline = new StagedPipeline<Item>("Test", slots(1)).source("source", item -> false);
+        assertThrows(IllegalStateException.class, pipeline::start);
+    }
+}
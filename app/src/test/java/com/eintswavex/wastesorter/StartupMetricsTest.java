@@ -0,0 +1,47 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StartupMetricsTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void interactive_isTheLaterOfFirstDrawAndModelReady() {
+        List<String> phases = new ArrayList<>();
+        StartupMetrics metrics = new StartupMetrics(1000 * MS, true,
+                (phase, millis) -> phases.add(phase.getLabel() + " " + millis));
+
+        metrics.mark(StartupMetrics.Phase.CREATED, 1150 * MS);
+        metrics.mark(StartupMetrics.Phase.FIRST_DRAW, 1400 * MS);
+        assertFalse(metrics.isReached(StartupMetrics.Phase.INTERACTIVE));
+        metrics.mark(StartupMetrics.Phase.MODEL_READY, 1520 * MS);
+
+        assertEquals(520, metrics.getMillis(StartupMetrics.Phase.INTERACTIVE));
+        assertEquals(List.of("created 150", "first draw 400", "model ready 520", "interactive 520"), phases);
+        assertEquals(-1, metrics.getMillis(StartupMetrics.Phase.FIRST_LABEL));
+    }
+
+    @Test
+    public void mark_keepsTheFirstTimeOnly() {
+        List<StartupMetrics.Phase> phases = new ArrayList<>();
+        StartupMetrics metrics = new StartupMetrics(0, false, (phase, millis) -> phases.add(phase));
+        assertTrue(metrics.mark(StartupMetrics.Phase.MODEL_READY, 300 * MS));
+        assertTrue(metrics.mark(StartupMetrics.Phase.FIRST_DRAW, 200 * MS));
+        assertTrue(metrics.mark(StartupMetrics.Phase.FIRST_LABEL, 900 * MS));
+        assertFalse("a model switch later on", metrics.mark(StartupMetrics.Phase.MODEL_READY, 5000 * MS));
+        assertFalse(metrics.mark(StartupMetrics.Phase.FIRST_LABEL, 950 * MS));
+
+        assertEquals(300, metrics.getMillis(StartupMetrics.Phase.MODEL_READY));
+        assertEquals(900, metrics.getMillis(StartupMetrics.Phase.FIRST_LABEL));
+        assertEquals(4, phases.size());
+        assertEquals("Warm start: first draw 200 ms, model ready 300 ms, interactive 300 ms, first label 900 ms",
+                metrics.getSummary());
+        assertThrows(IllegalArgumentException.class, () -> metrics.mark(StartupMetrics.Phase.INTERACTIVE, 0));
+    }
+}
@@ -0,0 +1,160 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records a synthetic ESP32 multipart stream with StreamRecorder and plays it back through
+ * ReplayMjpegSource and MjpegStreamParser, the way ESP32CameraStream does.
+ */
+public class StreamRecordingTest {
+    private static final String BOUNDARY = "123456789000000000000987654321";
+    private static final String CONTENT_TYPE = "multipart/x-mixed-replace;boundary=" + BOUNDARY;
+    private static final long CHUNK_GAP_MS = 20;
+
+    private File directory;
+    private File baseFile;
+    private List<byte[]> frames;
+
+    @Before
+    public void record() throws Exception {
+        directory = Files.createTempDirectory("recording").toFile();
+        baseFile = new File(directory, "cam1_test");
+        frames = randomFrames(8, 3000, 6000);
+
+        // Two network reads per frame, spaced like a slow camera.
+        try (StreamRecorder recorder = new StreamRecorder(baseFile, CONTENT_TYPE)) {
+            for (byte[] frame : frames) {
+                byte[] part = part(frame);
+                int half = part.length / 2;
+                recorder.writeChunk(part, 0, half);
+                Thread.sleep(CHUNK_GAP_MS);
+                recorder.writeChunk(part, half, part.length - half);
+                recorder.markFrame();
+                Thread.sleep(CHUNK_GAP_MS);
+            }
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void replay_atMaxSpeed_reproducesEveryFrame() throws IOException {
+        ReplayMjpegSource source = new ReplayMjpegSource(baseFile, ReplayMjpegSource.SPEED_UNLIMITED);
+        assertEquals(frames.size(), source.getFrameCount());
+        assertFalse(source.isLive());
+
+        long start = System.nanoTime();
+        List<byte[]> replayed = replay(source);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(frames.size(), replayed.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertArrayEquals("Frame " + i, frames.get(i), replayed.get(i));
+        }
+        assertTrue("Unpaced replay took " + elapsedMs + " ms", elapsedMs < source.getDurationNanos() / 1_000_000 / 2);
+    }
+
+    @Test
+    public void replay_keepsOriginalPacingScaledBySpeed() throws IOException {
+        ReplayMjpegSource original = new ReplayMjpegSource(baseFile, 1f);
+        long durationMs = original.getDurationNanos() / 1_000_000;
+
+        long start = System.nanoTime();
+        assertEquals(frames.size(), replay(original).size());
+        long originalMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        assertEquals(frames.size(), replay(new ReplayMjpegSource(baseFile, 4f)).size());
+        long fastMs = (System.nanoTime() - start) / 1_000_000;
+
+        // The last frame mark comes after the last chunk, so a replay ends slightly before the duration.
+        assertTrue("1x replay took " + originalMs + " of " + durationMs + " ms", originalMs >= durationMs - 2 * CHUNK_GAP_MS);
+        assertTrue("4x replay took " + fastMs + " ms, 1x took " + originalMs + " ms", fastMs < originalMs / 2);
+    }
+
+    @Test
+    public void replay_cancelStopsReading() throws IOException {
+        MjpegSource.Session session = new ReplayMjpegSource(baseFile, 1f).newSession();
+        session.connect();
+        session.cancel();
+        try (InputStream in = session.getInputStream()) {
+            in.read(new byte[1024], 0, 1024);
+            fail("Expected a cancelled replay to fail the read");
+        } catch (IOException expected) {
+            // Cancelled like a dropped connection
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void parseSpeed_acceptsMultipliersAndMax() {
+        assertEquals(1f, ReplayMjpegSource.parseSpeed("1x"), 0f);
+        assertEquals(4f, ReplayMjpegSource.parseSpeed("4x"), 0f);
+        assertEquals(0.5f, ReplayMjpegSource.parseSpeed("0.5"), 0f);
+        assertEquals(ReplayMjpegSource.SPEED_UNLIMITED, ReplayMjpegSource.parseSpeed("max"), 0f);
+        assertEquals(1f, ReplayMjpegSource.parseSpeed("fast-ish"), 0f);
+    }
+
+    private static List<byte[]> replay(ReplayMjpegSource source) throws IOException {
+        List<byte[]> replayed = new ArrayList<>();
+        MjpegSource.Session session = source.newSession();
+        try {
+            session.connect();
+            assertEquals(CONTENT_TYPE, session.getContentType());
+            MjpegStreamParser parser = new MjpegStreamParser(MjpegStreamParser.boundaryFromContentType(session.getContentType()));
+            parser.parse(session.getInputStream(), (data, length, frameNumber) -> {
+                byte[] copy = new byte[length];
+                System.arraycopy(data, 0, copy, 0, length);
+                replayed.add(copy);
+            });
+        } finally {
+            session.close();
+        }
+        return replayed;
+    }
+
+    private static byte[] part(byte[] jpeg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("\r\n--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.length
+                + "\r\nX-Timestamp: 0.000000\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(jpeg);
+        return out.toByteArray();
+    }
+
+    private static List<byte[]> randomFrames(int count, int minSize, int maxSize) {
+        Random random = new Random(10);
+        List<byte[]> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] jpeg = new byte[minSize + random.nextInt(maxSize - minSize)];
+            random.nextBytes(jpeg);
+            jpeg[0] = (byte) 0xFF;
+            jpeg[1] = (byte) 0xD8;
+            jpeg[jpeg.length - 2] = (byte) 0xFF;
+            jpeg[jpeg.length - 1] = (byte) 0xD9;
+            result.add(jpeg);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class TensorCacheTest {
+    private static final int TENSOR_BYTES = 96 * 96 * 3;
+
+    private static ByteBuffer tensor(int fill) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TENSOR_BYTES).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < TENSOR_BYTES; i++) buffer.put((byte) (fill + i));
+        buffer.rewind();
+        return buffer;
+    }
+
+    @Test
+    public void get_copiesTheCachedTensor() {
+        TensorCache cache = new TensorCache(10L * TENSOR_BYTES);
+        String key = TensorCache.key("dataset/paper/1.jpg", 96, 96, TensorConverter.Format.INT8);
+        ByteBuffer out = ByteBuffer.allocateDirect(TENSOR_BYTES);
+
+        assertFalse(cache.get(key, out));
+        cache.put(key, tensor(7));
+        assertTrue(cache.get(key, out));
+
+        assertEquals(0, out.position());
+        assertEquals(tensor(7), out);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(TENSOR_BYTES, cache.getResidentBytes());
+    }
+
+    @Test
+    public void keys_separateModelSizesAndTypes() {
+        String path = "dataset/metal/3.jpg";
+        String key = TensorCache.key(path, 96, 96, TensorConverter.Format.INT8);
+        assertFalse(key.equals(TensorCache.key(path, 128, 128, TensorConverter.Format.INT8)));
+        assertFalse(key.equals(TensorCache.key(path, 96, 96, TensorConverter.Format.UINT8)));
+
+        TensorCache cache = new TensorCache(10L * TENSOR_BYTES);
+        cache.put("a", tensor(1));
+        assertFalse("a buffer of another size never matches", cache.get("a", ByteBuffer.allocateDirect(TENSOR_BYTES * 4)));
+    }
+
+    @Test
+    public void budget_evictsLeastRecentlyUsed() {
+        TensorCache cache = new TensorCache(3L * TENSOR_BYTES);
+        ByteBuffer out = ByteBuffer.allocateDirect(TENSOR_BYTES);
+        cache.put("a", tensor(1));
+        cache.put("b", tensor(2));
+        cache.put("c", tensor(3));
+        assertTrue(cache.get("a", out));  // b is now the eldest
+
+        cache.put("d", tensor(4));
+        assertEquals(3, cache.size());
+        assertEquals(3L * TENSOR_BYTES, cache.getResidentBytes());
+        assertFalse(cache.get("b", out));
+        assertTrue(cache.get("a", out));
+        assertTrue(cache.get("c", out));
+        assertTrue(cache.get("d", out));
+        assertTrue(cache.getStatsSummary().contains("1 evicted"));
+    }
+
+    @Test
+    public void replacingAKey_keepsResidentBytesRight() {
+        TensorCache cache = new TensorCache(3L * TENSOR_BYTES);
+        cache.put("a", tensor(1));
+        cache.put("a", tensor(2));
+        assertEquals(1, cache.size());
+        assertEquals(TENSOR_BYTES, cache.getResidentBytes());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getResidentBytes());
+    }
+
+    @Test
+    public void tensorLargerThanBudget_isNotCached() {
+        TensorCache cache = new TensorCache(TENSOR_BYTES - 1);
+        cache.put("a", tensor(1));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times the fused kernels against the per-channel conversion at the shipped model sizes. Only
+ * runs when asked for, with ./gradlew testDebugUnitTest -Pbenchmarks, and prints its table.
+ */
+public class TensorConverterBenchmark {
+    private static final int[] MODEL_SIZES = {96, 128, 160, 240};
+    // ESP32 frames are decoded to cover the model input at 4:3, e.g. 320x240 for a 240 model.
+    private static final float COVER_ASPECT = 4f / 3f;
+
+    @Before
+    public void onlyWhenAsked() {
+        assumeTrue("Benchmarks run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+    }
+
+    @Test
+    public void modelSizes() {
+        StringBuilder report = new StringBuilder(String.format(Locale.US, "%n%-6s %-8s %12s %12s %12s%n",
+                "size", "dtype", "per-channel", "fused", "fused+resize"));
+
+        for (int size : MODEL_SIZES) {
+            int coverWidth = Math.round(size * COVER_ASPECT);
+            int[] exact = TensorConverterTest.randomPixels(size * size, size);
+            int[] cover = TensorConverterTest.randomPixels(coverWidth * size, size + 1);
+
+            for (TensorConverter.Format format : TensorConverter.Format.values()) {
+                TensorConverter converter = new TensorConverter(format, size, size, 1.0f, -128);
+                ByteBuffer out = TensorConverterTest.direct(converter.getTensorBytes());
+                int iterations = Math.max(20, 4_000_000 / (size * size));
+
+                double baselineUs = timeUs(iterations, () -> TensorConverterTest.perChannel(format, exact, size * size, out));
+                double fusedUs = timeUs(iterations, () -> converter.convert(exact, size, size, out));
+                double resizeUs = timeUs(iterations, () -> converter.convert(cover, coverWidth, size, out));
+
+                report.append(String.format(Locale.US, "%-6d %-8s %9.1f us %9.1f us %9.1f us%n",
+                        size, format, baselineUs, fusedUs, resizeUs));
+            }
+        }
+        System.out.println(report);
+    }
+
+    static double timeUs(int iterations, Runnable kernel) {
+        for (int i = 0; i < iterations / 2; i++) kernel.run();  // Warm-up for the JIT
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) kernel.run();
+        return (System.nanoTime() - start) / 1e3 / iterations;
+    }
+}
@@ -0,0 +1,204 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the fused kernels against the per-channel conversion MainActivity used to do.
+ * TensorConverterBenchmark times both.
+ */
+public class TensorConverterTest {
+    @Test
+    public void exactSize_matchesPerChannelConversion() {
+        int size = 32;
+        int[] pixels = randomPixels(size * size, 1);
+
+        for (TensorConverter.Format format : TensorConverter.Format.values()) {
+            ByteBuffer expected = direct(size * size * 3 * (format == TensorConverter.Format.FLOAT32 ? 4 : 1));
+            perChannel(format, pixels, size * size, expected);
+
+            TensorConverter converter = new TensorConverter(format, size, size, 0f, 0);
+            ByteBuffer actual = direct(converter.getTensorBytes());
+            converter.convert(pixels, size, size, actual);
+
+            assertEquals(0, actual.position());
+            assertEquals(format + " tensor differs", expected, actual);
+        }
+    }
+
+    @Test
+    public void batchOffset_fillsOnlyItsSlot() {
+        int size = 16;
+        for (TensorConverter.Format format : TensorConverter.Format.values()) {
+            TensorConverter converter = new TensorConverter(format, size, size, 0f, 0);
+            int bytes = converter.getTensorBytes();
+            ByteBuffer single = direct(bytes);
+            ByteBuffer batch = direct(bytes * 3);
+
+            for (int slot = 0; slot < 3; slot++) {
+                int[] pixels = randomPixels(size * size, 10 + slot);
+                converter.convert(pixels, size, size, batch, slot * bytes);
+            }
+            assertEquals(0, batch.position());
+
+            for (int slot = 0; slot < 3; slot++) {
+                converter.convert(randomPixels(size * size, 10 + slot), size, size, single);
+                ByteBuffer view = batch.duplicate();
+                view.position(slot * bytes).limit((slot + 1) * bytes);
+                assertEquals(format + " slot " + slot, single, view.slice());
+            }
+        }
+    }
+
+    @Test
+    public void sampleSize_neverDecodesBelowTheInput() {
+        // The dataset's 512x384 JPEGs
+        assertEquals(4, new TensorConverter(TensorConverter.Format.INT8, 96, 96, 0f, 0).sampleSizeFor(512, 384));
+        assertEquals(2, new TensorConverter(TensorConverter.Format.INT8, 128, 128, 0f, 0).sampleSizeFor(512, 384));
+        assertEquals(2, new TensorConverter(TensorConverter.Format.INT8, 160, 160, 0f, 0).sampleSizeFor(512, 384));
+        assertEquals(1, new TensorConverter(TensorConverter.Format.INT8, 240, 240, 0f, 0).sampleSizeFor(512, 384));
+        assertEquals(1, new TensorConverter(TensorConverter.Format.INT8, 96, 96, 0f, 0).sampleSizeFor(64, 64));
+    }
+
+    @Test
+    public void toPixels_restoresConvertedImage() {
+        int size = 16;
+        int[] pixels = randomPixels(size * size, 3);
+        // Quantizations that keep every pixel value: 0-1 and raw 0-255 pixels, and no params at all.
+        float[] scales = {0f, 1f / 255, 1f};
+
+        for (TensorConverter.Format format : TensorConverter.Format.values()) {
+            for (float scale : scales) {
+                int zeroPoint = format == TensorConverter.Format.INT8 ? -128 : 0;
+                TensorConverter converter = new TensorConverter(format, size, size, scale, zeroPoint);
+                ByteBuffer tensor = direct(converter.getTensorBytes());
+                converter.convert(pixels, size, size, tensor);
+
+                int[] restored = new int[size * size];
+                converter.toPixels(tensor, restored);
+                for (int i = 0; i < pixels.length; i++) {
+                    assertEquals(format + " scale " + scale + " pixel " + i, pixels[i] | 0xFF000000, restored[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void int8Lut_usesModelQuantization() {
+        // The shipped models: INT8 input, scale 1.0, zero point -128, so raw pixels shifted by 128.
+        byte[] raw = TensorConverter.buildQuantizedLut(TensorConverter.Format.INT8, 1.0f, -128);
+        assertEquals(-128, raw[0]);
+        assertEquals(0, raw[128]);
+        assertEquals(127, raw[255]);
+
+        // A model quantized on 0-1 inputs with two steps per pixel level has to saturate.
+        byte[] normalized = TensorConverter.buildQuantizedLut(TensorConverter.Format.INT8, 1 / 510f, -128);
+        assertEquals(-128, normalized[0]);
+        assertEquals(-126, normalized[1]);
+        assertEquals(127, normalized[255]);
+
+        // A model expecting -1..1 inputs.
+        byte[] symmetric = TensorConverter.buildQuantizedLut(TensorConverter.Format.INT8, 1 / 128f, 0);
+        assertEquals(0, symmetric[0]);
+        assertEquals(64, symmetric[128]);
+        assertEquals(127, symmetric[255]);
+    }
+
+    @Test
+    public void uint8Lut_clampsToRange() {
+        byte[] lut = TensorConverter.buildQuantizedLut(TensorConverter.Format.UINT8, 1 / 255f, 10);
+        assertEquals(10, lut[0] & 0xFF);
+        assertEquals(255, lut[250] & 0xFF);
+        assertEquals(255, lut[255] & 0xFF);
+    }
+
+    @Test
+    public void resample_keepsUniformImageAndEdges() {
+        int srcWidth = 320, srcHeight = 240, size = 96;
+        int[] pixels = new int[srcWidth * srcHeight];
+        for (int y = 0; y < srcHeight; y++) {
+            for (int x = 0; x < srcWidth; x++) {
+                // Left half red, right half blue
+                pixels[y * srcWidth + x] = x < srcWidth / 2 ? 0xFFC81E0A : 0xFF0A1EC8;
+            }
+        }
+
+        TensorConverter converter = new TensorConverter(TensorConverter.Format.UINT8, size, size, 0f, 0);
+        ByteBuffer out = direct(converter.getTensorBytes());
+        converter.convert(pixels, srcWidth, srcHeight, out);
+
+        for (int y = 0; y < size; y++) {
+            assertPixel(out, y * size, 0xC8, 0x1E, 0x0A);
+            assertPixel(out, y * size + size - 1, 0x0A, 0x1E, 0xC8);
+        }
+        // Only the columns next to the edge get blended values, and those stay between the two colors.
+        for (int x = 0; x < size; x++) {
+            int red = out.get((x) * 3) & 0xFF;
+            assertTrue("Column " + x + " red " + red, red >= 0x0A && red <= 0xC8);
+            assertEquals(0x1E, out.get(x * 3 + 1) & 0xFF);
+        }
+    }
+
+    @Test
+    public void resample_halvingAveragesNeighbours() {
+        int[] pixels = {
+                0xFF000000, 0xFF646464, 0xFF000000, 0xFF646464,
+                0xFF000000, 0xFF646464, 0xFF000000, 0xFF646464,
+        };
+        TensorConverter converter = new TensorConverter(TensorConverter.Format.FLOAT32, 2, 1, 0f, 0);
+        ByteBuffer out = direct(converter.getTensorBytes());
+        converter.convert(pixels, 4, 2, out);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(50 / 255f, out.getFloat(i * 4), 1e-6f);
+        }
+    }
+
+    // The conversion preprocessImage did before the fused kernels.
+    static void perChannel(TensorConverter.Format format, int[] pixels, int count, ByteBuffer buffer) {
+        buffer.rewind();
+        for (int i = 0; i < count; i++) {
+            final int val = pixels[i];
+            switch (format) {
+                case FLOAT32:
+                    buffer.putFloat(((val >> 16) & 0xFF) / 255.0f);
+                    buffer.putFloat(((val >> 8) & 0xFF) / 255.0f);
+                    buffer.putFloat((val & 0xFF) / 255.0f);
+                    break;
+                case INT8:
+                    buffer.put((byte) (((val >> 16) & 0xFF) - 128));
+                    buffer.put((byte) (((val >> 8) & 0xFF) - 128));
+                    buffer.put((byte) ((val & 0xFF) - 128));
+                    break;
+                default:
+                    buffer.put((byte) ((val >> 16) & 0xFF));
+                    buffer.put((byte) ((val >> 8) & 0xFF));
+                    buffer.put((byte) (val & 0xFF));
+                    break;
+            }
+        }
+        buffer.rewind();
+    }
+
+    private static void assertPixel(ByteBuffer out, int pixel, int r, int g, int b) {
+        assertEquals("R of pixel " + pixel, r, out.get(pixel * 3) & 0xFF);
+        assertEquals("G of pixel " + pixel, g, out.get(pixel * 3 + 1) & 0xFF);
+        assertEquals("B of pixel " + pixel, b, out.get(pixel * 3 + 2) & 0xFF);
+    }
+
+    static ByteBuffer direct(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        return pixels;
+    }
+}
@@ -0,0 +1,125 @@
+package com.eintswavex.wastesorter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TuningReportTest {
+
+    @Test
+    public void summarize_rejectsOutliers() {
+        long[] nanos = new long[20];
+        for (int i = 0; i < nanos.length; i++) nanos[i] = ms(10 + i % 3);  // 10, 11, 12 ms
+        nanos[5] = ms(80);   // GC pause
+        nanos[13] = ms(45);  // Thermal hiccup
+
+        TuningReport.Entry entry = new TuningReport.Entry();
+        TuningReport.summarize(nanos, nanos.length, entry);
+
+        assertEquals(20, entry.samples);
+        assertEquals(2, entry.rejected);
+        assertTrue("Mean " + entry.meanMs, entry.meanMs >= 10f && entry.meanMs <= 12f);
+        assertEquals(11f, entry.p50Ms, 1e-3f);
+        assertTrue(entry.p90Ms <= 12f);
+    }
+
+    @Test
+    public void summarize_keepsTightSamples() {
+        long[] nanos = {ms(20), ms(20), ms(20), ms(20), 0, 0};
+        TuningReport.Entry entry = new TuningReport.Entry();
+        TuningReport.summarize(nanos, 4, entry);  // Only the first count samples are used
+
+        assertEquals(0, entry.rejected);
+        assertEquals(20f, entry.meanMs, 1e-3f);
+        assertEquals(20f, entry.p90Ms, 1e-3f);
+    }
+
+    @Test
+    public void paretoFront_dropsDominatedConfigs() {
+        TuningReport report = report(
+                entry("96", 1, 8f, 0.85f),
+                entry("96", 4, 5f, 0.85f),     // Same accuracy, faster: dominates 96/1T
+                entry("160", 4, 20f, 0.90f),
+                entry("240", 4, 45f, 0.88f),   // Slower and less accurate than 160
+                entry("128", 2, 12f, 0.87f));
+
+        report.markParetoFront();
+        List<TuningReport.Entry> front = report.getParetoFront();
+
+        assertEquals(3, front.size());
+        assertEquals("96", front.get(0).modelName);
+        assertEquals(4, front.get(0).numThreads);
+        assertEquals("128", front.get(1).modelName);
+        assertEquals("160", front.get(2).modelName);
+    }
+
+    @Test
+    public void pick_respectsLatencyBudget() {
+        TuningReport report = report(
+                entry("96", 4, 5f, 0.85f),
+                entry("128", 2, 12f, 0.87f),
+                entry("160", 4, 20f, 0.90f));
+        report.markParetoFront();
+
+        assertEquals("160", report.pick(0).modelName);
+        assertEquals("160", report.pick(50).modelName);
+        assertEquals("128", report.pick(15).modelName);
+        assertEquals("96", report.pick(10).modelName);
+        // Nothing fits: the fastest is the best the phone can do.
+        assertEquals("96", report.pick(2).modelName);
+        assertNull(new TuningReport().pick(10));
+    }
+
+    @Test
+    public void fastestFor_ignoresAccuracy() {
+        TuningReport report = report(
+                entry("96", 1, 8f, 0.86f),
+                entry("96", 4, 5f, 0.85f),
+                entry("160", 4, 20f, 0.90f));
+
+        assertEquals(4, report.fastestFor("96").numThreads);
+        assertNull(report.fastestFor("240"));
+    }
+
+    @Test
+    public void covers_detectsChangedModels() {
+        TuningReport report = new TuningReport();
+        report.modelNames = Arrays.asList("a.tflite", "b.tflite");
+
+        assertTrue(report.covers(Arrays.asList("b.tflite", "a.tflite")));
+        assertFalse(report.covers(Arrays.asList("a.tflite", "c.tflite")));
+        assertFalse(report.covers(Arrays.asList("a.tflite")));
+    }
+
+    @Test
+    public void threadChoices_stayWithinCores() {
+        assertEquals(Arrays.asList(1, 2, 4, 8), ModelTuner.threadChoices(8));
+        assertEquals(Arrays.asList(1, 2, 4, 6), ModelTuner.threadChoices(6));
+        assertEquals(Arrays.asList(1, 2, 4), ModelTuner.threadChoices(4));
+        assertEquals(Arrays.asList(1), ModelTuner.threadChoices(1));
+        assertEquals(Arrays.asList(1, 2, 4, 8), ModelTuner.threadChoices(12));
+    }
+
+    private static long ms(double millis) {
+        return (long) (millis * 1_000_000);
+    }
+
+    private static TuningReport report(TuningReport.Entry... entries) {
+        TuningReport report = new TuningReport();
+        report.entries.addAll(Arrays.asList(entries));
+        return report;
+    }
+
+    private static TuningReport.Entry entry(String model, int threads, float meanMs, float accuracy) {
+        TuningReport.Entry entry = new TuningReport.Entry();
+        entry.modelName = model;
+        entry.numThreads = threads;
+        entry.useXnnpack = true;
+        entry.meanMs = meanMs;
+        entry.accuracy = accuracy;
+        return entry;
+    }
+}